@@ -0,0 +1,101 @@
+package common.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates executors that run each task on a new virtual thread, on a JDK that has them (21 or later).
+ * <p>
+ * The course builds for Java 8, so the JDK 21 API is looked up reflectively. A task that blocks - on JDBC, JMS or a
+ * sleep - parks its virtual thread and frees the carrier thread under it for other tasks, so the number of tasks
+ * blocked at once is no longer capped by a pool size. Whatever they block on still caps them: a task waiting for a
+ * pooled database connection waits just the same, so size connection pools for the load you expect to let through.
+ * Blocking inside a synchronized block holds on to the carrier thread, as some JDBC drivers still do.
+ */
+public final class VirtualThreads {
+
+	private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+
+	private static final Method NEW_THREAD_PER_TASK_EXECUTOR =
+			findMethod(Executors.class, "newThreadPerTaskExecutor", ThreadFactory.class);
+
+	private static final boolean AVAILABLE = OF_VIRTUAL != null && NEW_THREAD_PER_TASK_EXECUTOR != null
+			&& canCreateThreadFactory();
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * Whether this JDK can run virtual threads. On JDK 19 and 20 they are a preview, only available with
+	 * --enable-preview.
+	 */
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * Returns a factory for virtual threads named the given prefix followed by a counter, starting at 0.
+	 * @throws IllegalStateException if this JDK has no virtual threads
+	 */
+	public static ThreadFactory newThreadFactory(String namePrefix) {
+		if (!AVAILABLE) {
+			throw new IllegalStateException("Virtual threads need JDK 21 or later, this is "
+					+ System.getProperty("java.version"));
+		}
+		return createThreadFactory(namePrefix);
+	}
+
+	/**
+	 * Returns an executor that starts a new virtual thread, named the given prefix followed by a counter, for each
+	 * task. Shut it down to wait for the tasks it has started.
+	 * @throws IllegalStateException if this JDK has no virtual threads
+	 */
+	public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+		return (ExecutorService) invoke(NEW_THREAD_PER_TASK_EXECUTOR, null, newThreadFactory(namePrefix));
+	}
+
+	private static boolean canCreateThreadFactory() {
+		try {
+			createThreadFactory("probe-");
+			return true;
+		} catch (RuntimeException e) {
+			// A preview API without --enable-preview
+			return false;
+		}
+	}
+
+	private static ThreadFactory createThreadFactory(String namePrefix) {
+		// Thread.ofVirtual().name(namePrefix, 0).factory()
+		Object builder = invoke(OF_VIRTUAL, null);
+		Class<?> builderType = OF_VIRTUAL.getReturnType();
+		builder = invoke(findMethod(builderType, "name", String.class, long.class), builder, namePrefix, 0L);
+		return (ThreadFactory) invoke(findMethod(builderType, "factory"), builder);
+	}
+
+	private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+		try {
+			return type.getMethod(name, parameterTypes);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static Object invoke(Method method, Object target, Object... args) {
+		if (method == null) {
+			throw new IllegalStateException("Virtual threads are not supported by this JDK");
+		}
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
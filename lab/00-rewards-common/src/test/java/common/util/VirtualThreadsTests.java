@@ -0,0 +1,41 @@
+package common.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for creating virtual threads, which only run on JDKs that have them.
+ */
+public class VirtualThreadsTests {
+
+	@Test
+	public void testUnavailableFailsFast() {
+		Assumptions.assumeFalse(VirtualThreads.isAvailable());
+		IllegalStateException e = assertThrows(IllegalStateException.class,
+				() -> VirtualThreads.newThreadPerTaskExecutor("test-"));
+		assertTrue(e.getMessage().contains("JDK 21"));
+	}
+
+	@Test
+	public void testTasksRunOnNamedVirtualThreads() throws Exception {
+		Assumptions.assumeTrue(VirtualThreads.isAvailable());
+		ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test-");
+		try {
+			Future<String> first = executor.submit(() -> Thread.currentThread().getName());
+			Future<String> second = executor.submit(() -> Thread.currentThread().getName());
+			assertTrue(first.get().startsWith("test-"));
+			assertNotEquals(first.get(), second.get(), "each task should get a thread of its own");
+			assertEquals(Boolean.TRUE, executor.submit(
+					() -> Thread.class.getMethod("isVirtual").invoke(Thread.currentThread())).get());
+		} finally {
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		}
+	}
+}
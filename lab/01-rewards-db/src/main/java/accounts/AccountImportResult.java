@@ -0,0 +1,103 @@
+package accounts;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Summary of a bulk account import: how many rows were read and created, and
+ * why each failed row was rejected. Rows are numbered from 0 in input order.
+ */
+public class AccountImportResult {
+
+	private int rowsRead;
+
+	private int created;
+
+	private boolean complete = true;
+
+	private final List<RowFailure> failures = new ArrayList<RowFailure>();
+
+	public int getRowsRead() {
+		return rowsRead;
+	}
+
+	public int getCreated() {
+		return created;
+	}
+
+	public int getFailed() {
+		return failures.size();
+	}
+
+	/**
+	 * False if the input could not be read to the end, in which case the last
+	 * failure describes why.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	public List<RowFailure> getFailures() {
+		return Collections.unmodifiableList(failures);
+	}
+
+	public void rowRead() {
+		rowsRead++;
+	}
+
+	public void rowsCreated(int count) {
+		created += count;
+	}
+
+	public void rowFailed(int row, String accountNumber, String reason) {
+		failures.add(new RowFailure(row, accountNumber, reason));
+	}
+
+	public void inputFailed(int row, String reason) {
+		rowFailed(row, null, reason);
+		complete = false;
+	}
+
+	@Override
+	public String toString() {
+		return "read " + rowsRead + ", created " + created + ", failed " + failures.size()
+				+ (complete ? "" : " - input incomplete");
+	}
+
+	/**
+	 * A row that was not imported.
+	 */
+	public static class RowFailure {
+
+		private final int row;
+
+		private final String accountNumber;
+
+		private final String reason;
+
+		public RowFailure(int row, String accountNumber, String reason) {
+			this.row = row;
+			this.accountNumber = accountNumber;
+			this.reason = reason;
+		}
+
+		public int getRow() {
+			return row;
+		}
+
+		public String getAccountNumber() {
+			return accountNumber;
+		}
+
+		public String getReason() {
+			return reason;
+		}
+
+		@Override
+		public String toString() {
+			return "row " + row + " (" + accountNumber + "): " + reason;
+		}
+	}
+
+}
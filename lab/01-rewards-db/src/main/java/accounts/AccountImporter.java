@@ -0,0 +1,30 @@
+package accounts;
+
+import java.util.Iterator;
+
+import rewards.internal.account.Account;
+
+/**
+ * Creates accounts in bulk - for example when a partner's members are
+ * onboarded. Unlike {@link AccountManager#save(Account)}, which creates one
+ * account per call and transaction, an importer is free to batch inserts and
+ * commit in chunks.
+ */
+public interface AccountImporter {
+
+	/**
+	 * Creates each of the given (transient) accounts, with their
+	 * beneficiaries. Accounts are read from the iterator as they are needed,
+	 * so a very large import can be streamed.
+	 * <p>
+	 * A row that cannot be created - for example because its account number
+	 * is already taken - is reported in the result and does not stop the
+	 * import. Rows already created stay committed if a later one fails.
+	 *
+	 * @param accounts
+	 *            the accounts to create
+	 * @return counts of rows read and created, plus the rows that failed
+	 */
+	public AccountImportResult importAccounts(Iterator<Account> accounts);
+
+}
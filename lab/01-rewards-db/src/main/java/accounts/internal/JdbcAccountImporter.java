@@ -0,0 +1,280 @@
+package accounts.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StringUtils;
+
+import accounts.AccountImportResult;
+import accounts.AccountImporter;
+import rewards.internal.account.Account;
+import rewards.internal.account.Beneficiary;
+
+/**
+ * Imports accounts using JDBC batch inserts, committing every
+ * <code>chunkSize</code> accounts.
+ * <p>
+ * JPA cannot batch these inserts: <code>T_ACCOUNT</code> and
+ * <code>T_ACCOUNT_BENEFICIARY</code> use identity columns, so Hibernate must
+ * run each insert on its own to learn the generated key. Instead each chunk
+ * is written as one batch of account rows, one query to read back the
+ * generated ids by (unique) account number, and one batch of beneficiary
+ * rows.
+ * <p>
+ * Account numbers that already exist are reported as failed rows before the
+ * batch runs. If a chunk still fails - a constraint violation in the data or
+ * a concurrent insert - it is rolled back and its rows are retried one at a
+ * time, so only the bad rows are rejected.
+ */
+public class JdbcAccountImporter implements AccountImporter {
+
+	public static final int DEFAULT_CHUNK_SIZE = 500;
+
+	static final int MAX_NUMBER_LENGTH = 9;
+
+	static final int MAX_NAME_LENGTH = 50;
+
+	private static final String INSERT_ACCOUNT_SQL = "insert into T_ACCOUNT (NUMBER, NAME) values (?, ?)";
+
+	private static final String INSERT_BENEFICIARY_SQL = "insert into T_ACCOUNT_BENEFICIARY "
+			+ "(ACCOUNT_ID, NAME, ALLOCATION_PERCENTAGE, SAVINGS) values (?, ?, ?, ?)";
+
+	private static final String SELECT_IDS_SQL = "select ID, NUMBER from T_ACCOUNT where NUMBER in (:numbers)";
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final int chunkSize;
+
+	public JdbcAccountImporter(DataSource dataSource, PlatformTransactionManager transactionManager) {
+		this(dataSource, transactionManager, DEFAULT_CHUNK_SIZE);
+	}
+
+	public JdbcAccountImporter(DataSource dataSource, PlatformTransactionManager transactionManager,
+			int chunkSize) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public AccountImportResult importAccounts(Iterator<Account> accounts) {
+		AccountImportResult result = new AccountImportResult();
+		List<Row> chunk = new ArrayList<Row>(chunkSize);
+		int rowIndex = 0;
+
+		while (true) {
+			Account account;
+			try {
+				if (!accounts.hasNext()) {
+					break;
+				}
+				account = accounts.next();
+			} catch (RuntimeException e) {
+				// Malformed input - whatever follows cannot be trusted
+				result.inputFailed(rowIndex, e.getMessage());
+				break;
+			}
+
+			result.rowRead();
+			String problem = validate(account);
+			if (problem == null) {
+				chunk.add(new Row(rowIndex, account));
+			} else {
+				result.rowFailed(rowIndex, account.getNumber(), problem);
+			}
+			rowIndex++;
+
+			if (chunk.size() == chunkSize) {
+				importChunk(chunk, result);
+				chunk.clear();
+			}
+		}
+
+		if (!chunk.isEmpty()) {
+			importChunk(chunk, result);
+		}
+
+		logger.info("Account import: " + result);
+		return result;
+	}
+
+	private void importChunk(List<Row> chunk, AccountImportResult result) {
+		Set<String> numbers = new HashSet<String>();
+		List<Row> rows = new ArrayList<Row>(chunk.size());
+		for (Row row : chunk) {
+			if (numbers.add(row.getNumber())) {
+				rows.add(row);
+			} else {
+				result.rowFailed(row.index, row.getNumber(), "Duplicate account number in input");
+			}
+		}
+
+		try {
+			record(transactionTemplate.execute(status -> insert(rows)), result);
+		} catch (DataAccessException e) {
+			logger.warn("Batch of " + rows.size() + " accounts failed, retrying one at a time: "
+					+ e.getMostSpecificCause().getMessage());
+			for (Row row : rows) {
+				try {
+					record(transactionTemplate.execute(status -> insert(Collections.singletonList(row))), result);
+				} catch (DataAccessException rowException) {
+					result.rowFailed(row.index, row.getNumber(), rowException.getMostSpecificCause().getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Inserts the rows whose account numbers are not already taken. Must run
+	 * in a transaction.
+	 */
+	private Outcome insert(List<Row> rows) {
+		Outcome outcome = new Outcome();
+		Map<String, Long> existing = findIds(rows);
+		List<Row> newRows = new ArrayList<Row>(rows.size());
+		for (Row row : rows) {
+			if (existing.containsKey(row.getNumber())) {
+				outcome.existing.add(row);
+			} else {
+				newRows.add(row);
+			}
+		}
+		if (newRows.isEmpty()) {
+			return outcome;
+		}
+
+		jdbcTemplate.batchUpdate(INSERT_ACCOUNT_SQL, newRows, newRows.size(), (ps, row) -> {
+			ps.setString(1, row.account.getNumber());
+			ps.setString(2, row.account.getName());
+		});
+
+		Map<String, Long> ids = findIds(newRows);
+		List<Object[]> beneficiaryArgs = new ArrayList<Object[]>();
+		for (Row row : newRows) {
+			Long accountId = ids.get(row.getNumber());
+			for (Beneficiary beneficiary : row.account.getBeneficiaries()) {
+				beneficiaryArgs.add(new Object[] { accountId, beneficiary.getName(),
+						beneficiary.getAllocationPercentage().asBigDecimal(),
+						beneficiary.getSavings().asBigDecimal() });
+			}
+		}
+		if (!beneficiaryArgs.isEmpty()) {
+			jdbcTemplate.batchUpdate(INSERT_BENEFICIARY_SQL, beneficiaryArgs);
+		}
+
+		outcome.created = newRows.size();
+		return outcome;
+	}
+
+	private Map<String, Long> findIds(List<Row> rows) {
+		List<String> numbers = new ArrayList<String>(rows.size());
+		for (Row row : rows) {
+			numbers.add(row.getNumber());
+		}
+
+		Map<String, Long> ids = new HashMap<String, Long>();
+		namedParameterJdbcTemplate.query(SELECT_IDS_SQL, new MapSqlParameterSource("numbers", numbers),
+				rs -> {
+					ids.put(rs.getString("NUMBER"), rs.getLong("ID"));
+				});
+		return ids;
+	}
+
+	/**
+	 * Only called once the transaction has committed, so the counts reflect
+	 * what is in the database.
+	 */
+	private void record(Outcome outcome, AccountImportResult result) {
+		result.rowsCreated(outcome.created);
+		for (Row row : outcome.existing) {
+			result.rowFailed(row.index, row.getNumber(), "Account number already exists");
+		}
+	}
+
+	/**
+	 * Checks what the database would otherwise reject part way through a
+	 * batch.
+	 *
+	 * @return the problem with the account, or <code>null</code> if it can be
+	 *         inserted
+	 */
+	static String validate(Account account) {
+		if (account == null) {
+			return "Account is missing";
+		}
+		if (!StringUtils.hasText(account.getNumber())) {
+			return "Account number is required";
+		}
+		if (account.getNumber().length() > MAX_NUMBER_LENGTH) {
+			return "Account number is longer than " + MAX_NUMBER_LENGTH + " characters";
+		}
+		if (!StringUtils.hasText(account.getName())) {
+			return "Account name is required";
+		}
+		if (account.getName().length() > MAX_NAME_LENGTH) {
+			return "Account name is longer than " + MAX_NAME_LENGTH + " characters";
+		}
+
+		Set<String> beneficiaryNames = new HashSet<String>();
+		for (Beneficiary beneficiary : account.getBeneficiaries()) {
+			if (!StringUtils.hasText(beneficiary.getName())
+					|| beneficiary.getName().length() > MAX_NAME_LENGTH) {
+				return "Beneficiary name must be 1 to " + MAX_NAME_LENGTH + " characters";
+			}
+			if (!beneficiaryNames.add(beneficiary.getName())) {
+				return "Duplicate beneficiary " + beneficiary.getName();
+			}
+			if (beneficiary.getAllocationPercentage() == null || beneficiary.getSavings() == null) {
+				return "Beneficiary " + beneficiary.getName() + " needs an allocation percentage and savings";
+			}
+		}
+		return null;
+	}
+
+	private static class Row {
+
+		private final int index;
+
+		private final Account account;
+
+		Row(int index, Account account) {
+			this.index = index;
+			this.account = account;
+		}
+
+		String getNumber() {
+			return account.getNumber();
+		}
+	}
+
+	private static class Outcome {
+
+		private int created;
+
+		private final List<Row> existing = new ArrayList<Row>();
+	}
+
+}
@@ -6,6 +6,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.PersistenceContext;
 
 import org.springframework.stereotype.Repository;
@@ -13,6 +14,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import common.money.Percentage;
 import rewards.internal.account.Account;
+import rewards.internal.account.JpaAccountRepository;
 
 /**
  * An account manager that uses JPA to find accounts.
@@ -58,10 +60,13 @@ public class JpaAccountManager extends AbstractAccountManager {
 	@Override
 	@Transactional(readOnly = true)
 	public Account getAccount(Long id) {
-		Account account = (Account) entityManager.find(Account.class, id);
+		// Loads the beneficiaries in the same statement
+		Account account = entityManager.find(Account.class, id, JpaAccountRepository.withBeneficiaries(entityManager));
 
-		if (account != null) {
-			// Force beneficiaries to load too - avoid Hibernate lazy loading error
+		if (account != null
+				&& !entityManager.getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(account, "beneficiaries")) {
+			// Came from the persistence context or the second-level cache
+			// without them - avoid Hibernate lazy loading error
 			account.getBeneficiaries().size();
 		}
 
@@ -84,7 +89,7 @@ public class JpaAccountManager extends AbstractAccountManager {
 	@Override
 	@Transactional
 	public void updateBeneficiaryAllocationPercentages(Long accountId, Map<String, Percentage> allocationPercentages) {
-		Account account = getAccount(accountId);
+		Account account = getAccountForUpdate(accountId);
 		for (Entry<String, Percentage> entry : allocationPercentages.entrySet()) {
 			account.getBeneficiary(entry.getKey()).setAllocationPercentage(entry.getValue());
 		}
@@ -93,17 +98,35 @@ public class JpaAccountManager extends AbstractAccountManager {
 	@Override
 	@Transactional
 	public void addBeneficiary(Long accountId, String beneficiaryName) {
-		getAccount(accountId).addBeneficiary(beneficiaryName, Percentage.zero());
+		getAccountForUpdate(accountId).addBeneficiary(beneficiaryName, Percentage.zero());
 	}
 
 	@Override
 	@Transactional
 	public void removeBeneficiary(Long accountId, String beneficiaryName,
 			Map<String, Percentage> allocationPercentages) {
-		getAccount(accountId).removeBeneficiary(beneficiaryName);
+		getAccountForUpdate(accountId).removeBeneficiary(beneficiaryName);
 
 		if (allocationPercentages != null)
 			updateBeneficiaryAllocationPercentages(accountId, allocationPercentages);
 	}
 
+	/**
+	 * Loads an account whose beneficiaries are about to change. Beneficiaries
+	 * have no version of their own and changing one does not make the account
+	 * dirty, so the account version is incremented regardless: a concurrent
+	 * change to the same account then fails with an optimistic locking
+	 * exception instead of being overwritten. Outside a transaction nothing is
+	 * written, so there is nothing to check; nor is there for modules whose own
+	 * Account mapping has no version.
+	 */
+	private Account getAccountForUpdate(Long id) {
+		Account account = getAccount(id);
+		if (account != null && entityManager.isJoinedToTransaction()
+				&& entityManager.getMetamodel().entity(Account.class).hasVersionAttribute()) {
+			entityManager.lock(account, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+		}
+		return account;
+	}
+
 }
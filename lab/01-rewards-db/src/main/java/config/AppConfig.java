@@ -4,8 +4,13 @@ import javax.sql.DataSource;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import accounts.AccountImporter;
 import accounts.AccountManager;
+import accounts.internal.JdbcAccountImporter;
 import accounts.internal.JpaAccountManager;
 import rewards.internal.account.AccountRepository;
 import rewards.internal.account.JpaAccountRepository;
@@ -30,14 +35,21 @@ public class AppConfig {
 		return new JpaAccountManager();
 	}
 
+	@Bean
+	public AccountImporter accountImporter(DataSource dataSource, PlatformTransactionManager transactionManager) {
+		return new JdbcAccountImporter(dataSource, transactionManager);
+	}
+
 	@Bean
 	public AccountRepository accountRepository() {
 		return new JpaAccountRepository();
 	}
 
 	@Bean
-	public RestaurantRepository restaurantRepository() {
-		return new JpaRestaurantRepository();
+	public RestaurantRepository restaurantRepository(Environment environment) {
+		JpaRestaurantRepository repository = new JpaRestaurantRepository();
+		repository.setCacheMerchantLookup(environment.acceptsProfiles(Profiles.of(DbConfig.CACHE_PROFILE)));
+		return repository;
 	}
 
 	@Bean
@@ -1,15 +1,23 @@
 package config;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Logger;
 
+import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
 import org.springframework.context.annotation.PropertySource;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.JpaVendorAdapter;
@@ -20,6 +28,11 @@ import org.springframework.orm.jpa.vendor.EclipseLinkJpaVendorAdapter;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.PlatformTransactionManager;
 
+import config.datasource.ReadWriteRoutingDataSource;
+import config.datasource.ReplicaLagMonitor;
+import config.datasource.SnapshotReplicator;
+import config.jpa.JpaCacheStatistics;
+
 /**
  * Configuration class for Persistence-specific objects, including profile
  * choices for JPA via Hibernate or JPA via EclipseLink. Only used by tests in
@@ -27,6 +40,15 @@ import org.springframework.transaction.PlatformTransactionManager;
  * <p>
  * To simulate Spring Boot we load <code>application.properties</code> manually,
  * if it exists, and mimic Boot's <code>spring.jpa.show-sql</code> property.
+ * <p>
+ * The "read-replica" profile routes read-only transactions to a second
+ * in-memory database that is kept in sync with the first.
+ * <p>
+ * The "jpa-cache" profile turns on the second-level cache: read-only for
+ * restaurants, read-write for accounts and their beneficiaries, plus the
+ * query cache for restaurant lookups by merchant number. Changes made with
+ * plain JDBC, such as reward and account imports, bypass the cache - only
+ * insert new rows that way while it is on.
  */
 @Configuration
 @PropertySource(value = "application.properties", ignoreResourceNotFound = true)
@@ -34,14 +56,20 @@ public class DbConfig {
 
 	public static final String DOMAIN_OBJECTS_PARENT_PACKAGE = "rewards.internal";
 
+	public static final String CACHE_PROFILE = "jpa-cache";
+
 	@Value("${spring.jpa.show-sql:true}")  // Default to true if not set elsewhere
 	private String showSql;
 
+	@Autowired
+	private Environment environment;
+
 	/**
 	 * Creates an in-memory "rewards" database populated with test data for fast
 	 * testing
 	 */
 	@Bean
+	@Profile("!read-replica")
 	public DataSource dataSource() {
 		return (new EmbeddedDatabaseBuilder()) //
 				.addScript("classpath:rewards/testdb/schema.sql") //
@@ -60,7 +88,8 @@ public class DbConfig {
 	 * Create an EntityManagerFactoryBean.
 	 */
 	@Bean
-	public LocalContainerEntityManagerFactoryBean entityManagerFactory(JpaVendorAdapter adapter) {
+	public LocalContainerEntityManagerFactoryBean entityManagerFactory(JpaVendorAdapter adapter,
+			DataSource dataSource) {
 
 		// Tell the underlying implementation what type of database we are using - a
 		// hint to generate better SQL
@@ -73,24 +102,74 @@ public class DbConfig {
 		boolean showSql = "TRUE".equalsIgnoreCase(this.showSql);
 		Logger.getLogger("config").info("JPA Show generated SQL? " + this.showSql);
 
+		boolean cache = environment.acceptsProfiles(Profiles.of(CACHE_PROFILE));
+		Logger.getLogger("config").info("JPA second-level cache? " + cache);
+
 		if (adapter instanceof EclipseLinkJpaVendorAdapter) {
 			props.setProperty("eclipselink.logging.level", showSql ? "FINE" : "WARN");
 			props.setProperty("eclipselink.logging.parameters", String.valueOf(showSql));
 			props.setProperty("eclipselink.weaving", "false");
+			if (cache) {
+				setEclipseLinkCacheProperties(props);
+			}
 		} else {
 			props.setProperty("hibernate.show_sql", String.valueOf(showSql));
 			props.setProperty("hibernate.format_sql", "true");
+			// Hibernate would otherwise turn the cache on just because a
+			// cache provider is on the classpath
+			props.setProperty("hibernate.cache.use_second_level_cache", String.valueOf(cache));
+			if (cache) {
+				setHibernateCacheProperties(props);
+			}
 		}
 
 		LocalContainerEntityManagerFactoryBean emfb = new LocalContainerEntityManagerFactoryBean();
 		emfb.setPackagesToScan(DOMAIN_OBJECTS_PARENT_PACKAGE);
 		emfb.setJpaProperties(props);
 		emfb.setJpaVendorAdapter(adapter);
-		emfb.setDataSource(dataSource());
+		emfb.setDataSource(dataSource);
 
 		return emfb;
 	}
 
+	/**
+	 * The L2 regions are configured here rather than with annotations on the
+	 * entities, so they stay uncached unless this profile is active.
+	 */
+	private void setHibernateCacheProperties(Properties props) {
+		props.setProperty("hibernate.cache.use_query_cache", "true");
+		props.setProperty("hibernate.cache.region.factory_class", "jcache");
+		props.setProperty("hibernate.javax.cache.provider", "org.ehcache.jsr107.EhcacheCachingProvider");
+		props.setProperty("hibernate.javax.cache.uri", "rewards/cache/ehcache.xml");
+		props.setProperty("hibernate.javax.cache.missing_cache_strategy", "fail");
+		props.setProperty("hibernate.generate_statistics", "true");
+
+		props.setProperty("hibernate.ejb.classcache.rewards.internal.restaurant.Restaurant", "read-only");
+		props.setProperty("hibernate.ejb.classcache.rewards.internal.account.Account", "read-write");
+		props.setProperty("hibernate.ejb.classcache.rewards.internal.account.Beneficiary", "read-write");
+		props.setProperty("hibernate.ejb.collectioncache.rewards.internal.account.Account.beneficiaries", "read-write");
+	}
+
+	/**
+	 * EclipseLink shares a cache of every entity by default. Limit it to the
+	 * same entities as Hibernate. Restaurants are read-only through the
+	 * query hint in JpaRestaurantRepository.
+	 */
+	private void setEclipseLinkCacheProperties(Properties props) {
+		props.setProperty("eclipselink.cache.shared.default", "false");
+		props.setProperty("eclipselink.cache.shared.Restaurant", "true");
+		props.setProperty("eclipselink.cache.shared.Account", "true");
+		props.setProperty("eclipselink.cache.shared.Beneficiary", "true");
+		props.setProperty("eclipselink.cache.size.Beneficiary", "50000");
+		props.setProperty("eclipselink.profiler", "PerformanceMonitor");
+	}
+
+	@Bean
+	@Profile(CACHE_PROFILE)
+	public JpaCacheStatistics jpaCacheStatistics(EntityManagerFactory entityManagerFactory) {
+		return new JpaCacheStatistics(entityManagerFactory);
+	}
+
 	@Bean
 	@Profile("!jpa-elink") // Default is JPA using Hibernate
 	JpaVendorAdapter hibernateVendorAdapter() {
@@ -103,4 +182,67 @@ public class DbConfig {
 		return new EclipseLinkJpaVendorAdapter();
 	}
 
+	/**
+	 * A primary and a replica in-memory database. The replica is refreshed
+	 * with a full copy of the primary every
+	 * <code>rewards.replica.sync-period-ms</code> and read-only transactions
+	 * use it while it is no more than <code>rewards.replica.max-lag-ms</code>
+	 * behind.
+	 */
+	@Configuration
+	@Profile("read-replica")
+	static class ReadReplicaConfig {
+
+		static final String[] REPLICATED_TABLES = { ReplicaLagMonitor.HEARTBEAT_TABLE, "T_ACCOUNT",
+				"T_ACCOUNT_BENEFICIARY", "T_ACCOUNT_CREDIT_CARD", "T_RESTAURANT", "T_REWARD" };
+
+		@Bean(destroyMethod = "shutdown")
+		public EmbeddedDatabase primaryDataSource() {
+			return rewardsDatabase("rewards-primary");
+		}
+
+		@Bean(destroyMethod = "shutdown")
+		public EmbeddedDatabase replicaDataSource() {
+			return rewardsDatabase("rewards-replica");
+		}
+
+		@Bean
+		public SnapshotReplicator snapshotReplicator(@Value("${rewards.replica.sync-period-ms:100}") long period) {
+			SnapshotReplicator replicator = new SnapshotReplicator(primaryDataSource(), replicaDataSource(),
+					REPLICATED_TABLES);
+			replicator.start(period);
+			return replicator;
+		}
+
+		@Bean
+		public ReplicaLagMonitor replicaLagMonitor(@Value("${rewards.replica.max-lag-ms:1000}") long maxLag,
+				@Value("${rewards.replica.check-period-ms:100}") long period) {
+			ReplicaLagMonitor monitor = new ReplicaLagMonitor(primaryDataSource(), replicas(), maxLag);
+			monitor.start(period);
+			return monitor;
+		}
+
+		@Bean
+		public ReadWriteRoutingDataSource routingDataSource(ReplicaLagMonitor replicaLagMonitor) {
+			return new ReadWriteRoutingDataSource(primaryDataSource(), replicas(), replicaLagMonitor);
+		}
+
+		@Bean
+		@Primary
+		public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+			return routingDataSource.lazy();
+		}
+
+		private Map<String, DataSource> replicas() {
+			return Collections.singletonMap("replica", replicaDataSource());
+		}
+
+		private static EmbeddedDatabase rewardsDatabase(String name) {
+			return new EmbeddedDatabaseBuilder().setName(name) //
+					.addScript("classpath:rewards/testdb/schema.sql") //
+					.addScript("classpath:rewards/testdb/data.sql") //
+					.addScript("classpath:rewards/testdb/replica-heartbeat.sql").build();
+		}
+	}
+
 }
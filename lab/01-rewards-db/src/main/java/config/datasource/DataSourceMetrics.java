@@ -0,0 +1,78 @@
+package config.datasource;
+
+/**
+ * A snapshot of the connection statistics of one {@link MeteredDataSource}.
+ */
+public class DataSourceMetrics {
+
+	private final String name;
+
+	private final long acquired;
+
+	private final long failures;
+
+	private final int active;
+
+	private final int peakActive;
+
+	private final long totalAcquireNanos;
+
+	DataSourceMetrics(String name, long acquired, long failures, int active, int peakActive, long totalAcquireNanos) {
+		this.name = name;
+		this.acquired = acquired;
+		this.failures = failures;
+		this.active = active;
+		this.peakActive = peakActive;
+		this.totalAcquireNanos = totalAcquireNanos;
+	}
+
+	/**
+	 * The name of the target - "primary" or the replica's name.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Connections handed out since startup.
+	 */
+	public long getAcquired() {
+		return acquired;
+	}
+
+	/**
+	 * Attempts to get a connection that failed.
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Connections handed out and not yet closed.
+	 */
+	public int getActive() {
+		return active;
+	}
+
+	/**
+	 * The most connections that have been in use at once.
+	 */
+	public int getPeakActive() {
+		return peakActive;
+	}
+
+	/**
+	 * The average time taken to get a connection from the target, which for
+	 * a pool is the time spent waiting for a free connection.
+	 */
+	public double getMeanAcquireMillis() {
+		return acquired == 0 ? 0 : totalAcquireNanos / 1_000_000.0 / acquired;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: acquired=%d, failures=%d, active=%d, peakActive=%d, meanAcquire=%.3fms", name,
+				acquired, failures, active, peakActive, getMeanAcquireMillis());
+	}
+
+}
@@ -0,0 +1,109 @@
+package config.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Counts the connections taken from a data source and how many are in use,
+ * whatever kind of pool (if any) the target is.
+ */
+public class MeteredDataSource extends DelegatingDataSource {
+
+	private final String name;
+
+	private final LongAdder acquired = new LongAdder();
+
+	private final LongAdder failures = new LongAdder();
+
+	private final LongAdder acquireNanos = new LongAdder();
+
+	private final AtomicInteger active = new AtomicInteger();
+
+	private final AtomicInteger peakActive = new AtomicInteger();
+
+	public MeteredDataSource(String name, DataSource targetDataSource) {
+		super(targetDataSource);
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		long start = System.nanoTime();
+		try {
+			return opened(super.getConnection(), start);
+		} catch (SQLException | RuntimeException e) {
+			failures.increment();
+			throw e;
+		}
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		long start = System.nanoTime();
+		try {
+			return opened(super.getConnection(username, password), start);
+		} catch (SQLException | RuntimeException e) {
+			failures.increment();
+			throw e;
+		}
+	}
+
+	public DataSourceMetrics getMetrics() {
+		return new DataSourceMetrics(name, acquired.sum(), failures.sum(), active.get(), peakActive.get(),
+				acquireNanos.sum());
+	}
+
+	private Connection opened(Connection connection, long start) {
+		acquireNanos.add(System.nanoTime() - start);
+		acquired.increment();
+		peakActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new CloseTrackingHandler(connection));
+	}
+
+	/**
+	 * Passes every call to the target connection, counting the first close.
+	 */
+	private class CloseTrackingHandler implements InvocationHandler {
+
+		private final Connection target;
+
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		CloseTrackingHandler(Connection target) {
+			this.target = target;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (method.getName().equals("equals")) {
+				return proxy == args[0];
+			} else if (method.getName().equals("hashCode")) {
+				return System.identityHashCode(proxy);
+			} else if (method.getName().equals("close") && closed.compareAndSet(false, true)) {
+				active.decrementAndGet();
+			}
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+package config.datasource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends the work of read-only transactions to a replica and everything else
+ * to the primary.
+ * <p>
+ * Replicas are taken in turn, skipping any the {@link ReplicaLagMonitor}
+ * reports as too far behind. If none is in sync the primary is used, so a
+ * read-only transaction is never served data older than the maximum lag.
+ * <p>
+ * The routing decision is made when a connection is taken, so wrap this in
+ * a {@link LazyConnectionDataSourceProxy} (see {@link #lazy()}): transaction
+ * managers get their connection before marking the transaction read-only,
+ * and the proxy defers fetching it until the first statement.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+	public static final String PRIMARY = "primary";
+
+	private final MeteredDataSource primary;
+
+	private final List<MeteredDataSource> replicas = new ArrayList<MeteredDataSource>();
+
+	private final ReplicaLagMonitor lagMonitor;
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	private final LongAdder replicaFallbacks = new LongAdder();
+
+	/**
+	 * @param primary the data source to write to
+	 * @param replicas read-only copies of the primary, by name
+	 * @param lagMonitor checks how far behind each replica is
+	 */
+	public ReadWriteRoutingDataSource(DataSource primary, Map<String, DataSource> replicas,
+			ReplicaLagMonitor lagMonitor) {
+		this.primary = new MeteredDataSource(PRIMARY, primary);
+		this.lagMonitor = lagMonitor;
+
+		Map<Object, Object> targets = new HashMap<Object, Object>();
+		targets.put(PRIMARY, this.primary);
+		replicas.forEach((name, replica) -> {
+			MeteredDataSource metered = new MeteredDataSource(name, replica);
+			this.replicas.add(metered);
+			targets.put(name, metered);
+		});
+
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(this.primary);
+		setLenientFallback(false);
+		afterPropertiesSet();
+	}
+
+	/**
+	 * Returns this data source wrapped so that connections are only fetched
+	 * when first used. This is what the application should use.
+	 */
+	public DataSource lazy() {
+		return new LazyConnectionDataSourceProxy(this);
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || replicas.isEmpty()) {
+			return PRIMARY;
+		}
+
+		int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+		for (int i = 0; i < replicas.size(); i++) {
+			MeteredDataSource replica = replicas.get((start + i) % replicas.size());
+			if (lagMonitor.isInSync(replica.getName())) {
+				return replica.getName();
+			}
+		}
+		replicaFallbacks.increment();
+		return PRIMARY;
+	}
+
+	/**
+	 * The connection statistics of the primary followed by each replica.
+	 */
+	public List<DataSourceMetrics> getMetrics() {
+		List<DataSourceMetrics> metrics = new ArrayList<DataSourceMetrics>();
+		metrics.add(primary.getMetrics());
+		replicas.forEach(replica -> metrics.add(replica.getMetrics()));
+		return metrics;
+	}
+
+	/**
+	 * How many read-only transactions went to the primary because no replica
+	 * was in sync.
+	 */
+	public long getReplicaFallbacks() {
+		return replicaFallbacks.sum();
+	}
+
+}
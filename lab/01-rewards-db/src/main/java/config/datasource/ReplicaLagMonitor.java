@@ -0,0 +1,141 @@
+package config.datasource;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Measures how far each replica is behind the primary using a heartbeat row.
+ * <p>
+ * Each {@link #refresh()} writes the current time to the
+ * <code>T_REPLICA_HEARTBEAT</code> row on the primary and then reads the row
+ * back from every replica. A replica's lag is how old the heartbeat it has
+ * applied is. That includes up to one refresh period on top of the real
+ * replication delay, so set the period well below the maximum lag. A replica
+ * that cannot be read, or has not been checked yet, counts as too far behind.
+ */
+public class ReplicaLagMonitor implements AutoCloseable {
+
+	public static final String HEARTBEAT_TABLE = "T_REPLICA_HEARTBEAT";
+
+	private static final String UPDATE_SQL = "update " + HEARTBEAT_TABLE + " set BEAT_TIME = ? where ID = 1";
+
+	private static final String INSERT_SQL = "insert into " + HEARTBEAT_TABLE + " (ID, BEAT_TIME) values (1, ?)";
+
+	private static final String SELECT_SQL = "select BEAT_TIME from " + HEARTBEAT_TABLE + " where ID = 1";
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final JdbcTemplate primary;
+
+	private final Map<String, JdbcTemplate> replicas = new LinkedHashMap<String, JdbcTemplate>();
+
+	private final long maxLagMillis;
+
+	private final Map<String, Long> lagMillis = new ConcurrentHashMap<String, Long>();
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * @param primary the data source that is written to
+	 * @param replicas the replicas of the primary, by name
+	 * @param maxLagMillis the most a replica may be behind and still be read
+	 *            from
+	 */
+	public ReplicaLagMonitor(DataSource primary, Map<String, DataSource> replicas, long maxLagMillis) {
+		this.primary = new JdbcTemplate(primary);
+		replicas.forEach((name, replica) -> this.replicas.put(name, new JdbcTemplate(replica)));
+		this.maxLagMillis = maxLagMillis;
+	}
+
+	/**
+	 * Writes a heartbeat and measures every replica against it.
+	 */
+	public void refresh() {
+		long now = System.currentTimeMillis();
+		try {
+			if (primary.update(UPDATE_SQL, now) == 0) {
+				primary.update(INSERT_SQL, now);
+			}
+		} catch (DataAccessException e) {
+			// Without a new heartbeat lag is overstated, never understated, so
+			// carry on and measure against the old one
+			logger.warn("Could not write the replica heartbeat: " + e);
+		}
+
+		replicas.forEach((name, replica) -> {
+			long lag;
+			try {
+				List<Long> beat = replica.queryForList(SELECT_SQL, Long.class);
+				lag = beat.isEmpty() ? Long.MAX_VALUE : Math.max(0, now - beat.get(0));
+			} catch (DataAccessException e) {
+				logger.warn("Could not read the heartbeat of replica " + name + ": " + e);
+				lag = Long.MAX_VALUE;
+			}
+			Long previous = lagMillis.put(name, lag);
+			if (previous != null && (previous <= maxLagMillis) != (lag <= maxLagMillis)) {
+				logger.info("Replica " + name + (lag <= maxLagMillis ? " has caught up" : " is too far behind")
+						+ ", lag " + (lag == Long.MAX_VALUE ? "unknown" : lag + "ms"));
+			}
+		});
+	}
+
+	/**
+	 * Whether the named replica was within the maximum lag when last checked.
+	 */
+	public boolean isInSync(String replicaName) {
+		Long lag = lagMillis.get(replicaName);
+		return lag != null && lag <= maxLagMillis;
+	}
+
+	/**
+	 * The lag of each replica when last checked, in milliseconds.
+	 * {@link Long#MAX_VALUE} means it could not be read.
+	 */
+	public Map<String, Long> getLagMillis() {
+		return Collections.unmodifiableMap(lagMillis);
+	}
+
+	/**
+	 * Checks every <code>periodMillis</code> in a background thread, starting
+	 * now.
+	 */
+	public synchronized void start(long periodMillis) {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "replica-lag-monitor");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduler.scheduleWithFixedDelay(() -> {
+				try {
+					refresh();
+				} catch (RuntimeException e) {
+					// An exception would cancel the schedule
+					logger.error("Replica lag check failed", e);
+				}
+			}, 0, periodMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package config.datasource;
+
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Keeps an embedded HSQLDB replica in sync with an embedded primary by
+ * copying whole tables across. For running and testing read/write routing
+ * locally only - every copy rewrites every row, which is fine for the small
+ * test database but nothing else.
+ * <p>
+ * Tables are copied in the order given, so list the heartbeat table first:
+ * the replica's heartbeat is then never newer than its data, and measured
+ * lag is never understated.
+ */
+public class SnapshotReplicator implements AutoCloseable {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final JdbcTemplate source;
+
+	private final JdbcTemplate target;
+
+	private final TransactionTemplate targetTransaction;
+
+	private final List<String> tables;
+
+	private ScheduledExecutorService scheduler;
+
+	public SnapshotReplicator(DataSource source, DataSource target, String... tables) {
+		this.source = new JdbcTemplate(source);
+		this.target = new JdbcTemplate(target);
+		this.targetTransaction = new TransactionTemplate(new DataSourceTransactionManager(target));
+		this.tables = Arrays.asList(tables);
+	}
+
+	/**
+	 * Replaces the contents of every table in the replica with the rows in
+	 * the primary, in one replica transaction.
+	 */
+	public void replicate() {
+		targetTransaction.execute(status -> {
+			// Tables are read one at a time, so a row may refer to one that
+			// was not there yet when its table was copied
+			target.execute("set database referential integrity false");
+			try {
+				List<String> reversed = new ArrayList<String>(tables);
+				Collections.reverse(reversed);
+				reversed.forEach(table -> target.update("delete from " + table));
+				tables.forEach(this::copy);
+			} finally {
+				target.execute("set database referential integrity true");
+			}
+			return null;
+		});
+	}
+
+	private void copy(String table) {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		StringBuilder insert = new StringBuilder();
+		source.query("select * from " + table, rs -> {
+			ResultSetMetaData metaData = rs.getMetaData();
+			int columns = metaData.getColumnCount();
+			if (insert.length() == 0) {
+				StringBuilder names = new StringBuilder();
+				for (int i = 1; i <= columns; i++) {
+					names.append(i == 1 ? "" : ", ").append(metaData.getColumnName(i));
+				}
+				insert.append("insert into ").append(table).append(" (").append(names).append(") values (")
+						.append(String.join(", ", Collections.nCopies(columns, "?"))).append(")");
+			}
+			Object[] row = new Object[columns];
+			for (int i = 1; i <= columns; i++) {
+				row[i - 1] = rs.getObject(i);
+			}
+			rows.add(row);
+		});
+		if (!rows.isEmpty()) {
+			target.batchUpdate(insert.toString(), rows);
+		}
+	}
+
+	/**
+	 * Copies every <code>periodMillis</code> in a background thread, starting
+	 * now.
+	 */
+	public synchronized void start(long periodMillis) {
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+				Thread thread = new Thread(task, "snapshot-replicator");
+				thread.setDaemon(true);
+				return thread;
+			});
+			scheduler.scheduleWithFixedDelay(() -> {
+				try {
+					replicate();
+				} catch (RuntimeException e) {
+					// An exception would cancel the schedule
+					logger.error("Replication failed", e);
+				}
+			}, 0, periodMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+package config.jpa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+/**
+ * Hit and miss counts of the second-level and query caches.
+ * <p>
+ * Only Hibernate is supported, and only with
+ * <code>hibernate.generate_statistics</code> on, as the jpa-cache profile
+ * sets it. EclipseLink reports its cache statistics through its
+ * <code>PerformanceMonitor</code> profiler instead, which the profile also
+ * turns on, so {@link #isAvailable()} is false for EclipseLink.
+ */
+public class JpaCacheStatistics {
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	public JpaCacheStatistics(EntityManagerFactory entityManagerFactory) {
+		this.entityManagerFactory = entityManagerFactory;
+	}
+
+	public boolean isAvailable() {
+		return statistics() != null;
+	}
+
+	/**
+	 * The counts for each cache region.
+	 */
+	public List<CacheStatistics> getRegions() {
+		List<CacheStatistics> regions = new ArrayList<CacheStatistics>();
+		Statistics statistics = statistics();
+		if (statistics != null) {
+			for (String name : statistics.getSecondLevelCacheRegionNames()) {
+				CacheRegionStatistics region = statistics.getCacheRegionStatistics(name);
+				if (region != null) {
+					regions.add(new CacheStatistics(name, region.getHitCount(), region.getMissCount(),
+							region.getPutCount()));
+				}
+			}
+		}
+		return regions;
+	}
+
+	/**
+	 * The counts for all entity and collection regions together.
+	 */
+	public CacheStatistics getSecondLevelCache() {
+		Statistics statistics = statistics();
+		return statistics == null ? new CacheStatistics("second-level", 0, 0, 0)
+				: new CacheStatistics("second-level", statistics.getSecondLevelCacheHitCount(),
+						statistics.getSecondLevelCacheMissCount(), statistics.getSecondLevelCachePutCount());
+	}
+
+	/**
+	 * The counts for cached query results.
+	 */
+	public CacheStatistics getQueryCache() {
+		Statistics statistics = statistics();
+		return statistics == null ? new CacheStatistics("query", 0, 0, 0)
+				: new CacheStatistics("query", statistics.getQueryCacheHitCount(),
+						statistics.getQueryCacheMissCount(), statistics.getQueryCachePutCount());
+	}
+
+	/**
+	 * Resets all counts to zero.
+	 */
+	public void clear() {
+		Statistics statistics = statistics();
+		if (statistics != null) {
+			statistics.clear();
+		}
+	}
+
+	private Statistics statistics() {
+		try {
+			Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+			return statistics.isStatisticsEnabled() ? statistics : null;
+		} catch (PersistenceException e) {
+			// Not Hibernate
+			return null;
+		}
+	}
+
+	/**
+	 * The counts for one cache or region.
+	 */
+	public static class CacheStatistics {
+
+		private final String name;
+
+		private final long hits;
+
+		private final long misses;
+
+		private final long puts;
+
+		CacheStatistics(String name, long hits, long misses, long puts) {
+			this.name = name;
+			this.hits = hits;
+			this.misses = misses;
+			this.puts = puts;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getHits() {
+			return hits;
+		}
+
+		public long getMisses() {
+			return misses;
+		}
+
+		public long getPuts() {
+			return puts;
+		}
+
+		/**
+		 * Hits as a fraction of all lookups, or zero if there have been none.
+		 */
+		public double getHitRatio() {
+			long lookups = hits + misses;
+			return lookups == 0 ? 0 : (double) hits / lookups;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s: hits=%d, misses=%d, puts=%d, hitRatio=%.2f", name, hits, misses, puts,
+					getHitRatio());
+		}
+	}
+
+}
@@ -14,6 +14,7 @@ import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 import rewards.AccountContribution;
 import rewards.AccountContribution.Distribution;
@@ -49,6 +50,10 @@ public class Account {
 	@JoinColumn(name = "ACCOUNT_ID")
 	private Set<Beneficiary> beneficiaries = new HashSet<Beneficiary>();
 
+	@Version
+	@Column(name = "VERSION")
+	private int version;
+
 	protected Account() {
 	}
 
@@ -89,6 +94,27 @@ public class Account {
 		this.entityId = entityId;
 	}
 
+	/**
+	 * Returns the version of this account as it was read. The ORM increments it
+	 * on every update and rejects updates made from an older version.
+	 * 
+	 * @return the version
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Sets the version - should only be called by privileged data access code,
+	 * or to carry the version read with an account that is updated later.
+	 * 
+	 * @param version
+	 *            the version this account was read at
+	 */
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
 	/**
 	 * Returns the number used to uniquely identify this account.
 	 */
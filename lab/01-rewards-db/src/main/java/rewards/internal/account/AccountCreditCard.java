@@ -0,0 +1,42 @@
+package rewards.internal.account;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * A credit card linked to an account. Only mapped so that queries can find
+ * an account by its card; {@link Account} does not reference its cards and
+ * nothing writes them through JPA.
+ */
+@Entity
+@Table(name = "T_ACCOUNT_CREDIT_CARD")
+public class AccountCreditCard {
+
+	@Id
+	@Column(name = "ID")
+	private Long entityId;
+
+	@Column(name = "ACCOUNT_ID", insertable = false, updatable = false)
+	private Long accountId;
+
+	@Column(name = "NUMBER", insertable = false, updatable = false)
+	private String number;
+
+	protected AccountCreditCard() {
+	}
+
+	public Long getEntityId() {
+		return entityId;
+	}
+
+	public Long getAccountId() {
+		return accountId;
+	}
+
+	public String getNumber() {
+		return number;
+	}
+
+}
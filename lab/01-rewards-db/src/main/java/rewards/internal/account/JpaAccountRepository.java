@@ -1,7 +1,12 @@
 package rewards.internal.account;
 
+import java.util.Collections;
+import java.util.Map;
+
+import javax.persistence.EntityGraph;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,7 +16,14 @@ import org.slf4j.LoggerFactory;
  */
 public class JpaAccountRepository implements AccountRepository {
 
-	public static final String ACCOUNT_BY_CC_QUERY = "select ACCOUNT_ID from T_ACCOUNT_CREDIT_CARD where NUMBER = :ccn";
+	public static final String ACCOUNT_BY_CC_QUERY = "select a from Account a where a.entityId = "
+			+ "(select c.accountId from AccountCreditCard c where c.number = :ccn)";
+
+	/**
+	 * The standard JPA hint for a fetch graph, honoured by both Hibernate and
+	 * EclipseLink.
+	 */
+	public static final String FETCH_GRAPH_HINT = "javax.persistence.fetchgraph";
 
 	public static final String INFO = "JPA";
 
@@ -33,19 +45,36 @@ public class JpaAccountRepository implements AccountRepository {
 		return INFO;
 	}
 
-	public Account findByCreditCard(String creditCardNumber) {
-		// Find id account of account with this credit-card using a direct
-		// SQL query on the unmapped T_ACCOUNT_CREDIT_CARD table.
-		Integer accountId = (Integer) entityManager
-				.createNativeQuery(ACCOUNT_BY_CC_QUERY)
-				.setParameter("ccn", creditCardNumber).getSingleResult();
+	/**
+	 * Returns the hints that make a query or find load an account's
+	 * beneficiaries in the same statement. The graph is built rather than
+	 * declared on {@link Account}, so it also works in modules that map their
+	 * own Account class.
+	 */
+	public static Map<String, Object> withBeneficiaries(EntityManager entityManager) {
+		EntityGraph<Account> graph = entityManager.createEntityGraph(Account.class);
+		graph.addAttributeNodes("beneficiaries");
+		return Collections.singletonMap(FETCH_GRAPH_HINT, graph);
+	}
 
-		Account account = (Account) entityManager.find(Account.class, accountId.longValue());
+	/**
+	 * Finds the account and its beneficiaries in one statement: the card is
+	 * looked up in a subquery and the {@link #withBeneficiaries(EntityManager)}
+	 * graph joins in the beneficiaries.
+	 */
+	public Account findByCreditCard(String creditCardNumber) {
+		TypedQuery<Account> query = entityManager.createQuery(ACCOUNT_BY_CC_QUERY, Account.class) //
+				.setParameter("ccn", creditCardNumber);
+		withBeneficiaries(entityManager).forEach(query::setHint);
+		Account account = query.getSingleResult();
 
-		// Force beneficiaries to load too - avoid Hibernate lazy loading error
-		account.getBeneficiaries().size();
+		if (!entityManager.getEntityManagerFactory().getPersistenceUnitUtil().isLoaded(account, "beneficiaries")) {
+			// Already in the persistence context without them - avoid Hibernate
+			// lazy loading error
+			account.getBeneficiaries().size();
+		}
 
 		return account;
 	}
 
-}
\ No newline at end of file
+}
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 
@@ -22,6 +23,8 @@ public class JpaRestaurantRepository implements RestaurantRepository {
 
 	private EntityManager entityManager;
 
+	private boolean cacheMerchantLookup;
+
 	public JpaRestaurantRepository() {
 		logger.info("Created JpaRestaurantRepository");
 	}
@@ -31,6 +34,15 @@ public class JpaRestaurantRepository implements RestaurantRepository {
 		this.entityManager = entityManager;
 	}
 
+	/**
+	 * Cache the results of {@link #findByMerchantNumber(String)} in the query
+	 * cache. Needs the second-level cache to be on, see the jpa-cache profile
+	 * in DbConfig.
+	 */
+	public void setCacheMerchantLookup(boolean cacheMerchantLookup) {
+		this.cacheMerchantLookup = cacheMerchantLookup;
+	}
+
 	@Override
 	public String getInfo() {
 		return INFO;
@@ -38,10 +50,18 @@ public class JpaRestaurantRepository implements RestaurantRepository {
 
 	@Override
 	public Restaurant findByMerchantNumber(String merchantNumber) {
-		return entityManager //
+		TypedQuery<Restaurant> query = entityManager //
 				.createQuery(RESTAURANT_BY_MERCHANT_QUERY, Restaurant.class) //
-				.setParameter("merchantNumber", merchantNumber) //
-				.getSingleResult();
+				.setParameter("merchantNumber", merchantNumber);
+
+		if (cacheMerchantLookup) {
+			// Each provider ignores the other's hints
+			query.setHint("org.hibernate.cacheable", true);
+			query.setHint("eclipselink.query-results-cache", "true");
+			query.setHint("eclipselink.read-only", "true");
+		}
+
+		return query.getSingleResult();
 	}
 
 	@Override
@@ -0,0 +1,3 @@
+drop table T_REPLICA_HEARTBEAT if exists;
+
+create table T_REPLICA_HEARTBEAT (ID integer primary key, BEAT_TIME bigint not null);
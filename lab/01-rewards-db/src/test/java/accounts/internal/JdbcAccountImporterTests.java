@@ -0,0 +1,145 @@
+package accounts.internal;
+
+import accounts.AccountImportResult;
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import rewards.internal.account.Account;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the JDBC batch account importer against an in-memory database.
+ */
+public class JdbcAccountImporterTests {
+
+	private EmbeddedDatabase dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private JdbcAccountImporter importer;
+	private int accountsBefore;
+
+	@BeforeEach
+	public void setUp() {
+		dataSource = new EmbeddedDatabaseBuilder().generateUniqueName(true)
+				.addScript("/rewards/testdb/schema.sql")
+				.addScript("/rewards/testdb/data.sql").build();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		importer = new JdbcAccountImporter(dataSource, new DataSourceTransactionManager(dataSource), 2);
+		accountsBefore = countAccounts();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		dataSource.shutdown();
+	}
+
+	@Test
+	public void importsAccountsWithBeneficiariesInChunks() {
+		List<Account> accounts = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			accounts.add(account("90000000" + i, "Member " + i, "Ben A", "Ben B"));
+		}
+
+		AccountImportResult result = importer.importAccounts(accounts.iterator());
+
+		assertEquals(5, result.getRowsRead());
+		assertEquals(5, result.getCreated());
+		assertEquals(0, result.getFailed());
+		assertTrue(result.isComplete());
+		assertEquals(accountsBefore + 5, countAccounts());
+		assertEquals(Integer.valueOf(2), jdbcTemplate.queryForObject(
+				"select count(*) from T_ACCOUNT_BENEFICIARY b join T_ACCOUNT a on b.ACCOUNT_ID = a.ID "
+						+ "where a.NUMBER = '900000003'", Integer.class));
+	}
+
+	@Test
+	public void existingAndDuplicateNumbersAreReported() {
+		AccountImportResult result = importer.importAccounts(Arrays.asList(
+				account("123456789", "Already there"),
+				account("900000001", "New"),
+				account("900000001", "Same number again")).iterator());
+
+		assertEquals(1, result.getCreated());
+		assertEquals(2, result.getFailed());
+		assertEquals(0, result.getFailures().get(0).getRow());
+		assertEquals(2, result.getFailures().get(1).getRow());
+		assertEquals(accountsBefore + 1, countAccounts());
+	}
+
+	@Test
+	public void invalidRowsAreRejectedBeforeInsert() {
+		AccountImportResult result = importer.importAccounts(Arrays.asList(
+				account("1234567890", "Number too long"),
+				account("900000002", ""),
+				account("900000003", "Fine")).iterator());
+
+		assertEquals(1, result.getCreated());
+		assertEquals(0, result.getFailures().get(0).getRow());
+		assertEquals(1, result.getFailures().get(1).getRow());
+	}
+
+	@Test
+	public void failedBatchFallsBackToSingleRows() {
+		Account tooLarge = new Account("900000004", "Savings overflow the column");
+		tooLarge.addBeneficiary("Big", new Percentage(1));
+		tooLarge.getBeneficiary("Big").credit(new MonetaryAmount(1_000_000_000));
+
+		AccountImportResult result = importer.importAccounts(Arrays.asList(
+				account("900000005", "Good"), tooLarge).iterator());
+
+		assertEquals(1, result.getCreated());
+		assertEquals(1, result.getFailed());
+		assertEquals("900000004", result.getFailures().get(0).getAccountNumber());
+		assertEquals(accountsBefore + 1, countAccounts());
+	}
+
+	@Test
+	public void unreadableInputStopsImport() {
+		Iterator<Account> input = new Iterator<Account>() {
+			private int next = 0;
+
+			@Override
+			public boolean hasNext() {
+				return true;
+			}
+
+			@Override
+			public Account next() {
+				if (next == 3) {
+					throw new IllegalStateException("Malformed row");
+				}
+				return account("90000001" + next++, "Member");
+			}
+		};
+
+		AccountImportResult result = importer.importAccounts(input);
+
+		assertFalse(result.isComplete());
+		assertEquals(3, result.getCreated());
+		assertEquals(3, result.getFailures().get(0).getRow());
+		assertEquals(accountsBefore + 3, countAccounts());
+	}
+
+	private Account account(String number, String name, String... beneficiaries) {
+		Account account = new Account(number, name);
+		for (String beneficiary : beneficiaries) {
+			account.addBeneficiary(beneficiary, new Percentage(1.0 / beneficiaries.length));
+		}
+		return account;
+	}
+
+	private int countAccounts() {
+		return jdbcTemplate.queryForObject("select count(*) from T_ACCOUNT", Integer.class);
+	}
+}
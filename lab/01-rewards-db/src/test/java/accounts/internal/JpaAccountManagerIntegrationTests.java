@@ -1,23 +1,40 @@
 package accounts.internal;
 
 import config.AppConfig;
+import common.money.Percentage;
 import config.DbConfig;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.annotation.PersistenceExceptionTranslationPostProcessor;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import rewards.internal.account.Account;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Spring-driven integration test for the JPA-based account manager
  * implementation. Verifies that the JpaAccountManager works with its underlying
  * components.
+ * <p>
+ * Transaction management and exception translation are enabled, as Spring
+ * Boot would, so that each account manager call that is not inside a test
+ * transaction commits on its own and conflicts surface as Spring exceptions.
  */
 @ActiveProfiles("jpa")
 @ExtendWith(SpringExtension.class)
-@ContextConfiguration(classes = { AppConfig.class, DbConfig.class })
+@ContextConfiguration(classes = { AppConfig.class, DbConfig.class,
+		JpaAccountManagerIntegrationTests.TransactionConfig.class })
 public class JpaAccountManagerIntegrationTests extends AbstractDatabaseAccountManagerTests {
 
 	@Test
@@ -26,4 +43,31 @@ public class JpaAccountManagerIntegrationTests extends AbstractDatabaseAccountMa
 		assertTrue(accountManager.getInfo().equals("JPA"), "JPA expected but found " + accountManager.getInfo());
 	}
 
+	@Test
+	public void testUpdateOfStaleAccountIsRejected() {
+		Account stale = accountManager.getAccount(0L);
+
+		// Changing beneficiaries moves the account to its next version
+		Map<String, Percentage> allocations = new HashMap<String, Percentage>();
+		allocations.put("Annabelle", Percentage.valueOf("50%"));
+		allocations.put("Corgan", Percentage.valueOf("50%"));
+		accountManager.updateBeneficiaryAllocationPercentages(0L, allocations);
+		assertEquals(stale.getVersion() + 1, accountManager.getAccount(0L).getVersion());
+
+		String name = stale.getName();
+		stale.setName("Overwritten");
+		assertThrows(OptimisticLockingFailureException.class, () -> accountManager.update(stale));
+		assertEquals(name, accountManager.getAccount(0L).getName());
+	}
+
+	@Configuration
+	@EnableTransactionManagement
+	static class TransactionConfig {
+
+		@Bean
+		public static PersistenceExceptionTranslationPostProcessor exceptionTranslation() {
+			return new PersistenceExceptionTranslationPostProcessor();
+		}
+	}
+
 }
@@ -0,0 +1,69 @@
+package accounts.internal;
+
+import config.AppConfig;
+import config.DbConfig;
+import config.datasource.DataSourceMetrics;
+import config.datasource.ReadWriteRoutingDataSource;
+import config.datasource.ReplicaLagMonitor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the JPA account manager tests with read-only transactions routed to a
+ * replica. The inherited tests each run in one read-write transaction, so
+ * they only use the primary.
+ * <p>
+ * Routing depends on <code>@Transactional(readOnly = true)</code> in the
+ * account manager, so unlike the other tests here this one enables
+ * transaction management, as Spring Boot would.
+ */
+@ActiveProfiles({ "jpa", "read-replica" })
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = { AppConfig.class, DbConfig.class,
+		JpaAccountManagerReadReplicaTests.TransactionConfig.class })
+public class JpaAccountManagerReadReplicaTests extends AbstractDatabaseAccountManagerTests {
+
+	@Autowired
+	private ReadWriteRoutingDataSource routingDataSource;
+
+	@Autowired
+	private ReplicaLagMonitor replicaLagMonitor;
+
+	@Test
+	@Override
+	public void testProfile() {
+		assertTrue(accountManager.getInfo().equals("JPA"), "JPA expected but found " + accountManager.getInfo());
+	}
+
+	@Test
+	public void readOnlyTransactionUsesReplica() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!replicaLagMonitor.isInSync("replica") && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertTrue(replicaLagMonitor.isInSync("replica"), "replica never caught up");
+
+		long replicaConnections = replicaMetrics().getAcquired();
+		assertEquals(getNumAccountsExpected(), accountManager.getAllAccounts().size());
+		assertEquals(replicaConnections + 1, replicaMetrics().getAcquired());
+	}
+
+	private DataSourceMetrics replicaMetrics() {
+		return routingDataSource.getMetrics().get(1);
+	}
+
+	@Configuration
+	@EnableTransactionManagement
+	static class TransactionConfig {
+	}
+
+}
@@ -0,0 +1,166 @@
+package config.datasource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the routing between two embedded databases, the replica kept in sync
+ * by a {@link SnapshotReplicator}.
+ */
+public class ReadWriteRoutingDataSourceTests {
+
+	private static final String NAME_SQL = "select NAME from T_ACCOUNT where ID = 0";
+
+	private static final String PRIMARY_NAME = "Keith and Keri Donald";
+
+	private static final String REPLICA_NAME = "Replica";
+
+	private EmbeddedDatabase primary;
+	private EmbeddedDatabase replica;
+	private SnapshotReplicator replicator;
+	private ReplicaLagMonitor lagMonitor;
+	private ReadWriteRoutingDataSource routingDataSource;
+	private JdbcTemplate jdbcTemplate;
+	private TransactionTemplate readOnly;
+	private TransactionTemplate readWrite;
+
+	@BeforeEach
+	public void setUp() {
+		primary = rewardsDatabase();
+		replica = rewardsDatabase();
+		replicator = new SnapshotReplicator(primary, replica, ReplicaLagMonitor.HEARTBEAT_TABLE, "T_ACCOUNT",
+				"T_ACCOUNT_BENEFICIARY");
+
+		Map<String, DataSource> replicas = Collections.singletonMap("replica", replica);
+		lagMonitor = new ReplicaLagMonitor(primary, replicas, 1000);
+		routingDataSource = new ReadWriteRoutingDataSource(primary, replicas, lagMonitor);
+
+		DataSource dataSource = routingDataSource.lazy();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+		readWrite = new TransactionTemplate(transactionManager);
+		readOnly = new TransactionTemplate(transactionManager);
+		readOnly.setReadOnly(true);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		primary.shutdown();
+		replica.shutdown();
+	}
+
+	@Test
+	public void readOnlyTransactionsUseTheReplica() {
+		catchUp();
+		markReplica();
+
+		assertEquals(REPLICA_NAME, readOnly.execute(status -> {
+			String name = jdbcTemplate.queryForObject(NAME_SQL, String.class);
+			assertEquals(1, metrics("replica").getActive());
+			return name;
+		}));
+
+		assertEquals(1, metrics("replica").getAcquired());
+		assertEquals(0, metrics("replica").getActive());
+		assertEquals(0, routingDataSource.getReplicaFallbacks());
+	}
+
+	@Test
+	public void everythingElseUsesThePrimary() {
+		catchUp();
+		markReplica();
+		long primaryConnections = metrics(ReadWriteRoutingDataSource.PRIMARY).getAcquired();
+
+		assertEquals(PRIMARY_NAME, readWrite.execute(status -> jdbcTemplate.queryForObject(NAME_SQL, String.class)));
+		assertEquals(PRIMARY_NAME, jdbcTemplate.queryForObject(NAME_SQL, String.class));
+		assertEquals(0, metrics("replica").getAcquired());
+		assertEquals(primaryConnections + 2, metrics(ReadWriteRoutingDataSource.PRIMARY).getAcquired());
+	}
+
+	@Test
+	public void replicaThatIsBehindIsNotUsed() {
+		catchUp();
+		markReplica();
+		new JdbcTemplate(replica).update("update T_REPLICA_HEARTBEAT set BEAT_TIME = BEAT_TIME - 10000");
+		lagMonitor.refresh();
+
+		assertFalse(lagMonitor.isInSync("replica"));
+		assertEquals(PRIMARY_NAME, readOnly.execute(status -> jdbcTemplate.queryForObject(NAME_SQL, String.class)));
+		assertEquals(1, routingDataSource.getReplicaFallbacks());
+
+		catchUp();
+		assertTrue(lagMonitor.isInSync("replica"));
+	}
+
+	@Test
+	public void replicaThatCannotBeReachedIsNotUsed() {
+		catchUp();
+		replica.shutdown();
+		lagMonitor.refresh();
+
+		assertEquals(Long.MAX_VALUE, lagMonitor.getLagMillis().get("replica").longValue());
+		assertEquals(PRIMARY_NAME, readOnly.execute(status -> jdbcTemplate.queryForObject(NAME_SQL, String.class)));
+	}
+
+	@Test
+	public void replicaIsNotUsedUntilChecked() {
+		replicator.replicate();
+
+		assertFalse(lagMonitor.isInSync("replica"));
+		readOnly.execute(status -> jdbcTemplate.queryForObject(NAME_SQL, String.class));
+		assertEquals(0, metrics("replica").getAcquired());
+	}
+
+	@Test
+	public void writesReachTheReplica() {
+		readWrite.execute(status -> jdbcTemplate.update("insert into T_ACCOUNT (NUMBER, NAME) values ('900000001', 'New')"));
+		catchUp();
+
+		assertEquals("New", readOnly.execute(status -> jdbcTemplate
+				.queryForObject("select NAME from T_ACCOUNT where NUMBER = '900000001'", String.class)));
+		assertEquals(1, metrics("replica").getAcquired());
+	}
+
+	/**
+	 * Writes a heartbeat, copies it to the replica and checks again, as the
+	 * scheduled replicator and monitor would.
+	 */
+	private void catchUp() {
+		lagMonitor.refresh();
+		replicator.replicate();
+		lagMonitor.refresh();
+		assertTrue(lagMonitor.isInSync("replica"));
+	}
+
+	/**
+	 * Changes the replica, so the tests can tell which database answered.
+	 */
+	private void markReplica() {
+		new JdbcTemplate(replica).update("update T_ACCOUNT set NAME = ? where ID = 0", REPLICA_NAME);
+	}
+
+	private DataSourceMetrics metrics(String name) {
+		return routingDataSource.getMetrics().stream().filter(metrics -> metrics.getName().equals(name)).findFirst()
+				.get();
+	}
+
+	private static EmbeddedDatabase rewardsDatabase() {
+		return new EmbeddedDatabaseBuilder().generateUniqueName(true) //
+				.addScript("classpath:rewards/testdb/schema.sql") //
+				.addScript("classpath:rewards/testdb/data.sql") //
+				.addScript("classpath:rewards/testdb/replica-heartbeat.sql").build();
+	}
+
+}
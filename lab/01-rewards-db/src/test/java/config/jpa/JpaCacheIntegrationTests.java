@@ -0,0 +1,90 @@
+package config.jpa;
+
+import accounts.AccountManager;
+import config.AppConfig;
+import config.DbConfig;
+import config.jpa.JpaCacheStatistics.CacheStatistics;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import rewards.internal.account.Account;
+import rewards.internal.restaurant.RestaurantRepository;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the second-level and query caches of the jpa-cache profile. Every
+ * lookup uses a new entity manager, so repeat lookups can only be served by
+ * the shared caches.
+ * <p>
+ * Account lookups go through the account manager's transactions, so this
+ * test enables transaction management, as Spring Boot would.
+ */
+@ActiveProfiles({ "jpa", "jpa-cache" })
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = { AppConfig.class, DbConfig.class, JpaCacheIntegrationTests.TransactionConfig.class })
+public class JpaCacheIntegrationTests {
+
+	@Autowired
+	private RestaurantRepository restaurantRepository;
+
+	@Autowired
+	private AccountManager accountManager;
+
+	@Autowired
+	private JpaCacheStatistics statistics;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@BeforeEach
+	public void setUp() {
+		entityManagerFactory.unwrap(SessionFactory.class).getCache().evictAllRegions();
+		statistics.clear();
+	}
+
+	@Test
+	public void merchantLookupIsCached() {
+		assertEquals("AppleBees", restaurantRepository.findByMerchantNumber("1234567890").getName());
+		assertEquals("AppleBees", restaurantRepository.findByMerchantNumber("1234567890").getName());
+
+		CacheStatistics queries = statistics.getQueryCache();
+		assertEquals(1, queries.getMisses());
+		assertEquals(1, queries.getHits());
+		assertEquals(0.5, queries.getHitRatio());
+		assertEquals(1, region("rewards.internal.restaurant.Restaurant").getHits());
+	}
+
+	@Test
+	public void accountAndBeneficiariesAreCached() {
+		for (int i = 0; i < 2; i++) {
+			Account account = accountManager.getAccount(0L);
+			assertEquals(2, account.getBeneficiaries().size());
+		}
+
+		assertEquals(1, region("rewards.internal.account.Account").getHits());
+		assertEquals(1, region("rewards.internal.account.Account.beneficiaries").getHits());
+		assertEquals(2, region("rewards.internal.account.Beneficiary").getHits());
+		assertTrue(statistics.getSecondLevelCache().getHitRatio() > 0);
+	}
+
+	private CacheStatistics region(String name) {
+		return statistics.getRegions().stream().filter(region -> region.getName().equals(name)).findFirst()
+				.orElseThrow(() -> new AssertionError("No region " + name + " in " + statistics.getRegions()));
+	}
+
+	@Configuration
+	@EnableTransactionManagement
+	static class TransactionConfig {
+	}
+
+}
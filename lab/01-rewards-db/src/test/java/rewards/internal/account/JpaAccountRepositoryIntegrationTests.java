@@ -2,12 +2,17 @@ package rewards.internal.account;
 
 import config.AppConfig;
 import config.DbConfig;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import javax.persistence.EntityManagerFactory;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 
@@ -21,10 +26,29 @@ import static org.junit.jupiter.api.Assertions.*;
 @ContextConfiguration(classes = { AppConfig.class, DbConfig.class })
 public class JpaAccountRepositoryIntegrationTests extends AbstractAccountRepositoryTests {
 
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
 	@Test
 	@Override
 	public void testProfile() {
 		assertTrue(accountRepository.getInfo().equals(JpaAccountRepository.INFO), "JPA expected but found " + accountRepository.getInfo());
 	}
 
+	@Test
+	public void findByCreditCardUsesOneStatement() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		try {
+			statistics.clear();
+			Account account = accountRepository.findByCreditCard("1234123412341234");
+
+			assertEquals(1, statistics.getPrepareStatementCount());
+			assertTrue(entityManagerFactory.getPersistenceUnitUtil().isLoaded(account, "beneficiaries"));
+			assertEquals(2, account.getBeneficiaries().size());
+		} finally {
+			statistics.setStatisticsEnabled(false);
+		}
+	}
+
 }
@@ -1,46 +1,250 @@
 package config;
 
+import java.io.File;
+import java.io.IOException;
+
 import javax.sql.DataSource;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
+import rewards.AsynchronousRewardNetwork;
 import rewards.RewardNetwork;
+import rewards.internal.AsyncRewardNetwork;
+import rewards.internal.DeduplicatingRewardNetwork;
+import rewards.internal.GroupCommitRewardNetwork;
+import rewards.internal.InMemoryRewardNetwork;
+import rewards.internal.PartitionedRewardNetwork;
+import rewards.internal.RewardContextRepository;
+import rewards.internal.RetryingRewardNetwork;
+import rewards.internal.RewardLog;
 import rewards.internal.RewardNetworkImpl;
+import rewards.internal.RewardNetworkImplShortTransaction;
+import rewards.internal.StripedLockRewardNetwork;
+import rewards.internal.WriteBehindRewardNetwork;
 import rewards.internal.account.AccountRepository;
 import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.account.JdbcRewardContextRepository;
+import rewards.internal.account.SnapshotAccountRepository;
+import rewards.internal.account.SnapshotRewardContextRepository;
+import rewards.internal.dining.DiningFileFormat;
+import rewards.internal.dining.DiningFileImporter;
 import rewards.internal.restaurant.JdbcRestaurantRepository;
 import rewards.internal.restaurant.RestaurantRepository;
+import rewards.internal.restaurant.SnapshotRestaurantRepository;
 import rewards.internal.reward.JdbcRewardRepository;
 import rewards.internal.reward.RewardRepository;
+import rewards.internal.snapshot.RewardSnapshotFile;
 
 
+/**
+ * By default, each reward is made by a {@link RewardNetworkImpl} in a transaction of its own. Each profile swaps in
+ * another network, or changes where accounts are read from:
+ * <ul>
+ * <li>async - an {@link AsyncRewardNetwork} rewards on a pool, refusing repeated dinings and retrying conflicts.</li>
+ * <li>group-commit - a {@link GroupCommitRewardNetwork} commits concurrent rewards together.</li>
+ * <li>in-memory - an {@link InMemoryRewardNetwork} rewards from memory and logs to rewards.log.file.</li>
+ * <li>partitioned - a {@link PartitionedRewardNetwork} gives each account a single writer thread.</li>
+ * <li>write-behind - a {@link WriteBehindRewardNetwork} credits savings in batches.</li>
+ * <li>snapshot - accounts and restaurants are read from rewards.snapshot.file, and the default network is a
+ * {@link RewardNetworkImplShortTransaction}.</li>
+ * </ul>
+ */
 @Configuration
 @EnableTransactionManagement
 public class RewardsConfig {
 
+	public static final String ASYNC_PROFILE = "async";
+
+	public static final String GROUP_COMMIT_PROFILE = "group-commit";
+
+	public static final String IN_MEMORY_PROFILE = "in-memory";
+
+	public static final String SNAPSHOT_PROFILE = "snapshot";
+
+	public static final String PARTITIONED_PROFILE = "partitioned";
+
+	public static final String WRITE_BEHIND_PROFILE = "write-behind";
+
+	/**
+	 * Active when no profile swaps in another network.
+	 */
+	private static final String DEFAULT_NETWORK = "!" + ASYNC_PROFILE + " & !" + GROUP_COMMIT_PROFILE + " & !"
+			+ IN_MEMORY_PROFILE + " & !" + PARTITIONED_PROFILE + " & !" + WRITE_BEHIND_PROFILE;
+
 	@Autowired
 	DataSource dataSource;
+
+	@Autowired
+	ObjectProvider<RewardSnapshotFile> snapshotFile;
+
+	@Autowired
+	ObjectProvider<PlatformTransactionManager> transactionManager;
+
+	@Value("${rewards.dedup.expected-dinings:1000000}")
+	int expectedDinings;
 		
 	@Bean
+	@Profile(DEFAULT_NETWORK)
 	public RewardNetwork rewardNetwork(){
+		return newTransactionalRewardNetwork();
+	}
+
+	/**
+	 * Makes asynchronous rewards on a bounded pool, sized by the rewards.async.threads and
+	 * rewards.async.queue-capacity properties. Rewards made synchronously run on the caller's thread.
+	 */
+	@Bean(destroyMethod = "close")
+	@Profile(ASYNC_PROFILE)
+	public AsyncRewardNetwork asyncRewardNetwork(@Value("${rewards.async.threads:16}") int threads,
+			@Value("${rewards.async.queue-capacity:1000}") int queueCapacity){
+		return new AsyncRewardNetwork(deduplicatingRewardNetwork(), threads, queueCapacity);
+	}
+
+	/**
+	 * Refuses dinings already rewarded, sizing its filter for the rewards.dedup.expected-dinings property a day. Not a
+	 * candidate for autowiring: callers should go through the asynchronous network.
+	 */
+	@Bean(autowireCandidate = false)
+	@Profile(ASYNC_PROFILE)
+	public DeduplicatingRewardNetwork deduplicatingRewardNetwork(){
+		return new DeduplicatingRewardNetwork(retryingRewardNetwork(), rewardRepository(), expectedDinings);
+	}
+
+	/**
+	 * Retries rewards whose account was updated concurrently, each time in a new transaction. Within this process,
+	 * rewards for the same card wait for each other rather than conflict. Not a candidate for autowiring: callers
+	 * should go through the deduplicating network.
+	 */
+	@Bean(autowireCandidate = false)
+	@Profile(ASYNC_PROFILE)
+	public RetryingRewardNetwork retryingRewardNetwork(){
+		return new RetryingRewardNetwork(new StripedLockRewardNetwork(transactionalRewardNetwork(), 256));
+	}
+
+	/**
+	 * Makes one attempt at a reward. Not a candidate for autowiring: callers should go through the retries.
+	 */
+	@Bean(autowireCandidate = false)
+	@Profile(ASYNC_PROFILE)
+	public RewardNetwork transactionalRewardNetwork(){
+		return newTransactionalRewardNetwork();
+	}
+
+	/**
+	 * Reading from a snapshot, whose account versions and savings are stale, only the writes are made in a
+	 * transaction, crediting the amounts distributed.
+	 */
+	private RewardNetwork newTransactionalRewardNetwork(){
+		if (snapshotFile.getIfAvailable() != null) {
+			return new RewardNetworkImplShortTransaction(
+				accountRepository(), 
+				rewardContextRepository(), 
+				rewardRepository(), 
+				transactionManager.getObject());
+		}
 		return new RewardNetworkImpl(
 			accountRepository(), 
-			restaurantRepository(), 
+			rewardContextRepository(), 
 			rewardRepository());
 	}
 	
+	@Bean(initMethod = "start", destroyMethod = "close")
+	@Profile(GROUP_COMMIT_PROFILE)
+	public GroupCommitRewardNetwork groupCommitRewardNetwork(PlatformTransactionManager transactionManager){
+		return new GroupCommitRewardNetwork(
+			accountRepository(), 
+			rewardContextRepository(), 
+			rewardRepository(), 
+			transactionManager, 
+			10_000);
+	}
+
+	@Bean(initMethod = "start", destroyMethod = "close")
+	@Profile(IN_MEMORY_PROFILE)
+	public InMemoryRewardNetwork inMemoryRewardNetwork(PlatformTransactionManager transactionManager,
+			@Value("${rewards.log.file:rewards.log}") String logFile) throws IOException {
+		return new InMemoryRewardNetwork(
+			accountRepository(), 
+			restaurantRepository(), 
+			rewardRepository(), 
+			transactionManager, 
+			new RewardLog(new File(logFile)));
+	}
+
+	@Bean(initMethod = "start", destroyMethod = "close")
+	@Profile(PARTITIONED_PROFILE)
+	public PartitionedRewardNetwork partitionedRewardNetwork(PlatformTransactionManager transactionManager){
+		return new PartitionedRewardNetwork(
+			accountRepository(), 
+			restaurantRepository(), 
+			rewardRepository(), 
+			transactionManager, 
+			Runtime.getRuntime().availableProcessors(), 
+			1_000);
+	}
+
+	@Bean(initMethod = "start", destroyMethod = "close")
+	@Profile(WRITE_BEHIND_PROFILE)
+	public WriteBehindRewardNetwork writeBehindRewardNetwork(PlatformTransactionManager transactionManager,
+			@Value("${rewards.write-behind.flush-interval-millis:1000}") long flushIntervalMillis){
+		WriteBehindRewardNetwork rewardNetwork = new WriteBehindRewardNetwork(
+			accountRepository(), 
+			rewardContextRepository(), 
+			rewardRepository(), 
+			transactionManager);
+		rewardNetwork.setFlushIntervalMillis(flushIntervalMillis);
+		return rewardNetwork;
+	}
+
+	/**
+	 * Imports merchant dining files in CSV through whichever reward network is active. The default network makes
+	 * rewards only on the caller's thread, so there is no importer without one of these profiles.
+	 */
+	@Bean
+	@Profile({ ASYNC_PROFILE, GROUP_COMMIT_PROFILE, IN_MEMORY_PROFILE, PARTITIONED_PROFILE, WRITE_BEHIND_PROFILE })
+	public DiningFileImporter diningFileImporter(AsynchronousRewardNetwork rewardNetwork){
+		return new DiningFileImporter(rewardNetwork, DiningFileFormat.CSV);
+	}
+
+	@Bean
+	@Profile(SNAPSHOT_PROFILE)
+	public RewardSnapshotFile rewardSnapshotFile(@Value("${rewards.snapshot.file:rewards.snapshot}") String file)
+			throws IOException {
+		return new RewardSnapshotFile(new File(file));
+	}
+
+	@Bean
+	public RewardContextRepository rewardContextRepository(){
+		RewardSnapshotFile snapshot = snapshotFile.getIfAvailable();
+		if (snapshot != null) {
+			return new SnapshotRewardContextRepository(snapshot);
+		}
+		JdbcRewardContextRepository repository = new JdbcRewardContextRepository();
+		repository.setDataSource(dataSource);
+		return repository;
+	}
+	
 	@Bean
 	public AccountRepository accountRepository(){
 		JdbcAccountRepository repository = new JdbcAccountRepository();
 		repository.setDataSource(dataSource);
-		return repository;
+		RewardSnapshotFile snapshot = snapshotFile.getIfAvailable();
+		return snapshot != null ? new SnapshotAccountRepository(snapshot, repository) : repository;
 	}
 	
 	@Bean
 	public RestaurantRepository restaurantRepository(){
+		RewardSnapshotFile snapshot = snapshotFile.getIfAvailable();
+		if (snapshot != null) {
+			return new SnapshotRestaurantRepository(snapshot);
+		}
 		JdbcRestaurantRepository repository = new JdbcRestaurantRepository();
 		repository.setDataSource(dataSource);
 		return repository;
@@ -0,0 +1,21 @@
+package rewards;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A reward network that can also take a dining without making the caller wait for the reward.
+ * 
+ * Only networks that make rewards through their own threads or transactions implement this. A network whose
+ * transaction is started by a proxy around it cannot: calling {@link #rewardAccountFor(Dining)} on itself would
+ * bypass the proxy.
+ */
+public interface AsynchronousRewardNetwork extends RewardNetwork {
+
+	/**
+	 * Reward an account for dining, without waiting for the reward to be made.
+	 * 
+	 * @param dining a charge made to a credit card for dining at a restaurant
+	 * @return completes with the confirmation of the reward, or exceptionally with the reason it could not be made
+	 */
+	public CompletableFuture<RewardConfirmation> rewardAccountForAsync(Dining dining);
+}
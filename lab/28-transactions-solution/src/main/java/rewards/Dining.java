@@ -1,5 +1,7 @@
 package rewards;
 
+import java.util.Objects;
+
 import common.datetime.SimpleDate;
 import common.money.MonetaryAmount;
 
@@ -21,6 +23,8 @@ public class Dining {
 
 	private SimpleDate date;
 
+	private String merchantReference;
+
 	/**
 	 * Creates a new dining, reflecting an amount that was charged to a card by a merchant on the date specified.
 	 * @param amount the total amount of the dining bill
@@ -35,6 +39,20 @@ public class Dining {
 		this.date = date;
 	}
 
+	/**
+	 * Creates a new dining that the merchant has given a reference of its own, such as the number on the bill.
+	 * @param amount the total amount of the dining bill
+	 * @param creditCardNumber the number of the credit card used to pay for the dining bill
+	 * @param merchantNumber the merchant number of the restaurant where the dining occurred
+	 * @param date the date of the dining event
+	 * @param merchantReference the merchant's reference for the dining, or null if it has none
+	 */
+	public Dining(MonetaryAmount amount, String creditCardNumber, String merchantNumber, SimpleDate date,
+			String merchantReference) {
+		this(amount, creditCardNumber, merchantNumber, date);
+		this.merchantReference = merchantReference;
+	}
+
 	/**
 	 * Creates a new dining, reflecting an amount that was charged to a credit card by a merchant on today's date. A
 	 * convenient static factory method.
@@ -94,6 +112,14 @@ public class Dining {
 		return date;
 	}
 
+	/**
+	 * Returns the merchant's own reference for this dining, or null if it has none. A dining sent twice carries the
+	 * same reference both times; two dinings that only look alike do not.
+	 */
+	public String getMerchantReference() {
+		return merchantReference;
+	}
+
 	public boolean equals(Object o) {
 		if (!(o instanceof Dining)) {
 			return false;
@@ -101,14 +127,17 @@ public class Dining {
 		Dining other = (Dining) o;
 		// value objects are equal if their attributes are equal
 		return amount.equals(other.amount) && creditCardNumber.equals(other.creditCardNumber)
-				&& merchantNumber.equals(other.merchantNumber) && date.equals(other.date);
+				&& merchantNumber.equals(other.merchantNumber) && date.equals(other.date)
+				&& Objects.equals(merchantReference, other.merchantReference);
 	}
 
 	public int hashCode() {
-		return amount.hashCode() + creditCardNumber.hashCode() + merchantNumber.hashCode() + date.hashCode();
+		return amount.hashCode() + creditCardNumber.hashCode() + merchantNumber.hashCode() + date.hashCode()
+				+ Objects.hashCode(merchantReference);
 	}
 
 	public String toString() {
-		return "Dining of " + amount + " charged to '" + creditCardNumber + "' by '" + merchantNumber + "' on " + date;
+		return "Dining of " + amount + " charged to '" + creditCardNumber + "' by '" + merchantNumber + "' on " + date
+				+ (merchantReference != null ? " ref '" + merchantReference + "'" : "");
 	}
 }
\ No newline at end of file
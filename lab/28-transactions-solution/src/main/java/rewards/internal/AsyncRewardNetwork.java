@@ -0,0 +1,143 @@
+package rewards.internal;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import rewards.AsynchronousRewardNetwork;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+
+/**
+ * Makes rewards asynchronously on a bounded pool of threads, so callers of {@link #rewardAccountForAsync(Dining)} do
+ * not wait for the database.
+ * <p>
+ * Rewards wait for a thread in a queue of fixed capacity. When the queue is full, the
+ * {@link #setRejectedExecutionHandler(RejectedExecutionHandler) rejection policy} decides: by default the reward's
+ * future fails with a {@link RejectedExecutionException}, so an overloaded network sheds load instead of queueing
+ * without bound. A {@link ThreadPoolExecutor.CallerRunsPolicy} makes the reward on the caller's thread instead,
+ * slowing callers down to the rate the pool keeps up with. A reward the policy drops fails the same way as one it
+ * rejects; a policy that drops other queued rewards, like {@link ThreadPoolExecutor.DiscardOldestPolicy}, would leave
+ * their callers waiting, so is not supported.
+ * <p>
+ * {@link #rewardAccountFor(Dining)} still makes the reward on the caller's thread. Decorate a network that starts its
+ * own transaction for each reward, as the pool threads have none of the caller's.
+ */
+public class AsyncRewardNetwork implements AsynchronousRewardNetwork, AutoCloseable {
+
+	private final RewardNetwork rewardNetwork;
+
+	private final ThreadPoolExecutor executor;
+
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * @param rewardNetwork the reward network to make each reward with
+	 * @param threads the most rewards made at once
+	 * @param queueCapacity how many rewards may wait for a thread
+	 */
+	public AsyncRewardNetwork(RewardNetwork rewardNetwork, int threads, int queueCapacity) {
+		this.rewardNetwork = rewardNetwork;
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueCapacity), runnable -> {
+					Thread thread = new Thread(runnable, "reward-async-" + threadCount.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				});
+		this.executor.allowCoreThreadTimeOut(true);
+		setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * What to do with a reward when the queue is full, or the network is closed. Defaults to failing its future.
+	 */
+	public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+		executor.setRejectedExecutionHandler((runnable, pool) -> {
+			rejected.increment();
+			handler.rejectedExecution(runnable, pool);
+			RewardTask task = (RewardTask) runnable;
+			if (!task.started) {
+				// Dropped rather than rejected or run
+				task.result.completeExceptionally(new RejectedExecutionException("Reward for " + task.dining
+						+ " was dropped"));
+			}
+		});
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		return rewardNetwork.rewardAccountFor(dining);
+	}
+
+	@Override
+	public CompletableFuture<RewardConfirmation> rewardAccountForAsync(Dining dining) {
+		RewardTask task = new RewardTask(dining);
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.result.completeExceptionally(e);
+		}
+		return task.result;
+	}
+
+	/**
+	 * Stops taking rewards and waits for those already queued to be made.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * The number of rewards waiting for a thread.
+	 */
+	public int getQueued() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * The number of rewards being made.
+	 */
+	public int getActive() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * The number of rewards the pool had no room for, whatever the rejection policy then did with them.
+	 */
+	public long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * A dining waiting for a thread, and the future its reward completes.
+	 */
+	private class RewardTask implements Runnable {
+
+		private final Dining dining;
+
+		private final CompletableFuture<RewardConfirmation> result = new CompletableFuture<RewardConfirmation>();
+
+		private volatile boolean started;
+
+		RewardTask(Dining dining) {
+			this.dining = dining;
+		}
+
+		public void run() {
+			started = true;
+			try {
+				result.complete(rewardNetwork.rewardAccountFor(dining));
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,283 @@
+package rewards.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.internal.dining.DiningFingerprint;
+import rewards.internal.reward.RewardRepository;
+
+/**
+ * Refuses to reward a dining twice, without asking the database about every dining.
+ * <p>
+ * Each dining rewarded has its {@link DiningFingerprint} added to a Bloom filter. A dining the filter has never seen
+ * cannot be a duplicate, and goes straight through: that is nearly every dining. One the filter may have seen is
+ * looked for among the fingerprints rewarded most recently, held exactly, and only if it is not there does the reward
+ * repository check the database. A dining found either way is refused with a {@link DuplicateKeyException}.
+ * <p>
+ * The filter covers a time window: a new, empty one is started every window, or sooner if it fills up, and the one
+ * before is kept until the next. So a resend is caught here for between one and two windows after the original, and
+ * false positives stay as rare as the filter was sized for. Anything older, along with duplicates sent at the same
+ * moment as their original or after a restart, is left to the unique fingerprint the reward repository stores with
+ * each reward, which fails the second reward's transaction.
+ * <p>
+ * Dinings without a merchant reference have no fingerprint and are always rewarded.
+ */
+public class DeduplicatingRewardNetwork implements RewardNetwork {
+
+	private static final Logger logger = LoggerFactory.getLogger(DeduplicatingRewardNetwork.class);
+
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+
+	private final RewardNetwork rewardNetwork;
+
+	private final RewardRepository rewardRepository;
+
+	private final int expectedDinings;
+
+	private long windowMillis = 24 * 60 * 60 * 1000L;
+
+	private Map<DiningFingerprint, Boolean> recent = recentFingerprints(10_000);
+
+	private final Object rotationLock = new Object();
+
+	private volatile BloomFilter current;
+
+	private volatile BloomFilter previous;
+
+	private volatile long currentStarted = System.currentTimeMillis();
+
+	private final LongAdder passed = new LongAdder();
+
+	private final LongAdder lookups = new LongAdder();
+
+	private final LongAdder duplicates = new LongAdder();
+
+	private final LongAdder backstopped = new LongAdder();
+
+	/**
+	 * @param rewardNetwork the reward network to pass dinings not seen before to
+	 * @param rewardRepository where to look for dinings the filter may have seen
+	 * @param expectedDinings how many dinings with a merchant reference are expected each window
+	 */
+	public DeduplicatingRewardNetwork(RewardNetwork rewardNetwork, RewardRepository rewardRepository,
+			int expectedDinings) {
+		this.rewardNetwork = rewardNetwork;
+		this.rewardRepository = rewardRepository;
+		this.expectedDinings = expectedDinings;
+		this.current = new BloomFilter(expectedDinings, FALSE_POSITIVE_RATE);
+		this.previous = new BloomFilter(expectedDinings, FALSE_POSITIVE_RATE);
+	}
+
+	/**
+	 * How long each filter takes new fingerprints. Defaults to a day.
+	 */
+	public void setWindowMillis(long windowMillis) {
+		this.windowMillis = windowMillis;
+	}
+
+	/**
+	 * How many of the fingerprints rewarded most recently are held exactly. Defaults to 10,000.
+	 */
+	public void setRecentCapacity(int recentCapacity) {
+		this.recent = recentFingerprints(recentCapacity);
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		DiningFingerprint fingerprint = DiningFingerprint.of(dining);
+		if (fingerprint == null) {
+			return rewardNetwork.rewardAccountFor(dining);
+		}
+		rotateIfDue();
+		if (current.mightContain(fingerprint) || previous.mightContain(fingerprint)) {
+			if (isRecent(fingerprint)) {
+				throw duplicate(dining);
+			}
+			lookups.increment();
+			if (rewardRepository.isRewarded(dining)) {
+				remember(fingerprint);
+				throw duplicate(dining);
+			}
+		} else {
+			passed.increment();
+		}
+		RewardConfirmation confirmation;
+		try {
+			confirmation = rewardNetwork.rewardAccountFor(dining);
+		} catch (DuplicateKeyException e) {
+			backstopped.increment();
+			throw e;
+		}
+		rememberOnceCommitted(fingerprint);
+		return confirmation;
+	}
+
+	/**
+	 * A reward made inside the caller's transaction may yet be rolled back, so it is not remembered until it commits.
+	 */
+	private void rememberOnceCommitted(DiningFingerprint fingerprint) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					remember(fingerprint);
+				}
+			});
+		} else {
+			remember(fingerprint);
+		}
+	}
+
+	private void remember(DiningFingerprint fingerprint) {
+		if (current.put(fingerprint) >= expectedDinings) {
+			rotate();
+		}
+		synchronized (recent) {
+			recent.put(fingerprint, Boolean.TRUE);
+		}
+	}
+
+	private boolean isRecent(DiningFingerprint fingerprint) {
+		synchronized (recent) {
+			return recent.containsKey(fingerprint);
+		}
+	}
+
+	private DuplicateKeyException duplicate(Dining dining) {
+		duplicates.increment();
+		logger.debug("Refused duplicate {}", dining);
+		return new DuplicateKeyException("Already rewarded: " + dining);
+	}
+
+	private void rotateIfDue() {
+		if (System.currentTimeMillis() - currentStarted >= windowMillis) {
+			rotate();
+		}
+	}
+
+	/**
+	 * Retires the previous filter and starts a new one.
+	 */
+	void rotate() {
+		BloomFilter full = current;
+		synchronized (rotationLock) {
+			// Another thread may have just rotated
+			if (current != full) {
+				return;
+			}
+			previous = full;
+			current = new BloomFilter(expectedDinings, FALSE_POSITIVE_RATE);
+			currentStarted = System.currentTimeMillis();
+		}
+		logger.debug("Started a new dining filter after {} fingerprints", full.size());
+	}
+
+	/**
+	 * The number of dinings passed on without a lookup.
+	 */
+	public long getPassed() {
+		return passed.sum();
+	}
+
+	/**
+	 * The number of times the database was asked about a dining the filter might have seen.
+	 */
+	public long getLookups() {
+		return lookups.sum();
+	}
+
+	/**
+	 * The number of dinings refused as duplicates here.
+	 */
+	public long getDuplicates() {
+		return duplicates.sum();
+	}
+
+	/**
+	 * The number of duplicates that got past the filter and were refused by the database.
+	 */
+	public long getBackstopped() {
+		return backstopped.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("passed=%d, lookups=%d, duplicates=%d, backstopped=%d", getPassed(), getLookups(),
+				getDuplicates(), getBackstopped());
+	}
+
+	@SuppressWarnings("serial")
+	private static Map<DiningFingerprint, Boolean> recentFingerprints(int capacity) {
+		return new LinkedHashMap<DiningFingerprint, Boolean>() {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<DiningFingerprint, Boolean> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * A Bloom filter of fingerprints, safe to read and add to from many threads without locking. The fingerprint is
+	 * already a digest, so its two halves serve as the two hashes the bit positions are derived from.
+	 */
+	static class BloomFilter {
+
+		private final AtomicLongArray words;
+
+		private final long bits;
+
+		private final int hashes;
+
+		private final AtomicInteger size = new AtomicInteger();
+
+		BloomFilter(int expectedInsertions, double falsePositiveRate) {
+			long bits = (long) Math.ceil(-Math.max(expectedInsertions, 1) * Math.log(falsePositiveRate)
+					/ (Math.log(2) * Math.log(2)));
+			this.words = new AtomicLongArray((int) ((bits + 63) / 64));
+			this.bits = words.length() * 64L;
+			this.hashes = Math.max(1, (int) Math.round((double) this.bits / Math.max(expectedInsertions, 1)
+					* Math.log(2)));
+		}
+
+		boolean mightContain(DiningFingerprint fingerprint) {
+			long hash = fingerprint.getHigh();
+			long step = fingerprint.getLow() | 1;
+			for (int i = 0; i < hashes; i++, hash += step) {
+				long bit = Math.floorMod(hash, bits);
+				if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Adds a fingerprint.
+		 * @return the number added so far, counting this one
+		 */
+		int put(DiningFingerprint fingerprint) {
+			long hash = fingerprint.getHigh();
+			long step = fingerprint.getLow() | 1;
+			for (int i = 0; i < hashes; i++, hash += step) {
+				long bit = Math.floorMod(hash, bits);
+				words.getAndAccumulate((int) (bit >>> 6), 1L << bit, (word, mask) -> word | mask);
+			}
+			return size.incrementAndGet();
+		}
+
+		int size() {
+			return size.get();
+		}
+	}
+}
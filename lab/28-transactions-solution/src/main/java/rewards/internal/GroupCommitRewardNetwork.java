@@ -0,0 +1,306 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rewards.AccountContribution;
+import rewards.AsynchronousRewardNetwork;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.internal.account.Account;
+import rewards.internal.account.AccountRepository;
+import rewards.internal.reward.RewardRepository;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Rewards an Account for Dining at a Restaurant, committing the rewards of concurrent callers together.
+ * <p>
+ * Like {@link RewardNetworkImplShortTransaction}, each caller reads and computes its reward without a transaction.
+ * Instead of committing its own writes, it then queues them and waits. A single committer thread takes whatever is
+ * queued - up to {@link #setMaxBatchSize(int) a batch}, waiting at most {@link #setMaxDelayMillis(long)} for more -
+ * and writes it all in one transaction, so many rewards share the cost of one commit. Each caller's confirmation is
+ * only returned once the transaction holding its writes has committed.
+ * <p>
+ * Each reward in a batch is written behind its own savepoint: if one fails, its writes are rolled back and only its
+ * caller gets the exception, while the rest of the batch commits. If the commit itself fails, every caller in the
+ * batch gets that exception and none of the batch is written.
+ * <p>
+ * Call {@link #start()} before use and {@link #close()} when done; close writes out whatever is still queued.
+ */
+public class GroupCommitRewardNetwork implements AsynchronousRewardNetwork, AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(GroupCommitRewardNetwork.class);
+
+	private final AccountRepository accountRepository;
+
+	private final RewardContextRepository rewardContextRepository;
+
+	private final RewardRepository rewardRepository;
+
+	private final TransactionTemplate writeTransaction;
+
+	private final BlockingQueue<PendingReward> queue;
+
+	private int maxBatchSize = 100;
+
+	private long maxDelayMillis = 2;
+
+	private volatile boolean running;
+
+	private Thread committer;
+
+	private final LongAdder batches = new LongAdder();
+
+	private final LongAdder rewards = new LongAdder();
+
+	private final LongAdder failures = new LongAdder();
+
+	/**
+	 * Creates a new reward network.
+	 * @param accountRepository the repository for crediting rewarded accounts
+	 * @param rewardContextRepository the repository for loading the account and restaurant together
+	 * @param rewardRepository the repository for recording a record of successful reward transactions
+	 * @param transactionManager the transaction manager for the batches, which must support savepoints
+	 * @param queueCapacity how many rewards may wait to be committed; callers beyond that wait to queue theirs
+	 */
+	public GroupCommitRewardNetwork(AccountRepository accountRepository,
+			RewardContextRepository rewardContextRepository, RewardRepository rewardRepository,
+			PlatformTransactionManager transactionManager, int queueCapacity) {
+		this.accountRepository = accountRepository;
+		this.rewardContextRepository = rewardContextRepository;
+		this.rewardRepository = rewardRepository;
+		this.writeTransaction = new TransactionTemplate(transactionManager);
+		this.queue = new LinkedBlockingQueue<PendingReward>(queueCapacity);
+	}
+
+	/**
+	 * The most rewards to commit in one transaction. Defaults to 100.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * How long the committer waits for a batch to fill once it has its first reward. Defaults to 2ms.
+	 */
+	public void setMaxDelayMillis(long maxDelayMillis) {
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		running = true;
+		committer = new Thread(this::commitLoop, "reward-group-commit");
+		committer.setDaemon(true);
+		committer.start();
+	}
+
+	/**
+	 * Stops taking rewards and waits for the queued ones to be committed.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		Thread committer;
+		synchronized (this) {
+			running = false;
+			committer = this.committer;
+		}
+		if (committer != null) {
+			committer.join();
+		}
+		// Queued by callers that raced with close
+		PendingReward reward;
+		while ((reward = queue.poll()) != null) {
+			reward.result.completeExceptionally(new IllegalStateException("Group commit was closed"));
+		}
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		try {
+			return submit(dining).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Same as {@link #submit(Dining)}.
+	 */
+	@Override
+	public CompletableFuture<RewardConfirmation> rewardAccountForAsync(Dining dining) {
+		return submit(dining);
+	}
+
+	/**
+	 * Reads and computes the reward for a dining, and queues its writes.
+	 * @return completes with the confirmation once the reward is committed, or exceptionally if it could not be
+	 */
+	public CompletableFuture<RewardConfirmation> submit(Dining dining) {
+		if (!running) {
+			throw new IllegalStateException("Group commit is not running");
+		}
+		RewardContext context = rewardContextRepository.findRewardContext(dining.getCreditCardNumber(),
+				dining.getMerchantNumber());
+		Account account = context.getAccount();
+		MonetaryAmount amount = context.getRestaurant().calculateBenefitFor(account, dining);
+		PendingReward reward = new PendingReward(dining, account, account.makeContribution(amount));
+		try {
+			// Waits for room, but not once closed: nothing would ever make room
+			while (!queue.offer(reward, 100, TimeUnit.MILLISECONDS)) {
+				if (!running) {
+					throw new IllegalStateException("Group commit is not running");
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			reward.result.completeExceptionally(e);
+			return reward.result;
+		}
+		// If closed meanwhile, the queue may already have been drained for the last time
+		if (!running && queue.remove(reward)) {
+			reward.result.completeExceptionally(new IllegalStateException("Group commit was closed"));
+		}
+		return reward.result;
+	}
+
+	private void commitLoop() {
+		while (running || !queue.isEmpty()) {
+			PendingReward first;
+			try {
+				first = queue.poll(100, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				// Keep going until closed, so no caller is left waiting
+				continue;
+			}
+			if (first != null) {
+				commit(fillBatch(first));
+			}
+		}
+	}
+
+	/**
+	 * Adds whatever else is queued to the batch, waiting up to the maximum delay for it to fill.
+	 */
+	private List<PendingReward> fillBatch(PendingReward first) {
+		List<PendingReward> batch = new ArrayList<PendingReward>(maxBatchSize);
+		batch.add(first);
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		try {
+			while (batch.size() < maxBatchSize) {
+				queue.drainTo(batch, maxBatchSize - batch.size());
+				long remaining = deadline - System.nanoTime();
+				if (batch.size() >= maxBatchSize || remaining <= 0) {
+					break;
+				}
+				PendingReward next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+				if (next == null) {
+					break;
+				}
+				batch.add(next);
+			}
+		} catch (InterruptedException e) {
+			// Commit what there is
+		}
+		return batch;
+	}
+
+	private void commit(List<PendingReward> batch) {
+		try {
+			writeTransaction.execute(status -> {
+				for (PendingReward reward : batch) {
+					Object savepoint = status.createSavepoint();
+					try {
+						accountRepository.creditBeneficiaries(reward.account, reward.contribution);
+						reward.confirmation = rewardRepository.confirmReward(reward.contribution, reward.dining);
+						status.releaseSavepoint(savepoint);
+					} catch (RuntimeException e) {
+						status.rollbackToSavepoint(savepoint);
+						reward.failure = e;
+					}
+				}
+				return null;
+			});
+		} catch (RuntimeException e) {
+			// Nothing in the batch was written
+			logger.warn("Batch of {} rewards failed to commit", batch.size(), e);
+			for (PendingReward reward : batch) {
+				reward.confirmation = null;
+				reward.failure = e;
+			}
+		}
+
+		batches.increment();
+		for (PendingReward reward : batch) {
+			if (reward.failure == null) {
+				rewards.increment();
+				reward.result.complete(reward.confirmation);
+			} else {
+				failures.increment();
+				reward.result.completeExceptionally(reward.failure);
+			}
+		}
+	}
+
+	/**
+	 * The number of transactions committed, or attempted.
+	 */
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	/**
+	 * The number of rewards committed.
+	 */
+	public long getRewards() {
+		return rewards.sum();
+	}
+
+	/**
+	 * The number of rewards whose writes failed.
+	 */
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	/**
+	 * The write set of one reward, waiting to be committed.
+	 */
+	private static class PendingReward {
+
+		private final Dining dining;
+
+		private final Account account;
+
+		private final AccountContribution contribution;
+
+		private final CompletableFuture<RewardConfirmation> result = new CompletableFuture<RewardConfirmation>();
+
+		// Only touched by the committer thread
+		private RewardConfirmation confirmation;
+
+		private RuntimeException failure;
+
+		PendingReward(Dining dining, Account account, AccountContribution contribution) {
+			this.dining = dining;
+			this.account = account;
+			this.contribution = contribution;
+		}
+	}
+}
@@ -0,0 +1,447 @@
+package rewards.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rewards.AccountContribution;
+import rewards.AccountContribution.Distribution;
+import rewards.AsynchronousRewardNetwork;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.internal.account.Account;
+import rewards.internal.account.AccountRepository;
+import rewards.internal.account.Beneficiary;
+import rewards.internal.dining.DiningFingerprint;
+import rewards.internal.restaurant.Restaurant;
+import rewards.internal.restaurant.RestaurantRepository;
+import rewards.internal.reward.RewardRepository;
+
+import common.datetime.SimpleDate;
+import common.money.MonetaryAmount;
+
+/**
+ * Rewards an Account for Dining at a Restaurant from accounts held in memory, writing to the database in the
+ * background.
+ * <p>
+ * Every account is loaded when the network {@link #start() starts}, and each restaurant the first time it is dined
+ * at. A reward is computed against the account in memory and appended to a {@link RewardLog}; it is confirmed once the
+ * log has been forced to disk, which concurrent callers share. Every {@link #setFlushIntervalMillis(long) interval}
+ * the rewards logged since the last flush are written to the database in one transaction: one credit per beneficiary
+ * with the sum of its distributions, and a T_REWARD row for each reward. The log is emptied once nothing newer has
+ * been appended to it.
+ * <p>
+ * After a crash, starting again reloads the accounts as written and replays the logged rewards the database has not
+ * recorded, found by comparing their confirmation numbers with the last one in T_REWARD. Rewards are therefore no less
+ * durable than with {@link RewardNetworkImpl}, but the database lags them by up to an interval.
+ * <p>
+ * A dining with a merchant reference that was rewarded before is refused with a {@link DuplicateKeyException} before
+ * anything is logged. The fingerprints of the rewards not yet flushed are held in memory; for the rest, the reward
+ * repository checks the database, where each is recorded with its fingerprint.
+ * <p>
+ * The accounts in memory are the only up-to-date copy, so this network must be the only writer of beneficiary savings
+ * for as long as it runs, and there must be only one of them per database. Changes to accounts and restaurants made
+ * elsewhere are not seen until it is restarted. If the log cannot be written, the network stops taking rewards, since
+ * the accounts in memory may then be ahead of anything durable; restarting recovers from the database and the log.
+ */
+public class InMemoryRewardNetwork implements AsynchronousRewardNetwork, AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(InMemoryRewardNetwork.class);
+
+	private final AccountRepository accountRepository;
+
+	private final RestaurantRepository restaurantRepository;
+
+	private final RewardRepository rewardRepository;
+
+	private final TransactionTemplate flushTransaction;
+
+	private final RewardLog log;
+
+	private long flushIntervalMillis = 1000;
+
+	private Map<String, Account> accountsByCreditCard;
+
+	private Map<Long, Account> accountsById;
+
+	private final Map<String, Restaurant> restaurants = new ConcurrentHashMap<String, Restaurant>();
+
+	// Guards appending to the log, so entries are in sequence order, and the list of those not yet flushed
+	private final Object appendLock = new Object();
+
+	private long sequence;
+
+	private final List<RewardLog.Entry> unflushed = new ArrayList<RewardLog.Entry>();
+
+	// Also guarded by the append lock: the fingerprints of the unflushed rewards, and of those being made
+	private final Set<DiningFingerprint> unflushedFingerprints = new HashSet<DiningFingerprint>();
+
+	private volatile boolean running;
+
+	private ScheduledExecutorService flusher;
+
+	// Only touched by whoever is flushing, under the flush lock
+	private boolean lastFlushFailed;
+
+	private final Object flushLock = new Object();
+
+	private final LongAdder rewards = new LongAdder();
+
+	private final LongAdder flushes = new LongAdder();
+
+	/**
+	 * Creates a new reward network.
+	 * @param accountRepository the repository for loading the accounts and crediting their beneficiaries
+	 * @param restaurantRepository the repository for loading restaurants
+	 * @param rewardRepository the repository for recording the rewards made
+	 * @param transactionManager the transaction manager for each flush
+	 * @param log the log the rewards are made durable in until they are flushed
+	 */
+	public InMemoryRewardNetwork(AccountRepository accountRepository, RestaurantRepository restaurantRepository,
+			RewardRepository rewardRepository, PlatformTransactionManager transactionManager, RewardLog log) {
+		this.accountRepository = accountRepository;
+		this.restaurantRepository = restaurantRepository;
+		this.rewardRepository = rewardRepository;
+		this.flushTransaction = new TransactionTemplate(transactionManager);
+		this.log = log;
+	}
+
+	/**
+	 * How often the logged rewards are written to the database. Defaults to one second.
+	 */
+	public void setFlushIntervalMillis(long flushIntervalMillis) {
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	/**
+	 * Loads the accounts, replays the rewards logged but not yet recorded, and starts flushing.
+	 */
+	public synchronized void start() throws IOException {
+		if (running) {
+			return;
+		}
+		accountsByCreditCard = accountRepository.findAllByCreditCard();
+		accountsById = new HashMap<Long, Account>(accountsByCreditCard.size());
+		for (Account account : accountsByCreditCard.values()) {
+			accountsById.put(account.getEntityId(), account);
+		}
+
+		long recorded = rewardRepository.findLastRecordedSequence();
+		List<RewardLog.Entry> entries = log.recover();
+		synchronized (appendLock) {
+			sequence = recorded;
+			for (RewardLog.Entry entry : entries) {
+				// Flushed before the log could be emptied
+				if (entry.getSequence() <= recorded) {
+					continue;
+				}
+				Account account = accountsById.get(entry.getAccountId());
+				if (account == null) {
+					throw new IllegalStateException("Logged reward " + entry.getConfirmationNumber()
+							+ " is for account " + entry.getAccountNumber() + ", which no longer exists");
+				}
+				for (Map.Entry<String, MonetaryAmount> distribution : entry.getDistributions().entrySet()) {
+					account.getBeneficiary(distribution.getKey()).credit(distribution.getValue());
+				}
+				unflushed.add(entry);
+				DiningFingerprint fingerprint = DiningFingerprint.of(entry.getDining());
+				if (fingerprint != null) {
+					unflushedFingerprints.add(fingerprint);
+				}
+				sequence = entry.getSequence();
+			}
+			if (unflushed.isEmpty() && !entries.isEmpty()) {
+				log.truncate(entries.get(entries.size() - 1).getSequence());
+			}
+		}
+		logger.info("Loaded {} accounts and replayed {} of {} logged rewards", accountsById.size(), unflushed.size(),
+				entries.size());
+
+		running = true;
+		flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "reward-log-flush");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops taking rewards and flushes those still to be written. Any that cannot be are replayed from the log on the
+	 * next start.
+	 */
+	@Override
+	public void close() throws IOException, InterruptedException {
+		ScheduledExecutorService flusher;
+		synchronized (this) {
+			running = false;
+			flusher = this.flusher;
+			this.flusher = null;
+		}
+		if (flusher != null) {
+			flusher.shutdown();
+			flusher.awaitTermination(1, TimeUnit.MINUTES);
+			flushQuietly();
+		}
+		log.close();
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		if (!running) {
+			throw new IllegalStateException("In-memory reward network is not running");
+		}
+		Account account = accountsByCreditCard.get(dining.getCreditCardNumber());
+		if (account == null) {
+			throw new EmptyResultDataAccessException(1);
+		}
+		Restaurant restaurant = restaurants.computeIfAbsent(dining.getMerchantNumber(),
+				restaurantRepository::findByMerchantNumber);
+		DiningFingerprint fingerprint = DiningFingerprint.of(dining);
+		if (fingerprint != null) {
+			claim(fingerprint, dining);
+		}
+
+		AccountContribution contribution;
+		RewardLog.Entry entry;
+		try {
+			synchronized (account) {
+				MonetaryAmount amount = restaurant.calculateBenefitFor(account, dining);
+				contribution = account.makeContribution(amount);
+				entry = append(account, dining, contribution);
+			}
+		} catch (RuntimeException e) {
+			release(fingerprint);
+			throw e;
+		}
+		// Outside the account lock, so other rewards can be appended and share the force
+		try {
+			log.sync(entry.getSequence());
+		} catch (IOException e) {
+			throw logFailed(e);
+		}
+		rewards.increment();
+		return new RewardConfirmation(entry.getConfirmationNumber(), contribution);
+	}
+
+	/**
+	 * Makes the reward on the calling thread, which is quick: it waits for nothing but the log. The result is
+	 * complete on return.
+	 */
+	@Override
+	public CompletableFuture<RewardConfirmation> rewardAccountForAsync(Dining dining) {
+		CompletableFuture<RewardConfirmation> result = new CompletableFuture<RewardConfirmation>();
+		try {
+			result.complete(rewardAccountFor(dining));
+		} catch (RuntimeException e) {
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	/**
+	 * Holds a dining's fingerprint for the reward about to be made, or refuses the dining if it was rewarded before.
+	 * Asking the database outside the append lock is safe: a fingerprint is only let go once its reward is recorded.
+	 */
+	private void claim(DiningFingerprint fingerprint, Dining dining) {
+		synchronized (appendLock) {
+			if (!unflushedFingerprints.add(fingerprint)) {
+				throw new DuplicateKeyException("Already rewarded: " + dining);
+			}
+		}
+		boolean rewarded;
+		try {
+			rewarded = rewardRepository.isRewarded(dining);
+		} catch (RuntimeException e) {
+			release(fingerprint);
+			throw e;
+		}
+		if (rewarded) {
+			release(fingerprint);
+			throw new DuplicateKeyException("Already rewarded: " + dining);
+		}
+	}
+
+	private void release(DiningFingerprint fingerprint) {
+		if (fingerprint != null) {
+			synchronized (appendLock) {
+				unflushedFingerprints.remove(fingerprint);
+			}
+		}
+	}
+
+	private RewardLog.Entry append(Account account, Dining dining, AccountContribution contribution) {
+		synchronized (appendLock) {
+			RewardLog.Entry entry = new RewardLog.Entry(sequence + 1, account.getEntityId(), SimpleDate.today(),
+					dining, contribution);
+			try {
+				log.append(entry);
+			} catch (IOException e) {
+				throw logFailed(e);
+			}
+			sequence = entry.getSequence();
+			unflushed.add(entry);
+			return entry;
+		}
+	}
+
+	private IllegalStateException logFailed(IOException e) {
+		running = false;
+		logger.error("Reward log could not be written, no more rewards will be taken until restarted", e);
+		return new IllegalStateException("Reward log could not be written", e);
+	}
+
+	/**
+	 * Writes the rewards logged since the last flush to the database, in one transaction, and empties the log if
+	 * nothing has been logged since. Runs every interval; call it to flush sooner.
+	 * @return the number of rewards written
+	 */
+	public int flush() throws IOException {
+		synchronized (flushLock) {
+			List<RewardLog.Entry> batch;
+			synchronized (appendLock) {
+				batch = new ArrayList<RewardLog.Entry>(unflushed);
+			}
+			if (lastFlushFailed) {
+				// The failure may have come after the commit: skip whatever made it
+				batch = dropRecorded(batch);
+			}
+			if (batch.isEmpty()) {
+				return 0;
+			}
+			long last = batch.get(batch.size() - 1).getSequence();
+			// Never record a reward its caller might yet be told failed
+			log.sync(last);
+
+			List<RewardLog.Entry> written = batch;
+			lastFlushFailed = true;
+			flushTransaction.execute(status -> {
+				for (Map.Entry<Account, AccountContribution> credit : sumCredits(written).entrySet()) {
+					accountRepository.creditBeneficiaries(credit.getKey(), credit.getValue());
+				}
+				rewardRepository.recordRewards(written);
+				return null;
+			});
+			lastFlushFailed = false;
+
+			synchronized (appendLock) {
+				removeFlushed(last);
+			}
+			flushes.increment();
+			log.truncate(last);
+			return batch.size();
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (IOException | RuntimeException e) {
+			// Still logged, so tried again next time
+			logger.warn("Logged rewards could not be flushed", e);
+		}
+	}
+
+	private List<RewardLog.Entry> dropRecorded(List<RewardLog.Entry> batch) {
+		long recorded = rewardRepository.findLastRecordedSequence();
+		synchronized (appendLock) {
+			removeFlushed(recorded);
+		}
+		batch.removeIf(entry -> entry.getSequence() <= recorded);
+		lastFlushFailed = false;
+		return batch;
+	}
+
+	/**
+	 * Forgets the unflushed rewards up to a sequence number, now recorded. Call holding the append lock.
+	 */
+	private void removeFlushed(long last) {
+		int flushed = 0;
+		while (flushed < unflushed.size() && unflushed.get(flushed).getSequence() <= last) {
+			DiningFingerprint fingerprint = DiningFingerprint.of(unflushed.get(flushed).getDining());
+			if (fingerprint != null) {
+				unflushedFingerprints.remove(fingerprint);
+			}
+			flushed++;
+		}
+		unflushed.subList(0, flushed).clear();
+	}
+
+	/**
+	 * Sums the distributions of the batch into one contribution per account.
+	 */
+	private Map<Account, AccountContribution> sumCredits(List<RewardLog.Entry> batch) {
+		Map<Account, Map<String, MonetaryAmount>> creditsByAccount = new LinkedHashMap<Account, Map<String, MonetaryAmount>>();
+		for (RewardLog.Entry entry : batch) {
+			Map<String, MonetaryAmount> credits = creditsByAccount.computeIfAbsent(
+					accountsById.get(entry.getAccountId()), account -> new LinkedHashMap<String, MonetaryAmount>());
+			for (Map.Entry<String, MonetaryAmount> distribution : entry.getDistributions().entrySet()) {
+				credits.merge(distribution.getKey(), distribution.getValue(), MonetaryAmount::add);
+			}
+		}
+		Map<Account, AccountContribution> contributions = new LinkedHashMap<Account, AccountContribution>();
+		for (Map.Entry<Account, Map<String, MonetaryAmount>> credits : creditsByAccount.entrySet()) {
+			Account account = credits.getKey();
+			MonetaryAmount total = MonetaryAmount.zero();
+			Set<Distribution> distributions = new HashSet<Distribution>();
+			synchronized (account) {
+				for (Map.Entry<String, MonetaryAmount> credit : credits.getValue().entrySet()) {
+					Beneficiary beneficiary = account.getBeneficiary(credit.getKey());
+					total = total.add(credit.getValue());
+					distributions.add(new Distribution(beneficiary.getName(), credit.getValue(),
+							beneficiary.getAllocationPercentage(), beneficiary.getSavings()));
+				}
+			}
+			contributions.put(account, new AccountContribution(account.getNumber(), total, distributions));
+		}
+		return contributions;
+	}
+
+	/**
+	 * The number of rewards confirmed since the network started.
+	 */
+	public long getRewards() {
+		return rewards.sum();
+	}
+
+	/**
+	 * The number of flushes that wrote to the database.
+	 */
+	public long getFlushes() {
+		return flushes.sum();
+	}
+
+	/**
+	 * The number of rewards confirmed but not yet written to the database.
+	 */
+	public int getUnflushed() {
+		synchronized (appendLock) {
+			return unflushed.size();
+		}
+	}
+
+	/**
+	 * The number of times the log has been forced to disk.
+	 */
+	public long getSyncs() {
+		return log.getSyncs();
+	}
+}
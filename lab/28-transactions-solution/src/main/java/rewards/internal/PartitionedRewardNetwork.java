@@ -0,0 +1,452 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rewards.AccountContribution;
+import rewards.AsynchronousRewardNetwork;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.internal.account.Account;
+import rewards.internal.account.AccountRepository;
+import rewards.internal.restaurant.Restaurant;
+import rewards.internal.restaurant.RestaurantRepository;
+import rewards.internal.reward.RewardRepository;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Rewards an Account for Dining at a Restaurant on one of a fixed number of partition workers, each the only writer of
+ * the accounts routed to it.
+ * <p>
+ * A dining is routed by the hash of its credit card number to a partition: a bounded queue and the single thread that
+ * takes from it. The thread keeps the accounts and restaurants it has loaded in plain maps, computes each reward
+ * against its own copy of the account, and writes whatever it has taken off the queue in one transaction, crediting
+ * the amounts distributed. Rewards for a hot account therefore never wait on a lock or retry a conflict; they queue
+ * behind each other on one thread, while other partitions run on other cores. When a queue is full, callers routed to
+ * it wait for room, so a burst slows its callers down rather than growing without bound.
+ * <p>
+ * Each reward in a batch is written behind its own savepoint: if one fails, only its caller gets the exception, and
+ * its account is dropped from the partition's cache so it is read afresh next time. If the commit fails, every
+ * caller in the batch gets that exception and all their accounts are dropped.
+ * <p>
+ * {@link #rebalance(int)} changes the number of partitions while rewards keep coming. New rewards are routed over the
+ * new partitions, which start once the old ones have written everything already queued to them, so an account only
+ * ever has one writer and the new owner reads it after the old one's last write. An account with several credit cards
+ * may be routed to several partitions; their credits still all count, but the savings totals in a confirmation may
+ * not include rewards made through another card.
+ * <p>
+ * Call {@link #start()} before use and {@link #close()} when done; close writes out whatever is still queued.
+ */
+public class PartitionedRewardNetwork implements AsynchronousRewardNetwork, AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(PartitionedRewardNetwork.class);
+
+	private final AccountRepository accountRepository;
+
+	private final RestaurantRepository restaurantRepository;
+
+	private final RewardRepository rewardRepository;
+
+	private final TransactionTemplate writeTransaction;
+
+	private final int queueCapacity;
+
+	private int partitionCount;
+
+	private int maxBatchSize = 100;
+
+	private volatile Partition[] partitions;
+
+	private final LongAdder batches = new LongAdder();
+
+	private final LongAdder rewards = new LongAdder();
+
+	private final LongAdder failures = new LongAdder();
+
+	/**
+	 * Creates a new reward network.
+	 * @param accountRepository the repository for loading and crediting accounts
+	 * @param restaurantRepository the repository for loading restaurants
+	 * @param rewardRepository the repository for recording a record of successful reward transactions
+	 * @param transactionManager the transaction manager for the batches, which must support savepoints
+	 * @param partitions the number of partitions, and so of worker threads
+	 * @param queueCapacity how many rewards may wait for each partition; callers beyond that wait to queue theirs
+	 */
+	public PartitionedRewardNetwork(AccountRepository accountRepository, RestaurantRepository restaurantRepository,
+			RewardRepository rewardRepository, PlatformTransactionManager transactionManager, int partitions,
+			int queueCapacity) {
+		if (partitions < 1) {
+			throw new IllegalArgumentException("partitions must be at least 1");
+		}
+		this.accountRepository = accountRepository;
+		this.restaurantRepository = restaurantRepository;
+		this.rewardRepository = rewardRepository;
+		this.writeTransaction = new TransactionTemplate(transactionManager);
+		this.partitionCount = partitions;
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * The most rewards a partition writes in one transaction. Defaults to 100.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public synchronized void start() {
+		if (partitions != null) {
+			return;
+		}
+		CountDownLatch handover = new CountDownLatch(0);
+		partitions = createPartitions(partitionCount, handover);
+	}
+
+	/**
+	 * Moves to the given number of partitions. Returns once the old partitions have written everything queued to
+	 * them; rewards submitted meanwhile wait in the new partitions' queues.
+	 */
+	public synchronized void rebalance(int partitionCount) throws InterruptedException {
+		if (partitionCount < 1) {
+			throw new IllegalArgumentException("partitions must be at least 1");
+		}
+		Partition[] old = partitions;
+		if (old == null) {
+			throw new IllegalStateException("Partitioned reward network is not running");
+		}
+		CountDownLatch handover = new CountDownLatch(1);
+		partitions = createPartitions(partitionCount, handover);
+		this.partitionCount = partitionCount;
+
+		List<PendingReward> stragglers = stop(old);
+		handover.countDown();
+		// Queued after their old partition's worker had finished
+		for (PendingReward reward : stragglers) {
+			route(reward);
+		}
+		logger.info("Rebalanced from {} to {} partitions", old.length, partitionCount);
+	}
+
+	/**
+	 * Stops taking rewards and waits for the queued ones to be written.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		Partition[] old;
+		synchronized (this) {
+			old = partitions;
+			partitions = null;
+		}
+		if (old != null) {
+			for (PendingReward reward : stop(old)) {
+				reward.result.completeExceptionally(new IllegalStateException("Partitioned reward network was closed"));
+			}
+		}
+	}
+
+	private Partition[] createPartitions(int count, CountDownLatch handover) {
+		Partition[] partitions = new Partition[count];
+		for (int i = 0; i < count; i++) {
+			partitions[i] = new Partition(i, handover);
+		}
+		for (Partition partition : partitions) {
+			partition.thread.start();
+		}
+		return partitions;
+	}
+
+	/**
+	 * Lets the workers finish their queues and waits for them.
+	 * @return the rewards queued after the workers finished
+	 */
+	private List<PendingReward> stop(Partition[] partitions) throws InterruptedException {
+		for (Partition partition : partitions) {
+			partition.closed = true;
+		}
+		List<PendingReward> stragglers = new ArrayList<PendingReward>();
+		for (Partition partition : partitions) {
+			partition.thread.join();
+			partition.queue.drainTo(stragglers);
+		}
+		return stragglers;
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		try {
+			return submit(dining).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Same as {@link #submit(Dining)}.
+	 */
+	@Override
+	public CompletableFuture<RewardConfirmation> rewardAccountForAsync(Dining dining) {
+		return submit(dining);
+	}
+
+	/**
+	 * Queues a dining on its partition, waiting for room if the partition is full.
+	 * @return completes with the confirmation once the reward is committed, or exceptionally if it could not be
+	 */
+	public CompletableFuture<RewardConfirmation> submit(Dining dining) {
+		PendingReward reward = new PendingReward(dining);
+		route(reward);
+		return reward.result;
+	}
+
+	private void route(PendingReward reward) {
+		while (true) {
+			Partition[] partitions = this.partitions;
+			if (partitions == null) {
+				throw new IllegalStateException("Partitioned reward network is not running");
+			}
+			Partition partition = partitions[partitionFor(reward.dining.getCreditCardNumber(), partitions.length)];
+			if (partition.offer(reward)) {
+				return;
+			}
+			// Its partition was being replaced; route it over the new ones
+		}
+	}
+
+	/**
+	 * Spreads the high bits of the hash into the low ones before taking the remainder.
+	 */
+	static int partitionFor(String creditCardNumber, int partitions) {
+		int hash = creditCardNumber.hashCode();
+		return Math.floorMod(hash ^ (hash >>> 16), partitions);
+	}
+
+	/**
+	 * The number of partitions rewards are routed over.
+	 */
+	public int getPartitions() {
+		Partition[] partitions = this.partitions;
+		return partitions == null ? 0 : partitions.length;
+	}
+
+	/**
+	 * The number of rewards waiting in the partitions' queues.
+	 */
+	public int getQueued() {
+		Partition[] partitions = this.partitions;
+		int queued = 0;
+		if (partitions != null) {
+			for (Partition partition : partitions) {
+				queued += partition.queue.size();
+			}
+		}
+		return queued;
+	}
+
+	/**
+	 * The number of transactions committed, or attempted.
+	 */
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	/**
+	 * The number of rewards committed.
+	 */
+	public long getRewards() {
+		return rewards.sum();
+	}
+
+	/**
+	 * The number of rewards that could not be computed or written.
+	 */
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	/**
+	 * A queue and the worker that owns the accounts routed to it.
+	 */
+	private class Partition implements Runnable {
+
+		private final BlockingQueue<PendingReward> queue = new ArrayBlockingQueue<PendingReward>(queueCapacity);
+
+		private final Thread thread;
+
+		private final CountDownLatch handover;
+
+		private volatile boolean closed;
+
+		// Only touched by the worker thread
+		private final Map<String, Account> accounts = new HashMap<String, Account>();
+
+		private final Map<String, Restaurant> restaurants = new HashMap<String, Restaurant>();
+
+		Partition(int index, CountDownLatch handover) {
+			this.handover = handover;
+			this.thread = new Thread(this, "reward-partition-" + index);
+			this.thread.setDaemon(true);
+		}
+
+		/**
+		 * Queues a reward, waiting for room.
+		 * @return false if the partition is being replaced and the reward must be routed again
+		 */
+		boolean offer(PendingReward reward) {
+			if (closed) {
+				return false;
+			}
+			try {
+				queue.put(reward);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				reward.result.completeExceptionally(e);
+				return true;
+			}
+			// If the worker has finished, whoever stopped it may already have drained the queue
+			if (closed && !thread.isAlive() && queue.remove(reward)) {
+				return false;
+			}
+			return true;
+		}
+
+		public void run() {
+			try {
+				handover.await();
+			} catch (InterruptedException e) {
+				// Only interrupted when being torn down; the queue is drained by whoever stops it
+				return;
+			}
+			List<PendingReward> batch = new ArrayList<PendingReward>(maxBatchSize);
+			while (!closed || !queue.isEmpty()) {
+				PendingReward first;
+				try {
+					first = queue.poll(100, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					// Keep going until closed, so no caller is left waiting
+					continue;
+				}
+				if (first != null) {
+					batch.add(first);
+					queue.drainTo(batch, maxBatchSize - 1);
+					write(compute(batch));
+					batch.clear();
+				}
+			}
+		}
+
+		/**
+		 * Computes each reward against this partition's copy of its account.
+		 * @return the rewards that could be computed
+		 */
+		private List<PendingReward> compute(List<PendingReward> batch) {
+			List<PendingReward> computed = new ArrayList<PendingReward>(batch.size());
+			for (PendingReward reward : batch) {
+				try {
+					Dining dining = reward.dining;
+					Account account = accounts.get(dining.getCreditCardNumber());
+					if (account == null) {
+						account = accountRepository.findByCreditCard(dining.getCreditCardNumber());
+						accounts.put(dining.getCreditCardNumber(), account);
+					}
+					Restaurant restaurant = restaurants.get(dining.getMerchantNumber());
+					if (restaurant == null) {
+						restaurant = restaurantRepository.findByMerchantNumber(dining.getMerchantNumber());
+						restaurants.put(dining.getMerchantNumber(), restaurant);
+					}
+					MonetaryAmount amount = restaurant.calculateBenefitFor(account, dining);
+					reward.account = account;
+					reward.contribution = account.makeContribution(amount);
+					computed.add(reward);
+				} catch (RuntimeException e) {
+					fail(reward, e);
+				}
+			}
+			return computed;
+		}
+
+		private void write(List<PendingReward> batch) {
+			if (batch.isEmpty()) {
+				return;
+			}
+			try {
+				writeTransaction.execute(status -> {
+					for (PendingReward reward : batch) {
+						Object savepoint = status.createSavepoint();
+						try {
+							accountRepository.creditBeneficiaries(reward.account, reward.contribution);
+							reward.confirmation = rewardRepository.confirmReward(reward.contribution, reward.dining);
+							status.releaseSavepoint(savepoint);
+						} catch (RuntimeException e) {
+							status.rollbackToSavepoint(savepoint);
+							reward.failure = e;
+						}
+					}
+					return null;
+				});
+			} catch (RuntimeException e) {
+				// Nothing in the batch was written
+				logger.warn("Batch of {} rewards failed to commit", batch.size(), e);
+				for (PendingReward reward : batch) {
+					reward.confirmation = null;
+					reward.failure = e;
+				}
+			}
+
+			batches.increment();
+			for (PendingReward reward : batch) {
+				if (reward.failure == null) {
+					rewards.increment();
+					reward.result.complete(reward.confirmation);
+				} else {
+					fail(reward, reward.failure);
+				}
+			}
+		}
+
+		private void fail(PendingReward reward, RuntimeException failure) {
+			// Its copy of the account may have been credited with what was not written
+			accounts.remove(reward.dining.getCreditCardNumber());
+			failures.increment();
+			reward.result.completeExceptionally(failure);
+		}
+	}
+
+	/**
+	 * A dining waiting on its partition, and then what the partition made of it.
+	 */
+	private static class PendingReward {
+
+		private final Dining dining;
+
+		private final CompletableFuture<RewardConfirmation> result = new CompletableFuture<RewardConfirmation>();
+
+		// Only touched by the worker thread
+		private Account account;
+
+		private AccountContribution contribution;
+
+		private RewardConfirmation confirmation;
+
+		private RuntimeException failure;
+
+		PendingReward(Dining dining) {
+			this.dining = dining;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package rewards.internal;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+
+/**
+ * Retries rewards that lose a race for their account.
+ * <p>
+ * The account repository checks the account version when it writes the new savings, so two rewards for the same
+ * account no longer have to run one after the other: both compute, and the second to write fails with a
+ * {@link ConcurrencyFailureException}. That reward is then run again from the start, in a new transaction, after a
+ * random pause that grows with each attempt ("full jitter"), so retries for a hot account spread out rather than
+ * collide again.
+ * <p>
+ * Only a reward that started its own transaction can be retried. If the caller has a transaction open, the failure
+ * belongs to it and is passed on.
+ */
+public class RetryingRewardNetwork implements RewardNetwork {
+
+	private static final Logger logger = LoggerFactory.getLogger(RetryingRewardNetwork.class);
+
+	private final RewardNetwork rewardNetwork;
+
+	private int maxAttempts = 5;
+
+	private long initialBackoffMillis = 5;
+
+	private long maxBackoffMillis = 200;
+
+	private final LongAdder rewards = new LongAdder();
+
+	private final LongAdder conflicts = new LongAdder();
+
+	private final LongAdder failures = new LongAdder();
+
+	/**
+	 * @param rewardNetwork the transactional reward network to call for each attempt
+	 */
+	public RetryingRewardNetwork(RewardNetwork rewardNetwork) {
+		this.rewardNetwork = rewardNetwork;
+	}
+
+	/**
+	 * How many times to try a reward before giving up, including the first. Defaults to 5.
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("maxAttempts must be at least 1");
+		}
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * The longest pause before the first retry. Each further retry doubles it, up to {@link #setMaxBackoffMillis(long)}.
+	 * Defaults to 5ms.
+	 */
+	public void setInitialBackoffMillis(long initialBackoffMillis) {
+		this.initialBackoffMillis = initialBackoffMillis;
+	}
+
+	/**
+	 * The longest pause before any retry. Defaults to 200ms.
+	 */
+	public void setMaxBackoffMillis(long maxBackoffMillis) {
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		boolean retryable = !TransactionSynchronizationManager.isActualTransactionActive();
+		for (int attempt = 1;; attempt++) {
+			try {
+				RewardConfirmation confirmation = rewardNetwork.rewardAccountFor(dining);
+				rewards.increment();
+				return confirmation;
+			} catch (ConcurrencyFailureException e) {
+				conflicts.increment();
+				if (!retryable || attempt >= maxAttempts) {
+					failures.increment();
+					throw e;
+				}
+				logger.debug("Reward for {} conflicted on attempt {}, retrying", dining, attempt);
+				pause(attempt, e);
+			}
+		}
+	}
+
+	/**
+	 * Sleeps for a random time between zero and the backoff for this attempt.
+	 */
+	private void pause(int attempt, ConcurrencyFailureException conflict) {
+		long backoff = Math.min(maxBackoffMillis, initialBackoffMillis << Math.min(attempt - 1, 20));
+		try {
+			Thread.sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failures.increment();
+			throw conflict;
+		}
+	}
+
+	/**
+	 * The number of rewards made, however many attempts they took.
+	 */
+	public long getRewards() {
+		return rewards.sum();
+	}
+
+	/**
+	 * The number of attempts that failed because the account was updated concurrently.
+	 */
+	public long getConflicts() {
+		return conflicts.sum();
+	}
+
+	/**
+	 * The number of rewards given up on because of conflicts.
+	 */
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	/**
+	 * Conflicts as a fraction of all attempts that ended in a reward or a conflict, or zero if there have been none.
+	 */
+	public double getConflictRate() {
+		long conflicts = getConflicts();
+		long attempts = getRewards() + conflicts;
+		return attempts == 0 ? 0 : (double) conflicts / attempts;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("rewards=%d, conflicts=%d, failures=%d, conflictRate=%.3f", getRewards(), getConflicts(),
+				getFailures(), getConflictRate());
+	}
+}
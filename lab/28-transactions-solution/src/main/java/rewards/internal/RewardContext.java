@@ -0,0 +1,36 @@
+package rewards.internal;
+
+import rewards.internal.account.Account;
+import rewards.internal.restaurant.Restaurant;
+
+/**
+ * Everything the reward calculation reads: the account to reward with its
+ * beneficiaries, and the restaurant's benefit terms.
+ * <p>
+ * A read model, not a pair of full aggregates - implementations may leave
+ * out what the calculation does not use, such as the account and restaurant
+ * names.
+ */
+public class RewardContext {
+
+	private final Account account;
+
+	private final Restaurant restaurant;
+
+	public RewardContext(Account account, Restaurant restaurant) {
+		this.account = account;
+		this.restaurant = restaurant;
+	}
+
+	public Account getAccount() {
+		return account;
+	}
+
+	public Restaurant getRestaurant() {
+		return restaurant;
+	}
+
+	public String toString() {
+		return "Account = [" + account + "], restaurant = [" + restaurant + "]";
+	}
+}
@@ -0,0 +1,19 @@
+package rewards.internal;
+
+/**
+ * Loads what is needed to reward one dining in a single step, instead of one
+ * lookup for the account and another for the restaurant.
+ */
+public interface RewardContextRepository {
+
+	/**
+	 * Load the account charged by the given credit card together with the
+	 * restaurant with the given merchant number.
+	 * @param creditCardNumber the credit card number
+	 * @param merchantNumber the merchant number
+	 * @return the reward context
+	 * @throws org.springframework.dao.EmptyResultDataAccessException if there is no such account or restaurant
+	 */
+	public RewardContext findRewardContext(String creditCardNumber, String merchantNumber);
+
+}
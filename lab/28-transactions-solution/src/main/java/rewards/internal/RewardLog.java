@@ -0,0 +1,328 @@
+package rewards.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import rewards.AccountContribution;
+import rewards.AccountContribution.Distribution;
+import rewards.Dining;
+
+import common.datetime.SimpleDate;
+import common.money.MonetaryAmount;
+
+/**
+ * An append-only file of rewards, written before they are confirmed.
+ * <p>
+ * Each entry is framed by its length and followed by a CRC32 of its contents, so a write torn by a crash shows up as
+ * a short or corrupt last entry. {@link #recover()} drops it, along with anything after it.
+ * <p>
+ * Appending only writes to the operating system; {@link #sync(long)} forces the file to disk. Callers that sync while
+ * another is forcing wait for it and then share the next force, so under load many entries are made durable by one
+ * fsync rather than one each.
+ */
+public class RewardLog implements AutoCloseable {
+
+	/**
+	 * Starts the confirmation number of every logged reward, so they never collide with those issued by the database
+	 * sequence.
+	 */
+	public static final String CONFIRMATION_NUMBER_PREFIX = "L";
+
+	private static final int HEADER_SIZE = Integer.BYTES;
+
+	private static final int TRAILER_SIZE = Integer.BYTES;
+
+	private final FileChannel channel;
+
+	private final Object syncLock = new Object();
+
+	private volatile long lastAppended;
+
+	private volatile long lastSynced;
+
+	private final LongAdder syncs = new LongAdder();
+
+	public RewardLog(File file) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Reads the whole log, discarding a torn last entry, and positions it for appending after what was read. Call
+	 * before the first append.
+	 * @return the entries, in the order they were appended
+	 */
+	public synchronized List<Entry> recover() throws IOException {
+		List<Entry> entries = new ArrayList<Entry>();
+		long position = 0;
+		long size = channel.size();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (position + HEADER_SIZE <= size) {
+			header.clear();
+			channel.read(header, position);
+			int length = header.getInt(0);
+			if (length <= 0 || position + HEADER_SIZE + length + TRAILER_SIZE > size) {
+				break;
+			}
+			ByteBuffer record = ByteBuffer.allocate(length + TRAILER_SIZE);
+			while (record.hasRemaining()) {
+				channel.read(record, position + HEADER_SIZE + record.position());
+			}
+			CRC32 crc = new CRC32();
+			crc.update(record.array(), 0, length);
+			if ((int) crc.getValue() != record.getInt(length)) {
+				break;
+			}
+			entries.add(Entry.read(record.array(), length));
+			position += HEADER_SIZE + length + TRAILER_SIZE;
+		}
+		if (position < size) {
+			channel.truncate(position);
+			channel.force(false);
+		}
+		channel.position(position);
+		if (!entries.isEmpty()) {
+			lastAppended = entries.get(entries.size() - 1).getSequence();
+			lastSynced = lastAppended;
+		}
+		return entries;
+	}
+
+	/**
+	 * Writes an entry after those already in the log. It is not durable until {@link #sync(long) synced}.
+	 */
+	public synchronized void append(Entry entry) throws IOException {
+		byte[] payload = entry.write();
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + payload.length + TRAILER_SIZE);
+		record.putInt(payload.length).put(payload).putInt((int) crc.getValue()).flip();
+		while (record.hasRemaining()) {
+			channel.write(record);
+		}
+		lastAppended = entry.getSequence();
+	}
+
+	/**
+	 * Returns once the entry with the given sequence number, and every one before it, is on disk.
+	 */
+	public void sync(long sequence) throws IOException {
+		if (lastSynced >= sequence) {
+			return;
+		}
+		synchronized (syncLock) {
+			// Whoever held the lock may have forced this entry too
+			if (lastSynced >= sequence) {
+				return;
+			}
+			long appended = lastAppended;
+			channel.force(false);
+			syncs.increment();
+			lastSynced = appended;
+		}
+	}
+
+	/**
+	 * Empties the log, if nothing has been appended after the given entry. Call once every entry up to it has been
+	 * written somewhere durable, so the log does not grow without bound.
+	 * @return whether the log was emptied
+	 */
+	public synchronized boolean truncate(long sequence) throws IOException {
+		if (lastAppended != sequence) {
+			return false;
+		}
+		channel.truncate(0);
+		channel.position(0);
+		channel.force(false);
+		return true;
+	}
+
+	/**
+	 * The number of times the log has been forced to disk by {@link #sync(long)}.
+	 */
+	public long getSyncs() {
+		return syncs.sum();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Returns the confirmation number of the logged reward with the given sequence number. The sequence is zero-padded,
+	 * so confirmation numbers sort in the order their rewards were logged.
+	 */
+	public static String confirmationNumber(long sequence) {
+		return CONFIRMATION_NUMBER_PREFIX + String.format("%019d", sequence);
+	}
+
+	/**
+	 * Returns the sequence number of the logged reward with the given confirmation number.
+	 */
+	public static long sequenceOf(String confirmationNumber) {
+		return Long.parseLong(confirmationNumber.substring(CONFIRMATION_NUMBER_PREFIX.length()));
+	}
+
+	/**
+	 * A reward as logged: the dining and the amounts it credited to each beneficiary. Identified by a sequence number
+	 * that increases with every entry.
+	 */
+	public static class Entry {
+
+		private final long sequence;
+
+		private final long accountId;
+
+		private final SimpleDate rewardDate;
+
+		private final Dining dining;
+
+		private final String accountNumber;
+
+		private final MonetaryAmount amount;
+
+		private final Map<String, MonetaryAmount> distributions;
+
+		/**
+		 * Creates the entry for a reward just made.
+		 * @param sequence the next sequence number of the log
+		 * @param accountId the entity id of the rewarded account
+		 * @param rewardDate the day the reward was made
+		 * @param dining the dining that was rewarded
+		 * @param contribution the contribution made to the account
+		 */
+		public Entry(long sequence, long accountId, SimpleDate rewardDate, Dining dining,
+				AccountContribution contribution) {
+			this(sequence, accountId, rewardDate, dining, contribution.getAccountNumber(), contribution.getAmount(),
+					new LinkedHashMap<String, MonetaryAmount>());
+			for (Distribution distribution : contribution.getDistributions()) {
+				distributions.put(distribution.getBeneficiary(), distribution.getAmount());
+			}
+		}
+
+		private Entry(long sequence, long accountId, SimpleDate rewardDate, Dining dining, String accountNumber,
+				MonetaryAmount amount, Map<String, MonetaryAmount> distributions) {
+			this.sequence = sequence;
+			this.accountId = accountId;
+			this.rewardDate = rewardDate;
+			this.dining = dining;
+			this.accountNumber = accountNumber;
+			this.amount = amount;
+			this.distributions = distributions;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public String getConfirmationNumber() {
+			return confirmationNumber(sequence);
+		}
+
+		public long getAccountId() {
+			return accountId;
+		}
+
+		public SimpleDate getRewardDate() {
+			return rewardDate;
+		}
+
+		public Dining getDining() {
+			return dining;
+		}
+
+		public String getAccountNumber() {
+			return accountNumber;
+		}
+
+		/**
+		 * The total amount contributed to the account.
+		 */
+		public MonetaryAmount getAmount() {
+			return amount;
+		}
+
+		/**
+		 * The amount credited to each beneficiary, by name.
+		 */
+		public Map<String, MonetaryAmount> getDistributions() {
+			return Collections.unmodifiableMap(distributions);
+		}
+
+		private byte[] write() {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+			try (DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeLong(sequence);
+				out.writeLong(accountId);
+				out.writeLong(rewardDate.inMilliseconds());
+				out.writeUTF(dining.getAmount().asBigDecimal().toPlainString());
+				out.writeUTF(dining.getCreditCardNumber());
+				out.writeUTF(dining.getMerchantNumber());
+				out.writeLong(dining.getDate().inMilliseconds());
+				out.writeUTF(accountNumber);
+				out.writeUTF(amount.asBigDecimal().toPlainString());
+				out.writeInt(distributions.size());
+				for (Map.Entry<String, MonetaryAmount> distribution : distributions.entrySet()) {
+					out.writeUTF(distribution.getKey());
+					out.writeUTF(distribution.getValue().asBigDecimal().toPlainString());
+				}
+				// Last, and only if there is one, so entries logged before it was kept still read the same
+				if (dining.getMerchantReference() != null) {
+					out.writeUTF(dining.getMerchantReference());
+				}
+			} catch (IOException e) {
+				// Not thrown by an in-memory stream
+				throw new UncheckedIOException(e);
+			}
+			return bytes.toByteArray();
+		}
+
+		private static Entry read(byte[] record, int length) throws IOException {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 0, length));
+			try {
+				long sequence = in.readLong();
+				long accountId = in.readLong();
+				SimpleDate rewardDate = SimpleDate.valueOf(in.readLong());
+				MonetaryAmount diningAmount = amount(in.readUTF());
+				String creditCardNumber = in.readUTF();
+				String merchantNumber = in.readUTF();
+				SimpleDate diningDate = SimpleDate.valueOf(in.readLong());
+				String accountNumber = in.readUTF();
+				MonetaryAmount amount = amount(in.readUTF());
+				int count = in.readInt();
+				Map<String, MonetaryAmount> distributions = new LinkedHashMap<String, MonetaryAmount>(count * 2);
+				for (int i = 0; i < count; i++) {
+					distributions.put(in.readUTF(), amount(in.readUTF()));
+				}
+				String merchantReference = in.available() > 0 ? in.readUTF() : null;
+				Dining dining = new Dining(diningAmount, creditCardNumber, merchantNumber, diningDate,
+						merchantReference);
+				return new Entry(sequence, accountId, rewardDate, dining, accountNumber, amount, distributions);
+			} catch (EOFException e) {
+				throw new IOException("Log entry is shorter than its contents", e);
+			}
+		}
+
+		private static MonetaryAmount amount(String value) {
+			return new MonetaryAmount(new BigDecimal(value));
+		}
+	}
+}
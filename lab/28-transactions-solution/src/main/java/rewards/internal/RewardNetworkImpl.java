@@ -30,6 +30,8 @@ public class RewardNetworkImpl implements RewardNetwork {
 
 	private RewardRepository rewardRepository;
 
+	private RewardContextRepository rewardContextRepository;
+
 	/**
 	 * Creates a new reward network.
 	 * @param accountRepository the repository for loading accounts to reward
@@ -43,13 +45,35 @@ public class RewardNetworkImpl implements RewardNetwork {
 		this.rewardRepository = rewardRepository;
 	}
 
+	/**
+	 * Creates a new reward network that reads the account and restaurant for a dining in one round trip.
+	 * @param accountRepository the repository for updating rewarded accounts
+	 * @param rewardContextRepository the repository for loading the account and restaurant together
+	 * @param rewardRepository the repository for recording a record of successful reward transactions
+	 */
+	public RewardNetworkImpl(AccountRepository accountRepository, RewardContextRepository rewardContextRepository,
+			RewardRepository rewardRepository) {
+		this.accountRepository = accountRepository;
+		this.rewardContextRepository = rewardContextRepository;
+		this.rewardRepository = rewardRepository;
+	}
+
 	@Transactional
 	public RewardConfirmation rewardAccountFor(Dining dining) {
-		Account account = accountRepository.findByCreditCard(dining.getCreditCardNumber());
-		Restaurant restaurant = restaurantRepository.findByMerchantNumber(dining.getMerchantNumber());
+		RewardContext context = findRewardContext(dining);
+		Account account = context.getAccount();
+		Restaurant restaurant = context.getRestaurant();
 		MonetaryAmount amount = restaurant.calculateBenefitFor(account, dining);
 		AccountContribution contribution = account.makeContribution(amount);
 		accountRepository.updateBeneficiaries(account);
 		return rewardRepository.confirmReward(contribution, dining);
 	}
+
+	private RewardContext findRewardContext(Dining dining) {
+		if (rewardContextRepository != null) {
+			return rewardContextRepository.findRewardContext(dining.getCreditCardNumber(), dining.getMerchantNumber());
+		}
+		return new RewardContext(accountRepository.findByCreditCard(dining.getCreditCardNumber()),
+				restaurantRepository.findByMerchantNumber(dining.getMerchantNumber()));
+	}
 }
\ No newline at end of file
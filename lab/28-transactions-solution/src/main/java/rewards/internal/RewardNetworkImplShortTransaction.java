@@ -0,0 +1,73 @@
+package rewards.internal;
+
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.internal.account.Account;
+import rewards.internal.account.AccountRepository;
+import rewards.internal.restaurant.Restaurant;
+import rewards.internal.reward.RewardRepository;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Rewards an Account for Dining at a Restaurant, holding a transaction only for the writes.
+ * <p>
+ * {@link RewardNetworkImpl} runs the whole use case in one transaction, so a connection is held, and in a locking
+ * database the rows read stay locked, while the benefit and the distribution are computed in memory.
+ * {@link RewardNetworkImplRequiresNew} does the same in a transaction of its own, suspending the caller's and taking a
+ * second connection. Here the account and restaurant are read with one auto-committed query, the reward is computed
+ * with no connection held, and only the write set - the credit to each beneficiary and the reward record - runs in a
+ * transaction.
+ * <p>
+ * The read is not protected by the transaction, so the beneficiaries are credited with the amounts distributed
+ * rather than overwritten with balances computed from the read: concurrent rewards for the same account both count.
+ * As a consequence the savings totals reported in the confirmation are those as read plus this reward, which may not
+ * include rewards made in the meantime.
+ */
+public class RewardNetworkImplShortTransaction implements RewardNetwork {
+
+	private final AccountRepository accountRepository;
+
+	private final RewardContextRepository rewardContextRepository;
+
+	private final RewardRepository rewardRepository;
+
+	private final TransactionTemplate writeTransaction;
+
+	/**
+	 * Creates a new reward network.
+	 * @param accountRepository the repository for crediting rewarded accounts
+	 * @param rewardContextRepository the repository for loading the account and restaurant together
+	 * @param rewardRepository the repository for recording a record of successful reward transactions
+	 * @param transactionManager the transaction manager for the writes
+	 */
+	public RewardNetworkImplShortTransaction(AccountRepository accountRepository,
+			RewardContextRepository rewardContextRepository, RewardRepository rewardRepository,
+			PlatformTransactionManager transactionManager) {
+		this.accountRepository = accountRepository;
+		this.rewardContextRepository = rewardContextRepository;
+		this.rewardRepository = rewardRepository;
+		this.writeTransaction = new TransactionTemplate(transactionManager);
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		RewardContext context = rewardContextRepository.findRewardContext(dining.getCreditCardNumber(),
+				dining.getMerchantNumber());
+		Account account = context.getAccount();
+		Restaurant restaurant = context.getRestaurant();
+
+		// Pure computation, no connection held
+		MonetaryAmount amount = restaurant.calculateBenefitFor(account, dining);
+		AccountContribution contribution = account.makeContribution(amount);
+
+		return writeTransaction.execute(status -> {
+			accountRepository.creditBeneficiaries(account, contribution);
+			return rewardRepository.confirmReward(contribution, dining);
+		});
+	}
+}
@@ -0,0 +1,85 @@
+package rewards.internal;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+
+/**
+ * Runs the rewards of one account one at a time within this process, while rewards for other accounts run in
+ * parallel.
+ * <p>
+ * Each reward holds one of a fixed table of locks while the reward network it decorates runs, chosen by the hash of
+ * the dining's credit card number. Two dinings on the same card always take the same lock, so the second reads the
+ * account only after the first has committed, instead of losing the version check and being retried. Dinings on
+ * other cards mostly take other locks; the table is sized once, so nothing is allocated per account and the lock
+ * count does not grow with them.
+ * <p>
+ * The lock is taken on the credit card, the only key a dining has before the account is read. An account with
+ * several cards can still have rewards for each running at once; the account version check catches those. For the
+ * same reason, wrap the transactional network directly, so the lock is held until the transaction commits, and put
+ * any retries outside, so no lock is held while waiting to retry.
+ */
+public class StripedLockRewardNetwork implements RewardNetwork {
+
+	private final RewardNetwork rewardNetwork;
+
+	private final ReentrantLock[] locks;
+
+	private final int mask;
+
+	private final LongAdder contended = new LongAdder();
+
+	/**
+	 * @param rewardNetwork the reward network to run one reward at a time per account
+	 * @param stripes the number of locks, rounded up to a power of two
+	 */
+	public StripedLockRewardNetwork(RewardNetwork rewardNetwork, int stripes) {
+		if (stripes < 1) {
+			throw new IllegalArgumentException("stripes must be at least 1");
+		}
+		this.rewardNetwork = rewardNetwork;
+		this.locks = new ReentrantLock[stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1];
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new ReentrantLock();
+		}
+		this.mask = locks.length - 1;
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		ReentrantLock lock = locks[stripeFor(dining.getCreditCardNumber())];
+		if (!lock.tryLock()) {
+			contended.increment();
+			lock.lock();
+		}
+		try {
+			return rewardNetwork.rewardAccountFor(dining);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Spreads the high bits of the hash into the low ones, which pick the stripe.
+	 */
+	int stripeFor(String creditCardNumber) {
+		int hash = creditCardNumber.hashCode();
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	/**
+	 * The number of locks.
+	 */
+	public int getStripes() {
+		return locks.length;
+	}
+
+	/**
+	 * The number of rewards that had to wait for another holding their lock.
+	 */
+	public long getContended() {
+		return contended.sum();
+	}
+}
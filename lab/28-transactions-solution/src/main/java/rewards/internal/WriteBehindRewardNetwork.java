@@ -0,0 +1,435 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rewards.AccountContribution;
+import rewards.AccountContribution.Distribution;
+import rewards.AsynchronousRewardNetwork;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.internal.account.Account;
+import rewards.internal.account.AccountRepository;
+import rewards.internal.reward.RewardRepository;
+import rewards.internal.reward.UncreditedReward;
+
+import common.money.MonetaryAmount;
+
+/**
+ * Rewards an Account for Dining at a Restaurant, recording each reward at once but crediting beneficiary savings
+ * behind, a batch of rewards at a time.
+ * <p>
+ * Each reward is computed and its T_REWARD row inserted in a transaction of its own, marked as not yet credited; the
+ * reward is confirmed once that commits, and no T_ACCOUNT_BENEFICIARY row is touched. Its contribution is buffered in
+ * memory instead. Every {@link #setFlushIntervalMillis(long) interval}, or as soon as
+ * {@link #setMaxBufferedRewards(int) enough rewards} are buffered, one transaction marks the buffered rewards credited
+ * and adds up their distributions, crediting each account's beneficiaries once with the sum. An account dined on many
+ * times a second then has its savings updated once a flush rather than once a reward.
+ * <p>
+ * T_REWARD is the record of what is owed. A reward is credited in the same transaction that marks it, and only if it
+ * was still unmarked, so a flush that fails, or fails after committing, can be tried again without crediting
+ * anything twice. After a crash, {@link #start()} finds the rewards still unmarked and credits them before taking
+ * new ones, distributing each by the account's allocations as they are then.
+ * <p>
+ * If flushes fall behind, or keep failing, the buffer stops growing at its {@link #setBufferCapacity(int) capacity}:
+ * callers then start a flush and wait up to an interval for room, and are refused if none is made.
+ * <p>
+ * Savings in the database lag the rewards confirmed by up to an interval. Since only differences are written, other
+ * writers of savings can run alongside, and so can other instances of this network.
+ */
+public class WriteBehindRewardNetwork implements AsynchronousRewardNetwork, AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteBehindRewardNetwork.class);
+
+	private final AccountRepository accountRepository;
+
+	private final RewardContextRepository rewardContextRepository;
+
+	private final RewardRepository rewardRepository;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private long flushIntervalMillis = 1000;
+
+	private int maxBufferedRewards = 10_000;
+
+	private int bufferCapacity = 100_000;
+
+	private final Object bufferLock = new Object();
+
+	private List<BufferedReward> buffer = new ArrayList<BufferedReward>();
+
+	// Taken from the buffer by a flush still running; they take up room until it commits
+	private int flushing;
+
+	private final AtomicBoolean earlyFlushScheduled = new AtomicBoolean();
+
+	private final Object flushLock = new Object();
+
+	private volatile boolean running;
+
+	private ScheduledExecutorService flusher;
+
+	private final LongAdder rewards = new LongAdder();
+
+	private final LongAdder flushes = new LongAdder();
+
+	private final LongAdder credits = new LongAdder();
+
+	/**
+	 * Creates a new reward network.
+	 * @param accountRepository the repository for crediting rewarded accounts, and loading them to recover
+	 * @param rewardContextRepository the repository for loading the account and restaurant together
+	 * @param rewardRepository the repository for recording rewards and which have been credited
+	 * @param transactionManager the transaction manager for each reward and each flush
+	 */
+	public WriteBehindRewardNetwork(AccountRepository accountRepository,
+			RewardContextRepository rewardContextRepository, RewardRepository rewardRepository,
+			PlatformTransactionManager transactionManager) {
+		this.accountRepository = accountRepository;
+		this.rewardContextRepository = rewardContextRepository;
+		this.rewardRepository = rewardRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * How often buffered rewards are credited. Defaults to one second.
+	 */
+	public void setFlushIntervalMillis(long flushIntervalMillis) {
+		this.flushIntervalMillis = flushIntervalMillis;
+	}
+
+	/**
+	 * How many rewards may be buffered before they are credited without waiting for the interval. Defaults to 10,000.
+	 */
+	public void setMaxBufferedRewards(int maxBufferedRewards) {
+		this.maxBufferedRewards = maxBufferedRewards;
+	}
+
+	/**
+	 * How many rewards may be buffered before callers have to wait for a flush to make room. Defaults to 100,000.
+	 */
+	public void setBufferCapacity(int bufferCapacity) {
+		this.bufferCapacity = bufferCapacity;
+	}
+
+	/**
+	 * Credits the rewards left uncredited by a crash, and starts flushing.
+	 */
+	public synchronized void start() {
+		if (running) {
+			return;
+		}
+		int recovered = recover();
+		if (recovered > 0) {
+			logger.info("Credited {} rewards left uncredited", recovered);
+		}
+		running = true;
+		flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "reward-savings-flush");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops taking rewards and credits those still buffered. Any that cannot be are credited on the next start.
+	 */
+	@Override
+	public void close() throws InterruptedException {
+		ScheduledExecutorService flusher;
+		synchronized (this) {
+			running = false;
+			flusher = this.flusher;
+			this.flusher = null;
+		}
+		if (flusher != null) {
+			flusher.shutdown();
+			flusher.awaitTermination(1, TimeUnit.MINUTES);
+			flushQuietly();
+		}
+	}
+
+	public RewardConfirmation rewardAccountFor(Dining dining) {
+		if (!running) {
+			throw new IllegalStateException("Write-behind reward network is not running");
+		}
+		awaitRoom();
+		BufferedReward reward = transactionTemplate.execute(status -> {
+			RewardContext context = rewardContextRepository.findRewardContext(dining.getCreditCardNumber(),
+					dining.getMerchantNumber());
+			Account account = context.getAccount();
+			MonetaryAmount amount = context.getRestaurant().calculateBenefitFor(account, dining);
+			AccountContribution contribution = account.makeContribution(amount);
+			return new BufferedReward(account, rewardRepository.confirmUncreditedReward(contribution, dining));
+		});
+		bufferOnceCommitted(reward);
+		rewards.increment();
+		return reward.confirmation;
+	}
+
+	/**
+	 * Makes the reward on the calling thread, in a transaction of its own, which is short: the savings are credited
+	 * later. The result is complete on return.
+	 */
+	@Override
+	public CompletableFuture<RewardConfirmation> rewardAccountForAsync(Dining dining) {
+		CompletableFuture<RewardConfirmation> result = new CompletableFuture<RewardConfirmation>();
+		try {
+			result.complete(rewardAccountFor(dining));
+		} catch (RuntimeException e) {
+			result.completeExceptionally(e);
+		}
+		return result;
+	}
+
+	/**
+	 * Flushes, and waits up to an interval for the buffer to drop below its capacity, so rewards are not made faster
+	 * than they can be credited.
+	 */
+	private void awaitRoom() {
+		synchronized (bufferLock) {
+			if (buffer.size() + flushing < bufferCapacity) {
+				return;
+			}
+		}
+		if (earlyFlushScheduled.compareAndSet(false, true)) {
+			flushSoon();
+		}
+		long deadline = System.currentTimeMillis() + flushIntervalMillis;
+		synchronized (bufferLock) {
+			while (buffer.size() + flushing >= bufferCapacity) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0 || !running) {
+					throw new IllegalStateException("Write-behind buffer is full: " + (buffer.size() + flushing)
+							+ " rewards are waiting to be credited");
+				}
+				try {
+					bufferLock.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted waiting for room in the write-behind buffer", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A reward made inside the caller's transaction may yet be rolled back, so it is not buffered until it commits.
+	 * If it commits and is never buffered, it is credited on the next start.
+	 */
+	private void bufferOnceCommitted(BufferedReward reward) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					buffer(reward);
+				}
+			});
+		} else {
+			buffer(reward);
+		}
+	}
+
+	private void buffer(BufferedReward reward) {
+		int buffered;
+		synchronized (bufferLock) {
+			buffer.add(reward);
+			buffered = buffer.size();
+		}
+		// Once per flush, however many more arrive before it starts
+		if (buffered >= maxBufferedRewards && earlyFlushScheduled.compareAndSet(false, true)) {
+			flushSoon();
+		}
+	}
+
+	private synchronized void flushSoon() {
+		if (flusher != null) {
+			try {
+				flusher.execute(this::flushQuietly);
+			} catch (RejectedExecutionException e) {
+				// Closing, which flushes anyway
+			}
+		}
+	}
+
+	/**
+	 * Credits the buffered rewards, in one transaction. Runs every interval; call it to credit sooner.
+	 * @return the number of rewards credited
+	 */
+	public int flush() {
+		synchronized (flushLock) {
+			List<BufferedReward> batch;
+			synchronized (bufferLock) {
+				batch = buffer;
+				buffer = new ArrayList<BufferedReward>();
+				flushing = batch.size();
+				earlyFlushScheduled.set(false);
+			}
+			if (batch.isEmpty()) {
+				return 0;
+			}
+			try {
+				int credited = credit(batch);
+				flushes.increment();
+				synchronized (bufferLock) {
+					flushing = 0;
+					bufferLock.notifyAll();
+				}
+				return credited;
+			} catch (RuntimeException e) {
+				// Still unmarked, so keep them for the next flush
+				synchronized (bufferLock) {
+					batch.addAll(buffer);
+					buffer = batch;
+					flushing = 0;
+				}
+				throw e;
+			}
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			logger.warn("Buffered rewards could not be credited", e);
+		}
+	}
+
+	/**
+	 * Marks the rewards credited, and credits the beneficiaries of those that were not already, summed by account.
+	 */
+	private int credit(List<BufferedReward> batch) {
+		int credited = transactionTemplate.execute(status -> {
+			List<String> confirmationNumbers = new ArrayList<String>(batch.size());
+			for (BufferedReward reward : batch) {
+				confirmationNumbers.add(reward.confirmation.getConfirmationNumber());
+			}
+			Set<String> marked = rewardRepository.markCredited(confirmationNumbers);
+			Map<Long, List<BufferedReward>> byAccount = new LinkedHashMap<Long, List<BufferedReward>>();
+			for (BufferedReward reward : batch) {
+				if (marked.contains(reward.confirmation.getConfirmationNumber())) {
+					byAccount.computeIfAbsent(reward.account.getEntityId(), id -> new ArrayList<BufferedReward>())
+						.add(reward);
+				}
+			}
+			for (List<BufferedReward> rewards : byAccount.values()) {
+				Account account = rewards.get(0).account;
+				accountRepository.creditBeneficiaries(account, sumContributions(account, rewards));
+			}
+			return marked.size();
+		});
+		credits.add(credited);
+		return credited;
+	}
+
+	/**
+	 * Sums the distributions of an account's rewards into one contribution.
+	 */
+	private static AccountContribution sumContributions(Account account, List<BufferedReward> rewards) {
+		MonetaryAmount total = MonetaryAmount.zero();
+		Map<String, MonetaryAmount> credits = new LinkedHashMap<String, MonetaryAmount>();
+		for (BufferedReward reward : rewards) {
+			AccountContribution contribution = reward.confirmation.getAccountContribution();
+			total = total.add(contribution.getAmount());
+			for (Distribution distribution : contribution.getDistributions()) {
+				credits.merge(distribution.getBeneficiary(), distribution.getAmount(), MonetaryAmount::add);
+			}
+		}
+		Set<Distribution> distributions = new HashSet<Distribution>();
+		for (Map.Entry<String, MonetaryAmount> credit : credits.entrySet()) {
+			distributions.add(new Distribution(credit.getKey(), credit.getValue(),
+					account.getBeneficiary(credit.getKey()).getAllocationPercentage(),
+					account.getBeneficiary(credit.getKey()).getSavings()));
+		}
+		return new AccountContribution(account.getNumber(), total, distributions);
+	}
+
+	/**
+	 * Distributes the rewards left unmarked again, as when they were made, and credits them.
+	 */
+	private int recover() {
+		List<UncreditedReward> uncredited = rewardRepository.findUncreditedRewards();
+		if (uncredited.isEmpty()) {
+			return 0;
+		}
+		Map<String, Account> accountsByNumber = new HashMap<String, Account>();
+		for (Account account : accountRepository.findAllByCreditCard().values()) {
+			accountsByNumber.put(account.getNumber(), account);
+		}
+		List<BufferedReward> batch = new ArrayList<BufferedReward>(uncredited.size());
+		for (UncreditedReward reward : uncredited) {
+			Account account = accountsByNumber.get(reward.getAccountNumber());
+			if (account == null) {
+				throw new IllegalStateException(reward + " cannot be credited: the account no longer exists");
+			}
+			batch.add(new BufferedReward(account, new RewardConfirmation(reward.getConfirmationNumber(),
+					account.makeContribution(reward.getAmount()))));
+		}
+		return credit(batch);
+	}
+
+	/**
+	 * The number of rewards confirmed since the network started.
+	 */
+	public long getRewards() {
+		return rewards.sum();
+	}
+
+	/**
+	 * The number of flushes that credited savings.
+	 */
+	public long getFlushes() {
+		return flushes.sum();
+	}
+
+	/**
+	 * The number of rewards credited, including any recovered on start.
+	 */
+	public long getCredits() {
+		return credits.sum();
+	}
+
+	/**
+	 * The number of rewards confirmed but not yet credited.
+	 */
+	public int getBuffered() {
+		synchronized (bufferLock) {
+			return buffer.size();
+		}
+	}
+
+	private static class BufferedReward {
+
+		private final Account account;
+
+		private final RewardConfirmation confirmation;
+
+		BufferedReward(Account account, RewardConfirmation confirmation) {
+			this.account = account;
+			this.confirmation = confirmation;
+		}
+	}
+}
@@ -28,6 +28,8 @@ public class Account extends Entity {
 
 	private Set<Beneficiary> beneficiaries = new HashSet<Beneficiary>();
 
+	private int version;
+
 	@SuppressWarnings("unused")
 	private Account() {
 	}
@@ -56,6 +58,23 @@ public class Account extends Entity {
 		return name;
 	}
 
+	/**
+	 * Returns the version of this account as it was read. The repository increments it each time it writes the
+	 * beneficiaries, and refuses the write if the stored version has moved on in the meantime.
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Sets the version - should only be called by the repository responsible for reconstituting and updating this
+	 * account.
+	 * @param version the version as stored
+	 */
+	public void setVersion(int version) {
+		this.version = version;
+	}
+
 	/**
 	 * Add a single beneficiary with a 100% allocation percentage.
 	 * @param beneficiaryName the name of the beneficiary (should be unique)
@@ -1,5 +1,9 @@
 package rewards.internal.account;
 
+import java.util.Map;
+
+import rewards.AccountContribution;
+
 /**
  * Loads account aggregates. Called by the reward network to find and reconstitute Account entities from an external
  * form such as a set of RDMS rows.
@@ -15,6 +19,12 @@ public interface AccountRepository {
 	 */
 	public Account findByCreditCard(String creditCardNumber);
 
+	/**
+	 * Load every account, for callers that keep them all in memory.
+	 * @return the account objects, by each of their credit card numbers
+	 */
+	public Map<String, Account> findAllByCreditCard();
+
 	/**
 	 * Updates the 'savings' of each account beneficiary. The new savings balance contains the amount distributed for a
 	 * contribution made during a reward transaction.
@@ -23,7 +33,19 @@ public interface AccountRepository {
 	 * new Java Persistence API (JPA)) would remove the need for this explicit update operation as the ORM would take
 	 * care of applying relational updates to a modified Account entity automatically.
 	 * @param account the account whose beneficiary savings have changed
+	 * @throws org.springframework.dao.OptimisticLockingFailureException if the account was updated by someone else
+	 * after it was read
 	 */
 	public void updateBeneficiaries(Account account);
 
-}
\ No newline at end of file
+	/**
+	 * Adds the amounts distributed by a contribution to the savings of each account beneficiary. Unlike
+	 * {@link #updateBeneficiaries(Account)}, which writes balances computed from what was read, this applies the
+	 * differences, so concurrent contributions to the same account add up without either having to be retried. The
+	 * account version is still moved on, so that writers of balances notice.
+	 * @param account the account the contribution was made to
+	 * @param contribution the amounts distributed to each beneficiary
+	 */
+	public void creditBeneficiaries(Account account, AccountContribution contribution);
+
+}
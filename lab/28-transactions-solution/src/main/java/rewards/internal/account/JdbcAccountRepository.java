@@ -2,14 +2,24 @@ package rewards.internal.account;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.sql.DataSource;
 
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ResultSetExtractor;
 
+import rewards.AccountContribution;
+import rewards.AccountContribution.Distribution;
+
 import common.money.MonetaryAmount;
 import common.money.Percentage;
 
@@ -17,28 +27,85 @@ import common.money.Percentage;
  * Loads accounts from a data source using the JDBC API.
  */
 public class JdbcAccountRepository implements AccountRepository {
-	
+
+	private static final String SELECT_ACCOUNTS_SQL = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, "
+			+ "a.NAME as ACCOUNT_NAME, c.NUMBER as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, "
+			+ "b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS, "
+			+ "a.VERSION as ACCOUNT_VERSION "
+			+ "from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_ACCOUNT_CREDIT_CARD c "
+			+ "where ID = b.ACCOUNT_ID and ID = c.ACCOUNT_ID";
+
+	private static final String FIND_BY_CREDIT_CARD_SQL = SELECT_ACCOUNTS_SQL + " and c.NUMBER = ?";
+
+	private static final String FIND_ALL_SQL = SELECT_ACCOUNTS_SQL + " order by ID";
+
+	// Column positions in SELECT_ACCOUNTS_SQL. Reading by index skips the driver's label lookup on every row.
+	static final int ID = 1;
+	static final int ACCOUNT_NUMBER = 2;
+	static final int ACCOUNT_NAME = 3;
+	static final int CREDIT_CARD_NUMBER = 4;
+	static final int BENEFICIARY_NAME = 5;
+	static final int BENEFICIARY_ALLOCATION_PERCENTAGE = 6;
+	static final int BENEFICIARY_SAVINGS = 7;
+	static final int ACCOUNT_VERSION = 8;
+
+	/**
+	 * Moves the account to its next version, but only if nobody else has since it was read.
+	 */
+	private static final String UPDATE_VERSION_SQL = "update T_ACCOUNT set VERSION = VERSION + 1 where ID = ? and VERSION = ?";
+
+	private static final String INCREMENT_VERSION_SQL = "update T_ACCOUNT set VERSION = VERSION + 1 where ID = ?";
+
+	private static final String CREDIT_SAVINGS_SQL = "update T_ACCOUNT_BENEFICIARY set SAVINGS = SAVINGS + ? where ACCOUNT_ID = ? and NAME = ?";
+
+	private static final String UPDATE_SAVINGS_SQL = "update T_ACCOUNT_BENEFICIARY set SAVINGS = ? where ACCOUNT_ID = ? and NAME = ?";
+
 	private JdbcTemplate jdbcTemplate;
 
 	/**
 	 * Extracts an Account object from rows returned from a join of T_ACCOUNT and T_ACCOUNT_BENEFICIARY.
 	 */
-	private ResultSetExtractor<Account> accountExtractor = new AccountExtractor();
+	private final ResultSetExtractor<Account> accountExtractor = new AccountExtractor();
 
 	public void setDataSource(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
 	
 	public Account findByCreditCard(String creditCardNumber) {
-		String sql = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, c.NUMBER as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_ACCOUNT_CREDIT_CARD c where ID = b.ACCOUNT_ID and ID = c.ACCOUNT_ID and c.NUMBER = ?";
-		return jdbcTemplate.query(sql, new Object[] { creditCardNumber }, accountExtractor);
+		return jdbcTemplate.query(FIND_BY_CREDIT_CARD_SQL, new Object[] { creditCardNumber }, accountExtractor);
 	}
 
+	public Map<String, Account> findAllByCreditCard() {
+		return jdbcTemplate.query(FIND_ALL_SQL, this::mapAccountsByCreditCard);
+	}
+
+	/**
+	 * Writes the savings of each beneficiary, provided the account is still at the version it was read at. The
+	 * savings are computed from what was read, so writing them over a concurrent update would lose that update.
+	 * Checking the version instead of locking the account when it is read means readers never wait; a writer that
+	 * loses the race gets an {@link OptimisticLockingFailureException} and can try again from a fresh read.
+	 * 
+	 * @throws OptimisticLockingFailureException the account has been updated since it was read
+	 */
 	public void updateBeneficiaries(Account account) {
-		String sql = "update T_ACCOUNT_BENEFICIARY SET SAVINGS = ? where ACCOUNT_ID = ? and NAME = ?";
+		if (jdbcTemplate.update(UPDATE_VERSION_SQL, account.getEntityId(), account.getVersion()) == 0) {
+			throw new OptimisticLockingFailureException("Account " + account.getNumber() + " was updated after version "
+					+ account.getVersion() + " was read");
+		}
 		for (Beneficiary b : account.getBeneficiaries()) {
-			jdbcTemplate.update(sql, b.getSavings().asBigDecimal(), account.getEntityId(), b.getName());
+			jdbcTemplate.update(UPDATE_SAVINGS_SQL, b.getSavings().asBigDecimal(), account.getEntityId(), b.getName());
+		}
+		account.setVersion(account.getVersion() + 1);
+	}
+
+	public void creditBeneficiaries(Account account, AccountContribution contribution) {
+		jdbcTemplate.update(INCREMENT_VERSION_SQL, account.getEntityId());
+		List<Object[]> credits = new ArrayList<Object[]>(contribution.getDistributions().size());
+		for (Distribution distribution : contribution.getDistributions()) {
+			credits.add(new Object[] { distribution.getAmount().asBigDecimal(), account.getEntityId(),
+					distribution.getBeneficiary() });
 		}
+		jdbcTemplate.batchUpdate(CREDIT_SAVINGS_SQL, credits);
 	}
 
 	/**
@@ -53,11 +120,12 @@ public class JdbcAccountRepository implements AccountRepository {
 		Account account = null;
 		while (rs.next()) {
 			if (account == null) {
-				String number = rs.getString("ACCOUNT_NUMBER");
-				String name = rs.getString("ACCOUNT_NAME");
+				String number = rs.getString(ACCOUNT_NUMBER);
+				String name = rs.getString(ACCOUNT_NAME);
 				account = new Account(number, name);
 				// set internal entity identifier (primary key)
-				account.setEntityId(rs.getLong("ID"));
+				account.setEntityId(rs.getLong(ID));
+				account.setVersion(rs.getInt(ACCOUNT_VERSION));
 			}
 			account.restoreBeneficiary(mapBeneficiary(rs));
 		}
@@ -69,16 +137,44 @@ public class JdbcAccountRepository implements AccountRepository {
 	}
 
 	/**
-	 * Maps the beneficiary columns in a single row to an AllocatedBeneficiary object.
+	 * Map the rows of every account to Account aggregates. There is a row for each credit card and beneficiary of an
+	 * account, so an account with two cards has each beneficiary twice; only the first is restored.
+	 * 
+	 * @param rs the set of rows returned from the query, in account order
+	 * @return the mapped Account aggregates, by each of their credit card numbers
+	 * @throws SQLException an exception occurred extracting data from the result set
+	 */
+	private Map<String, Account> mapAccountsByCreditCard(ResultSet rs) throws SQLException {
+		Map<String, Account> accounts = new HashMap<String, Account>();
+		Account account = null;
+		Set<String> beneficiaryNames = new HashSet<String>();
+		while (rs.next()) {
+			if (account == null || account.getEntityId() != rs.getLong(ID)) {
+				account = new Account(rs.getString(ACCOUNT_NUMBER), rs.getString(ACCOUNT_NAME));
+				account.setEntityId(rs.getLong(ID));
+				account.setVersion(rs.getInt(ACCOUNT_VERSION));
+				beneficiaryNames.clear();
+			}
+			accounts.put(rs.getString(CREDIT_CARD_NUMBER), account);
+			if (beneficiaryNames.add(rs.getString(BENEFICIARY_NAME))) {
+				account.restoreBeneficiary(mapBeneficiary(rs));
+			}
+		}
+		return accounts;
+	}
+
+	/**
+	 * Maps the beneficiary columns in a single row to an AllocatedBeneficiary object. The decimal columns are read
+	 * as BigDecimals and wrapped directly, rather than formatted to text and parsed back.
 	 * 
 	 * @param rs the result set with its cursor positioned at the current row
 	 * @return an allocated beneficiary
 	 * @throws SQLException an exception occurred extracting data from the result set
 	 */
-	private Beneficiary mapBeneficiary(ResultSet rs) throws SQLException {
-		String name = rs.getString("BENEFICIARY_NAME");
-		MonetaryAmount savings = MonetaryAmount.valueOf(rs.getString("BENEFICIARY_SAVINGS"));
-		Percentage allocationPercentage = Percentage.valueOf(rs.getString("BENEFICIARY_ALLOCATION_PERCENTAGE"));
+	static Beneficiary mapBeneficiary(ResultSet rs) throws SQLException {
+		String name = rs.getString(BENEFICIARY_NAME);
+		MonetaryAmount savings = new MonetaryAmount(rs.getBigDecimal(BENEFICIARY_SAVINGS));
+		Percentage allocationPercentage = new Percentage(rs.getBigDecimal(BENEFICIARY_ALLOCATION_PERCENTAGE));
 		return new Beneficiary(name, allocationPercentage, savings);
 	}
 
@@ -0,0 +1,96 @@
+package rewards.internal.account;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import rewards.internal.RewardContext;
+import rewards.internal.RewardContextRepository;
+import rewards.internal.restaurant.JdbcRestaurantRepository;
+import rewards.internal.restaurant.Restaurant;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Loads a {@link RewardContext} with one query that joins the account, its beneficiaries and the restaurant. Only
+ * the columns the reward calculation uses are selected, so the account and restaurant come back without names.
+ * <p>
+ * Lives with the account repository because, like it, it reconstitutes the Account aggregate.
+ */
+public class JdbcRewardContextRepository implements RewardContextRepository {
+
+	private static final String SQL = "select a.ID as ACCOUNT_ID, a.NUMBER as ACCOUNT_NUMBER, "
+			+ "b.NAME as BENEFICIARY_NAME, b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, "
+			+ "b.SAVINGS as BENEFICIARY_SAVINGS, r.MERCHANT_NUMBER as MERCHANT_NUMBER, "
+			+ "r.BENEFIT_PERCENTAGE as BENEFIT_PERCENTAGE, r.BENEFIT_AVAILABILITY_POLICY as BENEFIT_AVAILABILITY_POLICY, "
+			+ "a.VERSION as ACCOUNT_VERSION "
+			+ "from T_ACCOUNT_CREDIT_CARD c join T_ACCOUNT a on a.ID = c.ACCOUNT_ID "
+			+ "join T_ACCOUNT_BENEFICIARY b on b.ACCOUNT_ID = a.ID "
+			+ "join T_RESTAURANT r on r.MERCHANT_NUMBER = ? "
+			+ "where c.NUMBER = ?";
+
+	// Column positions in SQL
+	private static final int ACCOUNT_ID = 1;
+	private static final int ACCOUNT_NUMBER = 2;
+	private static final int BENEFICIARY_NAME = 3;
+	private static final int BENEFICIARY_ALLOCATION_PERCENTAGE = 4;
+	private static final int BENEFICIARY_SAVINGS = 5;
+	private static final int MERCHANT_NUMBER = 6;
+	private static final int BENEFIT_PERCENTAGE = 7;
+	private static final int BENEFIT_AVAILABILITY_POLICY = 8;
+	private static final int ACCOUNT_VERSION = 9;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private final ResultSetExtractor<RewardContext> contextExtractor = new RewardContextExtractor();
+
+	public void setDataSource(DataSource dataSource) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	public RewardContext findRewardContext(String creditCardNumber, String merchantNumber) {
+		return jdbcTemplate.query(SQL, contextExtractor, merchantNumber, creditCardNumber);
+	}
+
+	/**
+	 * Maps the rows of the join - one per beneficiary, each repeating the account and restaurant columns.
+	 */
+	private RewardContext mapRewardContext(ResultSet rs) throws SQLException {
+		Account account = null;
+		Restaurant restaurant = null;
+		while (rs.next()) {
+			if (account == null) {
+				account = new Account(rs.getString(ACCOUNT_NUMBER), null);
+				account.setEntityId(rs.getLong(ACCOUNT_ID));
+				account.setVersion(rs.getInt(ACCOUNT_VERSION));
+
+				restaurant = new Restaurant(rs.getString(MERCHANT_NUMBER), null);
+				restaurant.setBenefitPercentage(new Percentage(rs.getBigDecimal(BENEFIT_PERCENTAGE)));
+				restaurant.setBenefitAvailabilityPolicy(JdbcRestaurantRepository
+						.benefitAvailabilityPolicyFor(rs.getString(BENEFIT_AVAILABILITY_POLICY)));
+			}
+			account.restoreBeneficiary(new Beneficiary(rs.getString(BENEFICIARY_NAME),
+					new Percentage(rs.getBigDecimal(BENEFICIARY_ALLOCATION_PERCENTAGE)),
+					new MonetaryAmount(rs.getBigDecimal(BENEFICIARY_SAVINGS))));
+		}
+		if (account == null) {
+			// no such credit card or no such restaurant
+			throw new EmptyResultDataAccessException(1);
+		}
+		return new RewardContext(account, restaurant);
+	}
+
+	private class RewardContextExtractor implements ResultSetExtractor<RewardContext> {
+
+		public RewardContext extractData(ResultSet rs) throws SQLException {
+			return mapRewardContext(rs);
+		}
+
+	}
+}
@@ -0,0 +1,85 @@
+package rewards.internal.account;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import rewards.AccountContribution;
+import rewards.internal.snapshot.RewardSnapshot;
+import rewards.internal.snapshot.RewardSnapshotFile;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+
+/**
+ * Loads accounts from the memory-mapped {@link RewardSnapshot} published at a file, instead of the database, and
+ * passes the updates on to a repository that writes them.
+ * <p>
+ * Accounts are as they were when the snapshot was written, savings and version included. Balances computed from them
+ * are therefore stale once anything has been rewarded since: {@link #updateBeneficiaries(Account)} will fail its
+ * version check. Use with reward networks that {@link #creditBeneficiaries(Account, AccountContribution) credit}
+ * the amounts distributed instead.
+ */
+public class SnapshotAccountRepository implements AccountRepository {
+
+	private final RewardSnapshotFile snapshotFile;
+
+	private final AccountRepository writeRepository;
+
+	/**
+	 * Creates a new snapshot account repository.
+	 * @param snapshotFile the file the snapshots are published at
+	 * @param writeRepository the repository to write beneficiary savings to
+	 */
+	public SnapshotAccountRepository(RewardSnapshotFile snapshotFile, AccountRepository writeRepository) {
+		this.snapshotFile = snapshotFile;
+		this.writeRepository = writeRepository;
+	}
+
+	public Account findByCreditCard(String creditCardNumber) {
+		RewardSnapshot.AccountRecord record = snapshotFile.current().findAccount(creditCardNumber);
+		if (record == null) {
+			throw new EmptyResultDataAccessException(1);
+		}
+		return mapAccount(record);
+	}
+
+	public Map<String, Account> findAllByCreditCard() {
+		RewardSnapshot snapshot = snapshotFile.current();
+		Map<String, Account> accountsByCreditCard = new HashMap<String, Account>();
+		// An account with several cards is restored once
+		Map<Long, Account> accountsById = new HashMap<Long, Account>();
+		for (String creditCardNumber : snapshot.getCreditCardNumbers()) {
+			RewardSnapshot.AccountRecord record = snapshot.findAccount(creditCardNumber);
+			Account account = accountsById.computeIfAbsent(record.getId(), id -> mapAccount(record));
+			accountsByCreditCard.put(creditCardNumber, account);
+		}
+		return accountsByCreditCard;
+	}
+
+	public void updateBeneficiaries(Account account) {
+		writeRepository.updateBeneficiaries(account);
+	}
+
+	public void creditBeneficiaries(Account account, AccountContribution contribution) {
+		writeRepository.creditBeneficiaries(account, contribution);
+	}
+
+	/**
+	 * Maps an account record of a snapshot to a fully-reconstituted Account aggregate.
+	 * 
+	 * @param record the account as it is in the snapshot
+	 */
+	static Account mapAccount(RewardSnapshot.AccountRecord record) {
+		Account account = new Account(record.getNumber(), record.getName());
+		account.setEntityId(record.getId());
+		account.setVersion(record.getVersion());
+		for (int i = 0; i < record.getBeneficiaryCount(); i++) {
+			account.restoreBeneficiary(new Beneficiary(record.getBeneficiaryName(i),
+					new Percentage(record.getBeneficiaryAllocationPercentage(i)),
+					new MonetaryAmount(record.getBeneficiarySavings(i))));
+		}
+		return account;
+	}
+}
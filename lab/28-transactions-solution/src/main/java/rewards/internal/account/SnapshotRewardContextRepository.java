@@ -0,0 +1,36 @@
+package rewards.internal.account;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import rewards.internal.RewardContext;
+import rewards.internal.RewardContextRepository;
+import rewards.internal.restaurant.SnapshotRestaurantRepository;
+import rewards.internal.snapshot.RewardSnapshot;
+import rewards.internal.snapshot.RewardSnapshotFile;
+
+/**
+ * Loads a {@link RewardContext} from the memory-mapped {@link RewardSnapshot} published at a file, without going to
+ * the database. The account and restaurant are always read from the same snapshot.
+ * <p>
+ * Lives with the account repository because, like it, it reconstitutes the Account aggregate.
+ */
+public class SnapshotRewardContextRepository implements RewardContextRepository {
+
+	private final RewardSnapshotFile snapshotFile;
+
+	public SnapshotRewardContextRepository(RewardSnapshotFile snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+
+	public RewardContext findRewardContext(String creditCardNumber, String merchantNumber) {
+		RewardSnapshot snapshot = snapshotFile.current();
+		RewardSnapshot.AccountRecord account = snapshot.findAccount(creditCardNumber);
+		RewardSnapshot.RestaurantRecord restaurant = snapshot.findRestaurant(merchantNumber);
+		if (account == null || restaurant == null) {
+			// no such credit card or no such restaurant
+			throw new EmptyResultDataAccessException(1);
+		}
+		return new RewardContext(SnapshotAccountRepository.mapAccount(account),
+				SnapshotRestaurantRepository.mapRestaurant(restaurant));
+	}
+}
@@ -0,0 +1,184 @@
+package rewards.internal.dining;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import common.datetime.SimpleDate;
+import common.money.MonetaryAmount;
+import rewards.Dining;
+
+/**
+ * The layout of the records in a merchant dining file: one dining per line, in ASCII.
+ * <p>
+ * A record is parsed straight from the bytes of the mapped file. The amount and date are read digit by digit; only the
+ * credit card and merchant numbers, which a {@link Dining} holds as strings, are copied out of the buffer.
+ */
+public abstract class DiningFileFormat {
+
+	/**
+	 * amount,creditCardNumber,merchantNumber,yyyy-MM-dd[,merchantReference] - for example
+	 * 100.00,1234123412341234,1234567890,2020-01-31,R-1001. Fields are not quoted.
+	 */
+	public static final DiningFileFormat CSV = new Csv();
+
+	/**
+	 * Fixed-width fields: amount, credit card number, merchant number, each padded with spaces to the given width, then
+	 * the date as yyyyMMdd.
+	 */
+	public static DiningFileFormat fixedWidth(int amountWidth, int creditCardNumberWidth, int merchantNumberWidth) {
+		return new FixedWidth(amountWidth, creditCardNumberWidth, merchantNumberWidth);
+	}
+
+	/**
+	 * Parses the record between the given positions, not including its line terminator.
+	 * @throws IllegalArgumentException if the record is malformed
+	 */
+	abstract Dining parse(ByteBuffer buffer, int start, int end);
+
+	/**
+	 * Reads an amount such as 100.00 or 8.5, ignoring surrounding spaces.
+	 */
+	static MonetaryAmount parseAmount(ByteBuffer buffer, int start, int end) {
+		start = skipSpaces(buffer, start, end);
+		end = trimSpaces(buffer, start, end);
+		long unscaled = 0;
+		int scale = -1;
+		int digits = 0;
+		for (int i = start; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b == '.' && scale < 0) {
+				scale = 0;
+			} else if (b >= '0' && b <= '9' && digits < 18) {
+				unscaled = unscaled * 10 + (b - '0');
+				digits++;
+				if (scale >= 0) {
+					scale++;
+				}
+			} else {
+				throw new IllegalArgumentException("Bad amount '" + ascii(buffer, start, end) + "'");
+			}
+		}
+		if (digits == 0) {
+			throw new IllegalArgumentException("Missing amount");
+		}
+		return new MonetaryAmount(BigDecimal.valueOf(unscaled, Math.max(scale, 0)));
+	}
+
+	/**
+	 * Reads a non-negative number of exactly the given digits.
+	 */
+	static int parseDigits(ByteBuffer buffer, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			byte b = buffer.get(i);
+			if (b < '0' || b > '9') {
+				throw new IllegalArgumentException("Bad digits '" + ascii(buffer, start, end) + "'");
+			}
+			value = value * 10 + (b - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Copies a field out as a string, without surrounding spaces.
+	 */
+	static String ascii(ByteBuffer buffer, int start, int end) {
+		start = skipSpaces(buffer, start, end);
+		end = trimSpaces(buffer, start, end);
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	private static int skipSpaces(ByteBuffer buffer, int start, int end) {
+		while (start < end && buffer.get(start) == ' ') {
+			start++;
+		}
+		return start;
+	}
+
+	private static int trimSpaces(ByteBuffer buffer, int start, int end) {
+		while (end > start && buffer.get(end - 1) == ' ') {
+			end--;
+		}
+		return end;
+	}
+
+	private static String required(String field, String name) {
+		if (field.isEmpty()) {
+			throw new IllegalArgumentException("Missing " + name);
+		}
+		return field;
+	}
+
+	private static class Csv extends DiningFileFormat {
+
+		@Override
+		Dining parse(ByteBuffer buffer, int start, int end) {
+			int amountEnd = indexOf(buffer, ',', start, end);
+			int cardEnd = indexOf(buffer, ',', amountEnd + 1, end);
+			int merchantEnd = indexOf(buffer, ',', cardEnd + 1, end);
+			int date = merchantEnd + 1;
+			int dateEnd = date + 10;
+			String merchantReference = null;
+			if (end > dateEnd && buffer.get(dateEnd) == ',') {
+				merchantReference = ascii(buffer, dateEnd + 1, end);
+				end = dateEnd;
+			}
+			if (end - date != 10 || buffer.get(date + 4) != '-' || buffer.get(date + 7) != '-') {
+				throw new IllegalArgumentException("Bad date '" + ascii(buffer, date, end) + "', expected yyyy-MM-dd");
+			}
+			return new Dining(parseAmount(buffer, start, amountEnd),
+					required(ascii(buffer, amountEnd + 1, cardEnd), "credit card number"),
+					required(ascii(buffer, cardEnd + 1, merchantEnd), "merchant number"),
+					new SimpleDate(parseDigits(buffer, date + 5, date + 7), parseDigits(buffer, date + 8, date + 10),
+							parseDigits(buffer, date, date + 4)),
+					merchantReference == null || merchantReference.isEmpty() ? null : merchantReference);
+		}
+
+		private static int indexOf(ByteBuffer buffer, char c, int start, int end) {
+			for (int i = start; i < end; i++) {
+				if (buffer.get(i) == c) {
+					return i;
+				}
+			}
+			throw new IllegalArgumentException("Expected 4 comma-separated fields");
+		}
+	}
+
+	private static class FixedWidth extends DiningFileFormat {
+
+		private static final int DATE_WIDTH = 8;
+
+		private final int amountWidth;
+
+		private final int creditCardNumberWidth;
+
+		private final int merchantNumberWidth;
+
+		FixedWidth(int amountWidth, int creditCardNumberWidth, int merchantNumberWidth) {
+			this.amountWidth = amountWidth;
+			this.creditCardNumberWidth = creditCardNumberWidth;
+			this.merchantNumberWidth = merchantNumberWidth;
+		}
+
+		@Override
+		Dining parse(ByteBuffer buffer, int start, int end) {
+			int card = start + amountWidth;
+			int merchant = card + creditCardNumberWidth;
+			int date = merchant + merchantNumberWidth;
+			if (end - date != DATE_WIDTH) {
+				throw new IllegalArgumentException("Expected " + (date + DATE_WIDTH - start) + " characters, found "
+						+ (end - start));
+			}
+			return new Dining(parseAmount(buffer, start, card),
+					required(ascii(buffer, card, merchant), "credit card number"),
+					required(ascii(buffer, merchant, date), "merchant number"),
+					new SimpleDate(parseDigits(buffer, date + 4, date + 6), parseDigits(buffer, date + 6, date + 8),
+							parseDigits(buffer, date, date + 4)));
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package rewards.internal.dining;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+
+import rewards.AsynchronousRewardNetwork;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+
+/**
+ * Rewards the dinings in a merchant dining file, a chunk at a time, and can pick up where a failed import stopped.
+ * <p>
+ * Each chunk of dinings is handed to the reward network with
+ * {@link AsynchronousRewardNetwork#rewardAccountForAsync(Dining)}, so a network that rewards on several threads makes
+ * the chunk's rewards in parallel. Once every reward in the chunk has been made, the byte offset just past the chunk
+ * is written to the checkpoint file. A later import of the same file starts from that offset; once the whole file is
+ * imported, importing it again rewards nothing.
+ * <p>
+ * If a reward fails, the import stops and leaves the checkpoint at the start of the chunk. Other rewards in that
+ * chunk may already have been made, and the chunk is replayed when the import is restarted; only the chunk in flight
+ * is ever repeated. A dining with a merchant reference that was rewarded before is refused by the network with a
+ * {@link DuplicateKeyException}, which the importer counts as already rewarded and moves past. One without is
+ * rewarded again.
+ */
+public class DiningFileImporter {
+
+	private static final Logger logger = LoggerFactory.getLogger(DiningFileImporter.class);
+
+	private final AsynchronousRewardNetwork rewardNetwork;
+
+	private final DiningFileFormat format;
+
+	private int chunkSize = 1000;
+
+	private final LongAdder alreadyRewarded = new LongAdder();
+
+	/**
+	 * Creates a new importer.
+	 * @param rewardNetwork the reward network to reward each dining with
+	 * @param format the layout of the records in the files to import
+	 */
+	public DiningFileImporter(AsynchronousRewardNetwork rewardNetwork, DiningFileFormat format) {
+		this.rewardNetwork = rewardNetwork;
+		this.format = format;
+	}
+
+	/**
+	 * How many dinings are rewarded between checkpoints. Defaults to 1000.
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * The number of dinings refused by the network as already rewarded, typically by replaying a chunk.
+	 */
+	public long getAlreadyRewarded() {
+		return alreadyRewarded.sum();
+	}
+
+	/**
+	 * Imports a file, checkpointing to the file's name with .checkpoint appended.
+	 * @return the number of dinings rewarded
+	 */
+	public long importFile(File file) throws IOException {
+		return importFile(file, new File(file.getPath() + ".checkpoint"));
+	}
+
+	/**
+	 * Imports a file from the offset in the checkpoint file, if there is one, or else from the start.
+	 * @return the number of dinings rewarded
+	 * @throws IOException if a file cannot be read, the checkpoint is for a file of another size, or a record is
+	 * malformed
+	 */
+	public long importFile(File file, File checkpoint) throws IOException {
+		long start = readCheckpoint(file, checkpoint);
+		long skippedBefore = alreadyRewarded.sum();
+		long rewarded = 0;
+		try (DiningFileReader reader = new DiningFileReader(file, format, start)) {
+			List<Dining> chunk = new ArrayList<Dining>(chunkSize);
+			for (Dining dining = reader.next(); dining != null; dining = reader.next()) {
+				chunk.add(dining);
+				if (chunk.size() == chunkSize) {
+					rewarded += reward(chunk);
+					writeCheckpoint(checkpoint, reader.getSize(), reader.getOffset());
+				}
+			}
+			rewarded += reward(chunk);
+			writeCheckpoint(checkpoint, reader.getSize(), reader.getOffset());
+		}
+		logger.info("Rewarded {} dinings from {}, starting at byte {}; {} were already rewarded", rewarded, file, start,
+				alreadyRewarded.sum() - skippedBefore);
+		return rewarded;
+	}
+
+	/**
+	 * Rewards every dining in the chunk and empties it. Dinings already rewarded are skipped.
+	 * @return the number rewarded
+	 */
+	private int reward(List<Dining> chunk) {
+		List<CompletableFuture<RewardConfirmation>> results = new ArrayList<CompletableFuture<RewardConfirmation>>(
+				chunk.size());
+		for (Dining dining : chunk) {
+			results.add(rewardNetwork.rewardAccountForAsync(dining));
+		}
+		int rewarded = 0;
+		RuntimeException failure = null;
+		for (CompletableFuture<RewardConfirmation> result : results) {
+			try {
+				result.join();
+				rewarded++;
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof DuplicateKeyException) {
+					alreadyRewarded.increment();
+				} else if (failure == null) {
+					failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		chunk.clear();
+		return rewarded;
+	}
+
+	/**
+	 * Reads the offset to start from.
+	 */
+	static long readCheckpoint(File file, File checkpoint) throws IOException {
+		if (!checkpoint.exists()) {
+			return 0;
+		}
+		String[] fields = new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.US_ASCII).trim()
+			.split(" ");
+		try {
+			long size = Long.parseLong(fields[0]);
+			long offset = Long.parseLong(fields[1]);
+			if (size != file.length()) {
+				throw new IOException("Checkpoint " + checkpoint + " is for a file of " + size + " bytes, but " + file
+						+ " has " + file.length());
+			}
+			return offset;
+		} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Unreadable checkpoint " + checkpoint, e);
+		}
+	}
+
+	/**
+	 * Replaces the checkpoint in one atomic step, so a crash leaves either the old offset or the new one.
+	 */
+	static void writeCheckpoint(File checkpoint, long size, long offset) throws IOException {
+		Path target = checkpoint.getAbsoluteFile().toPath();
+		Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.wrap((size + " " + offset + "\n").getBytes(StandardCharsets.US_ASCII));
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				// On disk before the rename, or a crash could leave the new name on an empty file
+				channel.force(true);
+			}
+			Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package rewards.internal.dining;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import rewards.Dining;
+
+/**
+ * Reads the dinings in a merchant dining file one after another, from a given byte offset.
+ * <p>
+ * The file is memory-mapped a window at a time, so files of any size are read without copying them onto the heap. A
+ * record that runs past the end of a window is read again from a window starting at that record. Blank lines are
+ * skipped, and lines may end with either LF or CRLF.
+ */
+public class DiningFileReader implements Closeable {
+
+	/**
+	 * The default window size, 64MB.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private final FileChannel channel;
+
+	private final DiningFileFormat format;
+
+	private final long size;
+
+	private final int windowSize;
+
+	private MappedByteBuffer window;
+
+	private long windowStart;
+
+	private long offset;
+
+	/**
+	 * Opens a file to read from the given offset, which must be the start of a record.
+	 */
+	public DiningFileReader(File file, DiningFileFormat format, long offset) throws IOException {
+		this(file, format, offset, DEFAULT_WINDOW_SIZE);
+	}
+
+	DiningFileReader(File file, DiningFileFormat format, long offset, int windowSize) throws IOException {
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.format = format;
+		this.size = channel.size();
+		this.windowSize = windowSize;
+		if (offset < 0 || offset > size) {
+			channel.close();
+			throw new IOException("Offset " + offset + " is outside " + file + " (" + size + " bytes)");
+		}
+		this.offset = offset;
+	}
+
+	/**
+	 * Reads the next dining.
+	 * @return the dining, or null at the end of the file
+	 * @throws IOException if the record is malformed, or longer than a window
+	 */
+	public Dining next() throws IOException {
+		while (offset < size) {
+			if (window == null || offset >= windowStart + window.limit()) {
+				map(offset);
+			}
+			int start = (int) (offset - windowStart);
+			int end = indexOfLineFeed(start);
+			if (end < 0) {
+				if (windowStart + window.limit() < size) {
+					if (start == 0) {
+						throw new IOException("Dining record at byte " + offset + " is longer than " + windowSize
+								+ " bytes");
+					}
+					map(offset);
+					continue;
+				}
+				// The last line, without a line feed
+				end = window.limit();
+			}
+			long recordOffset = offset;
+			offset = windowStart + Math.min(end + 1, window.limit());
+			int recordEnd = end > start && window.get(end - 1) == '\r' ? end - 1 : end;
+			if (recordEnd == start) {
+				continue;
+			}
+			try {
+				return format.parse(window, start, recordEnd);
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Malformed dining record at byte " + recordOffset + ": " + e.getMessage(), e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The offset just past the last dining read, where reading would start again.
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * The size of the file.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private int indexOfLineFeed(int start) {
+		for (int i = start, limit = window.limit(); i < limit; i++) {
+			if (window.get(i) == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void map(long position) throws IOException {
+		window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+		windowStart = position;
+	}
+}
@@ -0,0 +1,90 @@
+package rewards.internal.dining;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+
+import rewards.Dining;
+
+/**
+ * Identifies a dining however many times it is sent: a SHA-256 digest of its credit card number, merchant number,
+ * merchant reference, amount and date.
+ * <p>
+ * Only a dining with a merchant reference has a fingerprint. Without one, a dining sent twice cannot be told from two
+ * meals of the same price, on the same card, at the same restaurant and on the same day.
+ * <p>
+ * A value object. Immutable.
+ */
+public final class DiningFingerprint {
+
+	private final long high;
+
+	private final long low;
+
+	private final String hex;
+
+	private DiningFingerprint(byte[] digest) {
+		ByteBuffer buffer = ByteBuffer.wrap(digest);
+		this.high = buffer.getLong();
+		this.low = buffer.getLong();
+		StringBuilder hex = new StringBuilder(digest.length * 2);
+		for (byte b : digest) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		this.hex = hex.toString();
+	}
+
+	/**
+	 * Returns the fingerprint of a dining, or null if the dining has no merchant reference.
+	 */
+	public static DiningFingerprint of(Dining dining) {
+		if (dining.getMerchantReference() == null) {
+			return null;
+		}
+		// 100.0 and 100.00 are the same amount
+		String amount = dining.getAmount().asBigDecimal().stripTrailingZeros().toPlainString();
+		String date = new SimpleDateFormat("yyyy-MM-dd").format(dining.getDate().asDate());
+		String key = dining.getCreditCardNumber() + '|' + dining.getMerchantNumber() + '|'
+				+ dining.getMerchantReference() + '|' + amount + '|' + date;
+		try {
+			MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+			return new DiningFingerprint(sha256.digest(key.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Every Java platform has SHA-256", e);
+		}
+	}
+
+	/**
+	 * The first 64 bits of the digest.
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * The second 64 bits of the digest.
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	public boolean equals(Object o) {
+		if (!(o instanceof DiningFingerprint)) {
+			return false;
+		}
+		return hex.equals(((DiningFingerprint) o).hex);
+	}
+
+	public int hashCode() {
+		return (int) high;
+	}
+
+	/**
+	 * The digest in hex: 64 characters, as stored with each reward.
+	 */
+	public String toString() {
+		return hex;
+	}
+}
@@ -2,6 +2,7 @@ package rewards.internal.restaurant;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.List;
 
 import javax.sql.DataSource;
 
@@ -18,20 +19,35 @@ import common.money.Percentage;
  */
 public class JdbcRestaurantRepository implements RestaurantRepository {
 
+	private static final String FIND_BY_MERCHANT_NUMBER_SQL = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, "
+			+ "BENEFIT_AVAILABILITY_POLICY from T_RESTAURANT where MERCHANT_NUMBER = ?";
+
+	private static final String FIND_ALL_SQL = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, "
+			+ "BENEFIT_AVAILABILITY_POLICY from T_RESTAURANT order by MERCHANT_NUMBER";
+
+	// Column positions in FIND_BY_MERCHANT_NUMBER_SQL and FIND_ALL_SQL
+	static final int MERCHANT_NUMBER = 1;
+	static final int NAME = 2;
+	static final int BENEFIT_PERCENTAGE = 3;
+	static final int BENEFIT_AVAILABILITY_POLICY = 4;
+
 	private JdbcTemplate jdbcTemplate;
 
 	/**
 	 * Maps a row returned from a query of T_RESTAURANT to a Restaurant object.
 	 */
-	private RowMapper<Restaurant> rowMapper = new RestaurantRowMapper();
+	private final RowMapper<Restaurant> rowMapper = new RestaurantRowMapper();
 
 	public void setDataSource(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
 	
 	public Restaurant findByMerchantNumber(String merchantNumber) {
-		String sql = "select MERCHANT_NUMBER, NAME, BENEFIT_PERCENTAGE, BENEFIT_AVAILABILITY_POLICY from T_RESTAURANT where MERCHANT_NUMBER = ?";
-		return jdbcTemplate.queryForObject(sql, rowMapper, merchantNumber);
+		return jdbcTemplate.queryForObject(FIND_BY_MERCHANT_NUMBER_SQL, rowMapper, merchantNumber);
+	}
+
+	public List<Restaurant> findAll() {
+		return jdbcTemplate.query(FIND_ALL_SQL, rowMapper);
 	}
 
 	/**
@@ -39,11 +55,11 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 	 * 
 	 * @param rs the result set with its cursor positioned at the current row
 	 */
-	private Restaurant mapRestaurant(ResultSet rs) throws SQLException {
+	static Restaurant mapRestaurant(ResultSet rs) throws SQLException {
 		// get the row column data
-		String name = rs.getString("NAME");
-		String number = rs.getString("MERCHANT_NUMBER");
-		Percentage benefitPercentage = Percentage.valueOf(rs.getString("BENEFIT_PERCENTAGE"));
+		String name = rs.getString(NAME);
+		String number = rs.getString(MERCHANT_NUMBER);
+		Percentage benefitPercentage = new Percentage(rs.getBigDecimal(BENEFIT_PERCENTAGE));
 		// map to the object
 		Restaurant restaurant = new Restaurant(number, name);
 		restaurant.setBenefitPercentage(benefitPercentage);
@@ -66,8 +82,19 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 	 * @return the matching benefit availability policy
 	 * @throws IllegalArgumentException if the mapping could not be performed
 	 */
-	private BenefitAvailabilityPolicy mapBenefitAvailabilityPolicy(ResultSet rs) throws SQLException {
-		String policyCode = rs.getString("BENEFIT_AVAILABILITY_POLICY");
+	private static BenefitAvailabilityPolicy mapBenefitAvailabilityPolicy(ResultSet rs) throws SQLException {
+		return benefitAvailabilityPolicyFor(rs.getString(BENEFIT_AVAILABILITY_POLICY));
+	}
+
+	/**
+	 * Returns the policy for a 'BENEFIT_AVAILABILITY_POLICY' code. Also used by other repositories that read
+	 * T_RESTAURANT as part of a join.
+	 * 
+	 * @param policyCode the discriminator code, 'A' or 'N'
+	 * @return the matching benefit availability policy
+	 * @throws IllegalArgumentException if the code is not supported
+	 */
+	public static BenefitAvailabilityPolicy benefitAvailabilityPolicyFor(String policyCode) {
 		if ("A".equals(policyCode)) {
 			return AlwaysAvailable.INSTANCE;
 		} else if ("N".equals(policyCode)) {
@@ -77,6 +104,24 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 		}
 	}
 
+	/**
+	 * Returns the 'BENEFIT_AVAILABILITY_POLICY' code of a policy, the reverse of
+	 * {@link #benefitAvailabilityPolicyFor(String)}. Used by writers of other forms of the restaurant data.
+	 * 
+	 * @param policy the benefit availability policy
+	 * @return the discriminator code, 'A' or 'N'
+	 * @throws IllegalArgumentException if the policy has no code
+	 */
+	public static String policyCodeFor(BenefitAvailabilityPolicy policy) {
+		if (policy == AlwaysAvailable.INSTANCE) {
+			return "A";
+		} else if (policy == NeverAvailable.INSTANCE) {
+			return "N";
+		} else {
+			throw new IllegalArgumentException("Not a supported policy " + policy);
+		}
+	}
+
 	/**
 	 * Returns true indicating benefit is always available.
 	 */
@@ -107,7 +152,7 @@ public class JdbcRestaurantRepository implements RestaurantRepository {
 		}
 	}
 
-	private class RestaurantRowMapper implements RowMapper<Restaurant> {
+	private static class RestaurantRowMapper implements RowMapper<Restaurant> {
 
 		public Restaurant mapRow(ResultSet rs, int rowNum) throws SQLException {
 			return mapRestaurant(rs);
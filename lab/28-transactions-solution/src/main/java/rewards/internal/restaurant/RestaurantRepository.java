@@ -1,5 +1,7 @@
 package rewards.internal.restaurant;
 
+import java.util.List;
+
 /**
  * Loads restaurant aggregates. Called by the reward network to find and reconstitute Restaurant entities from an
  * external form such as a set of RDMS rows.
@@ -14,4 +16,10 @@ public interface RestaurantRepository {
 	 * @return the restaurant
 	 */
 	public Restaurant findByMerchantNumber(String merchantNumber);
+
+	/**
+	 * Load every restaurant, for callers that keep them all at hand.
+	 * @return the restaurants
+	 */
+	public List<Restaurant> findAll();
 }
@@ -0,0 +1,56 @@
+package rewards.internal.restaurant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import rewards.internal.snapshot.RewardSnapshot;
+import rewards.internal.snapshot.RewardSnapshotFile;
+
+import common.money.Percentage;
+
+/**
+ * Loads restaurants from the memory-mapped {@link RewardSnapshot} published at a file, instead of the database.
+ * Restaurants are as they were when the snapshot was written.
+ */
+public class SnapshotRestaurantRepository implements RestaurantRepository {
+
+	private final RewardSnapshotFile snapshotFile;
+
+	public SnapshotRestaurantRepository(RewardSnapshotFile snapshotFile) {
+		this.snapshotFile = snapshotFile;
+	}
+
+	public Restaurant findByMerchantNumber(String merchantNumber) {
+		RewardSnapshot.RestaurantRecord record = snapshotFile.current().findRestaurant(merchantNumber);
+		if (record == null) {
+			throw new EmptyResultDataAccessException(1);
+		}
+		return mapRestaurant(record);
+	}
+
+	public List<Restaurant> findAll() {
+		RewardSnapshot snapshot = snapshotFile.current();
+		List<String> merchantNumbers = snapshot.getMerchantNumbers();
+		List<Restaurant> restaurants = new ArrayList<Restaurant>(merchantNumbers.size());
+		for (String merchantNumber : merchantNumbers) {
+			restaurants.add(mapRestaurant(snapshot.findRestaurant(merchantNumber)));
+		}
+		return restaurants;
+	}
+
+	/**
+	 * Maps a restaurant record of a snapshot to a Restaurant object. Also used by other repositories that read the
+	 * snapshot.
+	 * 
+	 * @param record the restaurant as it is in the snapshot
+	 */
+	public static Restaurant mapRestaurant(RewardSnapshot.RestaurantRecord record) {
+		Restaurant restaurant = new Restaurant(record.getNumber(), record.getName());
+		restaurant.setBenefitPercentage(new Percentage(record.getBenefitPercentage()));
+		restaurant.setBenefitAvailabilityPolicy(
+				JdbcRestaurantRepository.benefitAvailabilityPolicyFor(record.getBenefitAvailabilityPolicyCode()));
+		return restaurant;
+	}
+}
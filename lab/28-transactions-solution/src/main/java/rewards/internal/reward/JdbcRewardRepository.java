@@ -1,36 +1,143 @@
 package rewards.internal.reward;
 
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import javax.sql.DataSource;
 
+import org.springframework.dao.TransientDataAccessResourceException;
 import org.springframework.jdbc.core.JdbcTemplate;
 
 import rewards.AccountContribution;
 import rewards.Dining;
 import rewards.RewardConfirmation;
+import rewards.internal.RewardLog;
+import rewards.internal.dining.DiningFingerprint;
 
 import common.datetime.SimpleDate;
+import common.money.MonetaryAmount;
 
 /**
  * JDBC implementation of a reward repository that records the result of a reward transaction by inserting a reward
  * confirmation record.
+ * <p>
+ * A confirmed reward is stored with the {@link DiningFingerprint} of its dining, which is unique: a second reward for a
+ * dining already rewarded fails with a {@link org.springframework.dao.DuplicateKeyException}, rolling back its
+ * transaction.
  */
 public class JdbcRewardRepository implements RewardRepository {
 
+	private static final String INSERT_REWARD_SQL = "insert into T_REWARD (CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, DINING_MERCHANT_NUMBER, DINING_DATE, DINING_AMOUNT, DINING_FINGERPRINT, SAVINGS_PENDING) values (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String COUNT_FINGERPRINT_SQL = "select count(*) from T_REWARD where DINING_FINGERPRINT = ?";
+
+	private static final String SELECT_UNCREDITED_SQL = "select CONFIRMATION_NUMBER, ACCOUNT_NUMBER, REWARD_AMOUNT from T_REWARD where SAVINGS_PENDING = true order by ID";
+
+	private static final String MARK_CREDITED_SQL = "update T_REWARD set SAVINGS_PENDING = false where CONFIRMATION_NUMBER = ? and SAVINGS_PENDING = true";
+
+	private static final String LAST_LOGGED_CONFIRMATION_NUMBER_SQL = "select max(CONFIRMATION_NUMBER) from T_REWARD where CONFIRMATION_NUMBER like ?";
+
 	private JdbcTemplate jdbcTemplate;
+
+	private volatile boolean batchCountsReported = true;
 	
 	public void setDataSource(DataSource dataSource) {
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
 	}
 
 	public RewardConfirmation confirmReward(AccountContribution contribution, Dining dining) {
-		String sql = "insert into T_REWARD (CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, DINING_MERCHANT_NUMBER, DINING_DATE, DINING_AMOUNT) values (?, ?, ?, ?, ?, ?, ?)";
+		return confirmReward(contribution, dining, false);
+	}
+
+	public RewardConfirmation confirmUncreditedReward(AccountContribution contribution, Dining dining) {
+		return confirmReward(contribution, dining, true);
+	}
+
+	private RewardConfirmation confirmReward(AccountContribution contribution, Dining dining, boolean uncredited) {
 		String confirmationNumber = nextConfirmationNumber();
-		jdbcTemplate.update(sql, confirmationNumber, contribution.getAmount().asBigDecimal(),
+		jdbcTemplate.update(INSERT_REWARD_SQL, confirmationNumber, contribution.getAmount().asBigDecimal(),
 				SimpleDate.today().asDate(), contribution.getAccountNumber(), dining.getMerchantNumber(),
-				dining.getDate().asDate(), dining.getAmount().asBigDecimal());
+				dining.getDate().asDate(), dining.getAmount().asBigDecimal(), fingerprintOf(dining), uncredited);
 		return new RewardConfirmation(confirmationNumber, contribution);
 	}
 
+	public void recordRewards(List<RewardLog.Entry> rewards) {
+		jdbcTemplate.batchUpdate(INSERT_REWARD_SQL, rewards, rewards.size(), (ps, reward) -> {
+			Dining dining = reward.getDining();
+			ps.setString(1, reward.getConfirmationNumber());
+			ps.setBigDecimal(2, reward.getAmount().asBigDecimal());
+			ps.setDate(3, new java.sql.Date(reward.getRewardDate().inMilliseconds()));
+			ps.setString(4, reward.getAccountNumber());
+			ps.setString(5, dining.getMerchantNumber());
+			ps.setDate(6, new java.sql.Date(dining.getDate().inMilliseconds()));
+			ps.setBigDecimal(7, dining.getAmount().asBigDecimal());
+			ps.setString(8, fingerprintOf(dining));
+			ps.setBoolean(9, false);
+		});
+	}
+
+	public boolean isRewarded(Dining dining) {
+		String fingerprint = fingerprintOf(dining);
+		return fingerprint != null
+				&& jdbcTemplate.queryForObject(COUNT_FINGERPRINT_SQL, Integer.class, fingerprint) > 0;
+	}
+
+	public List<UncreditedReward> findUncreditedRewards() {
+		return jdbcTemplate.query(SELECT_UNCREDITED_SQL, (rs, row) -> new UncreditedReward(rs.getString(1),
+				rs.getString(2), new MonetaryAmount(rs.getBigDecimal(3))));
+	}
+
+	/**
+	 * Marks the rewards in one batch, if the driver reports how many rows each statement in a batch updated. One that
+	 * reports {@link Statement#SUCCESS_NO_INFO} instead leaves no way to tell which rewards this call marked, so the
+	 * call fails, for the caller's transaction to roll back and try again; from then on each reward is marked with an
+	 * update of its own.
+	 */
+	public Set<String> markCredited(List<String> confirmationNumbers) {
+		Set<String> marked = new HashSet<String>();
+		if (!batchCountsReported) {
+			for (String confirmationNumber : confirmationNumbers) {
+				if (jdbcTemplate.update(MARK_CREDITED_SQL, confirmationNumber) > 0) {
+					marked.add(confirmationNumber);
+				}
+			}
+			return marked;
+		}
+		List<Object[]> args = new ArrayList<Object[]>(confirmationNumbers.size());
+		for (String confirmationNumber : confirmationNumbers) {
+			args.add(new Object[] { confirmationNumber });
+		}
+		int[] counts = jdbcTemplate.batchUpdate(MARK_CREDITED_SQL, args);
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] == Statement.SUCCESS_NO_INFO) {
+				batchCountsReported = false;
+				throw new TransientDataAccessResourceException(
+						"JDBC driver does not report batch update counts; rewards will be marked one at a time");
+			}
+			if (counts[i] > 0) {
+				marked.add(confirmationNumbers.get(i));
+			}
+		}
+		return marked;
+	}
+
+	/**
+	 * Logged confirmation numbers are zero-padded, so the last one logged is also the greatest.
+	 */
+	public long findLastRecordedSequence() {
+		String confirmationNumber = jdbcTemplate.queryForObject(LAST_LOGGED_CONFIRMATION_NUMBER_SQL, String.class,
+				RewardLog.CONFIRMATION_NUMBER_PREFIX + "%");
+		return confirmationNumber == null ? 0 : RewardLog.sequenceOf(confirmationNumber);
+	}
+
+	private static String fingerprintOf(Dining dining) {
+		DiningFingerprint fingerprint = DiningFingerprint.of(dining);
+		return fingerprint != null ? fingerprint.toString() : null;
+	}
+
 	private String nextConfirmationNumber() {
 		String sql = "select next value for S_REWARD_CONFIRMATION_NUMBER from DUAL_REWARD_CONFIRMATION_NUMBER";
 		return jdbcTemplate.queryForObject(sql, String.class);
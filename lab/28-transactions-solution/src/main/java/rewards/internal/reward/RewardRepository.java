@@ -1,8 +1,12 @@
 package rewards.internal.reward;
 
+import java.util.List;
+import java.util.Set;
+
 import rewards.AccountContribution;
 import rewards.Dining;
 import rewards.RewardConfirmation;
+import rewards.internal.RewardLog;
 
 /**
  * Handles creating records of reward transactions to track contributions made to accounts for dining at restaurants.
@@ -17,4 +21,50 @@ public interface RewardRepository {
 	 * date
 	 */
 	public RewardConfirmation confirmReward(AccountContribution contribution, Dining dining);
+
+	/**
+	 * Create records of rewards that were confirmed as soon as they were logged, under the confirmation numbers they
+	 * were given then.
+	 * @param rewards the logged rewards, in the order they were logged
+	 */
+	public void recordRewards(List<RewardLog.Entry> rewards);
+
+	/**
+	 * Returns the sequence number of the last logged reward to be recorded, so that rewards still in the log after a
+	 * crash are recorded once only.
+	 * @return the highest sequence number recorded by {@link #recordRewards(List)}, or 0 if there is none
+	 */
+	public long findLastRecordedSequence();
+
+	/**
+	 * Returns whether a dining has already been rewarded. Only dinings with a merchant reference can be recognized.
+	 * @param dining the dining to look for
+	 * @return true if a reward has been confirmed for the same dining, false if not or if it has no merchant reference
+	 */
+	public boolean isRewarded(Dining dining);
+
+	/**
+	 * Create a record of a reward whose contribution is to be credited to the account's beneficiaries later. Until it
+	 * is marked credited, it is returned by {@link #findUncreditedRewards()}, so what the beneficiaries are owed can be
+	 * worked out again after a crash.
+	 * @param contribution the account contribution that was made
+	 * @param dining the dining event that resulted in the account contribution
+	 * @return a reward confirmation object
+	 */
+	public RewardConfirmation confirmUncreditedReward(AccountContribution contribution, Dining dining);
+
+	/**
+	 * Returns the rewards confirmed by {@link #confirmUncreditedReward(AccountContribution, Dining)} and not yet
+	 * marked credited.
+	 * @return the uncredited rewards, oldest first
+	 */
+	public List<UncreditedReward> findUncreditedRewards();
+
+	/**
+	 * Marks rewards as credited to their beneficiaries. A reward already marked is left alone, so the caller can tell
+	 * which contributions are still to be credited, and credit each once only, in the same transaction.
+	 * @param confirmationNumbers the confirmation numbers of the rewards to mark
+	 * @return the confirmation numbers of the rewards that were not already marked
+	 */
+	public Set<String> markCredited(List<String> confirmationNumbers);
 }
\ No newline at end of file
@@ -0,0 +1,44 @@
+package rewards.internal.reward;
+
+import common.money.MonetaryAmount;
+
+/**
+ * A reward recorded before its contribution was credited to the account's beneficiaries.
+ * 
+ * A value object. Immutable.
+ */
+public class UncreditedReward {
+
+	private final String confirmationNumber;
+
+	private final String accountNumber;
+
+	private final MonetaryAmount amount;
+
+	/**
+	 * @param confirmationNumber the confirmation number of the reward
+	 * @param accountNumber the number of the account rewarded
+	 * @param amount the amount still to be distributed among the account's beneficiaries
+	 */
+	public UncreditedReward(String confirmationNumber, String accountNumber, MonetaryAmount amount) {
+		this.confirmationNumber = confirmationNumber;
+		this.accountNumber = accountNumber;
+		this.amount = amount;
+	}
+
+	public String getConfirmationNumber() {
+		return confirmationNumber;
+	}
+
+	public String getAccountNumber() {
+		return accountNumber;
+	}
+
+	public MonetaryAmount getAmount() {
+		return amount;
+	}
+
+	public String toString() {
+		return "Reward " + confirmationNumber + " of " + amount + " to account " + accountNumber;
+	}
+}
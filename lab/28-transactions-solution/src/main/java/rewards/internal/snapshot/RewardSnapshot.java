@@ -0,0 +1,280 @@
+package rewards.internal.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only view of a snapshot file written by {@link RewardSnapshotWriter}: accounts with their beneficiaries, by
+ * credit card number, and restaurants, by merchant number.
+ * <p>
+ * The file is memory-mapped, so every JVM on a host that reads it shares the one copy in the page cache rather than
+ * holding its own on the heap. Nothing is read up front: a lookup hashes the key, probes an open-addressing index in
+ * the file and compares the stored key bytes in place, and the records found are read field by field as they are
+ * asked for. Files are never changed once written; a new snapshot replaces the file, and a view keeps reading the file
+ * it was opened on.
+ * <p>
+ * The layout, all integers big-endian:
+ * <pre>
+ * header     magic, format version, card index position and slot count, merchant index position and slot count
+ * index      slot count x (key hash, entry position), position 0 meaning an empty slot
+ * card       card number, account position
+ * account    id (long), version, number, name, beneficiary count, beneficiary count x beneficiary position
+ * beneficiary allocation percentage, savings, name
+ * restaurant merchant number, name, benefit percentage, benefit availability policy code (byte)
+ * </pre>
+ * Strings are an unsigned short byte count and UTF-8 bytes; decimals are a long unscaled value and a byte scale.
+ */
+public class RewardSnapshot {
+
+	static final int MAGIC = 0x52575353;
+
+	static final int FORMAT_VERSION = 1;
+
+	static final int HEADER_SIZE = 6 * Integer.BYTES;
+
+	static final int SLOT_SIZE = 2 * Integer.BYTES;
+
+	static final int DECIMAL_SIZE = Long.BYTES + 1;
+
+	private final ByteBuffer buffer;
+
+	private final int cardIndex;
+
+	private final int cardSlots;
+
+	private final int merchantIndex;
+
+	private final int merchantSlots;
+
+	private RewardSnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a reward snapshot");
+		}
+		if (buffer.getInt(4) != FORMAT_VERSION) {
+			throw new IOException("Unsupported reward snapshot format " + buffer.getInt(4));
+		}
+		this.cardIndex = buffer.getInt(8);
+		this.cardSlots = buffer.getInt(12);
+		this.merchantIndex = buffer.getInt(16);
+		this.merchantSlots = buffer.getInt(20);
+	}
+
+	/**
+	 * Maps a snapshot file. The mapping outlives the file being replaced or deleted, and is released once the view is
+	 * no longer referenced.
+	 */
+	public static RewardSnapshot open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return new RewardSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Finds the account charged by a credit card.
+	 * @return the account, or null if there is none
+	 */
+	public AccountRecord findAccount(String creditCardNumber) {
+		int card = find(cardIndex, cardSlots, creditCardNumber);
+		return card == 0 ? null : new AccountRecord(buffer.getInt(card + stringSize(card)));
+	}
+
+	/**
+	 * Finds a restaurant by its merchant number.
+	 * @return the restaurant, or null if there is none
+	 */
+	public RestaurantRecord findRestaurant(String merchantNumber) {
+		int restaurant = find(merchantIndex, merchantSlots, merchantNumber);
+		return restaurant == 0 ? null : new RestaurantRecord(restaurant);
+	}
+
+	/**
+	 * Returns every credit card number in the snapshot, in no particular order.
+	 */
+	public List<String> getCreditCardNumbers() {
+		return keys(cardIndex, cardSlots);
+	}
+
+	/**
+	 * Returns every merchant number in the snapshot, in no particular order.
+	 */
+	public List<String> getMerchantNumbers() {
+		return keys(merchantIndex, merchantSlots);
+	}
+
+	private int find(int index, int slots, String key) {
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		int hash = hash(bytes);
+		int mask = slots - 1;
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+			int position = index + slot * SLOT_SIZE;
+			int entry = buffer.getInt(position + Integer.BYTES);
+			if (entry == 0) {
+				return 0;
+			}
+			if (buffer.getInt(position) == hash && keyEquals(entry, bytes)) {
+				return entry;
+			}
+		}
+	}
+
+	private boolean keyEquals(int position, byte[] key) {
+		if (buffer.getShort(position) != (short) key.length) {
+			return false;
+		}
+		for (int i = 0; i < key.length; i++) {
+			if (buffer.get(position + Short.BYTES + i) != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private List<String> keys(int index, int slots) {
+		List<String> keys = new ArrayList<String>(slots / 2);
+		for (int slot = 0; slot < slots; slot++) {
+			int entry = buffer.getInt(index + slot * SLOT_SIZE + Integer.BYTES);
+			if (entry != 0) {
+				keys.add(string(entry));
+			}
+		}
+		return keys;
+	}
+
+	private String string(int position) {
+		byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort(position))];
+		ByteBuffer view = buffer.duplicate();
+		view.position(position + Short.BYTES);
+		view.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private int stringSize(int position) {
+		return Short.BYTES + Short.toUnsignedInt(buffer.getShort(position));
+	}
+
+	private BigDecimal decimal(int position) {
+		return new BigDecimal(BigInteger.valueOf(buffer.getLong(position)), buffer.get(position + Long.BYTES));
+	}
+
+	/**
+	 * FNV-1a, over the UTF-8 bytes of a key, so a lookup never has to decode the keys it probes.
+	 */
+	static int hash(byte[] key) {
+		int hash = 0x811c9dc5;
+		for (byte b : key) {
+			hash ^= b & 0xff;
+			hash *= 0x01000193;
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * An account in the snapshot. Each field is read from the file when it is asked for.
+	 */
+	public class AccountRecord {
+
+		private static final int VERSION = Long.BYTES;
+
+		private static final int NUMBER = VERSION + Integer.BYTES;
+
+		private final int position;
+
+		AccountRecord(int position) {
+			this.position = position;
+		}
+
+		public long getId() {
+			return buffer.getLong(position);
+		}
+
+		public int getVersion() {
+			return buffer.getInt(position + VERSION);
+		}
+
+		public String getNumber() {
+			return string(position + NUMBER);
+		}
+
+		public String getName() {
+			return string(name());
+		}
+
+		public int getBeneficiaryCount() {
+			return buffer.getInt(beneficiaries());
+		}
+
+		public String getBeneficiaryName(int beneficiary) {
+			return string(beneficiary(beneficiary) + 2 * DECIMAL_SIZE);
+		}
+
+		public BigDecimal getBeneficiaryAllocationPercentage(int beneficiary) {
+			return decimal(beneficiary(beneficiary));
+		}
+
+		public BigDecimal getBeneficiarySavings(int beneficiary) {
+			return decimal(beneficiary(beneficiary) + DECIMAL_SIZE);
+		}
+
+		private int name() {
+			return position + NUMBER + stringSize(position + NUMBER);
+		}
+
+		private int beneficiaries() {
+			int name = name();
+			return name + stringSize(name);
+		}
+
+		private int beneficiary(int beneficiary) {
+			return buffer.getInt(beneficiaries() + Integer.BYTES + beneficiary * Integer.BYTES);
+		}
+	}
+
+	/**
+	 * A restaurant in the snapshot. Each field is read from the file when it is asked for.
+	 */
+	public class RestaurantRecord {
+
+		private final int position;
+
+		RestaurantRecord(int position) {
+			this.position = position;
+		}
+
+		public String getNumber() {
+			return string(position);
+		}
+
+		public String getName() {
+			return string(name());
+		}
+
+		public BigDecimal getBenefitPercentage() {
+			return decimal(benefitPercentage());
+		}
+
+		/**
+		 * The 'BENEFIT_AVAILABILITY_POLICY' code of the restaurant.
+		 */
+		public String getBenefitAvailabilityPolicyCode() {
+			return String.valueOf((char) buffer.get(benefitPercentage() + DECIMAL_SIZE));
+		}
+
+		private int name() {
+			return position + stringSize(position);
+		}
+
+		private int benefitPercentage() {
+			int name = name();
+			return name + stringSize(name);
+		}
+	}
+}
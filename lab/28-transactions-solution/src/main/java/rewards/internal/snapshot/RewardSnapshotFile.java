@@ -0,0 +1,117 @@
+package rewards.internal.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The snapshot published at a file, following each new one as it replaces the last.
+ * <p>
+ * {@link #current()} looks at the file at most once per {@link #setCheckIntervalMillis(long) interval}. If a new
+ * snapshot has been renamed into place since - the file's identity or modification time has changed - it is mapped
+ * and used from then on. Lookups under way keep the view they started with, so an account and a restaurant read
+ * through one view always come from the same snapshot.
+ */
+public class RewardSnapshotFile {
+
+	private static final Logger logger = LoggerFactory.getLogger(RewardSnapshotFile.class);
+
+	private final File file;
+
+	private long checkIntervalMillis = 1000;
+
+	private volatile Published published;
+
+	private volatile long nextCheck;
+
+	/**
+	 * Maps the snapshot currently published at the given file.
+	 */
+	public RewardSnapshotFile(File file) throws IOException {
+		this.file = file;
+		this.published = publish(attributes());
+		this.nextCheck = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis);
+	}
+
+	/**
+	 * How often to look for a new snapshot. Defaults to one second.
+	 */
+	public void setCheckIntervalMillis(long checkIntervalMillis) {
+		this.checkIntervalMillis = checkIntervalMillis;
+	}
+
+	/**
+	 * Returns the latest snapshot seen. If the file cannot be read, the last snapshot that could be is kept.
+	 */
+	public RewardSnapshot current() {
+		long now = System.nanoTime();
+		if (now - nextCheck >= 0) {
+			synchronized (this) {
+				if (now - nextCheck >= 0) {
+					refresh();
+					nextCheck = now + TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis);
+				}
+			}
+		}
+		return published.snapshot;
+	}
+
+	/**
+	 * Maps the file again if a new snapshot has been published at it.
+	 * @return whether a new snapshot was mapped
+	 */
+	public synchronized boolean refresh() {
+		try {
+			BasicFileAttributes attributes = attributes();
+			if (published.isSameFile(attributes)) {
+				return false;
+			}
+			published = publish(attributes);
+			logger.info("Mapped new reward snapshot from {}", file);
+			return true;
+		} catch (IOException | UncheckedIOException e) {
+			logger.warn("Could not read reward snapshot {}, keeping the last one", file, e);
+			return false;
+		}
+	}
+
+	private BasicFileAttributes attributes() throws IOException {
+		return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+	}
+
+	private Published publish(BasicFileAttributes attributes) throws IOException {
+		return new Published(RewardSnapshot.open(file), attributes);
+	}
+
+	/**
+	 * A mapped snapshot and the attributes of the file it was mapped from.
+	 */
+	private static class Published {
+
+		private final RewardSnapshot snapshot;
+
+		private final Object fileKey;
+
+		private final long lastModified;
+
+		Published(RewardSnapshot snapshot, BasicFileAttributes attributes) {
+			this.snapshot = snapshot;
+			this.fileKey = attributes.fileKey();
+			this.lastModified = attributes.lastModifiedTime().toMillis();
+		}
+
+		boolean isSameFile(BasicFileAttributes attributes) {
+			// Not every file system has file keys
+			if (fileKey != null && !fileKey.equals(attributes.fileKey())) {
+				return false;
+			}
+			return lastModified == attributes.lastModifiedTime().toMillis();
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package rewards.internal.snapshot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rewards.internal.account.Account;
+import rewards.internal.account.AccountRepository;
+import rewards.internal.account.Beneficiary;
+import rewards.internal.restaurant.JdbcRestaurantRepository;
+import rewards.internal.restaurant.Restaurant;
+import rewards.internal.restaurant.RestaurantRepository;
+
+/**
+ * Writes the accounts and restaurants into a {@link RewardSnapshot} file, and publishes it in place of the last one.
+ * <p>
+ * The snapshot is written to a temporary file in the same directory, forced to disk, and then renamed over the
+ * published file in one atomic step. Readers either see the old file or the whole of the new one, never a part
+ * written, and those already reading the old one carry on undisturbed.
+ */
+public class RewardSnapshotWriter {
+
+	private static final Logger logger = LoggerFactory.getLogger(RewardSnapshotWriter.class);
+
+	private final AccountRepository accountRepository;
+
+	private final RestaurantRepository restaurantRepository;
+
+	/**
+	 * Creates a new snapshot writer.
+	 * @param accountRepository the repository to load every account from
+	 * @param restaurantRepository the repository to load every restaurant from
+	 */
+	public RewardSnapshotWriter(AccountRepository accountRepository, RestaurantRepository restaurantRepository) {
+		this.accountRepository = accountRepository;
+		this.restaurantRepository = restaurantRepository;
+	}
+
+	/**
+	 * Loads the accounts and restaurants, and publishes them as the snapshot at the given file.
+	 */
+	public void write(File file) throws IOException {
+		Map<String, Account> accounts = accountRepository.findAllByCreditCard();
+		List<Restaurant> restaurants = restaurantRepository.findAll();
+		byte[] snapshot = serialize(accounts, restaurants);
+
+		Path target = file.getAbsoluteFile().toPath();
+		Path temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+		logger.info("Published snapshot of {} credit cards and {} restaurants to {} ({} bytes)", accounts.size(),
+				restaurants.size(), target, snapshot.length);
+	}
+
+	static byte[] serialize(Map<String, Account> accountsByCreditCard, List<Restaurant> restaurants)
+			throws IOException {
+		Records records = new Records();
+
+		// An account with several cards is written once
+		Map<Account, Integer> accounts = new IdentityHashMap<Account, Integer>();
+		for (Account account : accountsByCreditCard.values()) {
+			if (!accounts.containsKey(account)) {
+				accounts.put(account, records.writeAccount(account));
+			}
+		}
+		String[] cards = new String[accountsByCreditCard.size()];
+		int[] cardEntries = new int[cards.length];
+		int i = 0;
+		for (Map.Entry<String, Account> card : accountsByCreditCard.entrySet()) {
+			cards[i] = card.getKey();
+			cardEntries[i] = records.writeCard(card.getKey(), accounts.get(card.getValue()));
+			i++;
+		}
+		String[] merchants = new String[restaurants.size()];
+		int[] restaurantEntries = new int[merchants.length];
+		for (i = 0; i < merchants.length; i++) {
+			merchants[i] = restaurants.get(i).getNumber();
+			restaurantEntries[i] = records.writeRestaurant(restaurants.get(i));
+		}
+
+		int cardSlots = slots(cards.length);
+		int cardIndex = records.writeIndex(cards, cardEntries, cardSlots);
+		int merchantSlots = slots(merchants.length);
+		int merchantIndex = records.writeIndex(merchants, restaurantEntries, merchantSlots);
+
+		ByteBuffer snapshot = ByteBuffer.wrap(records.toByteArray());
+		snapshot.putInt(0, RewardSnapshot.MAGIC).putInt(4, RewardSnapshot.FORMAT_VERSION).putInt(8, cardIndex)
+			.putInt(12, cardSlots).putInt(16, merchantIndex).putInt(20, merchantSlots);
+		return snapshot.array();
+	}
+
+	/**
+	 * A power of two at least twice the number of keys, so probes stay short.
+	 */
+	private static int slots(int keys) {
+		return Integer.highestOneBit(Math.max(keys, 1) * 2 - 1) << 1;
+	}
+
+	/**
+	 * The file being built, each record at the position it will have in the file.
+	 */
+	private static class Records extends DataOutputStream {
+
+		Records() throws IOException {
+			super(new ByteArrayOutputStream(64 * 1024));
+			write(new byte[RewardSnapshot.HEADER_SIZE]);
+		}
+
+		int writeAccount(Account account) throws IOException {
+			// Beneficiaries first, so the account can list their positions
+			int[] beneficiaries = new int[account.getBeneficiaries().size()];
+			int i = 0;
+			for (Beneficiary beneficiary : account.getBeneficiaries()) {
+				beneficiaries[i++] = size();
+				writeDecimal(beneficiary.getAllocationPercentage().asBigDecimal());
+				writeDecimal(beneficiary.getSavings().asBigDecimal());
+				writeString(beneficiary.getName());
+			}
+			int position = size();
+			writeLong(account.getEntityId());
+			writeInt(account.getVersion());
+			writeString(account.getNumber());
+			writeString(account.getName());
+			writeInt(beneficiaries.length);
+			for (int beneficiary : beneficiaries) {
+				writeInt(beneficiary);
+			}
+			return position;
+		}
+
+		int writeCard(String creditCardNumber, int account) throws IOException {
+			int position = size();
+			writeString(creditCardNumber);
+			writeInt(account);
+			return position;
+		}
+
+		int writeRestaurant(Restaurant restaurant) throws IOException {
+			int position = size();
+			writeString(restaurant.getNumber());
+			writeString(restaurant.getName());
+			writeDecimal(restaurant.getBenefitPercentage().asBigDecimal());
+			writeByte(JdbcRestaurantRepository.policyCodeFor(restaurant.getBenefitAvailabilityPolicy()).charAt(0));
+			return position;
+		}
+
+		int writeIndex(String[] keys, int[] entries, int slots) throws IOException {
+			int[] hashes = new int[slots];
+			int[] positions = new int[slots];
+			int mask = slots - 1;
+			for (int i = 0; i < keys.length; i++) {
+				int hash = RewardSnapshot.hash(keys[i].getBytes(StandardCharsets.UTF_8));
+				int slot = hash & mask;
+				while (positions[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				hashes[slot] = hash;
+				positions[slot] = entries[i];
+			}
+			int position = size();
+			for (int slot = 0; slot < slots; slot++) {
+				writeInt(hashes[slot]);
+				writeInt(positions[slot]);
+			}
+			return position;
+		}
+
+		private void writeString(String value) throws IOException {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			if (bytes.length > 0xffff) {
+				throw new IllegalArgumentException("Too long for a snapshot: " + value);
+			}
+			writeShort(bytes.length);
+			write(bytes);
+		}
+
+		private void writeDecimal(BigDecimal value) throws IOException {
+			writeLong(value.unscaledValue().longValueExact());
+			writeByte(value.scale());
+		}
+
+		byte[] toByteArray() throws IOException {
+			flush();
+			return ((ByteArrayOutputStream) out).toByteArray();
+		}
+	}
+}
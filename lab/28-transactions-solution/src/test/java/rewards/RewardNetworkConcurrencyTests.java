@@ -0,0 +1,130 @@
+package rewards;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import common.money.MonetaryAmount;
+import config.RewardsConfig;
+import rewards.internal.AsyncRewardNetwork;
+import rewards.internal.RetryingRewardNetwork;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * A system test of the async profile that rewards the same account from several threads at once. Every reward must
+ * show up in the savings: rewards for the same card take turns, and any conflicting updates are detected by the
+ * account version and retried, not lost.
+ * <p>
+ * Builds its own context on a database of its own, so the committed rewards don't leak into the other system tests.
+ */
+public class RewardNetworkConcurrencyTests {
+
+	private static final String SAVINGS_SQL = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ?";
+
+	private static final int THREADS = 8;
+
+	private static final int REWARDS_PER_THREAD = 10;
+
+	private AnnotationConfigApplicationContext context;
+
+	private RetryingRewardNetwork rewardNetwork;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setUp() {
+		context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().setActiveProfiles(RewardsConfig.ASYNC_PROFILE);
+		context.register(ConcurrencyTestConfig.class);
+		context.refresh();
+		rewardNetwork = context.getBean(RetryingRewardNetwork.class);
+		rewardNetwork.setMaxAttempts(100);
+		jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		context.close();
+	}
+
+	@Test
+	public void testConcurrentRewardsAreNotLost() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int i = 0; i < THREADS; i++) {
+				tasks.add(() -> {
+					for (int j = 0; j < REWARDS_PER_THREAD; j++) {
+						rewardNetwork.rewardAccountFor(Dining.createDining("100.00", "1234123412341234", "1234567890"));
+					}
+					return null;
+				});
+			}
+			for (Future<Void> result : executor.invokeAll(tasks)) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		// Each reward is 8.00, split evenly
+		double expected = THREADS * REWARDS_PER_THREAD * 4.00d;
+		assertEquals(Double.valueOf(expected), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+		assertEquals(Double.valueOf(expected), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Corgan"));
+		assertEquals(THREADS * REWARDS_PER_THREAD, rewardNetwork.getRewards());
+		assertEquals(0, rewardNetwork.getFailures());
+		// The rewards for the card took turns, so none lost the version check
+		assertEquals(0, rewardNetwork.getConflicts());
+	}
+
+	@Test
+	public void testRewardForDiningAsync() throws Exception {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+		// The reward is made on another thread, in a transaction of its own
+		RewardConfirmation confirmation = context.getBean(AsyncRewardNetwork.class).rewardAccountForAsync(dining)
+				.get(10, TimeUnit.SECONDS);
+
+		String sql = "SELECT COUNT(*) FROM T_REWARD WHERE CONFIRMATION_NUMBER = ?";
+		assertEquals(Integer.valueOf(1),
+				jdbcTemplate.queryForObject(sql, Integer.class, confirmation.getConfirmationNumber()));
+		assertEquals(MonetaryAmount.valueOf("8.00"), confirmation.getAccountContribution().getAmount());
+	}
+
+	@Configuration
+	@Import(RewardsConfig.class)
+	static class ConcurrencyTestConfig {
+
+		@Bean
+		public DataSource dataSource() {
+			return new EmbeddedDatabaseBuilder().generateUniqueName(true)
+				.addScript("classpath:rewards/testdb/schema.sql")
+				.addScript("classpath:rewards/testdb/data.sql")
+				.build();
+		}
+
+		@Bean
+		public PlatformTransactionManager transactionManager() {
+			return new DataSourceTransactionManager(dataSource());
+		}
+	}
+}
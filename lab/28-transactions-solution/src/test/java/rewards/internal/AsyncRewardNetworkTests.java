@@ -0,0 +1,141 @@
+package rewards.internal;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests making rewards on a bounded pool, with a reward network that reports the thread it ran on.
+ */
+public class AsyncRewardNetworkTests {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private AsyncRewardNetwork rewardNetwork;
+
+	@AfterEach
+	public void tearDown() throws InterruptedException {
+		release.countDown();
+		if (rewardNetwork != null) {
+			rewardNetwork.close();
+		}
+	}
+
+	@Test
+	public void testRewardIsMadeOnThePool() throws Exception {
+		rewardNetwork = new AsyncRewardNetwork(dining -> confirmation(), 2, 10);
+		RewardConfirmation confirmation = rewardNetwork.rewardAccountForAsync(dining()).get(10, TimeUnit.SECONDS);
+		assertTrue(confirmation.getConfirmationNumber().startsWith("reward-async-"));
+		// Synchronous rewards stay on the caller's thread
+		assertEquals(Thread.currentThread().getName(),
+				rewardNetwork.rewardAccountFor(dining()).getConfirmationNumber());
+	}
+
+	@Test
+	public void testFailureCompletesTheFuture() {
+		rewardNetwork = new AsyncRewardNetwork(dining -> {
+			throw new IllegalStateException("unlucky");
+		}, 2, 10);
+		ExecutionException e = assertThrows(ExecutionException.class,
+				() -> rewardNetwork.rewardAccountForAsync(dining()).get(10, TimeUnit.SECONDS));
+		assertEquals("unlucky", e.getCause().getMessage());
+	}
+
+	@Test
+	public void testFullQueueIsRejected() throws Exception {
+		rewardNetwork = new AsyncRewardNetwork(blocking(), 1, 1);
+		CompletableFuture<RewardConfirmation> running = rewardNetwork.rewardAccountForAsync(dining());
+		CompletableFuture<RewardConfirmation> queued = rewardNetwork.rewardAccountForAsync(dining());
+		CompletableFuture<RewardConfirmation> rejected = rewardNetwork.rewardAccountForAsync(dining());
+
+		ExecutionException e = assertThrows(ExecutionException.class, rejected::get);
+		assertTrue(e.getCause() instanceof RejectedExecutionException);
+		assertEquals(1, rewardNetwork.getRejected());
+		assertEquals(1, rewardNetwork.getQueued());
+
+		release.countDown();
+		assertNotNull(running.get(10, TimeUnit.SECONDS));
+		assertNotNull(queued.get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCallerRunsWhenQueueIsFull() throws Exception {
+		// Only the pool blocks, so the overflow can run on this thread while the pool and queue stay full
+		RewardNetwork blocking = blocking();
+		rewardNetwork = new AsyncRewardNetwork(dining -> Thread.currentThread().getName().startsWith("reward-async-")
+				? blocking.rewardAccountFor(dining) : confirmation(), 1, 1);
+		rewardNetwork.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+		CompletableFuture<RewardConfirmation> running = rewardNetwork.rewardAccountForAsync(dining());
+		CompletableFuture<RewardConfirmation> queued = rewardNetwork.rewardAccountForAsync(dining());
+
+		CompletableFuture<RewardConfirmation> overflow = rewardNetwork.rewardAccountForAsync(dining());
+		assertTrue(overflow.isDone(), "the caller should have made the reward itself");
+		assertEquals(Thread.currentThread().getName(), overflow.get().getConfirmationNumber());
+		assertFalse(running.isDone() || queued.isDone());
+
+		release.countDown();
+		assertNotNull(running.get(10, TimeUnit.SECONDS));
+		assertNotNull(queued.get(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testDroppedRewardFails() throws Exception {
+		rewardNetwork = new AsyncRewardNetwork(blocking(), 1, 1);
+		rewardNetwork.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+		rewardNetwork.rewardAccountForAsync(dining());
+		rewardNetwork.rewardAccountForAsync(dining());
+
+		CompletableFuture<RewardConfirmation> dropped = rewardNetwork.rewardAccountForAsync(dining());
+		ExecutionException e = assertThrows(ExecutionException.class, dropped::get);
+		assertTrue(e.getCause() instanceof RejectedExecutionException);
+	}
+
+	@Test
+	public void testCloseWaitsForQueuedRewards() throws Exception {
+		rewardNetwork = new AsyncRewardNetwork(blocking(), 1, 10);
+		CompletableFuture<RewardConfirmation> first = rewardNetwork.rewardAccountForAsync(dining());
+		CompletableFuture<RewardConfirmation> second = rewardNetwork.rewardAccountForAsync(dining());
+		release.countDown();
+		rewardNetwork.close();
+		assertTrue(first.isDone() && second.isDone());
+		ExecutionException e = assertThrows(ExecutionException.class, rewardNetwork.rewardAccountForAsync(dining())::get);
+		assertTrue(e.getCause() instanceof RejectedExecutionException);
+	}
+
+	/**
+	 * A reward network that waits to be released before confirming each reward.
+	 */
+	private RewardNetwork blocking() {
+		return dining -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return confirmation();
+		};
+	}
+
+	/**
+	 * Confirms with the name of the thread that made the reward.
+	 */
+	private static RewardConfirmation confirmation() {
+		return new RewardConfirmation(Thread.currentThread().getName(), null);
+	}
+
+	private static Dining dining() {
+		return Dining.createDining("100.00", "1234123412341234", "1234567890");
+	}
+}
@@ -0,0 +1,162 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import common.datetime.SimpleDate;
+import common.money.MonetaryAmount;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.internal.dining.DiningFingerprint;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for refusing dinings already rewarded.
+ */
+public class DeduplicatingRewardNetworkTests {
+
+	private final List<Dining> rewarded = new ArrayList<Dining>();
+
+	private final Set<Dining> inDatabase = new HashSet<Dining>();
+
+	private final AtomicInteger lookups = new AtomicInteger();
+
+	private RewardNetwork rewardNetwork;
+
+	private StubRewardRepository rewardRepository;
+
+	@BeforeEach
+	public void setUp() {
+		// Stands in for the database, and its unique fingerprints
+		rewardNetwork = dining -> {
+			if (DiningFingerprint.of(dining) != null && inDatabase.contains(dining)) {
+				throw new DuplicateKeyException("unique constraint violated");
+			}
+			rewarded.add(dining);
+			inDatabase.add(dining);
+			return new RewardConfirmation(String.valueOf(rewarded.size()), null);
+		};
+		rewardRepository = new StubRewardRepository() {
+			@Override
+			public boolean isRewarded(Dining dining) {
+				lookups.incrementAndGet();
+				return inDatabase.contains(dining);
+			}
+		};
+	}
+
+	@Test
+	public void testResendRefusedWithoutLookup() {
+		DeduplicatingRewardNetwork network = new DeduplicatingRewardNetwork(rewardNetwork, rewardRepository, 1000);
+
+		network.rewardAccountFor(dining("R-1"));
+		assertThrows(DuplicateKeyException.class, () -> network.rewardAccountFor(dining("R-1")));
+
+		assertEquals(1, rewarded.size());
+		assertEquals(0, lookups.get());
+		assertEquals(1, network.getPassed());
+		assertEquals(1, network.getDuplicates());
+	}
+
+	@Test
+	public void testDiningsWithoutReferenceAlwaysRewarded() {
+		DeduplicatingRewardNetwork network = new DeduplicatingRewardNetwork(rewardNetwork, rewardRepository, 1000);
+
+		network.rewardAccountFor(dining(null));
+		network.rewardAccountFor(dining(null));
+
+		assertEquals(2, rewarded.size());
+		assertEquals(0, network.getDuplicates());
+	}
+
+	@Test
+	public void testNewDiningsPassWithoutLookup() {
+		DeduplicatingRewardNetwork network = new DeduplicatingRewardNetwork(rewardNetwork, rewardRepository, 10_000);
+		network.setRecentCapacity(100);
+
+		for (int i = 0; i < 10_000; i++) {
+			network.rewardAccountFor(dining("R-" + i));
+		}
+
+		assertEquals(10_000, rewarded.size());
+		// Sized for a 1% false positive rate, when full
+		assertTrue(lookups.get() < 100, "lookups: " + lookups.get());
+		assertEquals(10_000, network.getPassed() + network.getLookups());
+	}
+
+	@Test
+	public void testResendLookedUpOnceNoLongerRecent() {
+		DeduplicatingRewardNetwork network = new DeduplicatingRewardNetwork(rewardNetwork, rewardRepository, 1000);
+		network.setRecentCapacity(1);
+
+		network.rewardAccountFor(dining("R-1"));
+		network.rewardAccountFor(dining("R-2"));
+		assertThrows(DuplicateKeyException.class, () -> network.rewardAccountFor(dining("R-1")));
+		assertEquals(1, lookups.get());
+
+		// Found in the database, so recent again
+		assertThrows(DuplicateKeyException.class, () -> network.rewardAccountFor(dining("R-1")));
+		assertEquals(1, lookups.get());
+		assertEquals(2, rewarded.size());
+	}
+
+	@Test
+	public void testResendAfterWindowLeftToDatabase() {
+		DeduplicatingRewardNetwork network = new DeduplicatingRewardNetwork(rewardNetwork, rewardRepository, 1000);
+		network.setRecentCapacity(1);
+
+		network.rewardAccountFor(dining("R-1"));
+		network.rewardAccountFor(dining("R-2"));
+		network.rotate();
+		// Still in the previous window
+		assertThrows(DuplicateKeyException.class, () -> network.rewardAccountFor(dining("R-1")));
+		network.rotate();
+		network.rotate();
+
+		assertThrows(DuplicateKeyException.class, () -> network.rewardAccountFor(dining("R-1")));
+		assertEquals(1, network.getBackstopped());
+		assertEquals(2, rewarded.size());
+	}
+
+	@Test
+	public void testRolledBackRewardNotRemembered() {
+		DeduplicatingRewardNetwork network = new DeduplicatingRewardNetwork(rewardNetwork, rewardRepository, 1000);
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			network.rewardAccountFor(dining("R-1"));
+		} finally {
+			// Rolled back: afterCommit is never called
+			TransactionSynchronizationManager.clearSynchronization();
+			inDatabase.clear();
+		}
+
+		network.rewardAccountFor(dining("R-1"));
+		assertEquals(2, rewarded.size());
+		assertEquals(0, network.getDuplicates());
+	}
+
+	@Test
+	public void testFingerprint() {
+		assertNull(DiningFingerprint.of(dining(null)));
+		assertEquals(DiningFingerprint.of(dining("R-1")), DiningFingerprint.of(new Dining(
+				MonetaryAmount.valueOf("100.0"), "1234123412341234", "1234567890", new SimpleDate(1, 31, 2020), "R-1")));
+		assertNotEquals(DiningFingerprint.of(dining("R-1")), DiningFingerprint.of(dining("R-2")));
+		assertEquals(64, DiningFingerprint.of(dining("R-1")).toString().length());
+	}
+
+	private static Dining dining(String merchantReference) {
+		return new Dining(MonetaryAmount.valueOf("100.00"), "1234123412341234", "1234567890",
+				new SimpleDate(1, 31, 2020), merchantReference);
+	}
+}
@@ -0,0 +1,216 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import common.money.MonetaryAmount;
+import config.RewardsConfig;
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.account.JdbcRewardContextRepository;
+import rewards.internal.reward.JdbcRewardRepository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests committing the rewards of concurrent callers together, against an in-memory database of its own.
+ */
+public class GroupCommitRewardNetworkTests {
+
+	private static final String SAVINGS_SQL = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ?";
+
+	private static final String REWARD_COUNT_SQL = "select count(*) from T_REWARD";
+
+	private EmbeddedDatabase dataSource;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private GroupCommitRewardNetwork rewardNetwork;
+
+	@BeforeEach
+	public void setUp() {
+		dataSource = rewardsDatabase();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	@AfterEach
+	public void tearDown() throws InterruptedException {
+		if (rewardNetwork != null) {
+			rewardNetwork.close();
+		}
+		dataSource.shutdown();
+	}
+
+	@Test
+	public void testRewardsAreCommittedTogether() throws Exception {
+		rewardNetwork = rewardNetwork(new JdbcRewardRepository(), 50, 1000);
+
+		List<CompletableFuture<RewardConfirmation>> results = new ArrayList<CompletableFuture<RewardConfirmation>>();
+		for (int i = 0; i < 50; i++) {
+			results.add(rewardNetwork.submit(dining("100.00")));
+		}
+		for (CompletableFuture<RewardConfirmation> result : results) {
+			assertNotNull(result.get().getConfirmationNumber());
+		}
+
+		assertEquals(1, rewardNetwork.getBatches());
+		assertEquals(50, rewardNetwork.getRewards());
+		assertEquals(Double.valueOf(200.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+		assertEquals(Integer.valueOf(50), jdbcTemplate.queryForObject(REWARD_COUNT_SQL, Integer.class));
+	}
+
+	@Test
+	public void testFailedRewardDoesNotFailTheBatch() throws Exception {
+		JdbcRewardRepository failsOnOddAmounts = new JdbcRewardRepository() {
+			@Override
+			public RewardConfirmation confirmReward(AccountContribution contribution, Dining dining) {
+				RewardConfirmation confirmation = super.confirmReward(contribution, dining);
+				if (dining.getAmount().equals(MonetaryAmount.valueOf("13.00"))) {
+					throw new IllegalStateException("unlucky");
+				}
+				return confirmation;
+			}
+		};
+		rewardNetwork = rewardNetwork(failsOnOddAmounts, 3, 1000);
+
+		CompletableFuture<RewardConfirmation> first = rewardNetwork.submit(dining("100.00"));
+		CompletableFuture<RewardConfirmation> unlucky = rewardNetwork.submit(dining("13.00"));
+		CompletableFuture<RewardConfirmation> last = rewardNetwork.submit(dining("100.00"));
+
+		assertNotNull(first.get());
+		assertNotNull(last.get());
+		ExecutionException e = assertThrows(ExecutionException.class, unlucky::get);
+		assertEquals("unlucky", e.getCause().getMessage());
+
+		// The unlucky reward's credits and row were rolled back with its savepoint
+		assertEquals(1, rewardNetwork.getBatches());
+		assertEquals(1, rewardNetwork.getFailures());
+		assertEquals(Double.valueOf(8.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+		assertEquals(Integer.valueOf(2), jdbcTemplate.queryForObject(REWARD_COUNT_SQL, Integer.class));
+	}
+
+	@Test
+	public void testRewardAccountForWaitsForCommit() {
+		rewardNetwork = rewardNetwork(new JdbcRewardRepository(), 100, 2);
+
+		RewardConfirmation confirmation = rewardNetwork.rewardAccountFor(dining("100.00"));
+		assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(
+				"select count(*) from T_REWARD where CONFIRMATION_NUMBER = ?", Integer.class,
+				confirmation.getConfirmationNumber()));
+	}
+
+	@Test
+	public void testRewardsSubmittedWhileClosingAllComplete() throws Exception {
+		rewardNetwork = rewardNetwork(new JdbcRewardRepository(), 10, 5);
+		ConcurrentLinkedQueue<CompletableFuture<RewardConfirmation>> results =
+				new ConcurrentLinkedQueue<CompletableFuture<RewardConfirmation>>();
+		ExecutorService callers = Executors.newFixedThreadPool(4);
+		for (int i = 0; i < 4; i++) {
+			callers.execute(() -> {
+				try {
+					while (true) {
+						results.add(rewardNetwork.submit(dining("100.00")));
+					}
+				} catch (IllegalStateException e) {
+					// Closed
+				}
+			});
+		}
+		Thread.sleep(200);
+		rewardNetwork.close();
+		callers.shutdown();
+		assertTrue(callers.awaitTermination(10, TimeUnit.SECONDS));
+
+		int committed = 0;
+		for (CompletableFuture<RewardConfirmation> result : results) {
+			try {
+				result.get(10, TimeUnit.SECONDS);
+				committed++;
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException, e.getCause().toString());
+			}
+		}
+		assertEquals(Integer.valueOf(committed), jdbcTemplate.queryForObject(REWARD_COUNT_SQL, Integer.class));
+	}
+
+	@Test
+	public void testGroupCommitProfile() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().setActiveProfiles(RewardsConfig.GROUP_COMMIT_PROFILE);
+		context.register(GroupCommitTestConfig.class);
+		context.refresh();
+		try {
+			RewardNetwork rewardNetwork = context.getBean(RewardNetwork.class);
+			assertTrue(rewardNetwork instanceof GroupCommitRewardNetwork);
+			assertNotNull(rewardNetwork.rewardAccountFor(dining("100.00")).getConfirmationNumber());
+		} finally {
+			context.close();
+		}
+	}
+
+	private GroupCommitRewardNetwork rewardNetwork(JdbcRewardRepository rewardRepository, int maxBatchSize,
+			long maxDelayMillis) {
+		JdbcAccountRepository accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		JdbcRewardContextRepository rewardContextRepository = new JdbcRewardContextRepository();
+		rewardContextRepository.setDataSource(dataSource);
+		rewardRepository.setDataSource(dataSource);
+
+		GroupCommitRewardNetwork rewardNetwork = new GroupCommitRewardNetwork(accountRepository,
+				rewardContextRepository, rewardRepository, new DataSourceTransactionManager(dataSource), 1000);
+		rewardNetwork.setMaxBatchSize(maxBatchSize);
+		rewardNetwork.setMaxDelayMillis(maxDelayMillis);
+		rewardNetwork.start();
+		return rewardNetwork;
+	}
+
+	private static Dining dining(String amount) {
+		return Dining.createDining(amount, "1234123412341234", "1234567890");
+	}
+
+	private static EmbeddedDatabase rewardsDatabase() {
+		return new EmbeddedDatabaseBuilder().generateUniqueName(true)
+			.addScript("classpath:rewards/testdb/schema.sql")
+			.addScript("classpath:rewards/testdb/data.sql")
+			.build();
+	}
+
+	@Configuration
+	@Import(RewardsConfig.class)
+	static class GroupCommitTestConfig {
+
+		@Bean
+		public DataSource dataSource() {
+			return rewardsDatabase();
+		}
+
+		@Bean
+		public PlatformTransactionManager transactionManager() {
+			return new DataSourceTransactionManager(dataSource());
+		}
+	}
+}
@@ -0,0 +1,273 @@
+package rewards.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import common.datetime.SimpleDate;
+import common.money.MonetaryAmount;
+import config.RewardsConfig;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.restaurant.JdbcRestaurantRepository;
+import rewards.internal.reward.JdbcRewardRepository;
+
+import static java.util.Collections.singletonMap;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests rewarding accounts held in memory, and recovering them from the log, against an in-memory database of its own.
+ */
+public class InMemoryRewardNetworkTests {
+
+	private static final String SAVINGS_SQL = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ?";
+
+	private static final String REWARD_COUNT_SQL = "select count(*) from T_REWARD";
+
+	@TempDir
+	File directory;
+
+	private EmbeddedDatabase dataSource;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private File logFile;
+
+	@BeforeEach
+	public void setUp() {
+		dataSource = rewardsDatabase();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		logFile = new File(directory, "rewards.log");
+	}
+
+	@AfterEach
+	public void tearDown() {
+		dataSource.shutdown();
+	}
+
+	@Test
+	public void testRewardIsConfirmedBeforeItIsFlushed() throws Exception {
+		try (InMemoryRewardNetwork rewardNetwork = rewardNetwork()) {
+			RewardConfirmation confirmation = rewardNetwork.rewardAccountFor(dining("100.00"));
+			assertEquals(RewardLog.confirmationNumber(1), confirmation.getConfirmationNumber());
+			assertEquals(MonetaryAmount.valueOf("4.00"),
+					confirmation.getAccountContribution().getDistribution("Annabelle").getTotalSavings());
+			assertEquals(1, rewardNetwork.getUnflushed());
+			assertEquals(Double.valueOf(0.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+
+			assertEquals(1, rewardNetwork.flush());
+			assertEquals(0, rewardNetwork.getUnflushed());
+			assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+			assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(
+					"select count(*) from T_REWARD where CONFIRMATION_NUMBER = ?", Integer.class,
+					confirmation.getConfirmationNumber()));
+			assertEquals(0, logFile.length());
+		}
+	}
+
+	@Test
+	public void testConcurrentRewardsAreFlushedAsOneCreditPerBeneficiary() throws Exception {
+		try (InMemoryRewardNetwork rewardNetwork = rewardNetwork()) {
+			ExecutorService callers = Executors.newFixedThreadPool(8);
+			List<Future<RewardConfirmation>> results = new ArrayList<Future<RewardConfirmation>>();
+			for (int i = 0; i < 100; i++) {
+				results.add(callers.submit(() -> rewardNetwork.rewardAccountFor(dining("100.00"))));
+			}
+			for (Future<RewardConfirmation> result : results) {
+				assertNotNull(result.get().getConfirmationNumber());
+			}
+			callers.shutdown();
+
+			assertEquals(100, rewardNetwork.flush());
+			assertEquals(100, rewardNetwork.getRewards());
+			assertEquals(Double.valueOf(400.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+			assertEquals(Integer.valueOf(100), jdbcTemplate.queryForObject(REWARD_COUNT_SQL, Integer.class));
+			// One credit for the whole flush
+			assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(
+					"select VERSION from T_ACCOUNT where NUMBER = '123456789'", Integer.class));
+		}
+	}
+
+	@Test
+	public void testUnflushedRewardsAreReplayedAfterCrash() throws Exception {
+		RewardLog log = new RewardLog(logFile);
+		InMemoryRewardNetwork crashed = rewardNetwork(log);
+		crashed.rewardAccountFor(dining("100.00"));
+		crashed.flush();
+		crashed.rewardAccountFor(dining("100.00"));
+		// Crash: the second reward is confirmed but only in the log
+		log.close();
+		assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+
+		try (InMemoryRewardNetwork rewardNetwork = rewardNetwork()) {
+			assertEquals(1, rewardNetwork.getUnflushed());
+			RewardConfirmation confirmation = rewardNetwork.rewardAccountFor(dining("100.00"));
+			assertEquals(RewardLog.confirmationNumber(3), confirmation.getConfirmationNumber());
+			assertEquals(MonetaryAmount.valueOf("12.00"),
+					confirmation.getAccountContribution().getDistribution("Annabelle").getTotalSavings());
+
+			assertEquals(2, rewardNetwork.flush());
+			assertEquals(Double.valueOf(12.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+			assertEquals(Integer.valueOf(3), jdbcTemplate.queryForObject(REWARD_COUNT_SQL, Integer.class));
+		}
+	}
+
+	@Test
+	public void testRewardsAlreadyRecordedAreNotReplayed() throws Exception {
+		RewardLog log = new RewardLog(logFile);
+		InMemoryRewardNetwork crashed = rewardNetwork(log);
+		crashed.rewardAccountFor(dining("100.00"));
+		crashed.rewardAccountFor(dining("100.00"));
+		// Crash after the flush committed but before the log was emptied
+		jdbcTemplate.update("update T_ACCOUNT_BENEFICIARY set SAVINGS = 8.00");
+		jdbcTemplate.update("insert into T_REWARD (CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, "
+				+ "DINING_MERCHANT_NUMBER, DINING_DATE, DINING_AMOUNT) values (?, 8.00, current_date, '123456789', "
+				+ "'1234567890', current_date, 100.00)", RewardLog.confirmationNumber(2));
+		log.close();
+
+		try (InMemoryRewardNetwork rewardNetwork = rewardNetwork()) {
+			assertEquals(0, rewardNetwork.getUnflushed());
+			assertEquals(0, logFile.length());
+			RewardConfirmation confirmation = rewardNetwork.rewardAccountFor(dining("100.00"));
+			assertEquals(RewardLog.confirmationNumber(3), confirmation.getConfirmationNumber());
+			assertEquals(MonetaryAmount.valueOf("12.00"),
+					confirmation.getAccountContribution().getDistribution("Annabelle").getTotalSavings());
+		}
+	}
+
+	@Test
+	public void testDiningRewardedBeforeIsRefused() throws Exception {
+		try (InMemoryRewardNetwork rewardNetwork = rewardNetwork()) {
+			rewardNetwork.rewardAccountFor(dining("100.00", "R-1"));
+			// Held in memory until flushed, then found in the database
+			assertThrows(DuplicateKeyException.class, () -> rewardNetwork.rewardAccountFor(dining("100.00", "R-1")));
+			assertEquals(1, rewardNetwork.flush());
+			assertThrows(DuplicateKeyException.class, () -> rewardNetwork.rewardAccountFor(dining("100.00", "R-1")));
+
+			assertEquals(1, rewardNetwork.getRewards());
+			assertEquals(0, rewardNetwork.getUnflushed());
+			assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+			assertNotNull(jdbcTemplate.queryForObject("select DINING_FINGERPRINT from T_REWARD", String.class));
+			assertNotNull(rewardNetwork.rewardAccountFor(dining("100.00", "R-2")));
+		}
+	}
+
+	@Test
+	public void testReplayedDiningIsRefused() throws Exception {
+		RewardLog log = new RewardLog(logFile);
+		InMemoryRewardNetwork crashed = rewardNetwork(log);
+		crashed.rewardAccountFor(dining("100.00", "R-1"));
+		log.close();
+
+		try (InMemoryRewardNetwork rewardNetwork = rewardNetwork()) {
+			assertThrows(DuplicateKeyException.class, () -> rewardNetwork.rewardAccountFor(dining("100.00", "R-1")));
+			assertEquals(1, rewardNetwork.flush());
+			assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(REWARD_COUNT_SQL, Integer.class));
+		}
+	}
+
+	@Test
+	public void testCloseFlushes() throws Exception {
+		InMemoryRewardNetwork rewardNetwork = rewardNetwork();
+		rewardNetwork.rewardAccountFor(dining("100.00"));
+		rewardNetwork.close();
+
+		assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+		assertThrows(IllegalStateException.class, () -> rewardNetwork.rewardAccountFor(dining("100.00")));
+	}
+
+	@Test
+	public void testInMemoryProfile() throws IOException {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().setActiveProfiles(RewardsConfig.IN_MEMORY_PROFILE);
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test",
+				singletonMap("rewards.log.file", logFile.getPath())));
+		context.register(InMemoryTestConfig.class);
+		context.refresh();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+		try {
+			RewardNetwork rewardNetwork = context.getBean(RewardNetwork.class);
+			assertTrue(rewardNetwork instanceof InMemoryRewardNetwork);
+			assertNotNull(rewardNetwork.rewardAccountFor(dining("100.00")).getConfirmationNumber());
+			((InMemoryRewardNetwork) rewardNetwork).flush();
+			assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(REWARD_COUNT_SQL, Integer.class));
+		} finally {
+			context.close();
+		}
+	}
+
+	private InMemoryRewardNetwork rewardNetwork() throws IOException {
+		return rewardNetwork(new RewardLog(logFile));
+	}
+
+	private InMemoryRewardNetwork rewardNetwork(RewardLog log) throws IOException {
+		JdbcAccountRepository accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		JdbcRestaurantRepository restaurantRepository = new JdbcRestaurantRepository();
+		restaurantRepository.setDataSource(dataSource);
+		JdbcRewardRepository rewardRepository = new JdbcRewardRepository();
+		rewardRepository.setDataSource(dataSource);
+
+		InMemoryRewardNetwork rewardNetwork = new InMemoryRewardNetwork(accountRepository, restaurantRepository,
+				rewardRepository, new DataSourceTransactionManager(dataSource), log);
+		// Tests flush when they choose to
+		rewardNetwork.setFlushIntervalMillis(60_000);
+		rewardNetwork.start();
+		return rewardNetwork;
+	}
+
+	private static Dining dining(String amount) {
+		return Dining.createDining(amount, "1234123412341234", "1234567890");
+	}
+
+	private static Dining dining(String amount, String merchantReference) {
+		return new Dining(MonetaryAmount.valueOf(amount), "1234123412341234", "1234567890", SimpleDate.today(),
+				merchantReference);
+	}
+
+	private static EmbeddedDatabase rewardsDatabase() {
+		return new EmbeddedDatabaseBuilder().generateUniqueName(true)
+			.addScript("classpath:rewards/testdb/schema.sql")
+			.addScript("classpath:rewards/testdb/data.sql")
+			.build();
+	}
+
+	@Configuration
+	@Import(RewardsConfig.class)
+	static class InMemoryTestConfig {
+
+		@Bean
+		public DataSource dataSource() {
+			return rewardsDatabase();
+		}
+
+		@Bean
+		public PlatformTransactionManager transactionManager() {
+			return new DataSourceTransactionManager(dataSource());
+		}
+	}
+}
@@ -0,0 +1,239 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import common.money.MonetaryAmount;
+import config.RewardsConfig;
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.restaurant.JdbcRestaurantRepository;
+import rewards.internal.reward.JdbcRewardRepository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests rewarding accounts on the partition workers that own them, against an in-memory database of its own.
+ */
+public class PartitionedRewardNetworkTests {
+
+	private static final String SAVINGS_SQL = "select sum(SAVINGS) from T_ACCOUNT_BENEFICIARY where ACCOUNT_ID = ?";
+
+	private static final String REWARD_COUNT_SQL = "select count(*) from T_REWARD";
+
+	// The cards of the test accounts with beneficiaries, by account id
+	private static final String[] CARDS = { "1234123412341234", "1234123412340003", "1234123412340008",
+			"1234123412340012", "1234123412340015", "1234123412340017" };
+
+	private static final long[] ACCOUNT_IDS = { 0, 3, 8, 12, 15, 17 };
+
+	private EmbeddedDatabase dataSource;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private PartitionedRewardNetwork rewardNetwork;
+
+	@BeforeEach
+	public void setUp() {
+		dataSource = rewardsDatabase();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	@AfterEach
+	public void tearDown() throws InterruptedException {
+		if (rewardNetwork != null) {
+			rewardNetwork.close();
+		}
+		dataSource.shutdown();
+	}
+
+	@Test
+	public void testRoutingSpreadsCards() {
+		for (String card : CARDS) {
+			int partition = PartitionedRewardNetwork.partitionFor(card, 4);
+			assertTrue(partition >= 0 && partition < 4);
+			assertEquals(partition, PartitionedRewardNetwork.partitionFor(card, 4));
+		}
+		assertEquals(0, PartitionedRewardNetwork.partitionFor(CARDS[0], 1));
+	}
+
+	@Test
+	public void testRewardsForAHotAccountAreAllCounted() throws Exception {
+		rewardNetwork = rewardNetwork(new JdbcRewardRepository(), 4, 10);
+
+		List<CompletableFuture<RewardConfirmation>> results = new ArrayList<CompletableFuture<RewardConfirmation>>();
+		for (int i = 0; i < 100; i++) {
+			results.add(rewardNetwork.submit(dining(CARDS[0], "100.00")));
+		}
+		for (CompletableFuture<RewardConfirmation> result : results) {
+			assertNotNull(result.get().getConfirmationNumber());
+		}
+
+		assertEquals(100, rewardNetwork.getRewards());
+		assertEquals(0, rewardNetwork.getFailures());
+		assertTrue(rewardNetwork.getBatches() < 100, "queued rewards should have been written together");
+		assertEquals(Double.valueOf(800.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, 0L));
+		assertEquals(Integer.valueOf(100), jdbcTemplate.queryForObject(REWARD_COUNT_SQL, Integer.class));
+	}
+
+	@Test
+	public void testRewardsForManyAccounts() throws Exception {
+		rewardNetwork = rewardNetwork(new JdbcRewardRepository(), 3, 1000);
+
+		List<CompletableFuture<RewardConfirmation>> results = new ArrayList<CompletableFuture<RewardConfirmation>>();
+		for (int i = 0; i < 10; i++) {
+			for (String card : CARDS) {
+				results.add(rewardNetwork.submit(dining(card, "100.00")));
+			}
+		}
+		for (CompletableFuture<RewardConfirmation> result : results) {
+			result.get();
+		}
+
+		for (long accountId : ACCOUNT_IDS) {
+			assertEquals(Double.valueOf(80.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, accountId));
+		}
+		assertEquals(Integer.valueOf(60), jdbcTemplate.queryForObject(REWARD_COUNT_SQL, Integer.class));
+	}
+
+	@Test
+	public void testRebalanceLosesNoRewards() throws Exception {
+		rewardNetwork = rewardNetwork(new JdbcRewardRepository(), 2, 5);
+
+		List<CompletableFuture<RewardConfirmation>> results = new ArrayList<CompletableFuture<RewardConfirmation>>();
+		for (int i = 0; i < 20; i++) {
+			for (String card : CARDS) {
+				results.add(rewardNetwork.submit(dining(card, "100.00")));
+			}
+			if (i == 10) {
+				rewardNetwork.rebalance(5);
+			}
+		}
+		for (CompletableFuture<RewardConfirmation> result : results) {
+			result.get();
+		}
+
+		assertEquals(5, rewardNetwork.getPartitions());
+		assertEquals(120, rewardNetwork.getRewards());
+		for (long accountId : ACCOUNT_IDS) {
+			assertEquals(Double.valueOf(160.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, accountId));
+		}
+	}
+
+	@Test
+	public void testFailedRewardFailsOnlyItsCaller() throws Exception {
+		JdbcRewardRepository failsOnOddAmounts = new JdbcRewardRepository() {
+			@Override
+			public RewardConfirmation confirmReward(AccountContribution contribution, Dining dining) {
+				RewardConfirmation confirmation = super.confirmReward(contribution, dining);
+				if (dining.getAmount().equals(MonetaryAmount.valueOf("13.00"))) {
+					throw new IllegalStateException("unlucky");
+				}
+				return confirmation;
+			}
+		};
+		rewardNetwork = rewardNetwork(failsOnOddAmounts, 1, 100);
+
+		CompletableFuture<RewardConfirmation> first = rewardNetwork.submit(dining(CARDS[0], "100.00"));
+		CompletableFuture<RewardConfirmation> unlucky = rewardNetwork.submit(dining(CARDS[0], "13.00"));
+		CompletableFuture<RewardConfirmation> last = rewardNetwork.submit(dining(CARDS[0], "100.00"));
+
+		assertNotNull(first.get());
+		assertNotNull(last.get());
+		ExecutionException e = assertThrows(ExecutionException.class, unlucky::get);
+		assertEquals("unlucky", e.getCause().getMessage());
+
+		assertEquals(1, rewardNetwork.getFailures());
+		assertEquals(Double.valueOf(16.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, 0L));
+		assertEquals(Integer.valueOf(2), jdbcTemplate.queryForObject(REWARD_COUNT_SQL, Integer.class));
+	}
+
+	@Test
+	public void testUnknownCardFailsItsCaller() {
+		rewardNetwork = rewardNetwork(new JdbcRewardRepository(), 2, 10);
+		assertThrows(RuntimeException.class, () -> rewardNetwork.rewardAccountFor(dining("bogus", "100.00")));
+		assertNotNull(rewardNetwork.rewardAccountFor(dining(CARDS[0], "100.00")));
+	}
+
+	@Test
+	public void testClosedNetworkTakesNoRewards() throws InterruptedException {
+		rewardNetwork = rewardNetwork(new JdbcRewardRepository(), 2, 10);
+		rewardNetwork.close();
+		assertThrows(IllegalStateException.class, () -> rewardNetwork.submit(dining(CARDS[0], "100.00")));
+	}
+
+	@Test
+	public void testPartitionedProfile() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().setActiveProfiles(RewardsConfig.PARTITIONED_PROFILE);
+		context.register(PartitionedTestConfig.class);
+		context.refresh();
+		try {
+			RewardNetwork rewardNetwork = context.getBean(RewardNetwork.class);
+			assertTrue(rewardNetwork instanceof PartitionedRewardNetwork);
+			assertNotNull(rewardNetwork.rewardAccountFor(dining(CARDS[0], "100.00")).getConfirmationNumber());
+		} finally {
+			context.close();
+		}
+	}
+
+	private PartitionedRewardNetwork rewardNetwork(JdbcRewardRepository rewardRepository, int partitions,
+			int queueCapacity) {
+		JdbcAccountRepository accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		JdbcRestaurantRepository restaurantRepository = new JdbcRestaurantRepository();
+		restaurantRepository.setDataSource(dataSource);
+		rewardRepository.setDataSource(dataSource);
+
+		PartitionedRewardNetwork rewardNetwork = new PartitionedRewardNetwork(accountRepository, restaurantRepository,
+				rewardRepository, new DataSourceTransactionManager(dataSource), partitions, queueCapacity);
+		rewardNetwork.start();
+		return rewardNetwork;
+	}
+
+	private static Dining dining(String creditCardNumber, String amount) {
+		return Dining.createDining(amount, creditCardNumber, "1234567890");
+	}
+
+	private static EmbeddedDatabase rewardsDatabase() {
+		return new EmbeddedDatabaseBuilder().generateUniqueName(true)
+			.addScript("classpath:rewards/testdb/schema.sql")
+			.addScript("classpath:rewards/testdb/data.sql")
+			.build();
+	}
+
+	@Configuration
+	@Import(RewardsConfig.class)
+	static class PartitionedTestConfig {
+
+		@Bean
+		public DataSource dataSource() {
+			return rewardsDatabase();
+		}
+
+		@Bean
+		public PlatformTransactionManager transactionManager() {
+			return new DataSourceTransactionManager(dataSource());
+		}
+	}
+}
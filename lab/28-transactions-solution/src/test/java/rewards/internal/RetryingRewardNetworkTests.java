@@ -0,0 +1,100 @@
+package rewards.internal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the retries around a reward network that fails a given number of times before succeeding.
+ */
+public class RetryingRewardNetworkTests {
+
+	private final Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+	private ConflictingRewardNetwork target;
+
+	private RetryingRewardNetwork rewardNetwork;
+
+	@BeforeEach
+	public void setUp() {
+		target = new ConflictingRewardNetwork();
+		rewardNetwork = new RetryingRewardNetwork(target);
+		rewardNetwork.setMaxAttempts(3);
+		rewardNetwork.setInitialBackoffMillis(1);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		TransactionSynchronizationManager.setActualTransactionActive(false);
+	}
+
+	@Test
+	public void testRetriesConflicts() {
+		target.conflicts = 2;
+
+		assertNotNull(rewardNetwork.rewardAccountFor(dining));
+		assertEquals(3, target.attempts);
+		assertEquals(1, rewardNetwork.getRewards());
+		assertEquals(2, rewardNetwork.getConflicts());
+		assertEquals(0, rewardNetwork.getFailures());
+		assertEquals(2.0 / 3, rewardNetwork.getConflictRate(), 0.0001);
+	}
+
+	@Test
+	public void testGivesUpAfterMaxAttempts() {
+		target.conflicts = 3;
+
+		assertThrows(OptimisticLockingFailureException.class, () -> rewardNetwork.rewardAccountFor(dining));
+		assertEquals(3, target.attempts);
+		assertEquals(0, rewardNetwork.getRewards());
+		assertEquals(1, rewardNetwork.getFailures());
+	}
+
+	@Test
+	public void testDoesNotRetryInsideCallersTransaction() {
+		target.conflicts = 1;
+		TransactionSynchronizationManager.setActualTransactionActive(true);
+
+		assertThrows(OptimisticLockingFailureException.class, () -> rewardNetwork.rewardAccountFor(dining));
+		assertEquals(1, target.attempts);
+		assertEquals(1, rewardNetwork.getFailures());
+	}
+
+	@Test
+	public void testOtherFailuresAreNotRetried() {
+		target.conflicts = 0;
+		target.failure = new IllegalStateException("invalid allocations");
+
+		assertThrows(IllegalStateException.class, () -> rewardNetwork.rewardAccountFor(dining));
+		assertEquals(1, target.attempts);
+		assertEquals(0, rewardNetwork.getConflicts());
+	}
+
+	private static class ConflictingRewardNetwork implements RewardNetwork {
+
+		private int conflicts;
+
+		private RuntimeException failure;
+
+		private int attempts;
+
+		public RewardConfirmation rewardAccountFor(Dining dining) {
+			attempts++;
+			if (attempts <= conflicts) {
+				throw new OptimisticLockingFailureException("conflict " + attempts);
+			}
+			if (failure != null) {
+				throw failure;
+			}
+			return new RewardConfirmation("1", null);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package rewards.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import common.datetime.SimpleDate;
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+import rewards.Dining;
+import rewards.internal.account.Account;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests writing rewards to the log and reading them back after a crash.
+ */
+public class RewardLogTests {
+
+	@TempDir
+	File directory;
+
+	@Test
+	public void testRecoverAppendedEntries() throws IOException {
+		File file = new File(directory, "rewards.log");
+		try (RewardLog log = new RewardLog(file)) {
+			assertTrue(log.recover().isEmpty());
+			log.append(entry(1, "100.00"));
+			log.append(entry(2, "50.00"));
+			log.sync(2);
+		}
+
+		try (RewardLog log = new RewardLog(file)) {
+			List<RewardLog.Entry> entries = log.recover();
+			assertEquals(2, entries.size());
+
+			RewardLog.Entry first = entries.get(0);
+			assertEquals(1, first.getSequence());
+			assertEquals(RewardLog.confirmationNumber(1), first.getConfirmationNumber());
+			assertEquals(0L, first.getAccountId());
+			assertEquals("123456789", first.getAccountNumber());
+			assertEquals(MonetaryAmount.valueOf("100.00"), first.getDining().getAmount());
+			assertEquals("1234123412341234", first.getDining().getCreditCardNumber());
+			assertEquals(MonetaryAmount.valueOf("8.00"), first.getAmount());
+			assertEquals(MonetaryAmount.valueOf("4.00"), first.getDistributions().get("Annabelle"));
+			assertEquals(MonetaryAmount.valueOf("4.00"), first.getDistributions().get("Corgan"));
+			assertEquals(2, entries.get(1).getSequence());
+		}
+	}
+
+	@Test
+	public void testRecoverKeepsMerchantReference() throws IOException {
+		File file = new File(directory, "rewards.log");
+		Account account = new Account("123456789", "Keith and Keri Donald");
+		account.addBeneficiary("Annabelle", Percentage.valueOf("100%"));
+		Dining dining = new Dining(MonetaryAmount.valueOf("100.00"), "1234123412341234", "1234567890",
+				SimpleDate.today(), "R-1");
+		try (RewardLog log = new RewardLog(file)) {
+			log.recover();
+			log.append(new RewardLog.Entry(1, 0L, SimpleDate.today(), dining,
+					account.makeContribution(MonetaryAmount.valueOf("8.00"))));
+			log.append(entry(2, "50.00"));
+			log.sync(2);
+		}
+
+		try (RewardLog log = new RewardLog(file)) {
+			List<RewardLog.Entry> entries = log.recover();
+			assertEquals("R-1", entries.get(0).getDining().getMerchantReference());
+			assertNull(entries.get(1).getDining().getMerchantReference());
+		}
+	}
+
+	@Test
+	public void testRecoverDropsTornLastEntry() throws IOException {
+		File file = new File(directory, "rewards.log");
+		try (RewardLog log = new RewardLog(file)) {
+			log.recover();
+			log.append(entry(1, "100.00"));
+			log.append(entry(2, "100.00"));
+			log.sync(2);
+		}
+		// Lose the end of the last entry, as a crash part way through writing it would
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 3);
+		}
+
+		try (RewardLog log = new RewardLog(file)) {
+			List<RewardLog.Entry> entries = log.recover();
+			assertEquals(1, entries.size());
+			assertEquals(1, entries.get(0).getSequence());
+
+			// Appends go after the last whole entry
+			log.append(entry(2, "100.00"));
+			log.sync(2);
+		}
+		try (RewardLog log = new RewardLog(file)) {
+			assertEquals(2, log.recover().size());
+		}
+	}
+
+	@Test
+	public void testTruncateOnlyWhenNothingNewer() throws IOException {
+		File file = new File(directory, "rewards.log");
+		try (RewardLog log = new RewardLog(file)) {
+			log.recover();
+			log.append(entry(1, "100.00"));
+			log.append(entry(2, "100.00"));
+			assertFalse(log.truncate(1));
+			assertTrue(log.truncate(2));
+			assertTrue(log.recover().isEmpty());
+		}
+		assertEquals(0, file.length());
+	}
+
+	@Test
+	public void testConfirmationNumbersSortInSequence() {
+		assertTrue(RewardLog.confirmationNumber(9).compareTo(RewardLog.confirmationNumber(10)) < 0);
+		assertEquals(10, RewardLog.sequenceOf(RewardLog.confirmationNumber(10)));
+	}
+
+	private static RewardLog.Entry entry(long sequence, String amount) {
+		Account account = new Account("123456789", "Keith and Keri Donald");
+		account.setEntityId(0L);
+		account.addBeneficiary("Annabelle", Percentage.valueOf("50%"));
+		account.addBeneficiary("Corgan", Percentage.valueOf("50%"));
+		Dining dining = Dining.createDining(amount, "1234123412341234", "1234567890");
+		return new RewardLog.Entry(sequence, 0L, SimpleDate.today(), dining,
+				account.makeContribution(MonetaryAmount.valueOf("8.00")));
+	}
+}
@@ -0,0 +1,130 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.account.JdbcRewardContextRepository;
+import rewards.internal.reward.JdbcRewardRepository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the reward network that only holds a transaction for its writes, against an in-memory database of its own.
+ */
+public class RewardNetworkImplShortTransactionTests {
+
+	private static final String SAVINGS_SQL = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ?";
+
+	private EmbeddedDatabase dataSource;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private JdbcAccountRepository accountRepository;
+
+	private JdbcRewardContextRepository rewardContextRepository;
+
+	private DataSourceTransactionManager transactionManager;
+
+	@BeforeEach
+	public void setUp() {
+		dataSource = new EmbeddedDatabaseBuilder().generateUniqueName(true)
+			.addScript("classpath:rewards/testdb/schema.sql")
+			.addScript("classpath:rewards/testdb/data.sql")
+			.build();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		rewardContextRepository = new JdbcRewardContextRepository();
+		rewardContextRepository.setDataSource(dataSource);
+		transactionManager = new DataSourceTransactionManager(dataSource);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		dataSource.shutdown();
+	}
+
+	@Test
+	public void testRewardForDining() {
+		RewardConfirmation confirmation = rewardNetwork(rewardRepository()).rewardAccountFor(dining());
+
+		assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+		assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Corgan"));
+		assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(
+				"select count(*) from T_REWARD where CONFIRMATION_NUMBER = ?", Integer.class,
+				confirmation.getConfirmationNumber()));
+	}
+
+	@Test
+	public void testCreditsRollBackIfRewardIsNotRecorded() {
+		JdbcRewardRepository failing = new JdbcRewardRepository() {
+			@Override
+			public RewardConfirmation confirmReward(AccountContribution contribution, Dining dining) {
+				throw new IllegalStateException("reward could not be recorded");
+			}
+		};
+
+		assertThrows(IllegalStateException.class, () -> rewardNetwork(failing).rewardAccountFor(dining()));
+		assertEquals(Double.valueOf(0.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+	}
+
+	@Test
+	public void testConcurrentRewardsAllCount() throws Exception {
+		RewardNetworkImplShortTransaction rewardNetwork = rewardNetwork(rewardRepository());
+		int threads = 8;
+		int rewardsPerThread = 10;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int i = 0; i < threads; i++) {
+				tasks.add(() -> {
+					for (int j = 0; j < rewardsPerThread; j++) {
+						rewardNetwork.rewardAccountFor(dining());
+					}
+					return null;
+				});
+			}
+			for (Future<Void> result : executor.invokeAll(tasks)) {
+				result.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		double expected = threads * rewardsPerThread * 4.00d;
+		assertEquals(Double.valueOf(expected), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+		assertEquals(Double.valueOf(expected), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Corgan"));
+	}
+
+	private RewardNetworkImplShortTransaction rewardNetwork(JdbcRewardRepository rewardRepository) {
+		return new RewardNetworkImplShortTransaction(accountRepository, rewardContextRepository, rewardRepository,
+				transactionManager);
+	}
+
+	private JdbcRewardRepository rewardRepository() {
+		JdbcRewardRepository rewardRepository = new JdbcRewardRepository();
+		rewardRepository.setDataSource(dataSource);
+		return rewardRepository;
+	}
+
+	private static Dining dining() {
+		return Dining.createDining("100.00", "1234123412341234", "1234567890");
+	}
+}
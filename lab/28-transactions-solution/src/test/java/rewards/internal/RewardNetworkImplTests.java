@@ -29,12 +29,18 @@ public class RewardNetworkImplTests {
 	 */
 	private RewardNetworkImpl rewardNetwork;
 
+	private AccountRepository accountRepo;
+
+	private RestaurantRepository restaurantRepo;
+
+	private RewardRepository rewardRepo;
+
 	@BeforeEach
 	public void setUp() throws Exception {
 		// create stubs to facilitate fast in-memory testing with dummy data and no external dependencies
-		AccountRepository accountRepo = new StubAccountRepository();
-		RestaurantRepository restaurantRepo = new StubRestaurantRepository();
-		RewardRepository rewardRepo = new StubRewardRepository();
+		accountRepo = new StubAccountRepository();
+		restaurantRepo = new StubRestaurantRepository();
+		rewardRepo = new StubRewardRepository();
 
 		// setup the object being tested by handing what it needs to work
 		rewardNetwork = new RewardNetworkImpl(accountRepo, restaurantRepo, rewardRepo);
@@ -69,4 +75,19 @@ public class RewardNetworkImplTests {
 		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Annabelle").getAmount());
 		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Corgan").getAmount());
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testRewardForDiningWithRewardContext() {
+		RewardContextRepository contextRepo = (creditCardNumber, merchantNumber) -> new RewardContext(
+				accountRepo.findByCreditCard(creditCardNumber), restaurantRepo.findByMerchantNumber(merchantNumber));
+		rewardNetwork = new RewardNetworkImpl(accountRepo, contextRepo, rewardRepo);
+
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+		RewardConfirmation confirmation = rewardNetwork.rewardAccountFor(dining);
+
+		AccountContribution contribution = confirmation.getAccountContribution();
+		assertEquals("123456789", contribution.getAccountNumber());
+		assertEquals(MonetaryAmount.valueOf("8.00"), contribution.getAmount());
+		assertEquals(MonetaryAmount.valueOf("4.00"), contribution.getDistribution("Annabelle").getAmount());
+	}
+}
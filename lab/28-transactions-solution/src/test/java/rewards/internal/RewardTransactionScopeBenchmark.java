@@ -0,0 +1,245 @@
+package rewards.internal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import rewards.Dining;
+import rewards.RewardNetwork;
+import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.account.JdbcRewardContextRepository;
+import rewards.internal.restaurant.JdbcRestaurantRepository;
+import rewards.internal.reward.JdbcRewardRepository;
+
+/**
+ * Compares how long each reward network holds connections, and how many rewards it makes per second, with several
+ * threads rewarding the accounts of the test data:
+ * <ul>
+ * <li>{@link RewardNetworkImpl}: the whole use case in one transaction.
+ * <li>{@link RewardNetworkImplRequiresNew}: the whole use case in a new transaction, called from within the caller's
+ * transaction as it would be in practice, so each reward holds two connections.
+ * <li>{@link RewardNetworkImplShortTransaction}: an auto-committed read, then a transaction for the writes only.
+ * <li>{@link GroupCommitRewardNetwork}: as the previous, but the writes of concurrent rewards share a transaction.
+ * </ul>
+ * The first two write balances computed from what they read, so they are retried when another thread updated the
+ * account in between; conflicts are reported too.
+ * <p>
+ * Not a test, so it is not run by the build. Run the main method from the IDE. Against an in-memory database the
+ * differences in hold time are small in absolute terms; with a network between application and database every extra
+ * statement inside the transaction adds a round trip to them.
+ */
+public class RewardTransactionScopeBenchmark {
+
+	private static final int THREADS = 8;
+
+	private static final int REWARDS_PER_THREAD = 2_000;
+
+	private static final String MERCHANT_NUMBER = "1234567890";
+
+	/**
+	 * Cards of accounts whose allocations add up to 100%, the only ones that can be rewarded.
+	 */
+	private static final String CARDS_SQL = "select c.NUMBER from T_ACCOUNT_CREDIT_CARD c where "
+			+ "(select sum(b.ALLOCATION_PERCENTAGE) from T_ACCOUNT_BENEFICIARY b where b.ACCOUNT_ID = c.ACCOUNT_ID) = 1";
+
+	public static void main(String[] args) throws Exception {
+		System.out.printf("%d threads x %d rewards%n", THREADS, REWARDS_PER_THREAD);
+		System.out.printf("%-16s %10s %10s %12s %12s %6s %10s%n", "variant", "rewards/s", "conns/rwd",
+				"us/conn", "held us/rwd", "peak", "conflicts");
+		for (int round = 0; round < 2; round++) {
+			// The first round warms up the JIT
+			boolean report = round == 1;
+			run("one transaction", RewardTransactionScopeBenchmark::oneTransaction, report);
+			run("requires new", RewardTransactionScopeBenchmark::requiresNew, report);
+			run("short", RewardTransactionScopeBenchmark::shortTransaction, report);
+			run("group commit", RewardTransactionScopeBenchmark::groupCommit, report);
+		}
+	}
+
+	private static RetryingRewardNetwork oneTransaction(Database db) {
+		RewardNetworkImpl rewardNetwork = new RewardNetworkImpl(db.accountRepository, db.rewardContextRepository,
+				db.rewardRepository);
+		return retrying(transactional(rewardNetwork, db.transactionManager));
+	}
+
+	private static RetryingRewardNetwork requiresNew(Database db) {
+		RewardNetwork rewardNetwork = transactional(new RewardNetworkImplRequiresNew(db.accountRepository,
+				db.restaurantRepository, db.rewardRepository), db.transactionManager);
+		TransactionTemplate callersTransaction = new TransactionTemplate(db.transactionManager);
+		return retrying(dining -> callersTransaction.execute(status -> rewardNetwork.rewardAccountFor(dining)));
+	}
+
+	private static RewardNetwork shortTransaction(Database db) {
+		return new RewardNetworkImplShortTransaction(db.accountRepository, db.rewardContextRepository,
+				db.rewardRepository, db.transactionManager);
+	}
+
+	private static RewardNetwork groupCommit(Database db) {
+		GroupCommitRewardNetwork rewardNetwork = new GroupCommitRewardNetwork(db.accountRepository,
+				db.rewardContextRepository, db.rewardRepository, db.transactionManager, 1000);
+		rewardNetwork.start();
+		return rewardNetwork;
+	}
+
+	private static RetryingRewardNetwork retrying(RewardNetwork rewardNetwork) {
+		RetryingRewardNetwork retrying = new RetryingRewardNetwork(rewardNetwork);
+		retrying.setMaxAttempts(1000);
+		retrying.setInitialBackoffMillis(1);
+		retrying.setMaxBackoffMillis(10);
+		return retrying;
+	}
+
+	/**
+	 * Applies the @Transactional annotations of the reward network, as Spring would for a bean.
+	 */
+	private static RewardNetwork transactional(RewardNetwork rewardNetwork, PlatformTransactionManager transactionManager) {
+		ProxyFactory proxyFactory = new ProxyFactory(rewardNetwork);
+		proxyFactory.addAdvice(new TransactionInterceptor(transactionManager, new AnnotationTransactionAttributeSource()));
+		return (RewardNetwork) proxyFactory.getProxy();
+	}
+
+	private static void run(String name, Function<Database, RewardNetwork> variant, boolean report) throws Exception {
+		Database db = new Database();
+		RewardNetwork rewardNetwork = variant.apply(db);
+		try {
+			List<String> cards = new JdbcTemplate(db.embedded).queryForList(CARDS_SQL, String.class);
+			db.dataSource.reset();
+
+			ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+			long start = System.nanoTime();
+			try {
+				List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+				for (int i = 0; i < THREADS; i++) {
+					int thread = i;
+					tasks.add(() -> {
+						for (int j = 0; j < REWARDS_PER_THREAD; j++) {
+							String card = cards.get((thread + j) % cards.size());
+							rewardNetwork.rewardAccountFor(Dining.createDining("100.00", card, MERCHANT_NUMBER));
+						}
+						return null;
+					});
+				}
+				for (Future<Void> result : executor.invokeAll(tasks)) {
+					result.get();
+				}
+			} finally {
+				executor.shutdown();
+			}
+			long elapsed = System.nanoTime() - start;
+
+			if (report) {
+				int rewards = THREADS * REWARDS_PER_THREAD;
+				HoldTimeDataSource ds = db.dataSource;
+				long conflicts = rewardNetwork instanceof RetryingRewardNetwork
+						? ((RetryingRewardNetwork) rewardNetwork).getConflicts() : 0;
+				System.out.printf("%-16s %10.0f %10.2f %12.1f %12.1f %6d %10d%n", name, rewards * 1e9 / elapsed,
+						(double) ds.acquired.sum() / rewards, ds.heldNanos.sum() / 1e3 / ds.acquired.sum(),
+						ds.heldNanos.sum() / 1e3 / rewards, ds.peak.get(), conflicts);
+			}
+		} finally {
+			if (rewardNetwork instanceof AutoCloseable) {
+				((AutoCloseable) rewardNetwork).close();
+			}
+			db.embedded.shutdown();
+		}
+	}
+
+	/**
+	 * A database of its own, with the repositories and transaction manager over it.
+	 */
+	private static class Database {
+
+		final EmbeddedDatabase embedded = new EmbeddedDatabaseBuilder().generateUniqueName(true)
+			.addScript("classpath:rewards/testdb/schema.sql")
+			.addScript("classpath:rewards/testdb/data.sql")
+			.build();
+
+		final HoldTimeDataSource dataSource = new HoldTimeDataSource(embedded);
+
+		final JdbcAccountRepository accountRepository = new JdbcAccountRepository();
+
+		final JdbcRewardContextRepository rewardContextRepository = new JdbcRewardContextRepository();
+
+		final JdbcRestaurantRepository restaurantRepository = new JdbcRestaurantRepository();
+
+		final JdbcRewardRepository rewardRepository = new JdbcRewardRepository();
+
+		final DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+
+		Database() {
+			accountRepository.setDataSource(dataSource);
+			rewardContextRepository.setDataSource(dataSource);
+			restaurantRepository.setDataSource(dataSource);
+			rewardRepository.setDataSource(dataSource);
+		}
+	}
+
+	/**
+	 * Measures how long each connection is held, from being taken to being closed.
+	 */
+	private static class HoldTimeDataSource extends DelegatingDataSource {
+
+		final LongAdder acquired = new LongAdder();
+
+		final LongAdder heldNanos = new LongAdder();
+
+		final AtomicInteger open = new AtomicInteger();
+
+		final AtomicInteger peak = new AtomicInteger();
+
+		HoldTimeDataSource(DataSource dataSource) {
+			super(dataSource);
+		}
+
+		void reset() {
+			acquired.reset();
+			heldNanos.reset();
+			peak.set(0);
+		}
+
+		@Override
+		public Connection getConnection() throws SQLException {
+			Connection connection = super.getConnection();
+			long taken = System.nanoTime();
+			acquired.increment();
+			peak.accumulateAndGet(open.incrementAndGet(), Math::max);
+			boolean[] closed = { false };
+			return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+					(proxy, method, args) -> {
+						if (method.getName().equals("close") && !closed[0]) {
+							closed[0] = true;
+							heldNanos.add(System.nanoTime() - taken);
+							open.decrementAndGet();
+						}
+						try {
+							return method.invoke(connection, args);
+						} catch (InvocationTargetException e) {
+							throw e.getTargetException();
+						}
+					});
+		}
+	}
+}
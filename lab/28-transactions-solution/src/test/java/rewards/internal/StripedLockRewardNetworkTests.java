@@ -0,0 +1,104 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import rewards.Dining;
+import rewards.RewardConfirmation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that rewards for a card run one at a time, and rewards for cards on other stripes do not wait for them.
+ */
+public class StripedLockRewardNetworkTests {
+
+	private ExecutorService executor;
+
+	@BeforeEach
+	public void setUp() {
+		executor = Executors.newFixedThreadPool(8);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testStripesAreRoundedUpToAPowerOfTwo() {
+		assertEquals(1, new StripedLockRewardNetwork(dining -> null, 1).getStripes());
+		assertEquals(64, new StripedLockRewardNetwork(dining -> null, 64).getStripes());
+		assertEquals(128, new StripedLockRewardNetwork(dining -> null, 65).getStripes());
+		assertThrows(IllegalArgumentException.class, () -> new StripedLockRewardNetwork(dining -> null, 0));
+	}
+
+	@Test
+	public void testRewardsForOneCardRunOneAtATime() throws Exception {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger mostRunning = new AtomicInteger();
+		StripedLockRewardNetwork rewardNetwork = new StripedLockRewardNetwork(dining -> {
+			mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			running.decrementAndGet();
+			return null;
+		}, 64);
+
+		List<Future<RewardConfirmation>> results = new ArrayList<Future<RewardConfirmation>>();
+		for (int i = 0; i < 40; i++) {
+			results.add(executor.submit(() -> rewardNetwork.rewardAccountFor(dining("1234123412341234"))));
+		}
+		for (Future<RewardConfirmation> result : results) {
+			result.get();
+		}
+
+		assertEquals(1, mostRunning.get());
+		assertTrue(rewardNetwork.getContended() > 0, "the rewards should have waited for each other");
+	}
+
+	@Test
+	public void testRewardsForCardsOnOtherStripesRunTogether() throws Exception {
+		CountDownLatch bothRunning = new CountDownLatch(2);
+		StripedLockRewardNetwork rewardNetwork = new StripedLockRewardNetwork(dining -> {
+			bothRunning.countDown();
+			try {
+				// Only returns if the other reward got in while this one holds its lock
+				assertTrue(bothRunning.await(10, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return null;
+		}, 64);
+
+		String card = "1234123412341234";
+		String other = "1234123412340000";
+		for (int i = 1; rewardNetwork.stripeFor(other) == rewardNetwork.stripeFor(card); i++) {
+			other = String.format("123412341234%04d", i);
+		}
+		String otherCard = other;
+
+		Future<RewardConfirmation> first = executor.submit(() -> rewardNetwork.rewardAccountFor(dining(card)));
+		Future<RewardConfirmation> second = executor.submit(() -> rewardNetwork.rewardAccountFor(dining(otherCard)));
+		first.get(10, TimeUnit.SECONDS);
+		second.get(10, TimeUnit.SECONDS);
+		assertEquals(0, rewardNetwork.getContended());
+	}
+
+	private static Dining dining(String creditCardNumber) {
+		return Dining.createDining("100.00", creditCardNumber, "1234567890");
+	}
+}
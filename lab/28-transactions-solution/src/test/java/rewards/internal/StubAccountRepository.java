@@ -5,6 +5,7 @@ import java.util.Map;
 
 import org.springframework.dao.EmptyResultDataAccessException;
 
+import rewards.AccountContribution;
 import rewards.internal.account.Account;
 import rewards.internal.account.AccountRepository;
 
@@ -37,7 +38,15 @@ public class StubAccountRepository implements AccountRepository {
 		return account;
 	}
 
+	public Map<String, Account> findAllByCreditCard() {
+		return new HashMap<String, Account>(accountsByCreditCard);
+	}
+
 	public void updateBeneficiaries(Account account) {
 		// nothing to do, everything is in memory
 	}
-}
\ No newline at end of file
+
+	public void creditBeneficiaries(Account account, AccountContribution contribution) {
+		// nothing to do, the contribution has already been made to the account in memory
+	}
+}
@@ -1,6 +1,8 @@
 package rewards.internal;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.dao.EmptyResultDataAccessException;
@@ -40,6 +42,10 @@ public class StubRestaurantRepository implements RestaurantRepository {
 		return restaurant;
 	}
 
+	public List<Restaurant> findAll() {
+		return new ArrayList<Restaurant>(restaurantsByMerchantNumber.values());
+	}
+
 	/**
 	 * A simple "dummy" benefit availability policy that always returns true. Only useful for testing--a real
 	 * availability policy might consider many factors such as the day of week of the dining, or the account's reward
@@ -1,11 +1,16 @@
 package rewards.internal;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import rewards.AccountContribution;
 import rewards.Dining;
 import rewards.RewardConfirmation;
 import rewards.internal.reward.RewardRepository;
+import rewards.internal.reward.UncreditedReward;
 
 /**
  * A dummy reward repository implementation.
@@ -16,6 +21,30 @@ public class StubRewardRepository implements RewardRepository {
 		return new RewardConfirmation(confirmationNumber(), contribution);
 	}
 
+	public void recordRewards(List<RewardLog.Entry> rewards) {
+		// nothing to do, rewards are not kept
+	}
+
+	public long findLastRecordedSequence() {
+		return 0;
+	}
+
+	public boolean isRewarded(Dining dining) {
+		return false;
+	}
+
+	public RewardConfirmation confirmUncreditedReward(AccountContribution contribution, Dining dining) {
+		return confirmReward(contribution, dining);
+	}
+
+	public List<UncreditedReward> findUncreditedRewards() {
+		return Collections.emptyList();
+	}
+
+	public Set<String> markCredited(List<String> confirmationNumbers) {
+		return new HashSet<String>(confirmationNumbers);
+	}
+
 	private String confirmationNumber() {
 		return new Random().toString();
 	}
@@ -0,0 +1,256 @@
+package rewards.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import common.money.MonetaryAmount;
+import config.RewardsConfig;
+import rewards.AccountContribution;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+import rewards.internal.account.Account;
+import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.account.JdbcRewardContextRepository;
+import rewards.internal.reward.JdbcRewardRepository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests recording rewards at once and crediting savings behind, against an in-memory database of its own.
+ */
+public class WriteBehindRewardNetworkTests {
+
+	private static final String SAVINGS_SQL = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ?";
+
+	private static final String UNCREDITED_COUNT_SQL = "select count(*) from T_REWARD where SAVINGS_PENDING = true";
+
+	private EmbeddedDatabase dataSource;
+
+	private JdbcTemplate jdbcTemplate;
+
+	@BeforeEach
+	public void setUp() {
+		dataSource = rewardsDatabase();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		dataSource.shutdown();
+	}
+
+	@Test
+	public void testRewardIsRecordedAtOnceAndCreditedOnFlush() throws Exception {
+		try (WriteBehindRewardNetwork rewardNetwork = rewardNetwork()) {
+			RewardConfirmation confirmation = rewardNetwork.rewardAccountFor(dining("100.00"));
+			assertEquals(MonetaryAmount.valueOf("4.00"),
+					confirmation.getAccountContribution().getDistribution("Annabelle").getAmount());
+			assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(UNCREDITED_COUNT_SQL, Integer.class));
+			assertEquals(1, rewardNetwork.getBuffered());
+			assertEquals(Double.valueOf(0.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+
+			assertEquals(1, rewardNetwork.flush());
+			assertEquals(0, rewardNetwork.getBuffered());
+			assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+			assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject(UNCREDITED_COUNT_SQL, Integer.class));
+		}
+	}
+
+	@Test
+	public void testConcurrentRewardsAreCreditedAsOneUpdatePerBeneficiary() throws Exception {
+		try (WriteBehindRewardNetwork rewardNetwork = rewardNetwork()) {
+			ExecutorService callers = Executors.newFixedThreadPool(8);
+			List<Future<RewardConfirmation>> results = new ArrayList<Future<RewardConfirmation>>();
+			for (int i = 0; i < 100; i++) {
+				results.add(callers.submit(() -> rewardNetwork.rewardAccountFor(dining("100.00"))));
+			}
+			for (Future<RewardConfirmation> result : results) {
+				assertNotNull(result.get().getConfirmationNumber());
+			}
+			callers.shutdown();
+
+			assertEquals(100, rewardNetwork.flush());
+			assertEquals(Double.valueOf(400.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+			assertEquals(Double.valueOf(400.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Corgan"));
+			// One credit for the whole flush
+			assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject(
+					"select VERSION from T_ACCOUNT where NUMBER = '123456789'", Integer.class));
+		}
+	}
+
+	@Test
+	public void testUncreditedRewardsAreRecoveredFromRewardTable() throws Exception {
+		WriteBehindRewardNetwork crashed = rewardNetwork();
+		crashed.rewardAccountFor(dining("100.00"));
+		crashed.flush();
+		crashed.rewardAccountFor(dining("100.00"));
+		// Crash: the second reward is recorded but not credited
+		assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+
+		try (WriteBehindRewardNetwork rewardNetwork = rewardNetwork()) {
+			assertEquals(1, rewardNetwork.getCredits());
+			assertEquals(Double.valueOf(8.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+			assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject(UNCREDITED_COUNT_SQL, Integer.class));
+		}
+
+		// Credited already, so not again
+		assertEquals(0, crashed.flush());
+		assertEquals(Double.valueOf(8.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+	}
+
+	@Test
+	public void testRolledBackRewardIsNotCredited() throws Exception {
+		try (WriteBehindRewardNetwork rewardNetwork = rewardNetwork()) {
+			new TransactionTemplate(new DataSourceTransactionManager(dataSource)).execute(status -> {
+				rewardNetwork.rewardAccountFor(dining("100.00"));
+				status.setRollbackOnly();
+				return null;
+			});
+
+			assertEquals(0, rewardNetwork.getBuffered());
+			assertEquals(0, rewardNetwork.flush());
+			assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("select count(*) from T_REWARD",
+					Integer.class));
+		}
+	}
+
+	@Test
+	public void testCloseCredits() throws Exception {
+		WriteBehindRewardNetwork rewardNetwork = rewardNetwork();
+		rewardNetwork.rewardAccountFor(dining("100.00"));
+		rewardNetwork.close();
+
+		assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+		assertThrows(IllegalStateException.class, () -> rewardNetwork.rewardAccountFor(dining("100.00")));
+	}
+
+	@Test
+	public void testFullBufferFlushedWithoutWaitingForInterval() throws Exception {
+		try (WriteBehindRewardNetwork rewardNetwork = rewardNetwork()) {
+			rewardNetwork.setMaxBufferedRewards(2);
+			for (int i = 0; i < 3; i++) {
+				rewardNetwork.rewardAccountFor(dining("100.00"));
+			}
+
+			long deadline = System.currentTimeMillis() + 10_000;
+			while (rewardNetwork.getCredits() < 2 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertTrue(rewardNetwork.getCredits() >= 2, "credits: " + rewardNetwork.getCredits());
+		}
+	}
+
+	@Test
+	public void testCallerWaitsForRoomInBuffer() throws Exception {
+		try (WriteBehindRewardNetwork rewardNetwork = rewardNetwork(new JdbcAccountRepository(), 100, 1)) {
+			rewardNetwork.rewardAccountFor(dining("100.00"));
+			// Made once the next flush has taken the first
+			rewardNetwork.rewardAccountFor(dining("100.00"));
+			assertEquals(2, rewardNetwork.getRewards());
+			assertTrue(rewardNetwork.getCredits() >= 1);
+		}
+	}
+
+	@Test
+	public void testCallerRefusedWhenBufferStaysFull() throws Exception {
+		JdbcAccountRepository failsToCredit = new JdbcAccountRepository() {
+			@Override
+			public void creditBeneficiaries(Account account, AccountContribution contribution) {
+				throw new IllegalStateException("unlucky");
+			}
+		};
+		try (WriteBehindRewardNetwork rewardNetwork = rewardNetwork(failsToCredit, 100, 1)) {
+			rewardNetwork.rewardAccountFor(dining("100.00"));
+			IllegalStateException e = assertThrows(IllegalStateException.class,
+					() -> rewardNetwork.rewardAccountFor(dining("100.00")));
+			assertTrue(e.getMessage().contains("buffer is full"), e.getMessage());
+			assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("select count(*) from T_REWARD",
+					Integer.class));
+		}
+	}
+
+	@Test
+	public void testWriteBehindProfile() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().setActiveProfiles(RewardsConfig.WRITE_BEHIND_PROFILE);
+		context.register(WriteBehindTestConfig.class);
+		context.refresh();
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(context.getBean(DataSource.class));
+		try {
+			RewardNetwork rewardNetwork = context.getBean(RewardNetwork.class);
+			assertTrue(rewardNetwork instanceof WriteBehindRewardNetwork);
+			assertNotNull(rewardNetwork.rewardAccountFor(dining("100.00")).getConfirmationNumber());
+			((WriteBehindRewardNetwork) rewardNetwork).flush();
+			assertEquals(Double.valueOf(4.00), jdbcTemplate.queryForObject(SAVINGS_SQL, Double.class, "Annabelle"));
+		} finally {
+			context.close();
+		}
+	}
+
+	private WriteBehindRewardNetwork rewardNetwork() {
+		// Tests flush when they choose to
+		return rewardNetwork(new JdbcAccountRepository(), 60_000, 100_000);
+	}
+
+	private WriteBehindRewardNetwork rewardNetwork(JdbcAccountRepository accountRepository, long flushIntervalMillis,
+			int bufferCapacity) {
+		accountRepository.setDataSource(dataSource);
+		JdbcRewardContextRepository rewardContextRepository = new JdbcRewardContextRepository();
+		rewardContextRepository.setDataSource(dataSource);
+		JdbcRewardRepository rewardRepository = new JdbcRewardRepository();
+		rewardRepository.setDataSource(dataSource);
+
+		WriteBehindRewardNetwork rewardNetwork = new WriteBehindRewardNetwork(accountRepository,
+				rewardContextRepository, rewardRepository, new DataSourceTransactionManager(dataSource));
+		rewardNetwork.setFlushIntervalMillis(flushIntervalMillis);
+		rewardNetwork.setBufferCapacity(bufferCapacity);
+		rewardNetwork.start();
+		return rewardNetwork;
+	}
+
+	private static Dining dining(String amount) {
+		return Dining.createDining(amount, "1234123412341234", "1234567890");
+	}
+
+	private static EmbeddedDatabase rewardsDatabase() {
+		return new EmbeddedDatabaseBuilder().generateUniqueName(true)
+			.addScript("classpath:rewards/testdb/schema.sql")
+			.addScript("classpath:rewards/testdb/data.sql")
+			.build();
+	}
+
+	@Configuration
+	@Import(RewardsConfig.class)
+	static class WriteBehindTestConfig {
+
+		@Bean
+		public DataSource dataSource() {
+			return rewardsDatabase();
+		}
+
+		@Bean
+		public PlatformTransactionManager transactionManager() {
+			return new DataSourceTransactionManager(dataSource());
+		}
+	}
+}
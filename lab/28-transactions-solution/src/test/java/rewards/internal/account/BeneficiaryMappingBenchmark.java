@@ -0,0 +1,101 @@
+package rewards.internal.account;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the cost of mapping a beneficiary row, comparing lookup by column label with parsing through strings (as
+ * the repository used to) against lookup by column position reading BigDecimals directly.
+ * <p>
+ * Not a test, so it is not run by the build. Run the main method from the IDE. Each pass reads the same result set;
+ * the time taken by a pass that only advances the cursor is subtracted, so what is reported is the mapping alone.
+ */
+public class BeneficiaryMappingBenchmark {
+
+	private static final int ACCOUNTS = 20_000;
+
+	private static final int BENEFICIARIES_PER_ACCOUNT = 5;
+
+	private static final int PASSES = 15;
+
+	private static final String SQL = "select a.ID as ID, a.NUMBER as ACCOUNT_NUMBER, a.NAME as ACCOUNT_NAME, "
+			+ "c.NUMBER as CREDIT_CARD_NUMBER, b.NAME as BENEFICIARY_NAME, "
+			+ "b.ALLOCATION_PERCENTAGE as BENEFICIARY_ALLOCATION_PERCENTAGE, b.SAVINGS as BENEFICIARY_SAVINGS "
+			+ "from T_ACCOUNT a, T_ACCOUNT_BENEFICIARY b, T_ACCOUNT_CREDIT_CARD c "
+			+ "where a.ID = b.ACCOUNT_ID and a.ID = c.ACCOUNT_ID";
+
+	public static void main(String[] args) throws Exception {
+		EmbeddedDatabase dataSource = new EmbeddedDatabaseBuilder().addScript("/rewards/testdb/schema.sql").build();
+		try (Connection connection = dataSource.getConnection()) {
+			populate(new JdbcTemplate(dataSource));
+			int rows = ACCOUNTS * BENEFICIARIES_PER_ACCOUNT;
+
+			long[] best = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+			for (int pass = 0; pass < PASSES; pass++) {
+				best[0] = Math.min(best[0], time(connection, rs -> null));
+				best[1] = Math.min(best[1], time(connection, BeneficiaryMappingBenchmark::mapByLabel));
+				best[2] = Math.min(best[2], time(connection, JdbcAccountRepository::mapBeneficiary));
+			}
+
+			System.out.printf("%d rows, best of %d passes%n", rows, PASSES);
+			System.out.printf("cursor only:                %6.1f ns/row%n", (double) best[0] / rows);
+			System.out.printf("by label, via strings:      %6.1f ns/row mapping%n", (double) (best[1] - best[0]) / rows);
+			System.out.printf("by position, as BigDecimal: %6.1f ns/row mapping%n", (double) (best[2] - best[0]) / rows);
+		} finally {
+			dataSource.shutdown();
+		}
+	}
+
+	/**
+	 * The mapping JdbcAccountRepository used before it read columns by position.
+	 */
+	static Beneficiary mapByLabel(ResultSet rs) throws SQLException {
+		String name = rs.getString("BENEFICIARY_NAME");
+		MonetaryAmount savings = MonetaryAmount.valueOf(rs.getString("BENEFICIARY_SAVINGS"));
+		Percentage allocationPercentage = Percentage.valueOf(rs.getString("BENEFICIARY_ALLOCATION_PERCENTAGE"));
+		return new Beneficiary(name, allocationPercentage, savings);
+	}
+
+	private static long time(Connection connection, RowMapping mapping) throws SQLException {
+		List<Beneficiary> mapped = new ArrayList<Beneficiary>(ACCOUNTS * BENEFICIARIES_PER_ACCOUNT);
+		try (PreparedStatement ps = connection.prepareStatement(SQL); ResultSet rs = ps.executeQuery()) {
+			long start = System.nanoTime();
+			while (rs.next()) {
+				mapped.add(mapping.map(rs));
+			}
+			return System.nanoTime() - start;
+		}
+	}
+
+	private static void populate(JdbcTemplate jdbcTemplate) {
+		List<Object[]> accounts = new ArrayList<Object[]>();
+		List<Object[]> cards = new ArrayList<Object[]>();
+		List<Object[]> beneficiaries = new ArrayList<Object[]>();
+		for (int id = 0; id < ACCOUNTS; id++) {
+			accounts.add(new Object[] { id, String.format("%09d", id), "Account " + id });
+			cards.add(new Object[] { id, String.format("%016d", id) });
+			for (int b = 0; b < BENEFICIARIES_PER_ACCOUNT; b++) {
+				beneficiaries.add(new Object[] { id, "Beneficiary " + b, "0.20", (id % 1000) + "." + (b * 11) });
+			}
+		}
+		jdbcTemplate.batchUpdate("insert into T_ACCOUNT (ID, NUMBER, NAME) values (?, ?, ?)", accounts);
+		jdbcTemplate.batchUpdate("insert into T_ACCOUNT_CREDIT_CARD (ACCOUNT_ID, NUMBER) values (?, ?)", cards);
+		jdbcTemplate.batchUpdate("insert into T_ACCOUNT_BENEFICIARY (ACCOUNT_ID, NAME, ALLOCATION_PERCENTAGE, SAVINGS) "
+				+ "values (?, ?, ?, ?)", beneficiaries);
+	}
+
+	private interface RowMapping {
+		Beneficiary map(ResultSet rs) throws SQLException;
+	}
+
+}
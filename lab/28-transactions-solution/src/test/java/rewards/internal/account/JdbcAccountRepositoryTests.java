@@ -5,12 +5,15 @@ import common.money.Percentage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import rewards.AccountContribution;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 
 import javax.sql.DataSource;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -59,6 +62,19 @@ public class JdbcAccountRepositoryTests {
 		});
 	}
 
+	@Test
+	public void testFindAllAccountsByCreditCard() {
+		Map<String, Account> accounts = repository.findAllByCreditCard();
+		// Like findByCreditCard, only accounts with beneficiaries are found
+		assertEquals(6, accounts.size(), "wrong number of credit cards");
+
+		Account account = accounts.get("1234123412341234");
+		assertEquals("123456789", account.getNumber(), "wrong account number");
+		assertEquals(2, account.getBeneficiaries().size(), "wrong beneficiary collection size");
+		assertEquals(Percentage.valueOf("50%"), account.getBeneficiary("Annabelle").getAllocationPercentage(),
+				"wrong allocation percentage");
+	}
+
 	@Test
 	public void testUpdateBeneficiaries() throws SQLException {
 		Account account = repository.findByCreditCard("1234123412341234");
@@ -67,6 +83,39 @@ public class JdbcAccountRepositoryTests {
 		verifyBeneficiaryTableUpdated();
 	}
 
+	@Test
+	public void testUpdateBeneficiariesOfStaleAccount() throws SQLException {
+		Account account = repository.findByCreditCard("1234123412341234");
+		Account stale = repository.findByCreditCard("1234123412341234");
+		assertEquals(0, account.getVersion());
+
+		account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		repository.updateBeneficiaries(account);
+		assertEquals(1, account.getVersion());
+
+		// Its savings are based on what was there before the first update
+		stale.makeContribution(MonetaryAmount.valueOf("8.00"));
+		assertThrows(OptimisticLockingFailureException.class, () -> repository.updateBeneficiaries(stale));
+		verifyBeneficiaryTableUpdated();
+		assertEquals(1, repository.findByCreditCard("1234123412341234").getVersion());
+	}
+
+	@Test
+	public void testCreditBeneficiaries() throws SQLException {
+		Account account = repository.findByCreditCard("1234123412341234");
+		Account other = repository.findByCreditCard("1234123412341234");
+
+		// Both credits count, though each was computed from the same read
+		AccountContribution contribution = account.makeContribution(MonetaryAmount.valueOf("4.00"));
+		repository.creditBeneficiaries(account, contribution);
+		repository.creditBeneficiaries(other, other.makeContribution(MonetaryAmount.valueOf("4.00")));
+		verifyBeneficiaryTableUpdated();
+
+		// Balances written from an earlier read are still refused
+		assertEquals(2, repository.findByCreditCard("1234123412341234").getVersion());
+		assertThrows(OptimisticLockingFailureException.class, () -> repository.updateBeneficiaries(account));
+	}
+
 	private void verifyBeneficiaryTableUpdated() throws SQLException {
 		String sql = "select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = ? and ACCOUNT_ID = ?";
 		PreparedStatement stmt = dataSource.getConnection().prepareStatement(sql);
@@ -0,0 +1,83 @@
+package rewards.internal.account;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import rewards.Dining;
+import rewards.internal.RewardContext;
+import rewards.internal.restaurant.Restaurant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the single-query reward context repository against the test database.
+ */
+public class JdbcRewardContextRepositoryTests {
+
+	private JdbcRewardContextRepository repository;
+
+	private EmbeddedDatabase dataSource;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		dataSource = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+		repository = new JdbcRewardContextRepository();
+		repository.setDataSource(dataSource);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		dataSource.shutdown();
+	}
+
+	@Test
+	public void testFindRewardContext() {
+		RewardContext context = repository.findRewardContext("1234123412341234", "1234567890");
+
+		Account account = context.getAccount();
+		assertEquals(Long.valueOf(0), account.getEntityId(), "wrong entity id");
+		assertEquals("123456789", account.getNumber(), "wrong account number");
+		assertEquals(2, account.getBeneficiaries().size(), "wrong beneficiary collection size");
+		assertEquals(Percentage.valueOf("50%"), account.getBeneficiary("Annabelle").getAllocationPercentage());
+		assertEquals(MonetaryAmount.valueOf("0.00"), account.getBeneficiary("Corgan").getSavings());
+
+		Restaurant restaurant = context.getRestaurant();
+		assertEquals("1234567890", restaurant.getNumber(), "wrong merchant number");
+		assertEquals(Percentage.valueOf("8%"), restaurant.getBenefitPercentage(), "wrong benefit percentage");
+		assertEquals("alwaysAvailable", restaurant.getBenefitAvailabilityPolicy().toString());
+	}
+
+	@Test
+	public void testContextSupportsRewardCalculation() {
+		RewardContext context = repository.findRewardContext("1234123412341234", "1234567890");
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "1234567890");
+
+		MonetaryAmount amount = context.getRestaurant().calculateBenefitFor(context.getAccount(), dining);
+
+		assertEquals(MonetaryAmount.valueOf("8.00"), amount);
+		assertEquals(2, context.getAccount().makeContribution(amount).getDistributions().size());
+	}
+
+	@Test
+	public void testUnknownCreditCard() {
+		assertThrows(EmptyResultDataAccessException.class, () -> {
+			repository.findRewardContext("bogus", "1234567890");
+		});
+	}
+
+	@Test
+	public void testUnknownMerchant() {
+		assertThrows(EmptyResultDataAccessException.class, () -> {
+			repository.findRewardContext("1234123412341234", "bogus");
+		});
+	}
+}
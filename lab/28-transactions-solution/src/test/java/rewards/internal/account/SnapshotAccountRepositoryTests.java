@@ -0,0 +1,93 @@
+package rewards.internal.account;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+import rewards.internal.restaurant.JdbcRestaurantRepository;
+import rewards.internal.snapshot.RewardSnapshotFile;
+import rewards.internal.snapshot.RewardSnapshotWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests loading accounts from a snapshot of the test database, and writing their updates to the database.
+ */
+public class SnapshotAccountRepositoryTests {
+
+	@TempDir
+	File directory;
+
+	private EmbeddedDatabase dataSource;
+
+	private SnapshotAccountRepository repository;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		dataSource = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+		JdbcAccountRepository jdbcRepository = new JdbcAccountRepository();
+		jdbcRepository.setDataSource(dataSource);
+		JdbcRestaurantRepository restaurantRepository = new JdbcRestaurantRepository();
+		restaurantRepository.setDataSource(dataSource);
+
+		File file = new File(directory, "rewards.snapshot");
+		new RewardSnapshotWriter(jdbcRepository, restaurantRepository).write(file);
+		repository = new SnapshotAccountRepository(new RewardSnapshotFile(file), jdbcRepository);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		dataSource.shutdown();
+	}
+
+	@Test
+	public void testFindAccountByCreditCard() {
+		Account account = repository.findByCreditCard("1234123412341234");
+		assertEquals(Long.valueOf(0), account.getEntityId(), "wrong entity id");
+		assertEquals("123456789", account.getNumber(), "wrong account number");
+		assertEquals("Keith and Keri Donald", account.getName(), "wrong name");
+		assertEquals(2, account.getBeneficiaries().size(), "wrong beneficiary collection size");
+		assertEquals(Percentage.valueOf("50%"), account.getBeneficiary("Annabelle").getAllocationPercentage());
+		assertEquals(MonetaryAmount.valueOf("0.00"), account.getBeneficiary("Corgan").getSavings());
+		assertTrue(account.isValid());
+	}
+
+	@Test
+	public void testFindAccountByCreditCardNoAccount() {
+		assertThrows(EmptyResultDataAccessException.class, () -> repository.findByCreditCard("bogus"));
+	}
+
+	@Test
+	public void testFindAllAccountsByCreditCard() {
+		Map<String, Account> accounts = repository.findAllByCreditCard();
+		assertEquals(6, accounts.size(), "wrong number of credit cards");
+		assertEquals("123456789", accounts.get("1234123412341234").getNumber(), "wrong account number");
+	}
+
+	@Test
+	public void testCreditBeneficiariesGoesToTheDatabase() {
+		Account account = repository.findByCreditCard("1234123412341234");
+		repository.creditBeneficiaries(account, account.makeContribution(MonetaryAmount.valueOf("8.00")));
+
+		assertEquals(Double.valueOf(4.00), new JdbcTemplate(dataSource).queryForObject(
+				"select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = 'Annabelle'", Double.class));
+		// The snapshot is as it was written
+		assertEquals(MonetaryAmount.valueOf("0.00"),
+				repository.findByCreditCard("1234123412341234").getBeneficiary("Annabelle").getSavings());
+	}
+}
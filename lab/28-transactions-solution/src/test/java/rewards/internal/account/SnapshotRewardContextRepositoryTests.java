@@ -0,0 +1,161 @@
+package rewards.internal.account;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import common.money.MonetaryAmount;
+import common.money.Percentage;
+import config.RewardsConfig;
+import rewards.Dining;
+import rewards.RewardNetwork;
+import rewards.internal.RewardContext;
+import rewards.internal.restaurant.JdbcRestaurantRepository;
+import rewards.internal.restaurant.Restaurant;
+import rewards.internal.snapshot.RewardSnapshotFile;
+import rewards.internal.snapshot.RewardSnapshotWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests loading reward contexts from a snapshot of the test database.
+ */
+public class SnapshotRewardContextRepositoryTests {
+
+	@TempDir
+	File directory;
+
+	private File file;
+
+	private EmbeddedDatabase dataSource;
+
+	private SnapshotRewardContextRepository repository;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		dataSource = rewardsDatabase();
+		file = new File(directory, "rewards.snapshot");
+		writeSnapshot(dataSource, file);
+		repository = new SnapshotRewardContextRepository(new RewardSnapshotFile(file));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		dataSource.shutdown();
+	}
+
+	@Test
+	public void testFindRewardContext() {
+		RewardContext context = repository.findRewardContext("1234123412341234", "1234567890");
+
+		Account account = context.getAccount();
+		assertEquals(Long.valueOf(0), account.getEntityId(), "wrong entity id");
+		assertEquals("123456789", account.getNumber(), "wrong account number");
+		assertEquals(2, account.getBeneficiaries().size(), "wrong beneficiary collection size");
+		assertEquals(Percentage.valueOf("50%"), account.getBeneficiary("Annabelle").getAllocationPercentage());
+
+		Restaurant restaurant = context.getRestaurant();
+		assertEquals("1234567890", restaurant.getNumber(), "wrong merchant number");
+		assertEquals(MonetaryAmount.valueOf("8.00"), restaurant.calculateBenefitFor(account,
+				Dining.createDining("100.00", "1234123412341234", "1234567890")));
+	}
+
+	@Test
+	public void testFindRewardContextNoSuchCreditCardOrRestaurant() {
+		assertThrows(EmptyResultDataAccessException.class,
+				() -> repository.findRewardContext("bogus", "1234567890"));
+		assertThrows(EmptyResultDataAccessException.class,
+				() -> repository.findRewardContext("1234123412341234", "bogus"));
+	}
+
+	@Test
+	public void testSnapshotProfile() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().setActiveProfiles(RewardsConfig.SNAPSHOT_PROFILE,
+				RewardsConfig.GROUP_COMMIT_PROFILE);
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test",
+				Collections.singletonMap("rewards.snapshot.file", file.getPath())));
+		context.register(SnapshotTestConfig.class);
+		context.refresh();
+		try {
+			assertTrue(context.getBean(AccountRepository.class) instanceof SnapshotAccountRepository);
+			RewardNetwork rewardNetwork = context.getBean(RewardNetwork.class);
+			// The snapshot's savings are stale after the first, but each credit still counts
+			rewardNetwork.rewardAccountFor(Dining.createDining("100.00", "1234123412341234", "1234567890"));
+			rewardNetwork.rewardAccountFor(Dining.createDining("100.00", "1234123412341234", "1234567890"));
+			assertEquals(Double.valueOf(8.00), new JdbcTemplate(context.getBean(DataSource.class)).queryForObject(
+					"select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = 'Annabelle'", Double.class));
+		} finally {
+			context.close();
+		}
+	}
+
+	@Test
+	public void testSnapshotProfileWithDefaultNetwork() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getEnvironment().setActiveProfiles(RewardsConfig.SNAPSHOT_PROFILE);
+		context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test",
+				Collections.singletonMap("rewards.snapshot.file", file.getPath())));
+		context.register(SnapshotTestConfig.class);
+		context.refresh();
+		try {
+			RewardNetwork rewardNetwork = context.getBean(RewardNetwork.class);
+			// The snapshot's version is stale after the first, which must not fail the second
+			rewardNetwork.rewardAccountFor(Dining.createDining("100.00", "1234123412341234", "1234567890"));
+			rewardNetwork.rewardAccountFor(Dining.createDining("100.00", "1234123412341234", "1234567890"));
+			assertEquals(Double.valueOf(8.00), new JdbcTemplate(context.getBean(DataSource.class)).queryForObject(
+					"select SAVINGS from T_ACCOUNT_BENEFICIARY where NAME = 'Annabelle'", Double.class));
+		} finally {
+			context.close();
+		}
+	}
+
+	private static void writeSnapshot(DataSource dataSource, File file) throws IOException {
+		JdbcAccountRepository accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		JdbcRestaurantRepository restaurantRepository = new JdbcRestaurantRepository();
+		restaurantRepository.setDataSource(dataSource);
+		new RewardSnapshotWriter(accountRepository, restaurantRepository).write(file);
+	}
+
+	private static EmbeddedDatabase rewardsDatabase() {
+		return new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+	}
+
+	@Configuration
+	@Import(RewardsConfig.class)
+	static class SnapshotTestConfig {
+
+		@Bean
+		public DataSource dataSource() {
+			return rewardsDatabase();
+		}
+
+		@Bean
+		public PlatformTransactionManager transactionManager() {
+			return new DataSourceTransactionManager(dataSource());
+		}
+	}
+}
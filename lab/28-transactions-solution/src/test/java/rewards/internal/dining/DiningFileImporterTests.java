@@ -0,0 +1,164 @@
+package rewards.internal.dining;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DuplicateKeyException;
+
+import rewards.AsynchronousRewardNetwork;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests importing dining files in chunks, and restarting a failed import from its checkpoint.
+ */
+public class DiningFileImporterTests {
+
+	@TempDir
+	File directory;
+
+	private File file;
+
+	private final List<String> rewarded = Collections.synchronizedList(new ArrayList<String>());
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 25; i++) {
+			content.append("100.00,").append(String.format("123412341234%04d", i)).append(",1234567890,2020-01-31\n");
+		}
+		file = new File(directory, "dinings.csv");
+		Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	public void testImportRewardsEveryDining() throws IOException {
+		DiningFileImporter importer = importer(dining -> record(dining));
+		importer.setChunkSize(10);
+
+		assertEquals(25, importer.importFile(file));
+		assertEquals(25, rewarded.size());
+		assertEquals(file.length(), DiningFileImporter.readCheckpoint(file, checkpoint()));
+
+		// Already imported
+		assertEquals(0, importer.importFile(file));
+		assertEquals(25, rewarded.size());
+	}
+
+	@Test
+	public void testRestartResumesFromLastChunk() throws IOException {
+		DiningFileImporter failing = importer(dining -> {
+			if (dining.getCreditCardNumber().equals("1234123412340013")) {
+				throw new IllegalStateException("unlucky");
+			}
+			return record(dining);
+		});
+		failing.setChunkSize(10);
+		IllegalStateException e = assertThrows(IllegalStateException.class, () -> failing.importFile(file));
+		assertEquals("unlucky", e.getMessage());
+
+		// The first chunk was checkpointed; the second failed part way
+		int firstRun = rewarded.size();
+		assertEquals(19, firstRun);
+		rewarded.clear();
+
+		DiningFileImporter importer = importer(dining -> record(dining));
+		importer.setChunkSize(10);
+		assertEquals(15, importer.importFile(file));
+		assertEquals("1234123412340010", rewarded.get(0));
+	}
+
+	@Test
+	public void testRestartSkipsDiningsAlreadyRewarded() throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 25; i++) {
+			content.append("100.00,").append(String.format("123412341234%04d", i)).append(",1234567890,2020-01-31,R-")
+				.append(i).append('\n');
+		}
+		Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.US_ASCII));
+		// Stands in for the unique fingerprint the reward repository stores
+		Set<String> references = Collections.synchronizedSet(new HashSet<String>());
+		RewardNetwork rewardNetwork = dining -> {
+			if (!references.add(dining.getMerchantReference())) {
+				throw new DuplicateKeyException("Already rewarded: " + dining);
+			}
+			return record(dining);
+		};
+
+		DiningFileImporter failing = importer(dining -> {
+			if (dining.getCreditCardNumber().equals("1234123412340013")) {
+				throw new IllegalStateException("unlucky");
+			}
+			return rewardNetwork.rewardAccountFor(dining);
+		});
+		failing.setChunkSize(10);
+		assertThrows(IllegalStateException.class, () -> failing.importFile(file));
+		assertEquals(19, rewarded.size());
+
+		DiningFileImporter importer = importer(rewardNetwork);
+		importer.setChunkSize(10);
+		// The rest of the failed chunk, and the last
+		assertEquals(6, importer.importFile(file));
+		assertEquals(9, importer.getAlreadyRewarded());
+		assertEquals(25, rewarded.size());
+		assertEquals(25, new HashSet<String>(rewarded).size());
+		assertEquals(file.length(), DiningFileImporter.readCheckpoint(file, checkpoint()));
+	}
+
+	@Test
+	public void testCheckpointForAnotherFileIsRefused() throws IOException {
+		DiningFileImporter.writeCheckpoint(checkpoint(), file.length() + 1, 0);
+		assertThrows(IOException.class, () -> importer(dining -> record(dining)).importFile(file));
+		assertTrue(rewarded.isEmpty());
+	}
+
+	private DiningFileImporter importer(RewardNetwork rewardNetwork) {
+		return new DiningFileImporter(synchronous(rewardNetwork), DiningFileFormat.CSV);
+	}
+
+	/**
+	 * Makes each reward on the calling thread, as the in-memory and write-behind networks do.
+	 */
+	private static AsynchronousRewardNetwork synchronous(RewardNetwork rewardNetwork) {
+		return new AsynchronousRewardNetwork() {
+
+			public RewardConfirmation rewardAccountFor(Dining dining) {
+				return rewardNetwork.rewardAccountFor(dining);
+			}
+
+			@Override
+			public CompletableFuture<RewardConfirmation> rewardAccountForAsync(Dining dining) {
+				CompletableFuture<RewardConfirmation> result = new CompletableFuture<RewardConfirmation>();
+				try {
+					result.complete(rewardAccountFor(dining));
+				} catch (RuntimeException e) {
+					result.completeExceptionally(e);
+				}
+				return result;
+			}
+		};
+	}
+
+	private RewardConfirmation record(Dining dining) {
+		rewarded.add(dining.getCreditCardNumber());
+		return new RewardConfirmation(dining.getCreditCardNumber(), null);
+	}
+
+	private File checkpoint() {
+		return new File(file.getPath() + ".checkpoint");
+	}
+}
@@ -0,0 +1,135 @@
+package rewards.internal.dining;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import common.datetime.SimpleDate;
+import common.money.MonetaryAmount;
+import rewards.Dining;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests reading dinings from CSV and fixed-width files.
+ */
+public class DiningFileReaderTests {
+
+	@TempDir
+	File directory;
+
+	@Test
+	public void testReadCsv() throws IOException {
+		File file = write("100.00,1234123412341234,1234567890,2020-01-31\n" + "8.5,1234123412340003,1234567890,2019-12-01\n");
+		List<Dining> dinings = readAll(file, DiningFileFormat.CSV, 0, DiningFileReader.DEFAULT_WINDOW_SIZE);
+
+		assertEquals(2, dinings.size());
+		assertEquals(new Dining(MonetaryAmount.valueOf("100.00"), "1234123412341234", "1234567890",
+				new SimpleDate(1, 31, 2020)), dinings.get(0));
+		assertEquals(MonetaryAmount.valueOf("8.50"), dinings.get(1).getAmount());
+		assertEquals(new SimpleDate(12, 1, 2019), dinings.get(1).getDate());
+	}
+
+	@Test
+	public void testReadCsvWithMerchantReference() throws IOException {
+		File file = write("100.00,1234123412341234,1234567890,2020-01-31,R-1001\n"
+				+ "100.00,1234123412341234,1234567890,2020-01-31,\n");
+		List<Dining> dinings = readAll(file, DiningFileFormat.CSV, 0, DiningFileReader.DEFAULT_WINDOW_SIZE);
+
+		assertEquals(new Dining(MonetaryAmount.valueOf("100.00"), "1234123412341234", "1234567890",
+				new SimpleDate(1, 31, 2020), "R-1001"), dinings.get(0));
+		assertNull(dinings.get(1).getMerchantReference());
+	}
+
+	@Test
+	public void testReadFixedWidth() throws IOException {
+		File file = write("    100.001234123412341234123456789020200131\n");
+		List<Dining> dinings = readAll(file, DiningFileFormat.fixedWidth(10, 16, 10), 0,
+				DiningFileReader.DEFAULT_WINDOW_SIZE);
+
+		assertEquals(1, dinings.size());
+		assertEquals(new Dining(MonetaryAmount.valueOf("100.00"), "1234123412341234", "1234567890",
+				new SimpleDate(1, 31, 2020)), dinings.get(0));
+	}
+
+	@Test
+	public void testLineEndingsAndBlankLines() throws IOException {
+		File file = write("\r\n1.00,1111,2222,2020-01-01\r\n\n2.00,3333,4444,2020-01-02");
+		List<Dining> dinings = readAll(file, DiningFileFormat.CSV, 0, DiningFileReader.DEFAULT_WINDOW_SIZE);
+
+		assertEquals(2, dinings.size());
+		assertEquals("2222", dinings.get(0).getMerchantNumber());
+		assertEquals("4444", dinings.get(1).getMerchantNumber());
+	}
+
+	@Test
+	public void testRecordsAcrossWindows() throws IOException {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			content.append(i).append(".00,1234123412341234,1234567890,2020-01-31\n");
+		}
+		File file = write(content.toString());
+
+		// Windows far smaller than the file, and not a multiple of the record length
+		List<Dining> dinings = readAll(file, DiningFileFormat.CSV, 0, 100);
+		assertEquals(100, dinings.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(MonetaryAmount.valueOf(i + ".00"), dinings.get(i).getAmount());
+		}
+	}
+
+	@Test
+	public void testReadFromOffset() throws IOException {
+		File file = write("1.00,1111,2222,2020-01-01\n2.00,3333,4444,2020-01-02\n");
+		try (DiningFileReader reader = new DiningFileReader(file, DiningFileFormat.CSV, 0)) {
+			reader.next();
+			long offset = reader.getOffset();
+			assertEquals(26, offset);
+			List<Dining> rest = readAll(file, DiningFileFormat.CSV, offset, DiningFileReader.DEFAULT_WINDOW_SIZE);
+			assertEquals(1, rest.size());
+			assertEquals("3333", rest.get(0).getCreditCardNumber());
+		}
+	}
+
+	@Test
+	public void testMalformedRecordGivesItsOffset() throws IOException {
+		File file = write("1.00,1111,2222,2020-01-01\n1.00,1111,2020-01-01\n");
+		IOException e = assertThrows(IOException.class,
+				() -> readAll(file, DiningFileFormat.CSV, 0, DiningFileReader.DEFAULT_WINDOW_SIZE));
+		assertTrue(e.getMessage().contains("at byte 26"), e.getMessage());
+
+		File badAmount = write("1.0x,1111,2222,2020-01-01\n");
+		assertThrows(IOException.class,
+				() -> readAll(badAmount, DiningFileFormat.CSV, 0, DiningFileReader.DEFAULT_WINDOW_SIZE));
+	}
+
+	@Test
+	public void testRecordLongerThanWindow() throws IOException {
+		File file = write("1.00,1234123412341234,1234567890,2020-01-01\n2.00,1234123412341234,1234567890,2020-01-01\n");
+		assertThrows(IOException.class, () -> readAll(file, DiningFileFormat.CSV, 0, 20));
+	}
+
+	private File write(String content) throws IOException {
+		File file = File.createTempFile("dinings", ".csv", directory);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+		return file;
+	}
+
+	private static List<Dining> readAll(File file, DiningFileFormat format, long offset, int windowSize)
+			throws IOException {
+		List<Dining> dinings = new ArrayList<Dining>();
+		try (DiningFileReader reader = new DiningFileReader(file, format, offset, windowSize)) {
+			for (Dining dining = reader.next(); dining != null; dining = reader.next()) {
+				dinings.add(dining);
+			}
+			assertEquals(file.length(), reader.getOffset());
+		}
+		return dinings;
+	}
+}
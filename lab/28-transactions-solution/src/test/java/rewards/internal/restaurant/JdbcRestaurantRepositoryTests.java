@@ -7,6 +7,7 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
 
 import javax.sql.DataSource;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -42,6 +43,21 @@ public class JdbcRestaurantRepositoryTests {
 		});
 	}
 
+	@Test
+	public void testFindAllRestaurants() {
+		List<Restaurant> restaurants = repository.findAll();
+		assertEquals(1, restaurants.size(), "wrong number of restaurants");
+		assertEquals("AppleBees", restaurants.get(0).getName(), "the name is wrong");
+	}
+
+	@Test
+	public void testPolicyCodeRoundTrips() {
+		for (String code : new String[] { "A", "N" }) {
+			assertEquals(code, JdbcRestaurantRepository.policyCodeFor(
+					JdbcRestaurantRepository.benefitAvailabilityPolicyFor(code)));
+		}
+	}
+
 	private DataSource createTestDataSource() {
 		return new EmbeddedDatabaseBuilder()
 			.setName("rewards")
@@ -0,0 +1,77 @@
+package rewards.internal.restaurant;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import common.money.Percentage;
+import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.snapshot.RewardSnapshotFile;
+import rewards.internal.snapshot.RewardSnapshotWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests loading restaurants from a snapshot of the test database.
+ */
+public class SnapshotRestaurantRepositoryTests {
+
+	@TempDir
+	File directory;
+
+	private EmbeddedDatabase dataSource;
+
+	private SnapshotRestaurantRepository repository;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		dataSource = new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+		JdbcAccountRepository accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		JdbcRestaurantRepository jdbcRepository = new JdbcRestaurantRepository();
+		jdbcRepository.setDataSource(dataSource);
+
+		File file = new File(directory, "rewards.snapshot");
+		new RewardSnapshotWriter(accountRepository, jdbcRepository).write(file);
+		repository = new SnapshotRestaurantRepository(new RewardSnapshotFile(file));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		dataSource.shutdown();
+	}
+
+	@Test
+	public void testFindRestaurantByMerchantNumber() {
+		Restaurant restaurant = repository.findByMerchantNumber("1234567890");
+		assertEquals("1234567890", restaurant.getNumber(), "the merchant number is wrong");
+		assertEquals("AppleBees", restaurant.getName(), "the name is wrong");
+		assertEquals(Percentage.valueOf("8%"), restaurant.getBenefitPercentage(), "the benefitPercentage is wrong");
+		assertEquals(JdbcRestaurantRepository.AlwaysAvailable.INSTANCE,
+				restaurant.getBenefitAvailabilityPolicy(), "the benefit availability policy is wrong");
+	}
+
+	@Test
+	public void testFindRestaurantByBogusMerchantNumber() {
+		assertThrows(EmptyResultDataAccessException.class, () -> repository.findByMerchantNumber("bogus"));
+	}
+
+	@Test
+	public void testFindAllRestaurants() {
+		List<Restaurant> restaurants = repository.findAll();
+		assertEquals(1, restaurants.size(), "wrong number of restaurants");
+		assertEquals("AppleBees", restaurants.get(0).getName(), "the name is wrong");
+	}
+}
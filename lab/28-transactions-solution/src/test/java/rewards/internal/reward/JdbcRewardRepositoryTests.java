@@ -1,22 +1,41 @@
 package rewards.internal.reward;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 import javax.sql.DataSource;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.TransientDataAccessResourceException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import rewards.AccountContribution;
 import rewards.Dining;
 import rewards.RewardConfirmation;
+import rewards.internal.RewardLog;
 import rewards.internal.account.Account;
 
 import common.datetime.SimpleDate;
@@ -60,6 +79,147 @@ public class JdbcRewardRepositoryTests {
 		verifyRewardInserted(confirmation, dining);
 	}
 
+	@Test
+	public void testRecordLoggedRewards() throws SQLException {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "0123456789");
+
+		Account account = new Account("1", "Keith and Keri Donald");
+		account.setEntityId(0L);
+		account.addBeneficiary("Annabelle", Percentage.valueOf("50%"));
+		account.addBeneficiary("Corgan", Percentage.valueOf("50%"));
+
+		assertEquals(0, repository.findLastRecordedSequence());
+		// A reward confirmed from the database sequence is not a logged one
+		repository.confirmReward(account.makeContribution(MonetaryAmount.valueOf("8.00")), dining);
+		assertEquals(0, repository.findLastRecordedSequence());
+
+		AccountContribution contribution = account.makeContribution(MonetaryAmount.valueOf("8.00"));
+		RewardLog.Entry ninth = new RewardLog.Entry(9, 0L, SimpleDate.today(), dining, contribution);
+		RewardLog.Entry tenth = new RewardLog.Entry(10, 0L, SimpleDate.today(), dining, contribution);
+		repository.recordRewards(Arrays.asList(ninth, tenth));
+
+		assertEquals(3, getRewardCount());
+		assertEquals(10, repository.findLastRecordedSequence());
+		Map<String, Object> values = jdbcTemplate.queryForMap("select * from T_REWARD where CONFIRMATION_NUMBER = ?",
+				tenth.getConfirmationNumber());
+		verifyInsertedValues(new RewardConfirmation(tenth.getConfirmationNumber(), contribution), dining, values);
+	}
+
+	@Test
+	public void testDiningRewardedOnce() throws SQLException {
+		Dining dining = new Dining(MonetaryAmount.valueOf("100.00"), "1234123412341234", "0123456789",
+				SimpleDate.today(), "R-1001");
+		Dining unreferenced = Dining.createDining("100.00", "1234123412341234", "0123456789");
+
+		Account account = new Account("1", "Keith and Keri Donald");
+		account.setEntityId(0L);
+		account.addBeneficiary("Annabelle", Percentage.valueOf("100%"));
+		AccountContribution contribution = account.makeContribution(MonetaryAmount.valueOf("8.00"));
+
+		assertFalse(repository.isRewarded(dining));
+		repository.confirmReward(contribution, dining);
+		assertTrue(repository.isRewarded(dining));
+		assertThrows(DuplicateKeyException.class, () -> repository.confirmReward(contribution, dining));
+
+		// Without a reference, two dinings alike are two meals
+		repository.confirmReward(contribution, unreferenced);
+		repository.confirmReward(contribution, unreferenced);
+		assertFalse(repository.isRewarded(unreferenced));
+		assertEquals(3, getRewardCount());
+	}
+
+	@Test
+	public void testUncreditedRewardsMarkedOnce() throws SQLException {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "0123456789");
+
+		Account account = new Account("1", "Keith and Keri Donald");
+		account.setEntityId(0L);
+		account.addBeneficiary("Annabelle", Percentage.valueOf("100%"));
+
+		repository.confirmReward(account.makeContribution(MonetaryAmount.valueOf("8.00")), dining);
+		RewardConfirmation first = repository.confirmUncreditedReward(
+				account.makeContribution(MonetaryAmount.valueOf("8.00")), dining);
+		RewardConfirmation second = repository.confirmUncreditedReward(
+				account.makeContribution(MonetaryAmount.valueOf("4.00")), dining);
+
+		List<UncreditedReward> uncredited = repository.findUncreditedRewards();
+		assertEquals(2, uncredited.size());
+		assertEquals(first.getConfirmationNumber(), uncredited.get(0).getConfirmationNumber());
+		assertEquals("1", uncredited.get(1).getAccountNumber());
+		assertEquals(MonetaryAmount.valueOf("4.00"), uncredited.get(1).getAmount());
+
+		assertEquals(Collections.singleton(first.getConfirmationNumber()),
+				repository.markCredited(Arrays.asList(first.getConfirmationNumber())));
+		assertEquals(Collections.singleton(second.getConfirmationNumber()), repository.markCredited(
+				Arrays.asList(first.getConfirmationNumber(), second.getConfirmationNumber())));
+		assertTrue(repository.findUncreditedRewards().isEmpty());
+	}
+
+	@Test
+	public void testBatchWithoutUpdateCountsRolledBackAndMarkedOneAtATime() throws SQLException {
+		Dining dining = Dining.createDining("100.00", "1234123412341234", "0123456789");
+
+		Account account = new Account("1", "Keith and Keri Donald");
+		account.setEntityId(0L);
+		account.addBeneficiary("Annabelle", Percentage.valueOf("100%"));
+
+		List<String> confirmationNumbers = Arrays.asList(
+				repository.confirmUncreditedReward(account.makeContribution(MonetaryAmount.valueOf("8.00")), dining)
+					.getConfirmationNumber(),
+				repository.confirmUncreditedReward(account.makeContribution(MonetaryAmount.valueOf("4.00")), dining)
+					.getConfirmationNumber());
+
+		DataSource noBatchCounts = withoutBatchUpdateCounts(dataSource);
+		JdbcRewardRepository repository = new JdbcRewardRepository();
+		repository.setDataSource(noBatchCounts);
+		TransactionTemplate transactionTemplate = new TransactionTemplate(
+				new DataSourceTransactionManager(noBatchCounts));
+
+		assertThrows(TransientDataAccessResourceException.class,
+				() -> transactionTemplate.execute(status -> repository.markCredited(confirmationNumbers)));
+		assertEquals(2, repository.findUncreditedRewards().size());
+
+		assertEquals(new HashSet<String>(confirmationNumbers),
+				transactionTemplate.execute(status -> repository.markCredited(confirmationNumbers)));
+		assertTrue(transactionTemplate.execute(status -> repository.markCredited(confirmationNumbers)).isEmpty());
+	}
+
+	/**
+	 * A data source whose batches report {@link Statement#SUCCESS_NO_INFO} for every statement, as some drivers do.
+	 */
+	private static DataSource withoutBatchUpdateCounts(DataSource dataSource) {
+		return new DelegatingDataSource(dataSource) {
+			@Override
+			public Connection getConnection() throws SQLException {
+				Connection connection = super.getConnection();
+				return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+						new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+							Object result = invoke(connection, method, args);
+							if (result instanceof PreparedStatement) {
+								PreparedStatement statement = (PreparedStatement) result;
+								return Proxy.newProxyInstance(getClass().getClassLoader(),
+										new Class<?>[] { PreparedStatement.class }, (p, m, a) -> {
+											Object counts = invoke(statement, m, a);
+											if (m.getName().equals("executeBatch")) {
+												Arrays.fill((int[]) counts, Statement.SUCCESS_NO_INFO);
+											}
+											return counts;
+										});
+							}
+							return result;
+						});
+			}
+		};
+	}
+
+	private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
 	private void verifyRewardInserted(RewardConfirmation confirmation, Dining dining) throws SQLException {
 		assertEquals(1, getRewardCount());
 		String sql = "select * from T_REWARD where CONFIRMATION_NUMBER = ?";
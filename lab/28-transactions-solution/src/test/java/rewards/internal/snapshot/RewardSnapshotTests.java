@@ -0,0 +1,123 @@
+package rewards.internal.snapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import rewards.internal.account.JdbcAccountRepository;
+import rewards.internal.restaurant.JdbcRestaurantRepository;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests writing the accounts and restaurants of a test data source to a snapshot, and looking them up in it.
+ */
+public class RewardSnapshotTests {
+
+	@TempDir
+	File directory;
+
+	private File file;
+
+	private DataSource dataSource;
+
+	private RewardSnapshotWriter writer;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		dataSource = createTestDataSource();
+		JdbcAccountRepository accountRepository = new JdbcAccountRepository();
+		accountRepository.setDataSource(dataSource);
+		JdbcRestaurantRepository restaurantRepository = new JdbcRestaurantRepository();
+		restaurantRepository.setDataSource(dataSource);
+		writer = new RewardSnapshotWriter(accountRepository, restaurantRepository);
+		file = new File(directory, "rewards.snapshot");
+		writer.write(file);
+	}
+
+	@Test
+	public void testFindAccount() throws IOException {
+		RewardSnapshot snapshot = RewardSnapshot.open(file);
+		RewardSnapshot.AccountRecord account = snapshot.findAccount("1234123412341234");
+		assertNotNull(account, "account should be in the snapshot");
+		assertEquals(0L, account.getId());
+		assertEquals(0, account.getVersion());
+		assertEquals("123456789", account.getNumber());
+		assertEquals("Keith and Keri Donald", account.getName());
+		assertEquals(2, account.getBeneficiaryCount());
+		for (int i = 0; i < account.getBeneficiaryCount(); i++) {
+			assertTrue(account.getBeneficiaryName(i).equals("Annabelle") || account.getBeneficiaryName(i).equals("Corgan"));
+			assertEquals(new BigDecimal("0.50"), account.getBeneficiaryAllocationPercentage(i));
+			assertEquals(new BigDecimal("0.00"), account.getBeneficiarySavings(i));
+		}
+		assertEquals(6, snapshot.getCreditCardNumbers().size());
+	}
+
+	@Test
+	public void testFindRestaurant() throws IOException {
+		RewardSnapshot snapshot = RewardSnapshot.open(file);
+		RewardSnapshot.RestaurantRecord restaurant = snapshot.findRestaurant("1234567890");
+		assertNotNull(restaurant, "restaurant should be in the snapshot");
+		assertEquals("1234567890", restaurant.getNumber());
+		assertEquals("AppleBees", restaurant.getName());
+		assertEquals(new BigDecimal("0.08"), restaurant.getBenefitPercentage());
+		assertEquals("A", restaurant.getBenefitAvailabilityPolicyCode());
+	}
+
+	@Test
+	public void testFindMissingKeys() throws IOException {
+		RewardSnapshot snapshot = RewardSnapshot.open(file);
+		assertNull(snapshot.findAccount("bogus"));
+		// An account without beneficiaries cannot be rewarded, so is left out
+		assertNull(snapshot.findAccount("1234123412340001"));
+		assertNull(snapshot.findRestaurant("bogus"));
+	}
+
+	@Test
+	public void testNotASnapshot() throws IOException {
+		File other = new File(directory, "other");
+		assertTrue(other.createNewFile());
+		assertThrows(IOException.class, () -> RewardSnapshot.open(other));
+	}
+
+	@Test
+	public void testNewSnapshotIsPublishedAtomically() throws IOException {
+		RewardSnapshotFile snapshotFile = new RewardSnapshotFile(file);
+		RewardSnapshot first = snapshotFile.current();
+		assertFalse(snapshotFile.refresh(), "nothing new has been published");
+
+		new JdbcTemplate(dataSource).update("update T_RESTAURANT set NAME = 'Apple Bees' where MERCHANT_NUMBER = ?",
+				"1234567890");
+		writer.write(file);
+		assertEquals(1, directory.list().length, "the temporary file should be gone");
+
+		assertTrue(snapshotFile.refresh(), "the new snapshot should be mapped");
+		assertEquals("Apple Bees", snapshotFile.current().findRestaurant("1234567890").getName());
+		// The replaced file stays mapped for those still reading it
+		assertEquals("AppleBees", first.findRestaurant("1234567890").getName());
+	}
+
+	@Test
+	public void testUnreadableSnapshotKeepsTheLastOne() throws IOException {
+		RewardSnapshotFile snapshotFile = new RewardSnapshotFile(file);
+		assertTrue(file.delete());
+		assertFalse(snapshotFile.refresh());
+		assertNotNull(snapshotFile.current().findAccount("1234123412341234"));
+	}
+
+	private DataSource createTestDataSource() {
+		return new EmbeddedDatabaseBuilder()
+			.generateUniqueName(true)
+			.addScript("/rewards/testdb/schema.sql")
+			.addScript("/rewards/testdb/data.sql")
+			.build();
+	}
+}
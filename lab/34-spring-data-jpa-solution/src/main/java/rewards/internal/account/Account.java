@@ -8,6 +8,8 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 
@@ -28,8 +30,14 @@ import common.money.Percentage;
  */
 @Entity
 @Table(name="T_ACCOUNT")
+@NamedEntityGraph(name=Account.WITH_BENEFICIARIES, attributeNodes=@NamedAttributeNode("beneficiaries"))
 public class Account {
 
+	/**
+	 * The entity graph that loads an account together with its beneficiaries, in one statement.
+	 */
+	public static final String WITH_BENEFICIARIES = "Account.withBeneficiaries";
+
 	@Id
 	@Column(name="id")
 	private Long entityId;
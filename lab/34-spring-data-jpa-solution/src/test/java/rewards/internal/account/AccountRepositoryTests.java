@@ -0,0 +1,46 @@
+package rewards.internal.account;
+
+import config.RewardsConfig;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the generated account repository loads an account and its
+ * beneficiaries together.
+ */
+@EnableAutoConfiguration
+@SpringBootTest(classes = RewardsConfig.class)
+public class AccountRepositoryTests {
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	public void findByCreditCardNumberUsesOneStatement() {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.setStatisticsEnabled(true);
+		try {
+			statistics.clear();
+			Account account = accountRepository.findByCreditCardNumber("1234123412341234");
+
+			assertEquals(1, statistics.getPrepareStatementCount());
+			assertTrue(entityManagerFactory.getPersistenceUnitUtil().isLoaded(account, "beneficiaries"));
+			assertEquals(2, account.getBeneficiaries().size());
+		} finally {
+			statistics.setStatisticsEnabled(false);
+		}
+	}
+
+}
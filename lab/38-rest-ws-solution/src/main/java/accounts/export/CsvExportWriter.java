@@ -0,0 +1,90 @@
+package accounts.export;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Writes RFC 4180 style CSV. The header line is written before the first
+ * record, so an export of nothing is an empty body.
+ */
+class CsvExportWriter implements ExportWriter {
+
+	static final String ACCOUNT_HEADER = "number,name,beneficiaryName,allocationPercentage,savings";
+
+	static final String REWARD_HEADER = "confirmationNumber,rewardAmount,rewardDate,accountNumber,"
+			+ "diningAmount,diningMerchantNumber,diningDate";
+
+	private final Writer writer;
+
+	private boolean headerWritten;
+
+	CsvExportWriter(OutputStream out) {
+		this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void writeAccount(String number, String name, List<ExportedBeneficiary> beneficiaries) throws IOException {
+		header(ACCOUNT_HEADER);
+		if (beneficiaries.isEmpty()) {
+			line(number, name, null, null, null);
+		}
+		for (ExportedBeneficiary beneficiary : beneficiaries) {
+			line(number, name, beneficiary.getName(), beneficiary.getAllocationPercentage(), beneficiary.getSavings());
+		}
+	}
+
+	@Override
+	public void writeReward(String confirmationNumber, BigDecimal rewardAmount, LocalDate rewardDate,
+			String accountNumber, BigDecimal diningAmount, String diningMerchantNumber, LocalDate diningDate)
+			throws IOException {
+		header(REWARD_HEADER);
+		line(confirmationNumber, rewardAmount, rewardDate, accountNumber, diningAmount, diningMerchantNumber,
+				diningDate);
+	}
+
+	private void header(String header) throws IOException {
+		if (!headerWritten) {
+			writer.write(header);
+			writer.write("\r\n");
+			headerWritten = true;
+		}
+	}
+
+	private void line(Object... values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				writer.write(',');
+			}
+			if (values[i] != null) {
+				writer.write(escape(values[i] instanceof BigDecimal ? ((BigDecimal) values[i]).toPlainString()
+						: values[i].toString()));
+			}
+		}
+		writer.write("\r\n");
+	}
+
+	/**
+	 * Quotes a value containing a separator, quote or line break, doubling
+	 * any quotes inside it.
+	 */
+	static String escape(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+				&& value.indexOf('\r') < 0) {
+			return value;
+		}
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.flush();
+	}
+
+}
@@ -0,0 +1,23 @@
+package accounts.export;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Streaming exports of accounts and rewards, see
+ * {@link accounts.web.ExportController}.
+ */
+@Configuration
+public class ExportConfiguration {
+
+	@Bean
+	public JdbcExporter jdbcExporter(DataSource dataSource, PlatformTransactionManager transactionManager,
+			@Value("${rewards.export.fetch-size:" + JdbcExporter.DEFAULT_FETCH_SIZE + "}") int fetchSize) {
+		return new JdbcExporter(dataSource, transactionManager, fetchSize);
+	}
+
+}
@@ -0,0 +1,56 @@
+package accounts.export;
+
+import java.io.OutputStream;
+
+/**
+ * The formats data can be exported in.
+ */
+public enum ExportFormat {
+
+	/**
+	 * Newline-delimited JSON - one JSON object per line. Accounts include
+	 * their beneficiaries as a nested array.
+	 */
+	NDJSON("application/x-ndjson") {
+		@Override
+		public ExportWriter newWriter(OutputStream out) {
+			return new NdjsonExportWriter(out);
+		}
+	},
+
+	/**
+	 * Comma-separated values with a header line. Accounts are flattened to
+	 * one line per beneficiary.
+	 */
+	CSV("text/csv") {
+		@Override
+		public ExportWriter newWriter(OutputStream out) {
+			return new CsvExportWriter(out);
+		}
+	};
+
+	private final String contentType;
+
+	ExportFormat(String contentType) {
+		this.contentType = contentType;
+	}
+
+	public String getContentType() {
+		return contentType;
+	}
+
+	public abstract ExportWriter newWriter(OutputStream out);
+
+	/**
+	 * Case-insensitive lookup, for use with a request parameter.
+	 */
+	public static ExportFormat of(String name) {
+		for (ExportFormat format : values()) {
+			if (format.name().equalsIgnoreCase(name)) {
+				return format;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported export format '" + name + "'");
+	}
+
+}
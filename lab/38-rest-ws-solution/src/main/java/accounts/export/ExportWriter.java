@@ -0,0 +1,59 @@
+package accounts.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Writes exported records to an output stream, one record at a time. Nothing
+ * is held back beyond the stream's own buffer, so memory use does not depend
+ * on how many records are written.
+ * <p>
+ * Closing the writer flushes it but does not close the underlying stream.
+ */
+public interface ExportWriter extends Closeable {
+
+	/**
+	 * Writes one account with all of its beneficiaries.
+	 */
+	void writeAccount(String number, String name, List<ExportedBeneficiary> beneficiaries) throws IOException;
+
+	/**
+	 * Writes one row of <code>T_REWARD</code>.
+	 */
+	void writeReward(String confirmationNumber, BigDecimal rewardAmount, LocalDate rewardDate, String accountNumber,
+			BigDecimal diningAmount, String diningMerchantNumber, LocalDate diningDate) throws IOException;
+
+	/**
+	 * A beneficiary as read from <code>T_ACCOUNT_BENEFICIARY</code>.
+	 */
+	class ExportedBeneficiary {
+
+		private final String name;
+
+		private final BigDecimal allocationPercentage;
+
+		private final BigDecimal savings;
+
+		public ExportedBeneficiary(String name, BigDecimal allocationPercentage, BigDecimal savings) {
+			this.name = name;
+			this.allocationPercentage = allocationPercentage;
+			this.savings = savings;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public BigDecimal getAllocationPercentage() {
+			return allocationPercentage;
+		}
+
+		public BigDecimal getSavings() {
+			return savings;
+		}
+	}
+
+}
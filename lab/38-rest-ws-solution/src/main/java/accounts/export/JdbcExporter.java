@@ -0,0 +1,201 @@
+package accounts.export;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreatorFactory;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import accounts.export.ExportWriter.ExportedBeneficiary;
+
+/**
+ * Streams accounts and rewards from the database to an {@link ExportWriter}.
+ * <p>
+ * Each export is a single forward-only, read-only query. Rows are written as
+ * they are read and the driver fetches <code>fetchSize</code> rows at a time,
+ * so memory use stays flat however large the tables are. Some drivers (for
+ * example PostgreSQL) only use a cursor inside a transaction, so each export
+ * runs in a read-only one.
+ */
+public class JdbcExporter {
+
+	public static final int DEFAULT_FETCH_SIZE = 500;
+
+	private static final String ACCOUNTS_SQL = "select a.ID, a.NUMBER, a.NAME, b.NAME as BENEFICIARY_NAME, "
+			+ "b.ALLOCATION_PERCENTAGE, b.SAVINGS from T_ACCOUNT a "
+			+ "left outer join T_ACCOUNT_BENEFICIARY b on a.ID = b.ACCOUNT_ID order by a.ID";
+
+	private static final String REWARDS_SQL = "select CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, "
+			+ "ACCOUNT_NUMBER, DINING_AMOUNT, DINING_MERCHANT_NUMBER, DINING_DATE from T_REWARD "
+			+ "where REWARD_DATE >= ? and REWARD_DATE <= ? order by ID";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final PreparedStatementCreatorFactory accountsQuery;
+
+	private final PreparedStatementCreatorFactory rewardsQuery;
+
+	public JdbcExporter(DataSource dataSource, PlatformTransactionManager transactionManager, int fetchSize) {
+		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.jdbcTemplate.setFetchSize(fetchSize);
+
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+
+		this.accountsQuery = forwardOnly(new PreparedStatementCreatorFactory(ACCOUNTS_SQL));
+		this.rewardsQuery = forwardOnly(new PreparedStatementCreatorFactory(REWARDS_SQL, Types.DATE, Types.DATE));
+	}
+
+	/**
+	 * Writes every account with its beneficiaries.
+	 *
+	 * @return the number of accounts written
+	 */
+	public int exportAccounts(ExportWriter writer) throws IOException {
+		AccountGrouper grouper = new AccountGrouper(writer);
+		return run(() -> {
+			jdbcTemplate.query(accountsQuery.newPreparedStatementCreator(new Object[0]), grouper);
+			grouper.finish();
+			return grouper.accounts;
+		});
+	}
+
+	/**
+	 * Writes the rewards confirmed between the two dates, inclusive.
+	 *
+	 * @return the number of rewards written
+	 */
+	public int exportRewards(LocalDate from, LocalDate to, ExportWriter writer) throws IOException {
+		RewardWriter rewardWriter = new RewardWriter(writer);
+		return run(() -> {
+			jdbcTemplate.query(rewardsQuery.newPreparedStatementCreator(
+					new Object[] { java.sql.Date.valueOf(from), java.sql.Date.valueOf(to) }), rewardWriter);
+			return rewardWriter.rewards;
+		});
+	}
+
+	private static PreparedStatementCreatorFactory forwardOnly(PreparedStatementCreatorFactory factory) {
+		factory.setResultSetType(ResultSet.TYPE_FORWARD_ONLY);
+		factory.setUpdatableResults(false);
+		return factory;
+	}
+
+	/**
+	 * Runs an export in a read-only transaction, passing on any write failure
+	 * - typically the client going away - as the IOException it was.
+	 */
+	private int run(TransactionalExport export) throws IOException {
+		try {
+			return transactionTemplate.execute(status -> export.run());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static void write(WriteAction action) {
+		try {
+			action.write();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private interface TransactionalExport {
+		int run();
+	}
+
+	private interface WriteAction {
+		void write() throws IOException;
+	}
+
+	/**
+	 * The account query returns one row per beneficiary, ordered by account.
+	 * Rows are collected until the account changes and then written as one
+	 * account, so at most one account is held in memory.
+	 */
+	private static class AccountGrouper implements RowCallbackHandler {
+
+		private final ExportWriter writer;
+
+		private long currentId = -1;
+
+		private String number;
+
+		private String name;
+
+		private final List<ExportedBeneficiary> beneficiaries = new ArrayList<ExportedBeneficiary>();
+
+		private int accounts;
+
+		AccountGrouper(ExportWriter writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void processRow(ResultSet rs) throws SQLException {
+			long id = rs.getLong("ID");
+			if (id != currentId) {
+				finish();
+				currentId = id;
+				number = rs.getString("NUMBER");
+				name = rs.getString("NAME");
+			}
+
+			String beneficiaryName = rs.getString("BENEFICIARY_NAME");
+			if (beneficiaryName != null) {
+				beneficiaries.add(new ExportedBeneficiary(beneficiaryName, rs.getBigDecimal("ALLOCATION_PERCENTAGE"),
+						rs.getBigDecimal("SAVINGS")));
+			}
+		}
+
+		void finish() {
+			if (number != null) {
+				write(() -> writer.writeAccount(number, name, beneficiaries));
+				accounts++;
+				beneficiaries.clear();
+				number = null;
+			}
+		}
+	}
+
+	private static class RewardWriter implements RowCallbackHandler {
+
+		private final ExportWriter writer;
+
+		private int rewards;
+
+		RewardWriter(ExportWriter writer) {
+			this.writer = writer;
+		}
+
+		@Override
+		public void processRow(ResultSet rs) throws SQLException {
+			String confirmationNumber = rs.getString("CONFIRMATION_NUMBER");
+			BigDecimal rewardAmount = rs.getBigDecimal("REWARD_AMOUNT");
+			LocalDate rewardDate = rs.getDate("REWARD_DATE").toLocalDate();
+			String accountNumber = rs.getString("ACCOUNT_NUMBER");
+			BigDecimal diningAmount = rs.getBigDecimal("DINING_AMOUNT");
+			String diningMerchantNumber = rs.getString("DINING_MERCHANT_NUMBER");
+			LocalDate diningDate = rs.getDate("DINING_DATE").toLocalDate();
+
+			write(() -> writer.writeReward(confirmationNumber, rewardAmount, rewardDate, accountNumber, diningAmount,
+					diningMerchantNumber, diningDate));
+			rewards++;
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package accounts.export;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Writes one JSON object per line using Jackson's streaming generator
+ * directly - no intermediate objects or data binding.
+ */
+class NdjsonExportWriter implements ExportWriter {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final JsonGenerator generator;
+
+	NdjsonExportWriter(OutputStream out) {
+		try {
+			this.generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)
+					.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+					.setRootValueSeparator(null); // Records end with a newline instead
+		} catch (IOException e) {
+			throw new IllegalStateException("Cannot create JSON generator", e);
+		}
+	}
+
+	@Override
+	public void writeAccount(String number, String name, List<ExportedBeneficiary> beneficiaries) throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("number", number);
+		generator.writeStringField("name", name);
+		generator.writeArrayFieldStart("beneficiaries");
+		for (ExportedBeneficiary beneficiary : beneficiaries) {
+			generator.writeStartObject();
+			generator.writeStringField("name", beneficiary.getName());
+			generator.writeNumberField("allocationPercentage", beneficiary.getAllocationPercentage());
+			generator.writeNumberField("savings", beneficiary.getSavings());
+			generator.writeEndObject();
+		}
+		generator.writeEndArray();
+		endRecord();
+	}
+
+	@Override
+	public void writeReward(String confirmationNumber, BigDecimal rewardAmount, LocalDate rewardDate,
+			String accountNumber, BigDecimal diningAmount, String diningMerchantNumber, LocalDate diningDate)
+			throws IOException {
+		generator.writeStartObject();
+		generator.writeStringField("confirmationNumber", confirmationNumber);
+		generator.writeNumberField("rewardAmount", rewardAmount);
+		generator.writeStringField("rewardDate", rewardDate.toString());
+		generator.writeStringField("accountNumber", accountNumber);
+		generator.writeNumberField("diningAmount", diningAmount);
+		generator.writeStringField("diningMerchantNumber", diningMerchantNumber);
+		generator.writeStringField("diningDate", diningDate.toString());
+		endRecord();
+	}
+
+	private void endRecord() throws IOException {
+		generator.writeEndObject();
+		generator.writeRaw('\n');
+	}
+
+	@Override
+	public void close() throws IOException {
+		generator.close();
+	}
+
+}
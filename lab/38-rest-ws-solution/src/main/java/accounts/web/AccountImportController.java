@@ -0,0 +1,71 @@
+package accounts.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import accounts.AccountImportResult;
+import accounts.AccountImporter;
+import rewards.internal.account.Account;
+
+/**
+ * Bulk creation of accounts, for onboarding many members at once.
+ * <p>
+ * The body is either a JSON array of accounts or newline-delimited JSON, one
+ * account per line. Either way it is read one account at a time as the
+ * import proceeds, so the request is never held in memory as a whole.
+ */
+@RestController
+public class AccountImportController {
+
+	public static final String NDJSON_VALUE = "application/x-ndjson";
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final AccountImporter accountImporter;
+
+	private final ObjectReader accountReader;
+
+	@Autowired
+	public AccountImportController(AccountImporter accountImporter, ObjectMapper objectMapper) {
+		this.accountImporter = accountImporter;
+		this.accountReader = objectMapper.readerFor(Account.class);
+	}
+
+	/**
+	 * Creates the accounts in the request body and returns how many were
+	 * created plus the reason each rejected row failed.
+	 */
+	@PostMapping(value = "/accounts/import", consumes = { MediaType.APPLICATION_JSON_VALUE, NDJSON_VALUE })
+	public AccountImportResult importAccounts(InputStream body) throws IOException {
+		try (MappingIterator<Account> accounts = accountReader.readValues(body)) {
+			return accountImporter.importAccounts(accounts);
+		}
+	}
+
+	/**
+	 * Maps a body that is not JSON at all to a 400 Bad Request. Bad rows part
+	 * way through are reported in the import result instead.
+	 */
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	@ExceptionHandler(JsonProcessingException.class)
+	public void handleUnreadable(Exception ex) {
+		logger.error("Exception is: ", ex);
+		// return empty 400
+	}
+
+}
@@ -0,0 +1,134 @@
+package accounts.web;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.DigestUtils;
+
+/**
+ * Holds the JSON already written for the account resources, so a repeat GET
+ * is a byte copy (or a 304) instead of another Jackson serialization.
+ * <p>
+ * Entries are keyed by resource path - the account list and each account -
+ * and carry a strong ETag computed from the bytes. They stay valid until an
+ * {@link accounts.AccountManager} mutation evicts them, see
+ * {@link CacheEvictingAccountManager}.
+ * <p>
+ * Every eviction also advances a generation counter. A response captured
+ * while a change was in progress is stored only if no eviction happened
+ * since the request started, so stale JSON cannot be put back after the
+ * eviction that should have removed it.
+ */
+public class AccountJsonCache {
+
+	public static final String SUMMARY_KEY = "/accounts";
+
+	private final ConcurrentMap<String, CachedResponse> responses = new ConcurrentHashMap<>();
+
+	private final AtomicLong generation = new AtomicLong();
+
+	private final int maxEntries;
+
+	public AccountJsonCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+	public static String detailsKey(long accountId) {
+		return SUMMARY_KEY + "/" + accountId;
+	}
+
+	/**
+	 * The current generation. Read it before producing a response and pass
+	 * it to {@link #put(String, long, byte[], String)}.
+	 */
+	public long generation() {
+		return generation.get();
+	}
+
+	public CachedResponse get(String key) {
+		return responses.get(key);
+	}
+
+	/**
+	 * Stores a response unless the cache is full or an eviction has happened
+	 * since <code>startGeneration</code> was read.
+	 *
+	 * @return the cached response, or <code>null</code> if it was not stored
+	 */
+	public CachedResponse put(String key, long startGeneration, byte[] body, String contentType) {
+		if (generation.get() != startGeneration
+				|| (responses.size() >= maxEntries && !responses.containsKey(key))) {
+			return null;
+		}
+
+		CachedResponse response = new CachedResponse(body, contentType);
+		responses.put(key, response);
+
+		// An eviction may have run between the check above and the put. It
+		// advances the generation before removing, so either it removed this
+		// entry or we see the new generation here and remove it ourselves.
+		if (generation.get() != startGeneration) {
+			responses.remove(key, response);
+			return null;
+		}
+		return response;
+	}
+
+	/**
+	 * Evicts the given account and the account list, which includes it.
+	 */
+	public void evict(long accountId) {
+		generation.incrementAndGet();
+		responses.remove(detailsKey(accountId));
+		responses.remove(SUMMARY_KEY);
+	}
+
+	/**
+	 * Evicts the account list only - used when an account is created.
+	 */
+	public void evictSummary() {
+		generation.incrementAndGet();
+		responses.remove(SUMMARY_KEY);
+	}
+
+	public void evictAll() {
+		generation.incrementAndGet();
+		responses.clear();
+	}
+
+	public int size() {
+		return responses.size();
+	}
+
+	/**
+	 * Encoded response body with its content type and strong ETag.
+	 */
+	public static class CachedResponse {
+
+		private final byte[] body;
+
+		private final String contentType;
+
+		private final String etag;
+
+		CachedResponse(byte[] body, String contentType) {
+			this.body = body;
+			this.contentType = contentType;
+			this.etag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+		}
+
+		public byte[] getBody() {
+			return body;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+package accounts.web;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import accounts.AccountImporter;
+import accounts.AccountManager;
+
+/**
+ * Caches the encoded JSON of the account resources. Turn off with
+ * <code>rewards.accounts.json-cache.enabled=false</code>.
+ */
+@Configuration
+@ConditionalOnProperty(name = "rewards.accounts.json-cache.enabled", matchIfMissing = true)
+public class AccountJsonCacheConfiguration {
+
+	@Bean
+	public AccountJsonCache accountJsonCache(
+			@Value("${rewards.accounts.json-cache.max-entries:10000}") int maxEntries) {
+		return new AccountJsonCache(maxEntries);
+	}
+
+	@Bean
+	public FilterRegistrationBean<AccountJsonCacheFilter> accountJsonCacheFilter(AccountJsonCache cache) {
+		FilterRegistrationBean<AccountJsonCacheFilter> registration = new FilterRegistrationBean<>(
+				new AccountJsonCacheFilter(cache));
+		registration.addUrlPatterns("/accounts", "/accounts/*");
+		return registration;
+	}
+
+	/**
+	 * Wraps the account manager from {@link config.AppConfig} so that every
+	 * change, whichever client makes it, evicts the cached JSON.
+	 */
+	@Bean
+	@Primary
+	public AccountManager cacheEvictingAccountManager(@Qualifier("accountManager") AccountManager accountManager,
+			AccountJsonCache cache) {
+		return new CacheEvictingAccountManager(accountManager, cache);
+	}
+
+	/**
+	 * A bulk import only adds accounts, so only the account list is evicted.
+	 */
+	@Bean
+	@Primary
+	public AccountImporter cacheEvictingAccountImporter(@Qualifier("accountImporter") AccountImporter accountImporter,
+			AccountJsonCache cache) {
+		return accounts -> {
+			try {
+				return accountImporter.importAccounts(accounts);
+			} finally {
+				cache.evictSummary();
+			}
+		};
+	}
+
+}
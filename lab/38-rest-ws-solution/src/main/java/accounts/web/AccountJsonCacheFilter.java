@@ -0,0 +1,121 @@
+package accounts.web;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import accounts.web.AccountJsonCache.CachedResponse;
+
+/**
+ * Serves <code>GET /accounts</code> and <code>GET /accounts/{id}</code> from
+ * the {@link AccountJsonCache}.
+ * <p>
+ * On a miss the request goes to the {@link AccountController} as usual and
+ * the JSON it writes is kept. On a hit the stored bytes are written directly,
+ * or a 304 Not Modified is returned when <code>If-None-Match</code> matches
+ * the ETag. Both cases skip the database and Jackson.
+ */
+public class AccountJsonCacheFilter extends OncePerRequestFilter {
+
+	private static final Pattern DETAILS_PATH = Pattern.compile(AccountJsonCache.SUMMARY_KEY + "/\\d+");
+
+	private final AccountJsonCache cache;
+
+	public AccountJsonCacheFilter(AccountJsonCache cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !HttpMethod.GET.matches(request.getMethod()) || request.getQueryString() != null
+				|| cacheKey(request) == null;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		String key = cacheKey(request);
+
+		CachedResponse cached = cache.get(key);
+		if (cached != null && accepts(request, cached.getContentType())) {
+			if (!new ServletWebRequest(request, response).checkNotModified(cached.getEtag())) {
+				writeCached(cached, response);
+			}
+			return;
+		}
+
+		long generation = cache.generation();
+		ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+		try {
+			filterChain.doFilter(request, wrapper);
+
+			if (wrapper.getStatus() == HttpServletResponse.SC_OK && isJson(wrapper.getContentType())) {
+				cached = cache.put(key, generation, wrapper.getContentAsByteArray(), wrapper.getContentType());
+				if (cached != null) {
+					wrapper.setHeader(HttpHeaders.ETAG, cached.getEtag());
+				}
+			}
+		} finally {
+			wrapper.copyBodyToResponse();
+		}
+	}
+
+	/**
+	 * The path within the application if it is a cacheable account resource,
+	 * otherwise <code>null</code>.
+	 */
+	private String cacheKey(HttpServletRequest request) {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		if (path.equals(AccountJsonCache.SUMMARY_KEY) || DETAILS_PATH.matcher(path).matches()) {
+			return path;
+		}
+		return null;
+	}
+
+	private void writeCached(CachedResponse cached, HttpServletResponse response) throws IOException {
+		byte[] body = cached.getBody();
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType(cached.getContentType());
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+	}
+
+	/**
+	 * Only answer from the cache if the client accepts what was stored - a
+	 * client asking for something else goes through content negotiation.
+	 */
+	private boolean accepts(HttpServletRequest request, String contentType) {
+		String accept = request.getHeader(HttpHeaders.ACCEPT);
+		if (!StringUtils.hasText(accept)) {
+			return true;
+		}
+		try {
+			MediaType stored = MediaType.parseMediaType(contentType);
+			return MediaType.parseMediaTypes(accept).stream().anyMatch(type -> type.isCompatibleWith(stored));
+		} catch (InvalidMediaTypeException ex) {
+			return false;
+		}
+	}
+
+	private boolean isJson(String contentType) {
+		try {
+			return contentType != null && MediaType.APPLICATION_JSON.isCompatibleWith(MediaType.parseMediaType(contentType));
+		} catch (InvalidMediaTypeException ex) {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package accounts.web;
+
+import java.util.List;
+import java.util.Map;
+
+import accounts.AccountManager;
+import common.money.Percentage;
+import rewards.internal.account.Account;
+
+/**
+ * Evicts the cached JSON for an account after each {@link AccountManager}
+ * mutation. The target is the transactional account manager, so the eviction
+ * happens after the change has been committed.
+ */
+public class CacheEvictingAccountManager implements AccountManager {
+
+	private final AccountManager target;
+
+	private final AccountJsonCache cache;
+
+	public CacheEvictingAccountManager(AccountManager target, AccountJsonCache cache) {
+		this.target = target;
+		this.cache = cache;
+	}
+
+	@Override
+	public String getInfo() {
+		return target.getInfo();
+	}
+
+	@Override
+	public List<Account> getAllAccounts() {
+		return target.getAllAccounts();
+	}
+
+	@Override
+	public Account getAccount(Long id) {
+		return target.getAccount(id);
+	}
+
+	@Override
+	public Account save(Account account) {
+		try {
+			return target.save(account);
+		} finally {
+			cache.evictSummary();
+		}
+	}
+
+	@Override
+	public void update(Account account) {
+		try {
+			target.update(account);
+		} finally {
+			if (account.getEntityId() == null) {
+				cache.evictAll();
+			} else {
+				cache.evict(account.getEntityId());
+			}
+		}
+	}
+
+	@Override
+	public void updateBeneficiaryAllocationPercentages(Long accountId, Map<String, Percentage> allocationPercentages) {
+		try {
+			target.updateBeneficiaryAllocationPercentages(accountId, allocationPercentages);
+		} finally {
+			cache.evict(accountId);
+		}
+	}
+
+	@Override
+	public void addBeneficiary(Long accountId, String beneficiaryName) {
+		try {
+			target.addBeneficiary(accountId, beneficiaryName);
+		} finally {
+			cache.evict(accountId);
+		}
+	}
+
+	@Override
+	public void removeBeneficiary(Long accountId, String beneficiaryName,
+			Map<String, Percentage> allocationPercentages) {
+		try {
+			target.removeBeneficiary(accountId, beneficiaryName, allocationPercentages);
+		} finally {
+			cache.evict(accountId);
+		}
+	}
+
+}
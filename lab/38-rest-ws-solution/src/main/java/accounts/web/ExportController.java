@@ -0,0 +1,98 @@
+package accounts.web;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import accounts.export.ExportFormat;
+import accounts.export.ExportWriter;
+import accounts.export.JdbcExporter;
+
+/**
+ * Exports for reporting jobs. Unlike <code>GET /accounts</code>, nothing is
+ * loaded into memory first: rows are written to the response as they are
+ * read from the database.
+ * <p>
+ * The <code>format</code> parameter is <code>ndjson</code> (the default) or
+ * <code>csv</code>.
+ */
+@RestController
+public class ExportController {
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	private final JdbcExporter exporter;
+
+	@Autowired
+	public ExportController(JdbcExporter exporter) {
+		this.exporter = exporter;
+	}
+
+	/**
+	 * Exports all accounts with their beneficiaries.
+	 */
+	@GetMapping("/accounts/export")
+	public void exportAccounts(@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response)
+			throws IOException {
+		ExportFormat exportFormat = ExportFormat.of(format);
+		startResponse(response, exportFormat, "accounts");
+
+		try (ExportWriter writer = exportFormat.newWriter(response.getOutputStream())) {
+			int accounts = exporter.exportAccounts(writer);
+			logger.info("Exported " + accounts + " accounts as " + exportFormat);
+		}
+	}
+
+	/**
+	 * Exports the rewards confirmed from one date to another, inclusive.
+	 * Dates are ISO format, for example <code>2020-01-31</code>.
+	 */
+	@GetMapping("/rewards/export")
+	public void exportRewards(@RequestParam @DateTimeFormat(iso = ISO.DATE) LocalDate from,
+			@RequestParam @DateTimeFormat(iso = ISO.DATE) LocalDate to,
+			@RequestParam(defaultValue = "ndjson") String format, HttpServletResponse response) throws IOException {
+		if (from.isAfter(to)) {
+			throw new IllegalArgumentException("Export range starts after it ends: " + from + " to " + to);
+		}
+		ExportFormat exportFormat = ExportFormat.of(format);
+		startResponse(response, exportFormat, "rewards-" + from + "-" + to);
+
+		try (ExportWriter writer = exportFormat.newWriter(response.getOutputStream())) {
+			int rewards = exporter.exportRewards(from, to, writer);
+			logger.info("Exported " + rewards + " rewards from " + from + " to " + to + " as " + exportFormat);
+		}
+	}
+
+	/**
+	 * Maps an unknown format or an invalid date range to a 400 Bad Request.
+	 * Once data has been written the response is committed, so a later
+	 * failure can only cut the export short.
+	 */
+	@ResponseStatus(HttpStatus.BAD_REQUEST)
+	@ExceptionHandler(IllegalArgumentException.class)
+	public void handleBadRequest(Exception ex) {
+		logger.error("Exception is: ", ex);
+		// return empty 400
+	}
+
+	private void startResponse(HttpServletResponse response, ExportFormat format, String fileName) {
+		response.setContentType(format.getContentType() + ";charset=UTF-8");
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+				"attachment; filename=\"" + fileName + "." + format.name().toLowerCase() + "\"");
+	}
+
+}
@@ -0,0 +1,124 @@
+package accounts.export;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the streaming exports against the test database, in both formats.
+ */
+public class JdbcExporterTests {
+
+	private EmbeddedDatabase dataSource;
+	private JdbcTemplate jdbcTemplate;
+	private JdbcExporter exporter;
+
+	@BeforeEach
+	public void setUp() {
+		dataSource = new EmbeddedDatabaseBuilder().generateUniqueName(true)
+				.addScript("/rewards/testdb/schema.sql")
+				.addScript("/rewards/testdb/data.sql").build();
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		exporter = new JdbcExporter(dataSource, new DataSourceTransactionManager(dataSource), 5);
+
+		insertReward("1", "2020-01-31");
+		insertReward("2", "2020-02-01");
+		insertReward("3", "2020-02-29");
+		insertReward("4", "2020-03-01");
+	}
+
+	@AfterEach
+	public void tearDown() {
+		dataSource.shutdown();
+	}
+
+	@Test
+	public void accountsAsNdjson() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int count;
+		try (ExportWriter writer = ExportFormat.NDJSON.newWriter(out)) {
+			count = exporter.exportAccounts(writer);
+		}
+
+		String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+		assertEquals(countRows("T_ACCOUNT"), count);
+		assertEquals(count, lines.length);
+
+		JsonNode first = new ObjectMapper().readTree(lines[0]);
+		assertEquals("123456789", first.get("number").asText());
+		assertEquals(2, first.get("beneficiaries").size());
+
+		int beneficiaries = 0;
+		for (String line : lines) {
+			assertTrue(line.startsWith("{") && line.endsWith("}"), line);
+			beneficiaries += new ObjectMapper().readTree(line).get("beneficiaries").size();
+		}
+		assertEquals(countRows("T_ACCOUNT_BENEFICIARY"), beneficiaries);
+	}
+
+	@Test
+	public void accountsAsCsvHaveOneLinePerBeneficiary() throws Exception {
+		jdbcTemplate.update("insert into T_ACCOUNT (NUMBER, NAME) values ('999999999', 'Smith, \"Jo\"')");
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ExportWriter writer = ExportFormat.CSV.newWriter(out)) {
+			exporter.exportAccounts(writer);
+		}
+
+		String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\r\n");
+		assertEquals(CsvExportWriter.ACCOUNT_HEADER, lines[0]);
+		assertTrue(lines[1].startsWith("123456789,Keith and Keri Donald,"));
+		assertEquals("999999999,\"Smith, \"\"Jo\"\"\",,,", lines[lines.length - 1]);
+
+		// Header, one line per beneficiary, plus one for each account without any
+		int withoutBeneficiaries = jdbcTemplate.queryForObject("select count(*) from T_ACCOUNT a where not exists "
+				+ "(select 1 from T_ACCOUNT_BENEFICIARY b where b.ACCOUNT_ID = a.ID)", Integer.class);
+		assertEquals(1 + countRows("T_ACCOUNT_BENEFICIARY") + withoutBeneficiaries, lines.length);
+	}
+
+	@Test
+	public void rewardsInDateRange() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int count;
+		try (ExportWriter writer = ExportFormat.CSV.newWriter(out)) {
+			count = exporter.exportRewards(LocalDate.of(2020, 2, 1), LocalDate.of(2020, 2, 29), writer);
+		}
+
+		String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\r\n");
+		assertEquals(2, count);
+		assertEquals(CsvExportWriter.REWARD_HEADER, lines[0]);
+		assertEquals("2,8.00,2020-02-01,123456789,100,1234567890,2020-01-15", lines[1]);
+		assertTrue(lines[2].startsWith("3,"));
+	}
+
+	@Test
+	public void emptyRangeWritesNothing() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ExportWriter writer = ExportFormat.NDJSON.newWriter(out)) {
+			assertEquals(0, exporter.exportRewards(LocalDate.of(2021, 1, 1), LocalDate.of(2021, 12, 31), writer));
+		}
+		assertEquals(0, out.size());
+	}
+
+	private void insertReward(String confirmationNumber, String rewardDate) {
+		jdbcTemplate.update("insert into T_REWARD (CONFIRMATION_NUMBER, REWARD_AMOUNT, REWARD_DATE, ACCOUNT_NUMBER, "
+				+ "DINING_MERCHANT_NUMBER, DINING_DATE, DINING_AMOUNT) values (?, 8.00, ?, '123456789', "
+				+ "'1234567890', '2020-01-15', 100.00)", confirmationNumber, java.sql.Date.valueOf(rewardDate));
+	}
+
+	private int countRows(String table) {
+		return jdbcTemplate.queryForObject("select count(*) from " + table, Integer.class);
+	}
+}
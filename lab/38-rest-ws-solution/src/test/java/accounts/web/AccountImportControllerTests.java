@@ -0,0 +1,75 @@
+package accounts.web;
+
+import accounts.AccountImportResult;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import rewards.internal.account.Account;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tests that the bulk import endpoint streams both request formats to the
+ * importer. The JDBC importer itself is tested in the rewards-db project.
+ */
+public class AccountImportControllerTests {
+
+	private List<Account> imported;
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	public void setUp() {
+		imported = new ArrayList<>();
+		AccountImportController controller = new AccountImportController(accounts -> {
+			AccountImportResult result = new AccountImportResult();
+			accounts.forEachRemaining(account -> {
+				result.rowRead();
+				imported.add(account);
+			});
+			result.rowsCreated(imported.size());
+			return result;
+		}, new ObjectMapper());
+		mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+	}
+
+	@Test
+	public void importJsonArray() throws Exception {
+		String body = "[{\"number\":\"900000001\",\"name\":\"First\","
+				+ "\"beneficiaries\":[{\"name\":\"Ben\",\"allocationPercentage\":\"100%\"}]},"
+				+ "{\"number\":\"900000002\",\"name\":\"Second\"}]";
+
+		mockMvc.perform(post("/accounts/import").contentType(MediaType.APPLICATION_JSON).content(body))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.created").value(2));
+
+		assertEquals(2, imported.size());
+		assertEquals("900000001", imported.get(0).getNumber());
+		assertEquals("Ben", imported.get(0).getBeneficiary("Ben").getName());
+	}
+
+	@Test
+	public void importNewlineDelimitedJson() throws Exception {
+		String body = "{\"number\":\"900000001\",\"name\":\"First\"}\n"
+				+ "{\"number\":\"900000002\",\"name\":\"Second\"}\n"
+				+ "{\"number\":\"900000003\",\"name\":\"Third\"}\n";
+
+		mockMvc.perform(post("/accounts/import").contentType(AccountImportController.NDJSON_VALUE).content(body))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.rowsRead").value(3));
+
+		assertEquals("900000003", imported.get(2).getNumber());
+	}
+
+	@Test
+	public void bodyThatIsNotJsonIsRejected() throws Exception {
+		mockMvc.perform(post("/accounts/import").contentType(MediaType.APPLICATION_JSON).content("number,name"))
+				.andExpect(status().isBadRequest());
+	}
+
+}
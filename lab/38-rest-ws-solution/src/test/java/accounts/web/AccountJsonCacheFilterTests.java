@@ -0,0 +1,105 @@
+package accounts.web;
+
+import accounts.AccountManager;
+import accounts.internal.StubAccountManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.HashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * Tests the JSON response cache in front of the AccountController, using
+ * MockMvc so no server needs to be running.
+ */
+public class AccountJsonCacheFilterTests {
+
+	private AccountManager stubManager;
+	private AccountJsonCache cache;
+	private AccountManager accountManager;
+	private MockMvc mockMvc;
+
+	@BeforeEach
+	public void setUp() {
+		stubManager = spy(new StubAccountManager());
+		cache = new AccountJsonCache(100);
+		accountManager = new CacheEvictingAccountManager(stubManager, cache);
+		mockMvc = MockMvcBuilders.standaloneSetup(new AccountController(accountManager))
+				.addFilters(new AccountJsonCacheFilter(cache)).build();
+	}
+
+	@Test
+	public void repeatReadIsServedFromCache() throws Exception {
+		String first = mockMvc.perform(get("/accounts/0")).andExpect(status().isOk())
+				.andExpect(header().exists(HttpHeaders.ETAG)).andReturn().getResponse().getContentAsString();
+
+		String second = mockMvc.perform(get("/accounts/0")).andExpect(status().isOk())
+				.andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+				.andReturn().getResponse().getContentAsString();
+
+		assertEquals(first, second);
+		verify(stubManager, times(1)).getAccount(anyLong());
+	}
+
+	@Test
+	public void matchingIfNoneMatchReturnsNotModified() throws Exception {
+		String etag = mockMvc.perform(get("/accounts")).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		mockMvc.perform(get("/accounts").header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isNotModified()).andExpect(content().bytes(new byte[0]));
+
+		mockMvc.perform(get("/accounts").header(HttpHeaders.IF_NONE_MATCH, "\"something-else\""))
+				.andExpect(status().isOk());
+		verify(stubManager, times(1)).getAllAccounts();
+	}
+
+	@Test
+	public void mutationEvictsAccountAndSummary() throws Exception {
+		String etag = mockMvc.perform(get("/accounts/0")).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		mockMvc.perform(get("/accounts"));
+		assertEquals(2, cache.size());
+
+		accountManager.addBeneficiary(0L, "Newbie");
+		assertEquals(0, cache.size());
+
+		String body = mockMvc.perform(get("/accounts/0").header(HttpHeaders.IF_NONE_MATCH, etag))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+		assertTrue(body.contains("Newbie"));
+	}
+
+	@Test
+	public void responseStartedBeforeEvictionIsNotCached() {
+		long generation = cache.generation();
+		cache.evict(0L);
+
+		assertNull(cache.put(AccountJsonCache.detailsKey(0L), generation, "{}".getBytes(), "application/json"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void notFoundIsNotCached() throws Exception {
+		mockMvc.perform(get("/accounts/9999")).andExpect(status().isNotFound());
+		mockMvc.perform(get("/accounts/9999")).andExpect(status().isNotFound());
+
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void removeBeneficiaryEvicts() throws Exception {
+		mockMvc.perform(get("/accounts/0"));
+
+		accountManager.removeBeneficiary(0L, "Corgan", new HashMap<>());
+
+		assertNull(cache.get(AccountJsonCache.detailsKey(0L)));
+	}
+
+}
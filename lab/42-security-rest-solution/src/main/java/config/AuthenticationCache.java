@@ -0,0 +1,130 @@
+package config;
+
+import org.springframework.security.core.Authentication;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers, for a short time, which username + password pairs have already
+ * been verified, so repeat HTTP Basic requests skip the (deliberately slow)
+ * password hash check.
+ * <p>
+ * The raw password is never stored: each entry holds a salted SHA-256 of the
+ * credentials, using a random salt generated when the cache is created. Only
+ * successful authentications are cached, so a wrong password is always checked
+ * against the real password encoder.
+ */
+public class AuthenticationCache {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final byte[] salt = new byte[16];
+
+    private final Duration timeToLive;
+
+    private final int maxEntries;
+
+    private final Clock clock;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param timeToLive how long a verified password is trusted
+     * @param maxEntries upper bound on the number of cached users
+     * @param clock      used to expire entries
+     */
+    public AuthenticationCache(Duration timeToLive, int maxEntries, Clock clock) {
+        this.timeToLive = timeToLive;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        new SecureRandom().nextBytes(salt);
+    }
+
+    /**
+     * Returns the authentication previously granted for these credentials, or
+     * null if they have not been verified recently.
+     */
+    public Authentication get(String username, String password) {
+        Entry entry = entries.get(username);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expiresAt <= clock.millis()) {
+            entries.remove(username, entry);
+            return null;
+        }
+
+        return MessageDigest.isEqual(entry.credentialHash, hash(username, password)) ? entry.authentication : null;
+    }
+
+    /**
+     * Records that these credentials were successfully verified.
+     */
+    public void put(String username, String password, Authentication authentication) {
+        if (entries.size() >= maxEntries) {
+            evictExpired();
+            if (entries.size() >= maxEntries) {
+                entries.clear();
+            }
+        }
+
+        entries.put(username, new Entry(hash(username, password), authentication,
+                clock.millis() + timeToLive.toMillis()));
+    }
+
+    /**
+     * Forgets a user - call whenever the user's password or roles change.
+     */
+    public void evict(String username) {
+        entries.remove(username);
+    }
+
+    /**
+     * Forgets all users.
+     */
+    public void evictAll() {
+        entries.clear();
+    }
+
+    private void evictExpired() {
+        long now = clock.millis();
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+    }
+
+    private byte[] hash(String username, String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(salt);
+            digest.update(username.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(password.getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class Entry {
+
+        final byte[] credentialHash;
+
+        final Authentication authentication;
+
+        final long expiresAt;
+
+        Entry(byte[] credentialHash, Authentication authentication, long expiresAt) {
+            this.credentialHash = credentialHash;
+            this.authentication = authentication;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
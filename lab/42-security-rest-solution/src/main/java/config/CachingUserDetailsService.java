@@ -0,0 +1,75 @@
+package config;
+
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the {@link UserDetails} built by another {@link UserDetailsService}
+ * for a short time.
+ * <p>
+ * Every call returns a copy, because Spring Security erases the password of
+ * the returned user once authentication completes - handing out the cached
+ * instance itself would break the next login.
+ */
+public class CachingUserDetailsService implements UserDetailsService {
+
+    private final UserDetailsService delegate;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Duration timeToLive;
+
+    private final Clock clock;
+
+    public CachingUserDetailsService(UserDetailsService delegate, Duration timeToLive, Clock clock) {
+        this.delegate = delegate;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+    }
+
+    @Override
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        Entry entry = entries.get(username);
+
+        if (entry == null || entry.expiresAt <= clock.millis()) {
+            entry = new Entry(delegate.loadUserByUsername(username), clock.millis() + timeToLive.toMillis());
+            entries.put(username, entry);
+        }
+
+        return User.withUserDetails(entry.user).build();
+    }
+
+    /**
+     * Forgets a user - call whenever the user's password or roles change.
+     */
+    public void evict(String username) {
+        entries.remove(username);
+    }
+
+    /**
+     * Forgets all users.
+     */
+    public void evictAll() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+
+        final UserDetails user;
+
+        final long expiresAt;
+
+        Entry(UserDetails user, long expiresAt) {
+            this.user = user;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -1,7 +1,9 @@
 package config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
@@ -19,6 +21,8 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.factory.PasswordEncoderFactories;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.time.Clock;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -27,6 +31,28 @@ import java.util.Arrays;
 @EnableGlobalMethodSecurity(prePostEnabled = true)
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
+    /**
+     * Upper bound on the number of users whose verified credentials are cached.
+     */
+    public static final int MAX_CACHED_USERS = 10_000;
+
+    private final AuthenticationCache authenticationCache;
+
+    private final Duration userCacheTtl;
+
+    /**
+     * HTTP Basic sends the password with every request. Verified credentials
+     * and loaded users are cached briefly so that each request doesn't pay
+     * for a bcrypt check. The users here are fixed at startup, so entries
+     * are only ever dropped when their time to live runs out; a change to a
+     * user's password or roles takes effect within that time.
+     */
+    public SecurityConfig(@Value("${rewards.security.auth-cache.ttl:60s}") Duration authCacheTtl,
+                          @Value("${rewards.security.user-cache.ttl:5m}") Duration userCacheTtl) {
+        this.authenticationCache = new AuthenticationCache(authCacheTtl, MAX_CACHED_USERS, Clock.systemUTC());
+        this.userCacheTtl = userCacheTtl;
+    }
+
     @Override
     protected void configure(HttpSecurity http) throws Exception {
 
@@ -55,13 +81,20 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
             .withUser("superadmin").password(passwordEncoder.encode("superadmin")).roles("USER", "ADMIN", "SUPERADMIN");
 
         // Add authentication based upon the custom UserDetailsService
-        auth.userDetailsService(new CustomUserDetailsService(passwordEncoder));
+        UserDetailsService userDetailsService = new CachingUserDetailsService(new CustomUserDetailsService(passwordEncoder),
+                userCacheTtl, Clock.systemUTC());
+        auth.userDetailsService(userDetailsService);
 
         // Add authentication based upon the custom AuthenticationProvider
         auth.authenticationProvider(new CustomAuthenticationProvider());
 
     }
 
+    @Override
+    protected AuthenticationManager authenticationManager() throws Exception {
+        return new CachingAuthenticationManager(super.authenticationManager(), authenticationCache);
+    }
+
 }
 
 class CustomUserDetailsService implements UserDetailsService {
@@ -0,0 +1,107 @@
+package config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.CredentialsContainer;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class CachingAuthenticationManagerTests {
+
+    private AuthenticationManager delegate;
+    private AuthenticationCache cache;
+    private CachingAuthenticationManager authenticationManager;
+
+    @BeforeEach
+    public void setUp() {
+        delegate = mock(AuthenticationManager.class);
+        when(delegate.authenticate(any())).thenAnswer(invocation -> {
+            Authentication request = invocation.getArgument(0);
+            if (!request.getName().equals(request.getCredentials())) {
+                throw new BadCredentialsException("Bad credentials");
+            }
+            return new UsernamePasswordAuthenticationToken(request.getName(), null,
+                    AuthorityUtils.createAuthorityList("ROLE_USER"));
+        });
+
+        cache = new AuthenticationCache(Duration.ofMinutes(1), 100, Clock.systemUTC());
+        authenticationManager = new CachingAuthenticationManager(delegate, cache);
+    }
+
+    @Test
+    public void repeatedCredentialsAreVerifiedOnce() {
+        for (int i = 0; i < 5; i++) {
+            Authentication result = authenticationManager.authenticate(token("mary", "mary"));
+            assertTrue(result.isAuthenticated());
+            assertEquals("mary", result.getName());
+        }
+
+        verify(delegate, times(1)).authenticate(any());
+    }
+
+    @Test
+    public void wrongPasswordIsNeverAnsweredFromCache() {
+        authenticationManager.authenticate(token("mary", "mary"));
+
+        assertThrows(BadCredentialsException.class,
+                () -> authenticationManager.authenticate(token("mary", "wrong")));
+        verify(delegate, times(2)).authenticate(any());
+    }
+
+    @Test
+    public void evictedUserIsVerifiedAgain() {
+        authenticationManager.authenticate(token("mary", "mary"));
+        cache.evict("mary");
+        authenticationManager.authenticate(token("mary", "mary"));
+
+        verify(delegate, times(2)).authenticate(any());
+    }
+
+    @Test
+    public void expiredEntryIsVerifiedAgain() {
+        Instant now = Instant.now();
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).thenReturn(now.toEpochMilli(), now.plusSeconds(61).toEpochMilli());
+        cache = new AuthenticationCache(Duration.ofMinutes(1), 100, clock);
+        authenticationManager = new CachingAuthenticationManager(delegate, cache);
+
+        authenticationManager.authenticate(token("mary", "mary"));
+        authenticationManager.authenticate(token("mary", "mary"));
+
+        verify(delegate, times(2)).authenticate(any());
+    }
+
+    @Test
+    public void cachedUserDetailsSurviveCredentialErasure() {
+        UserDetailsService delegateService = spy(new CustomUserDetailsService(
+                PasswordEncoderFactories.createDelegatingPasswordEncoder()));
+        CachingUserDetailsService userDetailsService = new CachingUserDetailsService(delegateService,
+                Duration.ofMinutes(5), Clock.fixed(Instant.now(), ZoneOffset.UTC));
+
+        UserDetails first = userDetailsService.loadUserByUsername("joe");
+        ((CredentialsContainer) first).eraseCredentials();
+        UserDetails second = userDetailsService.loadUserByUsername("joe");
+
+        assertNotNull(second.getPassword());
+        verify(delegateService, times(1)).loadUserByUsername("joe");
+    }
+
+    private UsernamePasswordAuthenticationToken token(String username, String password) {
+        return new UsernamePasswordAuthenticationToken(username, password);
+    }
+}
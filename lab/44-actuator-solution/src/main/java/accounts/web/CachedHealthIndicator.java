@@ -0,0 +1,161 @@
+package accounts.web;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * A health indicator that answers from the last result computed by a delegate
+ * instead of running the delegate on every probe.
+ * <p>
+ * The delegate is run by {@link #refresh()}, normally on a background schedule
+ * - see {@link CachedHealthIndicatorPostProcessor}. Each check is given at most
+ * <code>timeout</code> to complete; a check that takes longer is cancelled and
+ * reported as DOWN. If no check has completed within <code>maxStaleness</code>
+ * (for example because the refresh thread is stuck), probes report DOWN rather
+ * than an out-of-date UP.
+ * <p>
+ * A check that ignores being cancelled keeps its thread. Until it returns, no
+ * other check of the same delegate is started, so a hung dependency holds one
+ * thread per indicator rather than one per refresh.
+ */
+public class CachedHealthIndicator implements HealthIndicator {
+
+    private final HealthIndicator delegate;
+
+    private final ExecutorService executor;
+
+    private final Duration timeout;
+
+    private final Duration maxStaleness;
+
+    private final Clock clock;
+
+    private volatile Health lastHealth;
+
+    private volatile Instant lastCheckTime;
+
+    private final AtomicBoolean checking = new AtomicBoolean();
+
+    /**
+     * Creates a new cached health indicator.
+     *
+     * @param delegate
+     *            the health indicator doing the actual check
+     * @param executor
+     *            runs the delegate, so that a slow check can be timed out
+     * @param timeout
+     *            how long a single check may take
+     * @param maxStaleness
+     *            how old the last result may be before probes report DOWN
+     * @param clock
+     *            the clock used to age results
+     */
+    public CachedHealthIndicator(HealthIndicator delegate, ExecutorService executor, Duration timeout,
+            Duration maxStaleness, Clock clock) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.timeout = timeout;
+        this.maxStaleness = maxStaleness;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the health indicator whose result is cached.
+     */
+    public HealthIndicator getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public Health health() {
+        Health health = lastHealth;
+        Instant checkTime = lastCheckTime;
+
+        if (health == null) {
+            return Health.unknown().withDetail("reason", "Health check has not completed yet").build();
+        }
+
+        Duration age = Duration.between(checkTime, clock.instant());
+        if (age.compareTo(maxStaleness) > 0) {
+            return Health.down() //
+                    .withDetail("reason", "Last health check is stale") //
+                    .withDetail("lastCheck", checkTime.toString()) //
+                    .withDetail("lastStatus", health.getStatus().getCode()) //
+                    .build();
+        }
+
+        return health;
+    }
+
+    /**
+     * Runs the delegate health check and records its result. A check that does
+     * not complete within the timeout is cancelled and recorded as DOWN. Does
+     * nothing while an earlier check is still running; the result then ages
+     * until it is reported stale.
+     */
+    public void refresh() {
+        if (!checking.compareAndSet(false, true)) {
+            return;
+        }
+
+        // 0 = queued, 1 = running, 2 = given up on before it started
+        AtomicInteger state = new AtomicInteger();
+        Future<Health> check;
+        try {
+            check = executor.submit(() -> {
+                if (!state.compareAndSet(0, 1)) {
+                    return null;
+                }
+                try {
+                    return delegate.health();
+                } finally {
+                    checking.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            checking.set(false);
+            throw e;
+        }
+
+        Health health;
+        try {
+            health = check.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            giveUp(check, state);
+            health = Health.down().withDetail("reason", "Health check timed out after " + timeout.toMillis() + "ms")
+                    .build();
+        } catch (ExecutionException e) {
+            health = Health.down(e.getCause() instanceof Exception ? (Exception) e.getCause() : e).build();
+        } catch (InterruptedException e) {
+            giveUp(check, state);
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        lastCheckTime = clock.instant();
+        lastHealth = health;
+    }
+
+    /**
+     * Cancels a check. One that never started will not run, so the next refresh
+     * may start another; one that did clears the flag itself when it returns.
+     */
+    private void giveUp(Future<Health> check, AtomicInteger state) {
+        check.cancel(true);
+        if (state.compareAndSet(0, 2)) {
+            checking.set(false);
+        }
+    }
+
+}
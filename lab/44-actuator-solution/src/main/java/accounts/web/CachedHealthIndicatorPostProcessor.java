@@ -0,0 +1,93 @@
+package accounts.web;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.health.HealthIndicator;
+
+/**
+ * Replaces every {@link HealthIndicator} bean with a
+ * {@link CachedHealthIndicator} and refreshes it on a fixed schedule, so that
+ * <code>/actuator/health</code> probes never run a check themselves.
+ * <p>
+ * The bean name is kept, so the indicator still appears under the same key in
+ * the health endpoint.
+ * <p>
+ * Checks run on a pool that grows as needed, but since each indicator runs at
+ * most one check at a time it never holds more threads than there are
+ * indicators, even when checks hang.
+ */
+public class CachedHealthIndicatorPostProcessor implements BeanPostProcessor, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachedHealthIndicatorPostProcessor.class);
+
+    private final Duration refreshInterval;
+
+    private final Duration timeout;
+
+    private final Duration maxStaleness;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService checkExecutor;
+
+    /**
+     * Creates a new post-processor.
+     *
+     * @param refreshInterval
+     *            the delay between the end of one check and the start of the
+     *            next
+     * @param timeout
+     *            how long a single check may take before it is reported DOWN
+     * @param maxStaleness
+     *            how old a result may be before probes report DOWN
+     */
+    public CachedHealthIndicatorPostProcessor(Duration refreshInterval, Duration timeout, Duration maxStaleness) {
+        this.refreshInterval = refreshInterval;
+        this.timeout = timeout;
+        this.maxStaleness = maxStaleness;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("health-refresh-"));
+        this.checkExecutor = Executors.newCachedThreadPool(daemonThreads("health-check-"));
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (!(bean instanceof HealthIndicator) || bean instanceof CachedHealthIndicator) {
+            return bean;
+        }
+
+        CachedHealthIndicator cached = new CachedHealthIndicator((HealthIndicator) bean, checkExecutor, timeout,
+                maxStaleness, Clock.systemUTC());
+        scheduler.scheduleWithFixedDelay(cached::refresh, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Health indicator '" + beanName + "' will be refreshed every " + refreshInterval.toMillis()
+                + "ms");
+        return cached;
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdownNow();
+        checkExecutor.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+}
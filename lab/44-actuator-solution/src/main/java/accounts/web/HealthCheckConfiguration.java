@@ -0,0 +1,30 @@
+package accounts.web;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Runs health checks in the background and answers health probes from the
+ * last result. Disable with <code>rewards.health.cache.enabled=false</code>.
+ */
+@Configuration
+@ConditionalOnProperty(name = "rewards.health.cache.enabled", matchIfMissing = true)
+public class HealthCheckConfiguration {
+
+    /**
+     * Must be static: a post-processor has to be created before the beans it
+     * processes, without instantiating this configuration class first.
+     */
+    @Bean
+    public static CachedHealthIndicatorPostProcessor cachedHealthIndicatorPostProcessor(
+            @Value("${rewards.health.cache.refresh-interval:10s}") Duration refreshInterval,
+            @Value("${rewards.health.cache.timeout:2s}") Duration timeout,
+            @Value("${rewards.health.cache.max-staleness:60s}") Duration maxStaleness) {
+        return new CachedHealthIndicatorPostProcessor(refreshInterval, timeout, maxStaleness);
+    }
+
+}
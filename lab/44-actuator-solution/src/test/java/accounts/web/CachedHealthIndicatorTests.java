@@ -0,0 +1,162 @@
+package accounts.web;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import rewards.internal.restaurant.RestaurantRepository;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the cached health indicator, wrapping the restaurant health
+ * check.
+ */
+public class CachedHealthIndicatorTests {
+
+    private RestaurantRepository restaurantRepository;
+    private ExecutorService executor;
+    private MutableClock clock;
+    private CachedHealthIndicator healthIndicator;
+
+    @BeforeEach
+    public void setUp() {
+        restaurantRepository = mock(RestaurantRepository.class);
+        executor = Executors.newSingleThreadExecutor();
+        clock = new MutableClock();
+        healthIndicator = new CachedHealthIndicator(new RestaurantHealthCheck(restaurantRepository), executor,
+                Duration.ofMillis(200), Duration.ofSeconds(30), clock);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testHealthIsUnknownBeforeFirstRefresh() {
+        Health result = healthIndicator.health();
+
+        assertEquals(Status.UNKNOWN, result.getStatus());
+        verifyNoInteractions(restaurantRepository);
+    }
+
+    @Test
+    public void testHealthIsAnsweredFromLastRefresh() {
+        doReturn(1L).when(restaurantRepository).getRestaurantCount();
+        healthIndicator.refresh();
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Status.UP, healthIndicator.health().getStatus());
+        }
+
+        verify(restaurantRepository, times(1)).getRestaurantCount();
+    }
+
+    @Test
+    public void testStaleHealthIsReportedDown() {
+        doReturn(1L).when(restaurantRepository).getRestaurantCount();
+        healthIndicator.refresh();
+
+        clock.advance(Duration.ofSeconds(31));
+        Health result = healthIndicator.health();
+
+        assertEquals(Status.DOWN, result.getStatus());
+        assertEquals("UP", result.getDetails().get("lastStatus"));
+    }
+
+    @Test
+    public void testSlowCheckIsTimedOut() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return 1L;
+        }).when(restaurantRepository).getRestaurantCount();
+
+        long start = System.nanoTime();
+        healthIndicator.refresh();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        release.countDown();
+
+        assertEquals(Status.DOWN, healthIndicator.health().getStatus());
+        assertTrue(elapsedMillis < 5000, "refresh should give up after the timeout");
+    }
+
+    @Test
+    public void testNoNewCheckWhileSlowCheckStillRuns() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            // Ignores being cancelled, as a check blocked in I/O would
+            while (true) {
+                try {
+                    release.await();
+                    return 1L;
+                } catch (InterruptedException e) {
+                }
+            }
+        }).when(restaurantRepository).getRestaurantCount();
+
+        healthIndicator.refresh();
+        healthIndicator.refresh();
+        healthIndicator.refresh();
+
+        assertEquals(Status.DOWN, healthIndicator.health().getStatus());
+        verify(restaurantRepository, times(1)).getRestaurantCount();
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (healthIndicator.health().getStatus() != Status.UP && System.currentTimeMillis() < deadline) {
+            healthIndicator.refresh();
+        }
+        assertEquals(Status.UP, healthIndicator.health().getStatus());
+        verify(restaurantRepository, times(2)).getRestaurantCount();
+    }
+
+    @Test
+    public void testFailedCheckIsReportedDown() {
+        doThrow(new IllegalStateException("Database unavailable")).when(restaurantRepository).getRestaurantCount();
+
+        healthIndicator.refresh();
+
+        assertEquals(Status.DOWN, healthIndicator.health().getStatus());
+    }
+
+    /**
+     * A clock that only moves when told to.
+     */
+    private static class MutableClock extends Clock {
+
+        private Instant now = Instant.now();
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
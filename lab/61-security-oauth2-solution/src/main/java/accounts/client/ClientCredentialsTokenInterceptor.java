@@ -0,0 +1,88 @@
+package accounts.client;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Date;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.security.oauth2.client.token.AccessTokenProvider;
+import org.springframework.security.oauth2.client.token.DefaultAccessTokenRequest;
+import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsAccessTokenProvider;
+import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsResourceDetails;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+/**
+ * Adds a <code>client_credentials</code> bearer token to each request made by
+ * a plain {@link org.springframework.web.client.RestTemplate}.
+ * <p>
+ * The token is fetched once and reused until shortly before it expires
+ * (<code>refreshBefore</code>), so a request never goes out with a token that
+ * will expire in flight and the Authorization Server is not called per
+ * request. Concurrent callers share a single fetch.
+ */
+public class ClientCredentialsTokenInterceptor implements ClientHttpRequestInterceptor {
+
+	private final ClientCredentialsResourceDetails resource;
+
+	private final AccessTokenProvider tokenProvider;
+
+	private final Duration refreshBefore;
+
+	private final Clock clock;
+
+	private volatile OAuth2AccessToken token;
+
+	public ClientCredentialsTokenInterceptor(ClientCredentialsResourceDetails resource) {
+		this(resource, new ClientCredentialsAccessTokenProvider(), Duration.ofSeconds(30), Clock.systemUTC());
+	}
+
+	public ClientCredentialsTokenInterceptor(ClientCredentialsResourceDetails resource,
+			AccessTokenProvider tokenProvider, Duration refreshBefore, Clock clock) {
+		this.resource = resource;
+		this.tokenProvider = tokenProvider;
+		this.refreshBefore = refreshBefore;
+		this.clock = clock;
+	}
+
+	@Override
+	public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+			throws IOException {
+		request.getHeaders().set(HttpHeaders.AUTHORIZATION,
+				OAuth2AccessToken.BEARER_TYPE + " " + getAccessToken().getValue());
+		return execution.execute(request, body);
+	}
+
+	/**
+	 * Returns a token valid for at least <code>refreshBefore</code>, fetching a
+	 * new one only if necessary.
+	 */
+	public OAuth2AccessToken getAccessToken() {
+		OAuth2AccessToken current = token;
+		if (isUsable(current)) {
+			return current;
+		}
+
+		synchronized (this) {
+			current = token;
+			if (!isUsable(current)) {
+				current = tokenProvider.obtainAccessToken(resource, new DefaultAccessTokenRequest());
+				token = current;
+			}
+			return current;
+		}
+	}
+
+	private boolean isUsable(OAuth2AccessToken token) {
+		if (token == null) {
+			return false;
+		}
+		Date expiration = token.getExpiration();
+		return expiration == null || expiration.getTime() - refreshBefore.toMillis() > clock.millis();
+	}
+
+}
@@ -0,0 +1,137 @@
+package accounts.security;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+
+/**
+ * Caches the authentication loaded for each bearer token, so a token is only
+ * introspected (or its signature checked) once rather than on every request.
+ * <p>
+ * An entry lives until the token expires or <code>maxTimeToLive</code> has
+ * passed, whichever is sooner. The expiry is read from the <code>exp</code>
+ * claim, which {@link ExpiryAwareAccessTokenConverter} copies into the
+ * request parameters - the delegate must be configured with one. Tokens
+ * without a known expiry are cached for <code>maxTimeToLive</code>.
+ */
+public class CachingTokenServices implements ResourceServerTokenServices {
+
+	/**
+	 * Request parameter used to carry the token's expiry, in epoch seconds.
+	 */
+	public static final String EXPIRY_PARAMETER = AccessTokenConverter.EXP;
+
+	private final ResourceServerTokenServices delegate;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+	private final Duration maxTimeToLive;
+
+	private final int maxEntries;
+
+	private final Clock clock;
+
+	public CachingTokenServices(ResourceServerTokenServices delegate, Duration maxTimeToLive, int maxEntries,
+			Clock clock) {
+		this.delegate = delegate;
+		this.maxTimeToLive = maxTimeToLive;
+		this.maxEntries = maxEntries;
+		this.clock = clock;
+	}
+
+	@Override
+	public OAuth2Authentication loadAuthentication(String accessToken)
+			throws AuthenticationException, InvalidTokenException {
+		long now = clock.millis();
+		Entry entry = entries.get(accessToken);
+
+		if (entry == null || entry.expiresAt <= now) {
+			OAuth2Authentication authentication = delegate.loadAuthentication(accessToken);
+			entry = new Entry(authentication, expiryOf(authentication, now));
+			store(accessToken, entry);
+		}
+
+		// Callers set request-specific details on the result, so never share it
+		return new OAuth2Authentication(entry.authentication.getOAuth2Request(),
+				entry.authentication.getUserAuthentication());
+	}
+
+	@Override
+	public OAuth2AccessToken readAccessToken(String accessToken) {
+		return delegate.readAccessToken(accessToken);
+	}
+
+	/**
+	 * Forgets a token, for example after it has been revoked.
+	 */
+	public void evict(String accessToken) {
+		entries.remove(accessToken);
+	}
+
+	private long expiryOf(OAuth2Authentication authentication, long now) {
+		long expiresAt = now + maxTimeToLive.toMillis();
+		String exp = authentication.getOAuth2Request().getRequestParameters().get(EXPIRY_PARAMETER);
+		if (exp != null) {
+			expiresAt = Math.min(expiresAt, Long.parseLong(exp) * 1000);
+		}
+		return expiresAt;
+	}
+
+	private void store(String accessToken, Entry entry) {
+		if (entries.size() >= maxEntries) {
+			long now = clock.millis();
+			entries.values().removeIf(existing -> existing.expiresAt <= now);
+			if (entries.size() >= maxEntries) {
+				entries.clear();
+			}
+		}
+		entries.put(accessToken, entry);
+	}
+
+	private static final class Entry {
+
+		final OAuth2Authentication authentication;
+
+		final long expiresAt;
+
+		Entry(OAuth2Authentication authentication, long expiresAt) {
+			this.authentication = authentication;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	/**
+	 * An access token converter that keeps the token's <code>exp</code> claim
+	 * as a request parameter, so {@link CachingTokenServices} knows how long
+	 * the resulting authentication may be cached.
+	 */
+	public static class ExpiryAwareAccessTokenConverter extends DefaultAccessTokenConverter {
+
+		@Override
+		public OAuth2Authentication extractAuthentication(Map<String, ?> map) {
+			OAuth2Authentication authentication = super.extractAuthentication(map);
+			Object exp = map.get(EXP);
+			if (!(exp instanceof Number)) {
+				return authentication;
+			}
+
+			OAuth2Request request = authentication.getOAuth2Request();
+			Map<String, String> parameters = new HashMap<>(request.getRequestParameters());
+			parameters.put(EXPIRY_PARAMETER, String.valueOf(((Number) exp).longValue()));
+			return new OAuth2Authentication(request.createOAuth2Request(parameters),
+					authentication.getUserAuthentication());
+		}
+	}
+
+}
@@ -0,0 +1,50 @@
+package accounts.security;
+
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+
+/**
+ * Validates signed (JWT) tokens locally and sends any other (opaque) token to
+ * the Authorization Server's check-token endpoint.
+ */
+public class LocalOrRemoteTokenServices implements ResourceServerTokenServices {
+
+	private final ResourceServerTokenServices localTokenServices;
+
+	private final ResourceServerTokenServices remoteTokenServices;
+
+	public LocalOrRemoteTokenServices(ResourceServerTokenServices localTokenServices,
+			ResourceServerTokenServices remoteTokenServices) {
+		this.localTokenServices = localTokenServices;
+		this.remoteTokenServices = remoteTokenServices;
+	}
+
+	@Override
+	public OAuth2Authentication loadAuthentication(String accessToken)
+			throws AuthenticationException, InvalidTokenException {
+		return servicesFor(accessToken).loadAuthentication(accessToken);
+	}
+
+	@Override
+	public OAuth2AccessToken readAccessToken(String accessToken) {
+		return servicesFor(accessToken).readAccessToken(accessToken);
+	}
+
+	private ResourceServerTokenServices servicesFor(String accessToken) {
+		return isJwt(accessToken) ? localTokenServices : remoteTokenServices;
+	}
+
+	/**
+	 * A JWT is three base64url segments separated by dots. The opaque tokens
+	 * issued by the Authorization Server are UUIDs, which never contain dots.
+	 */
+	static boolean isJwt(String accessToken) {
+		int first = accessToken.indexOf('.');
+		int second = accessToken.indexOf('.', first + 1);
+		return first > 0 && second > first + 1 && accessToken.indexOf('.', second + 1) == -1;
+	}
+
+}
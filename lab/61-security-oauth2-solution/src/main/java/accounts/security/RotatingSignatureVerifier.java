@@ -0,0 +1,112 @@
+package accounts.security;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+
+/**
+ * Verifies JWT signatures locally using the Authorization Server's public key.
+ * <p>
+ * The key is fetched by {@link #refresh()}, at startup and then on a schedule.
+ * When the key changes, the previous key is still accepted until the next
+ * change, so tokens signed just before a rotation remain valid.
+ */
+public class RotatingSignatureVerifier implements SignatureVerifier {
+
+	private static final Logger logger = LoggerFactory.getLogger(RotatingSignatureVerifier.class);
+
+	private final Supplier<String> publicKeySource;
+
+	private volatile List<KeyVerifier> verifiers = Collections.emptyList();
+
+	/**
+	 * Creates a verifier.
+	 *
+	 * @param publicKeySource
+	 *            supplies the current PEM-encoded RSA public key
+	 */
+	public RotatingSignatureVerifier(Supplier<String> publicKeySource) {
+		this.publicKeySource = publicKeySource;
+	}
+
+	/**
+	 * Fetches the current public key. If it cannot be fetched the keys already
+	 * known are kept, and the failure is logged.
+	 *
+	 * @return true if a new key was installed
+	 */
+	public boolean refresh() {
+		String publicKey;
+		try {
+			publicKey = publicKeySource.get();
+		} catch (RuntimeException e) {
+			logger.warn("Unable to fetch token signing key: " + e.getMessage());
+			return false;
+		}
+
+		List<KeyVerifier> current = verifiers;
+		if (publicKey == null || (!current.isEmpty() && current.get(0).publicKey.equals(publicKey))) {
+			return false;
+		}
+
+		List<KeyVerifier> updated = new ArrayList<>(2);
+		updated.add(new KeyVerifier(publicKey));
+		if (!current.isEmpty()) {
+			updated.add(current.get(0));
+		}
+		verifiers = Collections.unmodifiableList(updated);
+
+		logger.info("Installed new token signing key, " + updated.size() + " key(s) accepted");
+		return true;
+	}
+
+	/**
+	 * Returns true once at least one key has been loaded.
+	 */
+	public boolean hasKey() {
+		return !verifiers.isEmpty();
+	}
+
+	@Override
+	public void verify(byte[] content, byte[] signature) {
+		List<KeyVerifier> current = verifiers;
+		if (current.isEmpty()) {
+			throw new InvalidSignatureException("No token signing key has been loaded yet");
+		}
+
+		for (KeyVerifier verifier : current) {
+			try {
+				verifier.verifier.verify(content, signature);
+				return;
+			} catch (InvalidSignatureException e) {
+				// Try the previous key
+			}
+		}
+		throw new InvalidSignatureException("Token signature does not match any known key");
+	}
+
+	@Override
+	public String algorithm() {
+		return "SHA256withRSA";
+	}
+
+	private static final class KeyVerifier {
+
+		final String publicKey;
+
+		final SignatureVerifier verifier;
+
+		KeyVerifier(String publicKey) {
+			this.publicKey = publicKey;
+			this.verifier = new RsaVerifier(publicKey);
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package accounts.security;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.RemoteTokenServices;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+import org.springframework.web.client.RestTemplate;
+
+import accounts.security.CachingTokenServices.ExpiryAwareAccessTokenConverter;
+
+/**
+ * Resource Server token validation without a remote call per request.
+ * <ul>
+ * <li>Signed (JWT) tokens are verified locally using the Authorization
+ * Server's public key, fetched at startup and refreshed on a schedule.</li>
+ * <li>Opaque tokens are still checked by the Authorization Server's
+ * check-token endpoint.</li>
+ * <li>Either way the result is cached per token until the token expires.</li>
+ * </ul>
+ * Set <code>rewards.oauth2.resource.local-validation=false</code> to go back to
+ * Spring Boot's default of calling check-token for every request.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "rewards.oauth2.resource.local-validation", matchIfMissing = true)
+public class TokenServicesConfiguration {
+
+	private final RotatingSignatureVerifier signatureVerifier;
+
+	public TokenServicesConfiguration(@Value("${rewards.oauth2.resource.token-key-uri}") String tokenKeyUri,
+			@Value("${security.oauth2.client.client-id}") String clientId,
+			@Value("${security.oauth2.client.client-secret}") String clientSecret) {
+		RestTemplate restTemplate = new RestTemplateBuilder().basicAuthentication(clientId, clientSecret).build();
+
+		// The token-key endpoint returns {"alg": "SHA256withRSA", "value": "<PEM public key>"}
+		this.signatureVerifier = new RotatingSignatureVerifier(
+				() -> (String) restTemplate.getForObject(tokenKeyUri, Map.class).get("value"));
+		this.signatureVerifier.refresh();
+	}
+
+	@Bean
+	public RotatingSignatureVerifier tokenSignatureVerifier() {
+		return signatureVerifier;
+	}
+
+	/**
+	 * Primary, as Spring Boot still defines its own check-token based
+	 * <code>remoteTokenServices</code> bean.
+	 */
+	@Bean
+	@Primary
+	public ResourceServerTokenServices tokenServices(
+			@Value("${security.oauth2.resource.token-info-uri}") String checkTokenUri,
+			@Value("${security.oauth2.client.client-id}") String clientId,
+			@Value("${security.oauth2.client.client-secret}") String clientSecret,
+			@Value("${rewards.oauth2.resource.token-cache.max-ttl:60s}") Duration maxTimeToLive,
+			@Value("${rewards.oauth2.resource.token-cache.max-entries:10000}") int maxEntries) {
+
+		JwtAccessTokenConverter jwtConverter = new JwtAccessTokenConverter();
+		jwtConverter.setVerifier(signatureVerifier);
+		jwtConverter.setAccessTokenConverter(new ExpiryAwareAccessTokenConverter());
+
+		DefaultTokenServices localTokenServices = new DefaultTokenServices();
+		localTokenServices.setTokenStore(new JwtTokenStore(jwtConverter));
+
+		RemoteTokenServices remoteTokenServices = new RemoteTokenServices();
+		remoteTokenServices.setCheckTokenEndpointUrl(checkTokenUri);
+		remoteTokenServices.setClientId(clientId);
+		remoteTokenServices.setClientSecret(clientSecret);
+		remoteTokenServices.setAccessTokenConverter(new ExpiryAwareAccessTokenConverter());
+
+		return new CachingTokenServices(new LocalOrRemoteTokenServices(localTokenServices, remoteTokenServices),
+				maxTimeToLive, maxEntries, Clock.systemUTC());
+	}
+
+	/**
+	 * Picks up a rotated signing key. Also retries if the Authorization Server
+	 * was not available when this server started.
+	 */
+	@Scheduled(initialDelayString = "${rewards.oauth2.resource.key-refresh-interval-ms:300000}",
+			fixedDelayString = "${rewards.oauth2.resource.key-refresh-interval-ms:300000}")
+	public void refreshTokenSigningKey() {
+		signatureVerifier.refresh();
+	}
+
+}
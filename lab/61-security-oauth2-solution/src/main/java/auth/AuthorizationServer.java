@@ -1,8 +1,10 @@
 package auth;
 
 import config.Constants;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.data.jpa.JpaRepositoriesAutoConfiguration;
 import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
 import org.springframework.context.annotation.Bean;
@@ -12,7 +14,14 @@ import org.springframework.security.oauth2.config.annotation.configurers.ClientD
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configuration.AuthorizationServerConfigurerAdapter;
 import org.springframework.security.oauth2.config.annotation.web.configuration.EnableAuthorizationServer;
+import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerEndpointsConfigurer;
 import org.springframework.security.oauth2.config.annotation.web.configurers.AuthorizationServerSecurityConfigurer;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * OAuth2 Authorization server for authenticating access to the Account server.
@@ -37,18 +46,48 @@ public class AuthorizationServer {
 		SpringApplication.run(AuthorizationServer.class, args);
 	}
 
+	/**
+	 * Issue signed JWTs so Resource Servers can validate tokens locally rather
+	 * than calling the check-token endpoint. The key pair is generated at
+	 * startup; Resource Servers fetch the public key from /oauth/token_key.
+	 * Set rewards.oauth2.jwt.enabled=false to issue opaque tokens instead.
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "rewards.oauth2.jwt.enabled", matchIfMissing = true)
+	JwtAccessTokenConverter jwtAccessTokenConverter() throws NoSuchAlgorithmException {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		KeyPair keyPair = generator.generateKeyPair();
+
+		JwtAccessTokenConverter converter = new JwtAccessTokenConverter();
+		converter.setKeyPair(keyPair);
+		return converter;
+	}
+
 	/**
 	 * Authorization Server configuration
 	 */
 	@Bean
-	AuthorizationServerConfigurer authServerConfig() {
+	AuthorizationServerConfigurer authServerConfig(ObjectProvider<JwtAccessTokenConverter> jwtAccessTokenConverter) {
 		return new AuthorizationServerConfigurerAdapter() {
 			/**
 			 * Valid clients must be a "trusted client".
 			 */
 			@Override
 			public void configure(AuthorizationServerSecurityConfigurer security) {
-				security.checkTokenAccess("hasAuthority('ROLE_TRUSTED_CLIENT')");
+				security.checkTokenAccess("hasAuthority('ROLE_TRUSTED_CLIENT')")
+						.tokenKeyAccess("hasAuthority('ROLE_TRUSTED_CLIENT')");
+			}
+
+			/**
+			 * Use JWTs if a converter is available, otherwise opaque tokens.
+			 */
+			@Override
+			public void configure(AuthorizationServerEndpointsConfigurer endpoints) {
+				JwtAccessTokenConverter converter = jwtAccessTokenConverter.getIfAvailable();
+				if (converter != null) {
+					endpoints.accessTokenConverter(converter).tokenStore(new JwtTokenStore(converter));
+				}
 			}
 
 			/**
@@ -1,26 +1,183 @@
 package config;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.trace.http.HttpTrace;
 import org.springframework.boot.actuate.trace.http.HttpTraceRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.util.StringUtils;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Keeps the most recent HTTP traces in a fixed-size ring buffer.
+ * <p>
+ * Writers claim a slot with a single atomic increment and never block, so
+ * tracing is safe under concurrent requests and memory use is bounded by
+ * <code>capacity</code>. Only requests matching the configured methods and
+ * path prefixes are kept, and of those only the sampled fraction. Accepted
+ * traces can also be spilled asynchronously to a rolling local file - see
+ * {@link HttpTraceFileSpiller}.
+ */
 @Repository
-public class CustomHttpTraceRepository implements HttpTraceRepository {
+public class CustomHttpTraceRepository implements HttpTraceRepository, DisposableBean {
 
-    List<HttpTrace> traces = new ArrayList<>();
+    private final AtomicReferenceArray<Slot> ring;
 
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    private final double sampleRate;
+
+    private final Set<String> methods;
+
+    private final List<String> pathPrefixes;
+
+    private final HttpTraceFileSpiller spiller;
+
+    /**
+     * Creates a trace repository.
+     *
+     * @param capacity     how many traces to keep - older ones are overwritten
+     * @param sampleRate   fraction (0.0 to 1.0) of matching requests to keep
+     * @param methods      HTTP methods to trace, empty to trace all
+     * @param pathPrefixes request paths to trace, empty to trace all
+     * @param spiller      where to copy accepted traces, or null for none
+     */
+    public CustomHttpTraceRepository(int capacity, double sampleRate, Set<String> methods,
+                                     List<String> pathPrefixes, HttpTraceFileSpiller spiller) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Trace capacity must be positive, not " + capacity);
+        }
+        this.ring = new AtomicReferenceArray<>(capacity);
+        this.sampleRate = sampleRate;
+        this.methods = methods;
+        this.pathPrefixes = pathPrefixes;
+        this.spiller = spiller;
+    }
+
+    @Autowired
+    public CustomHttpTraceRepository(@Value("${rewards.httptrace.capacity:100}") int capacity,
+                                     @Value("${rewards.httptrace.sample-rate:1.0}") double sampleRate,
+                                     @Value("${rewards.httptrace.methods:POST}") String[] methods,
+                                     @Value("${rewards.httptrace.path-prefixes:}") String[] pathPrefixes,
+                                     @Value("${rewards.httptrace.spill.file:}") String spillFile,
+                                     @Value("${rewards.httptrace.spill.max-file-size:10485760}") long maxFileSize,
+                                     @Value("${rewards.httptrace.spill.max-history:5}") int maxHistory) {
+        this(capacity, sampleRate, new HashSet<>(Arrays.asList(methods)), Arrays.asList(pathPrefixes),
+                StringUtils.hasText(spillFile)
+                        ? new HttpTraceFileSpiller(new File(spillFile), maxFileSize, maxHistory, capacity)
+                        : null);
+    }
+
+    /**
+     * Returns a snapshot of the retained traces, most recent first. Traces
+     * added while the snapshot is being taken may or may not be included, but
+     * writers are never held up.
+     */
     @Override
     public List<HttpTrace> findAll() {
-        return traces;
+        long end = nextSequence.get();
+        long start = Math.max(0, end - ring.length());
+        List<HttpTrace> traces = new ArrayList<>((int) (end - start));
+
+        for (long sequence = end - 1; sequence >= start; sequence--) {
+            Slot slot = ring.get(indexOf(sequence));
+            // Skip slots not yet published, or already overwritten by a newer trace
+            if (slot != null && slot.sequence == sequence) {
+                traces.add(slot.trace);
+            }
+        }
+
+        return Collections.unmodifiableList(traces);
     }
 
     @Override
     public void add(HttpTrace trace) {
-        if ("POST".equals(trace.getRequest().getMethod())) {
-            traces.add(trace);
+        if (!matches(trace) || !sampled()) {
+            return;
+        }
+
+        long sequence = nextSequence.getAndIncrement();
+        publish(new Slot(sequence, trace));
+
+        if (spiller != null) {
+            spiller.spill(trace);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (spiller != null) {
+            spiller.close();
+        }
+    }
+
+    /**
+     * Stores the slot unless a writer that started later has already reused
+     * it, so a slow writer can never replace a newer trace with an older one.
+     */
+    private void publish(Slot slot) {
+        int index = indexOf(slot.sequence);
+        Slot current;
+        do {
+            current = ring.get(index);
+            if (current != null && current.sequence > slot.sequence) {
+                return;
+            }
+        } while (!ring.compareAndSet(index, current, slot));
+    }
+
+    private boolean matches(HttpTrace trace) {
+        HttpTrace.Request request = trace.getRequest();
+
+        if (!methods.isEmpty() && !methods.contains(request.getMethod())) {
+            return false;
+        }
+
+        if (pathPrefixes.isEmpty()) {
+            return true;
+        }
+
+        String path = request.getUri().getPath();
+        for (String prefix : pathPrefixes) {
+            if (path != null && path.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean sampled() {
+        return sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    private int indexOf(long sequence) {
+        return (int) (sequence % ring.length());
+    }
+
+    /**
+     * A trace tagged with the sequence number it was written under, so
+     * readers can tell a current entry from one that has been overwritten.
+     */
+    private static final class Slot {
+
+        final long sequence;
+
+        final HttpTrace trace;
+
+        Slot(long sequence, HttpTrace trace) {
+            this.sequence = sequence;
+            this.trace = trace;
         }
     }
 
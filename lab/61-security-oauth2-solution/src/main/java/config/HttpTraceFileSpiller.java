@@ -0,0 +1,172 @@
+package config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.trace.http.HttpTrace;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends HTTP traces to a local file on a background thread, one
+ * tab-separated line per trace.
+ * <p>
+ * Request threads only enqueue; if the queue is full the trace is dropped
+ * (and counted) rather than making the request wait for disk. When the file
+ * grows beyond <code>maxFileSize</code> it is renamed to <code>file.1</code>,
+ * <code>file.1</code> to <code>file.2</code> and so on, keeping at most
+ * <code>maxHistory</code> old files.
+ */
+public class HttpTraceFileSpiller {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpTraceFileSpiller.class);
+
+    private final File file;
+
+    private final long maxFileSize;
+
+    private final int maxHistory;
+
+    private final BlockingQueue<Runnable> queue;
+
+    private final ThreadPoolExecutor executor;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Only touched by the single executor thread
+    private Writer writer;
+
+    private long fileSize;
+
+    /**
+     * Creates a spiller.
+     *
+     * @param file          the file to append to
+     * @param maxFileSize   size in bytes after which the file is rolled
+     * @param maxHistory    how many rolled files to keep
+     * @param queueCapacity how many traces may wait to be written
+     */
+    public HttpTraceFileSpiller(File file, long maxFileSize, int maxHistory, int queueCapacity) {
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxHistory = maxHistory;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue, runnable -> {
+            Thread thread = new Thread(runnable, "http-trace-spill");
+            thread.setDaemon(true);
+            return thread;
+        }, (runnable, executor) -> dropped.incrementAndGet());
+    }
+
+    /**
+     * Queues a trace to be written. Never blocks.
+     */
+    public void spill(HttpTrace trace) {
+        executor.execute(() -> write(format(trace)));
+    }
+
+    /**
+     * Returns how many traces were dropped because the queue was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Writes any queued traces and closes the file.
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        closeWriter();
+    }
+
+    private void write(String line) {
+        try {
+            if (writer == null) {
+                openWriter();
+            } else if (fileSize >= maxFileSize) {
+                roll();
+            }
+
+            writer.write(line);
+            fileSize += line.getBytes(StandardCharsets.UTF_8).length;
+
+            // Flush once the burst has been written, not after every line
+            if (queue.isEmpty()) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to write HTTP trace to " + file, e);
+            closeWriter();
+        }
+    }
+
+    private void openWriter() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        fileSize = file.length();
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+    }
+
+    private void roll() throws IOException {
+        closeWriter();
+
+        new File(file.getPath() + "." + maxHistory).delete();
+        for (int i = maxHistory - 1; i >= 1; i--) {
+            File older = new File(file.getPath() + "." + i);
+            if (older.exists()) {
+                older.renameTo(new File(file.getPath() + "." + (i + 1)));
+            }
+        }
+        if (maxHistory > 0) {
+            file.renameTo(new File(file.getPath() + ".1"));
+        } else {
+            file.delete();
+        }
+
+        openWriter();
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close " + file, e);
+            }
+            writer = null;
+        }
+    }
+
+    private static String format(HttpTrace trace) {
+        HttpTrace.Request request = trace.getRequest();
+        HttpTrace.Response response = trace.getResponse();
+        HttpTrace.Principal principal = trace.getPrincipal();
+
+        return trace.getTimestamp() + "\t" //
+                + request.getMethod() + "\t" //
+                + request.getUri() + "\t" //
+                + (response == null ? "-" : String.valueOf(response.getStatus())) + "\t" //
+                + (trace.getTimeTaken() == null ? "-" : trace.getTimeTaken() + "ms") + "\t" //
+                + (principal == null ? "-" : principal.getName()) //
+                + System.lineSeparator();
+    }
+
+}
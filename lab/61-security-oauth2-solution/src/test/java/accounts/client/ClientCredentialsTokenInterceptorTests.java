@@ -0,0 +1,58 @@
+package accounts.client;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.client.token.AccessTokenProvider;
+import org.springframework.security.oauth2.client.token.grant.client.ClientCredentialsResourceDetails;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for client_credentials token reuse. Needs no running servers.
+ */
+public class ClientCredentialsTokenInterceptorTests {
+
+	private AccessTokenProvider tokenProvider;
+	private Clock clock;
+	private Instant now;
+	private ClientCredentialsTokenInterceptor interceptor;
+
+	@BeforeEach
+	public void setUp() {
+		now = Instant.now();
+		clock = mock(Clock.class);
+		when(clock.millis()).thenAnswer(invocation -> now.toEpochMilli());
+
+		tokenProvider = mock(AccessTokenProvider.class);
+		when(tokenProvider.obtainAccessToken(any(), any())).thenAnswer(invocation -> {
+			DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("token-" + now.toEpochMilli());
+			token.setExpiration(Date.from(now.plusSeconds(300)));
+			return token;
+		});
+
+		interceptor = new ClientCredentialsTokenInterceptor(new ClientCredentialsResourceDetails(), tokenProvider,
+				Duration.ofSeconds(30), clock);
+	}
+
+	@Test
+	public void tokenIsReusedUntilShortlyBeforeExpiry() {
+		OAuth2AccessToken first = interceptor.getAccessToken();
+
+		now = now.plusSeconds(260);
+		assertSame(first, interceptor.getAccessToken());
+
+		now = now.plusSeconds(15);
+		assertNotSame(first, interceptor.getAccessToken());
+
+		verify(tokenProvider, times(2)).obtainAccessToken(any(), any());
+	}
+}
@@ -0,0 +1,164 @@
+package accounts.security;
+
+import accounts.security.CachingTokenServices.ExpiryAwareAccessTokenConverter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+import org.springframework.security.oauth2.provider.token.store.JwtAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.store.JwtTokenStore;
+
+import java.security.KeyPairGenerator;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests local JWT validation with key rotation, and the per-token cache.
+ */
+public class LocalTokenValidationTests {
+
+	private JwtAccessTokenConverter authServerConverter;
+	private AtomicReference<String> publishedKey;
+	private RotatingSignatureVerifier verifier;
+	private DefaultTokenServices localTokenServices;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		authServerConverter = newSigningConverter();
+		publishedKey = new AtomicReference<>(authServerConverter.getKey().get("value"));
+
+		verifier = new RotatingSignatureVerifier(publishedKey::get);
+		verifier.refresh();
+
+		JwtAccessTokenConverter resourceServerConverter = new JwtAccessTokenConverter();
+		resourceServerConverter.setVerifier(verifier);
+		resourceServerConverter.setAccessTokenConverter(new ExpiryAwareAccessTokenConverter());
+		localTokenServices = new DefaultTokenServices();
+		localTokenServices.setTokenStore(new JwtTokenStore(resourceServerConverter));
+	}
+
+	@Test
+	public void signedTokenIsValidatedLocally() {
+		String token = issueToken(authServerConverter);
+
+		OAuth2Authentication authentication = localTokenServices.loadAuthentication(token);
+
+		assertEquals("account-tester", authentication.getOAuth2Request().getClientId());
+		assertTrue(authentication.getOAuth2Request().getScope().contains("account.read"));
+		assertNotNull(authentication.getOAuth2Request().getRequestParameters()
+				.get(CachingTokenServices.EXPIRY_PARAMETER));
+	}
+
+	@Test
+	public void previousKeyIsAcceptedAfterRotation() throws Exception {
+		String oldToken = issueToken(authServerConverter);
+
+		JwtAccessTokenConverter rotated = newSigningConverter();
+		publishedKey.set(rotated.getKey().get("value"));
+		assertTrue(verifier.refresh());
+
+		assertNotNull(localTokenServices.loadAuthentication(oldToken));
+		assertNotNull(localTokenServices.loadAuthentication(issueToken(rotated)));
+	}
+
+	@Test
+	public void tokenFromUnknownKeyIsRejected() throws Exception {
+		String forged = issueToken(newSigningConverter());
+
+		assertThrows(InvalidTokenException.class, () -> localTokenServices.loadAuthentication(forged));
+	}
+
+	@Test
+	public void failedKeyFetchKeepsCurrentKey() {
+		RotatingSignatureVerifier failing = new RotatingSignatureVerifier(() -> {
+			throw new IllegalStateException("Authorization Server unavailable");
+		});
+
+		assertFalse(failing.refresh());
+		assertFalse(failing.hasKey());
+	}
+
+	@Test
+	public void opaqueTokensAreRoutedToRemoteServices() {
+		ResourceServerTokenServices remote = mock(ResourceServerTokenServices.class);
+		when(remote.loadAuthentication(anyString())).thenReturn(authentication());
+		LocalOrRemoteTokenServices tokenServices = new LocalOrRemoteTokenServices(localTokenServices, remote);
+
+		tokenServices.loadAuthentication("3d1f0e52-6a36-4c1c-9f7a-64f0cf1c5ed4");
+		tokenServices.loadAuthentication(issueToken(authServerConverter));
+
+		verify(remote, times(1)).loadAuthentication(anyString());
+	}
+
+	@Test
+	public void authenticationIsCachedPerToken() {
+		ResourceServerTokenServices delegate = mock(ResourceServerTokenServices.class);
+		when(delegate.loadAuthentication(anyString())).thenReturn(authentication());
+		CachingTokenServices tokenServices = new CachingTokenServices(delegate, Duration.ofMinutes(1), 100,
+				Clock.systemUTC());
+
+		OAuth2Authentication first = tokenServices.loadAuthentication("token-1");
+		OAuth2Authentication second = tokenServices.loadAuthentication("token-1");
+		tokenServices.loadAuthentication("token-2");
+
+		assertNotSame(first, second);
+		verify(delegate, times(1)).loadAuthentication("token-1");
+		verify(delegate, times(1)).loadAuthentication("token-2");
+	}
+
+	@Test
+	public void cacheEntryEndsWhenTokenExpires() {
+		Instant now = Instant.now();
+		Clock clock = mock(Clock.class);
+		when(clock.millis()).thenReturn(now.toEpochMilli(), now.plusSeconds(11).toEpochMilli());
+
+		OAuth2Authentication expiresInTenSeconds = authentication();
+		expiresInTenSeconds = new OAuth2Authentication(expiresInTenSeconds.getOAuth2Request().createOAuth2Request(
+				Collections.singletonMap(CachingTokenServices.EXPIRY_PARAMETER,
+						String.valueOf(now.plusSeconds(10).getEpochSecond()))), null);
+		ResourceServerTokenServices delegate = mock(ResourceServerTokenServices.class);
+		when(delegate.loadAuthentication(anyString())).thenReturn(expiresInTenSeconds);
+		CachingTokenServices tokenServices = new CachingTokenServices(delegate, Duration.ofMinutes(1), 100, clock);
+
+		tokenServices.loadAuthentication("token-1");
+		tokenServices.loadAuthentication("token-1");
+
+		verify(delegate, times(2)).loadAuthentication("token-1");
+	}
+
+	private String issueToken(JwtAccessTokenConverter converter) {
+		DefaultTokenServices tokenServices = new DefaultTokenServices();
+		tokenServices.setTokenStore(new JwtTokenStore(converter));
+		tokenServices.setTokenEnhancer(converter);
+		tokenServices.setAccessTokenValiditySeconds(3600);
+		OAuth2AccessToken token = tokenServices.createAccessToken(authentication());
+		return token.getValue();
+	}
+
+	private OAuth2Authentication authentication() {
+		OAuth2Request request = new OAuth2Request(Collections.emptyMap(), "account-tester", null, true,
+				new HashSet<>(Arrays.asList("account.read", "account.write")), null, null, null, null);
+		return new OAuth2Authentication(request, null);
+	}
+
+	private JwtAccessTokenConverter newSigningConverter() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		JwtAccessTokenConverter converter = new JwtAccessTokenConverter();
+		converter.setKeyPair(generator.generateKeyPair());
+		return converter;
+	}
+}
@@ -0,0 +1,132 @@
+package config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.actuate.trace.http.HttpTrace;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the ring-buffer backed trace repository.
+ */
+public class CustomHttpTraceRepositoryTests {
+
+	@Test
+	public void testOnlyMatchingMethodsAreKept() {
+		CustomHttpTraceRepository repository = repository(10, 1.0, "POST");
+
+		repository.add(trace("GET", "/accounts"));
+		repository.add(trace("POST", "/oauth/token"));
+
+		List<HttpTrace> traces = repository.findAll();
+		assertEquals(1, traces.size());
+		assertEquals("POST", traces.get(0).getRequest().getMethod());
+	}
+
+	@Test
+	public void testOnlyMatchingPathsAreKept() {
+		CustomHttpTraceRepository repository = new CustomHttpTraceRepository(10, 1.0, Collections.emptySet(),
+				Arrays.asList("/oauth/"), null);
+
+		repository.add(trace("POST", "/oauth/token"));
+		repository.add(trace("POST", "/login"));
+
+		List<HttpTrace> traces = repository.findAll();
+		assertEquals(1, traces.size());
+		assertEquals("/oauth/token", traces.get(0).getRequest().getUri().getPath());
+	}
+
+	@Test
+	public void testOldestTracesAreOverwritten() {
+		CustomHttpTraceRepository repository = repository(3, 1.0);
+
+		for (int i = 0; i < 5; i++) {
+			repository.add(trace("POST", "/request/" + i));
+		}
+
+		List<HttpTrace> traces = repository.findAll();
+		assertEquals(3, traces.size());
+		assertEquals("/request/4", traces.get(0).getRequest().getUri().getPath());
+		assertEquals("/request/2", traces.get(2).getRequest().getUri().getPath());
+	}
+
+	@Test
+	public void testZeroSampleRateKeepsNothing() {
+		CustomHttpTraceRepository repository = repository(10, 0.0);
+
+		repository.add(trace("POST", "/oauth/token"));
+
+		assertTrue(repository.findAll().isEmpty());
+	}
+
+	@Test
+	public void testConcurrentWritersAreBounded() throws Exception {
+		CustomHttpTraceRepository repository = repository(50, 1.0);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		for (int i = 0; i < 10_000; i++) {
+			executor.execute(() -> repository.add(trace("POST", "/oauth/token")));
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertEquals(50, repository.findAll().size());
+	}
+
+	@Test
+	public void testTracesAreSpilledToFile(@TempDir Path directory) throws Exception {
+		File file = directory.resolve("trace.log").toFile();
+		HttpTraceFileSpiller spiller = new HttpTraceFileSpiller(file, 1024 * 1024, 2, 10);
+		CustomHttpTraceRepository repository = new CustomHttpTraceRepository(10, 1.0, Collections.emptySet(),
+				Collections.emptyList(), spiller);
+
+		repository.add(trace("POST", "/oauth/token"));
+		repository.destroy();
+
+		List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		assertEquals(1, lines.size());
+		assertTrue(lines.get(0).contains("POST\thttp://localhost/oauth/token\t200"));
+	}
+
+	@Test
+	public void testSpillFileIsRolled(@TempDir Path directory) throws Exception {
+		File file = directory.resolve("trace.log").toFile();
+		HttpTraceFileSpiller spiller = new HttpTraceFileSpiller(file, 1, 2, 10);
+
+		for (int i = 0; i < 4; i++) {
+			spiller.spill(trace("POST", "/request/" + i));
+		}
+		spiller.close();
+
+		assertTrue(file.exists());
+		assertTrue(new File(file.getPath() + ".1").exists());
+		assertTrue(new File(file.getPath() + ".2").exists());
+		assertFalse(new File(file.getPath() + ".3").exists());
+	}
+
+	private CustomHttpTraceRepository repository(int capacity, double sampleRate, String... methods) {
+		return new CustomHttpTraceRepository(capacity, sampleRate, new HashSet<>(Arrays.asList(methods)),
+				Collections.emptyList(), null);
+	}
+
+	private HttpTrace trace(String method, String path) {
+		HttpTrace.Request request = new HttpTrace.Request(method, URI.create("http://localhost" + path),
+				Collections.emptyMap(), "127.0.0.1");
+		return new HttpTrace(request, new HttpTrace.Response(200, Collections.emptyMap()), Instant.now(), null, null,
+				5L);
+	}
+}
@@ -12,7 +12,7 @@ import accounts.internal.JpaAccountManager;
  * Imports Rewards application from rewards-db project.
  */
 @Configuration
-@Import({ AppConfig.class, DbConfig.class })
+@Import({ AppConfig.class, DbConfig.class, VirtualThreadConfig.class })
 @EnableTransactionManagement
 public class RootConfig {
 
@@ -0,0 +1,55 @@
+package config;
+
+import java.util.concurrent.ExecutorService;
+
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.AsyncListenableTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import common.util.VirtualThreads;
+
+/**
+ * With the virtual-threads profile active, requests are handled, and @Async methods and asynchronous MVC requests run,
+ * on a new virtual thread each instead of on a pool of platform threads. Needs JDK 21 or later; on an older JDK the
+ * application fails to start rather than quietly running on a pool.
+ * <p>
+ * A slow blocking request, like the deliberately delayed /accounts/{id}, then only holds on to its virtual thread,
+ * so the number in flight is no longer capped by server.tomcat.max-threads. Tomcat's connection limit, and the
+ * database connection pool for requests that reach the database, still cap them.
+ */
+@Configuration
+@Profile(VirtualThreadConfig.VIRTUAL_THREADS_PROFILE)
+public class VirtualThreadConfig {
+
+	public static final String VIRTUAL_THREADS_PROFILE = "virtual-threads";
+
+	/**
+	 * Runs each request Tomcat accepts on a virtual thread of its own.
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public ExecutorService requestExecutor() {
+		return VirtualThreads.newThreadPerTaskExecutor("http-virtual-");
+	}
+
+	@Bean
+	public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+		ExecutorService executor = requestExecutor();
+		return protocolHandler -> protocolHandler.setExecutor(executor);
+	}
+
+	/**
+	 * Replaces the pool Spring Boot would otherwise create for @Async methods and asynchronous MVC requests.
+	 */
+	@Bean(name = { "applicationTaskExecutor", "taskExecutor" }, destroyMethod = "")
+	public AsyncListenableTaskExecutor applicationTaskExecutor() {
+		return new TaskExecutorAdapter(asyncExecutor());
+	}
+
+	@Bean(destroyMethod = "shutdown")
+	public ExecutorService asyncExecutor() {
+		return VirtualThreads.newThreadPerTaskExecutor("task-virtual-");
+	}
+}
@@ -0,0 +1,92 @@
+package accounts.web;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import common.util.VirtualThreads;
+import config.VirtualThreadConfig;
+import reactor.core.publisher.Flux;
+import rewards.internal.account.Account;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Loads the deliberately slow /accounts/{id} with many more concurrent requests than Tomcat has threads, on virtual
+ * threads. On a pool of {@link #MAX_THREADS} platform threads they would take at least {@link #POOL_BOUND_MILLIS};
+ * on virtual threads they overlap, while the number of platform threads stays about the same.
+ * <p>
+ * Only runs on a JDK with virtual threads.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+		properties = "server.tomcat.max-threads=" + VirtualThreadLoadTests.MAX_THREADS)
+@ActiveProfiles({ "jpa", VirtualThreadConfig.VIRTUAL_THREADS_PROFILE })
+public class VirtualThreadLoadTests {
+
+	static final int MAX_THREADS = 10;
+
+	static final int CONCURRENT_REQUESTS = 400;
+
+	// Each request sleeps for 50ms in AccountController
+	static final long POOL_BOUND_MILLIS = CONCURRENT_REQUESTS / MAX_THREADS * 50;
+
+	private static final Logger logger = Logger.getLogger("accounts.web");
+
+	@LocalServerPort
+	private int port;
+
+	@BeforeAll
+	public static void checkForVirtualThreads() {
+		// Before the application context, which cannot start without them
+		Assumptions.assumeTrue(VirtualThreads.isAvailable(), "needs JDK 21 or later");
+	}
+
+	@Test
+	public void testConcurrencyIsNotCappedByThreadPool() {
+		WebClient client = WebClient.create("http://localhost:" + port);
+		// Warm up the connections and the JPA layer
+		fetch(client, MAX_THREADS);
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		threads.resetPeakThreadCount();
+		int threadsBefore = threads.getThreadCount();
+		long start = System.nanoTime();
+
+		assertEquals(CONCURRENT_REQUESTS, fetch(client, CONCURRENT_REQUESTS));
+
+		long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+		int extraThreads = threads.getPeakThreadCount() - threadsBefore;
+		logger.info(CONCURRENT_REQUESTS + " concurrent requests took " + elapsedMillis + " ms (at least "
+				+ POOL_BOUND_MILLIS + " ms on " + MAX_THREADS + " platform threads), peak platform threads +"
+				+ extraThreads);
+
+		assertTrue(elapsedMillis < POOL_BOUND_MILLIS / 2,
+				"requests should not have queued for " + MAX_THREADS + " threads: " + elapsedMillis + " ms");
+		// Virtual threads are not counted; a thread per request would add hundreds
+		assertTrue(extraThreads < CONCURRENT_REQUESTS / 4, "platform threads grew by " + extraThreads);
+	}
+
+	private long fetch(WebClient client, int requests) {
+		Long fetched = Flux.range(0, requests)
+			.flatMap(id -> client.get()
+				.uri("/accounts/{id}", id % 21)
+				.accept(MediaType.APPLICATION_JSON)
+				.retrieve()
+				.bodyToMono(Account.class), requests)
+			.count()
+			.block(Duration.ofSeconds(60));
+		return fetched;
+	}
+}
@@ -2,18 +2,36 @@ package config;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.activemq.command.ActiveMQQueue;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
 import org.springframework.jms.annotation.EnableJms;
 import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
 
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
 
+import common.util.VirtualThreads;
+
+/**
+ * With the virtual-threads profile active, @JmsListener consumers each run on a virtual thread, and scale up to
+ * {@link #VIRTUAL_THREAD_CONSUMERS} while messages are waiting. Needs JDK 21 or later.
+ */
 @Configuration
 @EnableJms
 public class JmsInfrastructureConfig {
 
+	public static final String VIRTUAL_THREADS_PROFILE = "virtual-threads";
+
+	/**
+	 * The most consumers a listener container starts on virtual threads. A consumer blocked in JDBC then costs a
+	 * parked virtual thread, not a platform thread, so there can be many more than there could be pooled threads.
+	 */
+	public static final int VIRTUAL_THREAD_CONSUMERS = 100;
+
 	/**
 	 * The connection URL for an in-memory configuration. The queues will not be
 	 * made persistent and, since we are using Spring to shut everything down
@@ -60,10 +78,25 @@ public class JmsInfrastructureConfig {
 	 * to support one of your @JmsListener methods:
 	 */
 	@Bean
-	public DefaultJmsListenerContainerFactory jmsListenerContainerFactory() {
+	public DefaultJmsListenerContainerFactory jmsListenerContainerFactory(
+			ObjectProvider<TaskExecutor> jmsListenerTaskExecutor) {
 		DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
 		factory.setConnectionFactory(connectionFactory());
+		TaskExecutor taskExecutor = jmsListenerTaskExecutor.getIfAvailable();
+		if (taskExecutor != null) {
+			factory.setTaskExecutor(taskExecutor);
+			factory.setConcurrency("1-" + VIRTUAL_THREAD_CONSUMERS);
+		}
 		return factory;
 	}
 
+	/**
+	 * Runs each listener container consumer on a virtual thread of its own.
+	 */
+	@Bean
+	@Profile(VIRTUAL_THREADS_PROFILE)
+	public TaskExecutor jmsListenerTaskExecutor() {
+		return new TaskExecutorAdapter(VirtualThreads.newThreadPerTaskExecutor("jms-virtual-"));
+	}
+
 }
@@ -0,0 +1,224 @@
+package rewards.reactive;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.reactivestreams.Subscription;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+import rewards.RewardNetwork;
+
+/**
+ * Rewards a stream of dinings - read from a file, posted over HTTP or received from JMS - in batches, a bounded
+ * number at a time, only taking more dinings from the source as rewards are made.
+ * <p>
+ * Dinings wait for a batch in a queue of {@link #setMaxBatchSize(int) batch size} times
+ * {@link #setConcurrency(int) concurrency}. A batch is cut when it is full or {@link #setMaxWait(Duration)} after its
+ * first dining arrived, whichever comes first, and only when a worker is free to take it. Each batch is rewarded on
+ * a worker of a {@link Schedulers#boundedElastic() blocking-friendly scheduler}, one dining after another, in one
+ * transaction if a {@link #setTransactionManager(PlatformTransactionManager) transaction manager} is given. Dinings
+ * are requested from the source only as batches are taken from the queue, so a slow database leaves the source
+ * waiting rather than growing any queue.
+ * <p>
+ * Confirmations come out as batches finish, so batches may overtake each other; within a batch they keep their
+ * order. The first reward that fails ends the stream with its exception and cancels the source. With a transaction
+ * manager, the rest of its batch is rolled back with it.
+ */
+public class DiningIngestionPipeline {
+
+	/**
+	 * Put in the queue after the last dining.
+	 */
+	private static final Object END = new Object();
+
+	private final RewardNetwork rewardNetwork;
+
+	private int concurrency = 4;
+
+	private int maxBatchSize = 50;
+
+	private Duration maxWait = Duration.ofMillis(50);
+
+	private Scheduler scheduler = Schedulers.boundedElastic();
+
+	private TransactionTemplate batchTransaction;
+
+	/**
+	 * @param rewardNetwork the reward network to reward each dining with
+	 */
+	public DiningIngestionPipeline(RewardNetwork rewardNetwork) {
+		this.rewardNetwork = rewardNetwork;
+	}
+
+	/**
+	 * The most batches rewarded at once. Defaults to 4.
+	 */
+	public void setConcurrency(int concurrency) {
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * The most dinings in a batch. Defaults to 50.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * The longest a dining waits for its batch to fill before the batch is cut. Defaults to 50ms.
+	 */
+	public void setMaxWait(Duration maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * The scheduler whose workers reward the batches and wait for dinings. Defaults to the bounded elastic one.
+	 */
+	public void setScheduler(Scheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Rewards each batch in one transaction, which the reward network's own joins. By default each reward is in a
+	 * transaction of its own.
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.batchTransaction = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Rewards the dinings, once subscribed to.
+	 * @param dinings the dinings to reward, requested as they can be taken
+	 * @return the confirmations of the rewards made
+	 */
+	public Flux<RewardConfirmation> ingest(Flux<Dining> dinings) {
+		return Flux.defer(() -> {
+			BatchingSubscriber batches = new BatchingSubscriber(maxBatchSize * concurrency);
+			dinings.subscribe(batches);
+			// Blocks while waiting for dinings, so cut batches on a worker too
+			Flux<List<Dining>> cut = Flux.<List<Dining>> generate(sink -> {
+				try {
+					List<Dining> batch = batches.take();
+					if (batch != null) {
+						sink.next(batch);
+					} else if (batches.error != null) {
+						sink.error(batches.error);
+					} else {
+						sink.complete();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					sink.error(e);
+				}
+			}).subscribeOn(scheduler);
+			return cut
+				.flatMap(batch -> Mono.fromCallable(() -> reward(batch)).subscribeOn(scheduler), concurrency, 1)
+				.flatMapIterable(confirmations -> confirmations)
+				.doFinally(signal -> batches.cancel());
+		});
+	}
+
+	private List<RewardConfirmation> reward(List<Dining> batch) {
+		if (batchTransaction == null) {
+			return rewardEach(batch);
+		}
+		return batchTransaction.execute(status -> rewardEach(batch));
+	}
+
+	private List<RewardConfirmation> rewardEach(List<Dining> batch) {
+		List<RewardConfirmation> confirmations = new ArrayList<RewardConfirmation>(batch.size());
+		for (Dining dining : batch) {
+			confirmations.add(rewardNetwork.rewardAccountFor(dining));
+		}
+		return confirmations;
+	}
+
+	/**
+	 * Takes dinings from the source into a bounded queue, requesting only as many as there is room for.
+	 */
+	private class BatchingSubscriber extends BaseSubscriber<Dining> {
+
+		private final int capacity;
+
+		// One more than requested, so there is always room for END
+		private final BlockingQueue<Object> queue;
+
+		private volatile Throwable error;
+
+		private boolean ended;
+
+		BatchingSubscriber(int capacity) {
+			this.capacity = capacity;
+			this.queue = new LinkedBlockingQueue<Object>(capacity + 1);
+		}
+
+		@Override
+		protected void hookOnSubscribe(Subscription subscription) {
+			request(capacity);
+		}
+
+		@Override
+		protected void hookOnNext(Dining dining) {
+			queue.offer(dining);
+		}
+
+		@Override
+		protected void hookOnComplete() {
+			queue.offer(END);
+		}
+
+		@Override
+		protected void hookOnError(Throwable throwable) {
+			error = throwable;
+			queue.offer(END);
+		}
+
+		@Override
+		protected void hookOnCancel() {
+			// Wakes a worker waiting for a dining
+			queue.offer(END);
+		}
+
+		/**
+		 * Waits for the next batch, and requests as many dinings as it takes.
+		 * @return the batch, or null if there are no more dinings, because the source has completed or failed
+		 */
+		List<Dining> take() throws InterruptedException {
+			if (ended) {
+				return null;
+			}
+			List<Dining> batch = new ArrayList<Dining>(maxBatchSize);
+			Object next = queue.take();
+			long deadline = System.nanoTime() + maxWait.toNanos();
+			while (next != END) {
+				batch.add((Dining) next);
+				if (batch.size() == maxBatchSize) {
+					break;
+				}
+				next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				if (next == null) {
+					break;
+				}
+			}
+			if (next == END) {
+				// The dinings before the end are still rewarded
+				ended = true;
+			} else {
+				request(batch.size());
+			}
+			return batch.isEmpty() ? null : batch;
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package rewards.reactive;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Flux;
+import rewards.Dining;
+import rewards.RewardConfirmation;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests rewarding streams of dinings, with a reward network that confirms each dining with its credit card number.
+ */
+public class DiningIngestionPipelineTests {
+
+	@Test
+	public void testEveryDiningIsRewarded() {
+		DiningIngestionPipeline pipeline = new DiningIngestionPipeline(dining -> confirmation(dining));
+
+		List<RewardConfirmation> confirmations = pipeline.ingest(dinings(500)).collectList()
+			.block(Duration.ofSeconds(10));
+
+		assertEquals(500, confirmations.size());
+		assertEquals(500, confirmations.stream().map(RewardConfirmation::getConfirmationNumber).distinct().count());
+	}
+
+	@Test
+	public void testConcurrencyIsBounded() {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger mostRunning = new AtomicInteger();
+		DiningIngestionPipeline pipeline = new DiningIngestionPipeline(dining -> {
+			mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			sleep(1);
+			running.decrementAndGet();
+			return confirmation(dining);
+		});
+		pipeline.setConcurrency(3);
+		pipeline.setMaxBatchSize(5);
+
+		assertEquals(Long.valueOf(100), pipeline.ingest(dinings(100)).count().block(Duration.ofSeconds(10)));
+		assertTrue(mostRunning.get() <= 3, "at most 3 batches should be rewarded at once: " + mostRunning.get());
+	}
+
+	@Test
+	public void testSlowRewardsThrottleTheSource() {
+		AtomicLong emitted = new AtomicLong();
+		AtomicLong requested = new AtomicLong();
+		AtomicLong mostOutstanding = new AtomicLong();
+		Flux<Dining> source = dinings(1000)
+			.doOnRequest(n -> mostOutstanding.accumulateAndGet(requested.addAndGet(n) - emitted.get(), Math::max))
+			.doOnNext(dining -> emitted.incrementAndGet());
+		DiningIngestionPipeline pipeline = new DiningIngestionPipeline(dining -> {
+			sleep(1);
+			return confirmation(dining);
+		});
+		pipeline.setConcurrency(2);
+		pipeline.setMaxBatchSize(10);
+
+		assertEquals(Long.valueOf(1000), pipeline.ingest(source).count().block(Duration.ofSeconds(30)));
+		// Never asked for more than the queue holds
+		assertTrue(mostOutstanding.get() <= 20, "outstanding demand reached " + mostOutstanding.get());
+	}
+
+	@Test
+	public void testPartialBatchIsCutAfterMaxWait() {
+		DiningIngestionPipeline pipeline = new DiningIngestionPipeline(dining -> confirmation(dining));
+		pipeline.setMaxWait(Duration.ofMillis(20));
+
+		// A source that never fills a batch nor completes
+		RewardConfirmation confirmation = pipeline.ingest(dinings(1).concatWith(Flux.never())).blockFirst(
+				Duration.ofSeconds(10));
+		assertNotNull(confirmation);
+	}
+
+	@Test
+	public void testFailedRewardEndsTheStream() {
+		DiningIngestionPipeline pipeline = new DiningIngestionPipeline(dining -> {
+			if (dining.getCreditCardNumber().endsWith("0042")) {
+				throw new IllegalStateException("unlucky");
+			}
+			return confirmation(dining);
+		});
+
+		IllegalStateException e = assertThrows(IllegalStateException.class,
+				() -> pipeline.ingest(dinings(100)).blockLast(Duration.ofSeconds(10)));
+		assertEquals("unlucky", e.getMessage());
+	}
+
+	@Test
+	public void testFailedSourceEndsTheStream() {
+		DiningIngestionPipeline pipeline = new DiningIngestionPipeline(dining -> confirmation(dining));
+		Flux<Dining> source = dinings(10).concatWith(Flux.error(new IllegalStateException("unreadable")));
+
+		IllegalStateException e = assertThrows(IllegalStateException.class,
+				() -> pipeline.ingest(source).blockLast(Duration.ofSeconds(10)));
+		assertEquals("unreadable", e.getMessage());
+	}
+
+	private static Flux<Dining> dinings(int count) {
+		return Flux.range(0, count)
+			.map(i -> Dining.createDining("100.00", String.format("123412341234%04d", i), "1234567890"));
+	}
+
+	private static RewardConfirmation confirmation(Dining dining) {
+		return new RewardConfirmation(dining.getCreditCardNumber(), null);
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}